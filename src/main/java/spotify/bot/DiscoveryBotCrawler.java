@@ -1,11 +1,17 @@
 package spotify.bot;
 
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
 import se.michaelthelin.spotify.enums.AlbumGroup;
@@ -14,20 +20,31 @@ import spotify.api.SpotifyApiAuthorization;
 import spotify.api.SpotifyApiException;
 import spotify.api.events.SpotifyApiLoggedInEvent;
 import spotify.bot.config.DeveloperMode;
+import spotify.bot.config.database.CacheBackend;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
 import spotify.bot.filter.FilterService;
 import spotify.bot.filter.RelayService;
 import spotify.bot.filter.RemappingService;
+import spotify.bot.filter.pipeline.ReleaseFilter;
+import spotify.bot.filter.pipeline.ReleaseFilterPipeline;
 import spotify.bot.service.DiscoveryAlbumService;
 import spotify.bot.service.DiscoveryTrackService;
 import spotify.bot.service.PlaylistMetaService;
 import spotify.bot.service.PlaylistSongsService;
+import spotify.bot.service.performance.AddedTrackIndexService;
+import spotify.bot.service.performance.ArtistIndexService;
+import spotify.bot.service.performance.CacheMigrationService;
+import spotify.bot.service.performance.CacheRetentionService;
 import spotify.bot.service.performance.CachedArtistService;
+import spotify.bot.service.performance.ReleaseCodeIndexService;
+import spotify.bot.service.performance.ReleaseTitleIndexService;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.ArtistIndex;
 import spotify.bot.util.data.CachedArtistsContainer;
+import spotify.bot.util.data.FetchedReleases;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
@@ -44,9 +61,24 @@ public class DiscoveryBotCrawler {
 	private final FilterService filterService;
 	private final RemappingService remappingService;
 	private final RelayService relayService;
+	private final CacheRetentionService cacheRetentionService;
+	private final CacheMigrationService cacheMigrationService;
+	private final ReleaseTitleIndexService releaseTitleIndexService;
+	private final ArtistIndexService artistIndexService;
+	private final ReleaseCodeIndexService releaseCodeIndexService;
+	private final AddedTrackIndexService addedTrackIndexService;
+
+	private final ReleaseFilterPipeline releaseFilterPipeline;
+	private final TaskExecutor taskExecutor;
 
 	private List<AlbumSimplified> albumsToCache;
 
+	/**
+	 * The artist index of the latest crawl, to relay the releases it queued once
+	 * they have been written
+	 */
+	private ArtistIndex latestArtistIndex;
+
 	DiscoveryBotCrawler(
 			SpotifyApiAuthorization spotifyApiAuthorization,
 			DiscoveryBotLogger discoveryBotLogger,
@@ -58,7 +90,14 @@ public class DiscoveryBotCrawler {
 			PlaylistMetaService playlistMetaService,
 			FilterService filterService,
 			RemappingService remappingService,
-			RelayService relayService
+			RelayService relayService,
+			CacheRetentionService cacheRetentionService,
+			CacheMigrationService cacheMigrationService,
+			ReleaseTitleIndexService releaseTitleIndexService,
+			ArtistIndexService artistIndexService,
+			ReleaseCodeIndexService releaseCodeIndexService,
+			AddedTrackIndexService addedTrackIndexService,
+			@Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor
 	) {
 		this.spotifyApiAuthorization = spotifyApiAuthorization;
 		this.log = discoveryBotLogger;
@@ -71,17 +110,29 @@ public class DiscoveryBotCrawler {
 		this.filterService = filterService;
 		this.remappingService = remappingService;
 		this.relayService = relayService;
+		this.cacheRetentionService = cacheRetentionService;
+		this.cacheMigrationService = cacheMigrationService;
+		this.releaseTitleIndexService = releaseTitleIndexService;
+		this.artistIndexService = artistIndexService;
+		this.releaseCodeIndexService = releaseCodeIndexService;
+		this.addedTrackIndexService = addedTrackIndexService;
+		this.taskExecutor = taskExecutor;
+		this.releaseFilterPipeline = filterService.createReleaseFilterPipeline(
+			albums -> albumsToCache = List.copyOf(albums),
+			ReleaseFilter.batch("appears_on_names", null, discoveryAlbumService::resolveViaAppearsOnArtistNames));
 	}
 
 	/**
-	 * Lock controlling the local single-crawl behavior
+	 * Lock controlling the local single-crawl behavior. It's only published once
+	 * it's held by the playlist verification at startup.
 	 */
-	private ReentrantLock lock;
+	private volatile ReentrantLock lock;
 
 	/**
 	 * Indicate whether the crawler is currently available
 	 *
-	 * @return true if the lock exists and is not locked
+	 * @return true if the lock exists and is not locked (i.e. not before the
+	 *         playlists have been verified)
 	 */
 	public boolean isReady() {
 		return lock != null && !lock.isLocked();
@@ -107,32 +158,84 @@ public class DiscoveryBotCrawler {
 	}
 
 	/**
-	 * Event that will be fired once the Spring application has fully booted. It
-	 * will automatically initiate the first crawling iteration. After completion,
-	 * the bot will be made available for scheduled and external (manual) crawling.
+	 * Run the cache maintenance if the crawler is ready. Lock it while doing so.
+	 *
+	 * @return a summary of the maintenance, null if lock wasn't available
+	 * @throws SQLException on an internal exception related to the SQLite database
+	 */
+	public String tryCacheMaintenance() throws SQLException {
+		if (lock.tryLock()) {
+			try {
+				return cacheRetentionService.runCacheMaintenance();
+			} finally {
+				lock.unlock();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Copy the cache into the given backend if the crawler is ready. Lock it while
+	 * doing so.
+	 *
+	 * @return a summary of the migration, null if lock wasn't available
+	 * @throws SQLException on an internal exception related to the SQLite database
+	 */
+	public String tryCacheMigration(CacheBackend target) throws SQLException {
+		if (lock.tryLock()) {
+			try {
+				return cacheMigrationService.migrateCache(target);
+			} finally {
+				lock.unlock();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Write any queued playlist additions whose coalescing window has expired (see
+	 * <code>ADDITION_COALESCING_SECONDS</code>) if the crawler is ready. Lock it
+	 * while doing so.
 	 *
+	 * @return a result map containing the number of written songs by album type,
+	 *         null if lock wasn't available
 	 * @throws SpotifyApiException on an external exception related to the Spotify Web API
 	 * @throws SQLException on an internal exception related to the SQLite database
 	 */
+	public Map<AlbumGroupExtended, Integer> tryFlushPendingAdditions() throws SpotifyApiException, SQLException {
+		if (lock.tryLock()) {
+			try {
+				return DiscoveryBotUtils.collectSongAdditionResults(flushPendingAdditions());
+			} finally {
+				releaseCodeIndexService.clear();
+				lock.unlock();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check if any queued playlist additions are due to be written
+	 */
+	public boolean isFlushOfPendingAdditionsDue() {
+		return playlistSongsService.isFlushDue();
+	}
+
+	/**
+	 * Event that will be fired once the Spring application has fully booted. It
+	 * reads the playlist stores along with their persisted state. The playlists
+	 * are then verified in the background, after which the bot is available for
+	 * scheduled and external (manual) crawling. This is followed by the first
+	 * crawling iteration, and a breakdown of the startup time is logged.
+	 */
 	@EventListener(SpotifyApiLoggedInEvent.class)
-	public void firstCrawlAndEnableReadyState() throws SpotifyApiException, SQLException {
+	public void firstCrawlAndEnableReadyState() {
 		log.printLine();
-		log.info("Executing initial crawl...", false);
 		long time = System.currentTimeMillis();
 		playlistStoreConfig.setupPlaylistStores();
-		playlistMetaService.initLastUpdatedFromPlaylistDescriptions();
-		if (!DeveloperMode.isInitialCrawlDisabled()) {
-			Map<AlbumGroupExtended, Integer> results = crawl();
-			String response = DiscoveryBotUtils.compileResultString(results);
-			if (!response.isBlank()) {
-				log.info(response, false);
-			}
-		} else {
-			log.info(">>> SKIPPED <<<", false);
-		}
-		log.info("Initial crawl successfully finished in: " + (System.currentTimeMillis() - time) + "ms", false);
-		log.resetAndPrintLine();
-		lock = new ReentrantLock();
+		long setupTime = System.currentTimeMillis() - time;
+		log.info("Playlist setup finished (" + setupTime + "ms), verifying playlists in the background...", false);
+		taskExecutor.execute(() -> verifyPlaylistsAndCrawl(setupTime));
 	}
 
 	/**
@@ -147,6 +250,67 @@ public class DiscoveryBotCrawler {
 
 	///////////////////
 
+	/**
+	 * Schedule the flush of any additions left over by a previous run, verify the
+	 * playlists (in parallel), restore the notifiers of any playlists without
+	 * persisted state, and run the initial crawl (unless a crawl is already in
+	 * progress by then). The crawl lock is held until the playlists have been
+	 * verified, so nothing is written to them before.
+	 */
+	private void verifyPlaylistsAndCrawl(long setupTime) {
+		ReentrantLock verificationLock = new ReentrantLock();
+		verificationLock.lock();
+		lock = verificationLock;
+		try {
+			long verificationTime;
+			long notifierTime;
+			try {
+				playlistSongsService.initNextFlushAt();
+
+				long time = System.currentTimeMillis();
+				playlistStoreConfig.verifyPlaylists();
+				verificationTime = System.currentTimeMillis() - time;
+
+				time = System.currentTimeMillis();
+				playlistMetaService.initLastUpdatedFromPlaylistDescriptions();
+				notifierTime = System.currentTimeMillis() - time;
+			} finally {
+				verificationLock.unlock();
+			}
+			log.info("Bot is ready (playlist verification: " + verificationTime + "ms), executing initial crawl...", false);
+
+			long time = System.currentTimeMillis();
+			boolean crawled = false;
+			if (!DeveloperMode.isInitialCrawlDisabled()) {
+				Map<AlbumGroupExtended, Integer> results = tryCrawl();
+				crawled = results != null;
+				if (!crawled) {
+					log.info("A crawl is already in progress", false);
+				}
+				String response = DiscoveryBotUtils.compileResultString(results);
+				if (!response.isBlank()) {
+					log.info(response, false);
+				}
+			} else {
+				log.info(">>> SKIPPED <<<", false);
+			}
+			long crawlTime = System.currentTimeMillis() - time;
+
+			if (crawled) {
+				log.info(String.format("Initial crawl successfully finished in: %dms (playlist setup: %dms, playlist verification: %dms, notifiers: %dms, crawl: %dms)",
+					setupTime + verificationTime + notifierTime + crawlTime, setupTime, verificationTime, notifierTime, crawlTime), false);
+			} else {
+				log.info(String.format("Initial crawl skipped, startup finished in: %dms (playlist setup: %dms, playlist verification: %dms, notifiers: %dms)",
+					setupTime + verificationTime + notifierTime, setupTime, verificationTime, notifierTime), false);
+			}
+		} catch (Exception e) {
+			log.error("Initial crawl failed", false);
+			log.stackTrace(e);
+		} finally {
+			log.resetAndPrintLine();
+		}
+	}
+
 	/**
 	 * This is the main crawler logic.<br/>
 	 * <br/>
@@ -172,6 +336,7 @@ public class DiscoveryBotCrawler {
 			return crawlScript();
 		} finally {
 			updateAlbumCache();
+			releaseCodeIndexService.clear();
 		}
 	}
 
@@ -181,65 +346,91 @@ public class DiscoveryBotCrawler {
 	 * Main crawl script with fail-fast mechanisms to save bandwidth
 	 */
 	private Map<AlbumGroupExtended, Integer> crawlScript() throws SpotifyApiException, SQLException {
-		List<String> followedArtists = getFollowedArtists();
+		Map<PlaylistStore, List<AlbumTrackPair>> writtenSongsByPlaylist = new HashMap<>(flushPendingAdditions());
+		ArtistIndex artistIndex = getFollowedArtists();
+		latestArtistIndex = artistIndex;
+		List<String> followedArtists = artistIndex.getFollowedArtistIds();
 		if (!followedArtists.isEmpty()) {
 			List<AlbumSimplified> filteredAlbums = getNewAlbumsFromArtists(followedArtists);
 			if (!filteredAlbums.isEmpty()) {
-				Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist = getNewTracksByTargetPlaylist(filteredAlbums, followedArtists);
+				Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist = getNewTracksByTargetPlaylist(filteredAlbums, artistIndex);
 				if (!SpotifyUtils.isAllEmptyLists(newTracksByTargetPlaylist)) {
-					return addReleasesToPlaylistsAndCollectResults(newTracksByTargetPlaylist);
+					addReleasesToPlaylists(newTracksByTargetPlaylist).forEach((ps, writtenSongs) -> writtenSongsByPlaylist.merge(ps, writtenSongs,
+						(a, b) -> Stream.concat(a.stream(), b.stream()).collect(Collectors.toList())));
 				}
 			}
 		}
-		return null;
+		return DiscoveryBotUtils.collectSongAdditionResults(writtenSongsByPlaylist);
 	}
 
 	/**
-	 * Phase 0: Get all followed artists and initialize cache for any new ones
+	 * Phase 0: Get all followed artists, initialize cache for any new ones, and
+	 * index them for this crawl
 	 */
-	private List<String> getFollowedArtists() throws SQLException, SpotifyApiException {
+	private ArtistIndex getFollowedArtists() throws SQLException, SpotifyApiException {
 		CachedArtistsContainer cachedArtistsContainer = cachedArtistService.getFollowedArtistsIds();
 		cachedArtistService.initializeAlbumCacheForNewArtists(cachedArtistsContainer);
-		return cachedArtistsContainer.getAllArtists();
+		return artistIndexService.buildIndex(cachedArtistsContainer);
 	}
 
 	/**
 	 * Phase 1: Get all new releases from the list of followed artists
 	 */
 	private List<AlbumSimplified> getNewAlbumsFromArtists(List<String> followedArtists) throws SpotifyApiException, SQLException {
-		List<AlbumSimplified> allAlbums = discoveryAlbumService.getAllAlbumsOfArtists(followedArtists);
-		List<AlbumSimplified> nonCachedAlbums = filterService.getNonCachedAlbums(allAlbums);
-		List<AlbumSimplified> noFutureAlbums = filterService.filterFutureAlbums(nonCachedAlbums);
-		albumsToCache = List.copyOf(noFutureAlbums);
-		List<AlbumSimplified> insertedAppearOnArtistsAlbums = discoveryAlbumService.resolveViaAppearsOnArtistNames(noFutureAlbums);
-		List<AlbumSimplified> filteredNoDuplicatesAlbums = filterService.filterDuplicatedAlbumsReleasedSimultaneously(insertedAppearOnArtistsAlbums);
-		return filterService.filterNewAlbumsOnly(filteredNoDuplicatesAlbums);
+		FetchedReleases fetchedReleases = discoveryAlbumService.getAllAlbumsOfArtists(followedArtists, remappingService.getRelevantAlbumGroups());
+		List<AlbumSimplified> allAlbums = fetchedReleases.getAlbums();
+		cacheRetentionService.rememberVisibleReleases(fetchedReleases.getFetchedArtistIds(), allAlbums);
+		releaseTitleIndexService.backfillFromCachedReleases(allAlbums);
+		return releaseFilterPipeline.run(allAlbums);
 	}
 
 	/**
 	 * Phase 2: Get the tracks of the new releases and map them to their respective target playlist store
 	 */
-	private Map<PlaylistStore, List<AlbumTrackPair>> getNewTracksByTargetPlaylist(List<AlbumSimplified> filteredAlbums, List<String> followedArtists) throws SpotifyApiException {
-		List<AlbumTrackPair> tracksByAlbums = discoveryTrackService.getTracksOfAlbums(filteredAlbums);
+	private Map<PlaylistStore, List<AlbumTrackPair>> getNewTracksByTargetPlaylist(List<AlbumSimplified> filteredAlbums, ArtistIndex artistIndex) throws SpotifyApiException, SQLException {
+		List<AlbumSimplified> relevantAlbums = filterService.filterByAlbumMetadata(filteredAlbums, artistIndex, remappingService::getPossibleTargetGroups);
+		List<AlbumTrackPair> tracksByAlbums = filterService.filterNearDuplicateReleases(discoveryTrackService.getTracksOfAlbums(relevantAlbums));
 		Map<AlbumGroup, List<AlbumTrackPair>> categorizedFilteredAlbums = filterService.categorizeAlbumsByAlbumGroup(tracksByAlbums);
-		Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnFilteredAlbums = filterService.intelligentAppearsOnSearch(categorizedFilteredAlbums, followedArtists);
+		Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnFilteredAlbums = filterService.intelligentAppearsOnSearch(categorizedFilteredAlbums, artistIndex);
 		if (!SpotifyUtils.isAllEmptyLists(intelligentAppearsOnFilteredAlbums)) {
 			Map<PlaylistStore, List<AlbumTrackPair>> songsByMainPlaylist = remappingService.mapToTargetPlaylist(intelligentAppearsOnFilteredAlbums);
 			Map<PlaylistStore, List<AlbumTrackPair>> songsByExtendedPlaylist = remappingService.remapIntoExtendedPlaylists(songsByMainPlaylist);
 			Map<PlaylistStore, List<AlbumTrackPair>> songsByExtendedPlaylistFiltered = remappingService.removeDisabledPlaylistStores(songsByExtendedPlaylist);
-			return filterService.filterBlacklistedReleaseTypesForArtists(songsByExtendedPlaylistFiltered);
+			Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylistWithoutBlacklisted = filterService.filterBlacklistedReleaseTypesForArtists(songsByExtendedPlaylistFiltered, artistIndex);
+			return addedTrackIndexService.filterAddedTracks(songsByPlaylistWithoutBlacklisted);
 		}
 		return Map.of();
 	}
 
 	/**
-	 * Phase 3: Add all releases to their target playlists and collect the results
+	 * Phase 3: Add all releases to their target playlists. Within the coalescing
+	 * window, they are only queued for now and written together with those of any
+	 * following crawls.
+	 *
+	 * @return the songs written by now (see {@link #flushPendingAdditions})
 	 */
-	private Map<AlbumGroupExtended, Integer> addReleasesToPlaylistsAndCollectResults(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist) throws SpotifyApiException {
-		playlistSongsService.addAllReleasesToSetPlaylists(newTracksByTargetPlaylist);
-		playlistMetaService.showNotifiers(newTracksByTargetPlaylist);
-		relayService.relayResults(newTracksByTargetPlaylist);
-		return DiscoveryBotUtils.collectSongAdditionResults(newTracksByTargetPlaylist);
+	private Map<PlaylistStore, List<AlbumTrackPair>> addReleasesToPlaylists(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist) throws SpotifyApiException, SQLException {
+		playlistSongsService.queueAllReleasesForSetPlaylists(newTracksByTargetPlaylist);
+		return flushPendingAdditions();
+	}
+
+	/**
+	 * Write every due playlist addition (including those left over by an earlier
+	 * crawl), display the [NEW] notifiers of the affected playlists, and relay the
+	 * written releases
+	 *
+	 * @return the written songs by playlist store (see
+	 *         {@link PlaylistSongsService#flushPendingAdditions})
+	 */
+	private Map<PlaylistStore, List<AlbumTrackPair>> flushPendingAdditions() throws SpotifyApiException, SQLException {
+		Map<PlaylistStore, List<AlbumTrackPair>> writtenSongsByPlaylist = playlistSongsService.flushPendingAdditions();
+		if (!writtenSongsByPlaylist.isEmpty()) {
+			playlistMetaService.showNotifiers(writtenSongsByPlaylist.keySet());
+			if (latestArtistIndex != null) {
+				relayService.relayResults(writtenSongsByPlaylist, latestArtistIndex);
+			}
+		}
+		return writtenSongsByPlaylist;
 	}
 
 	/**
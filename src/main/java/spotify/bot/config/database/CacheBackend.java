@@ -0,0 +1,17 @@
+package spotify.bot.config.database;
+
+/**
+ * The available storage backends for the cache
+ */
+public enum CacheBackend {
+
+	/**
+	 * The SQLite database <code>database.db</code> (default)
+	 */
+	SQLITE,
+
+	/**
+	 * The embedded key-value store <code>database.mv</code>
+	 */
+	MVSTORE
+}
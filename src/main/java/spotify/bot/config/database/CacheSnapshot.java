@@ -0,0 +1,169 @@
+package spotify.bot.config.database;
+
+import java.util.List;
+import java.util.Map;
+
+import spotify.bot.util.data.LongHashSet;
+import spotify.bot.util.data.PendingAddition;
+import spotify.bot.util.data.ReleaseTitle;
+
+/**
+ * Full copy of all cache tables (and the addition outbox), used to migrate the
+ * cache between two {@link DatabaseService} backends. Created with {@link CacheSnapshot#builder},
+ * any table that isn't set is empty.
+ */
+public class CacheSnapshot {
+	private final Map<String, Long> releaseIds;
+	private final LongHashSet releaseNameFingerprints;
+	private final List<ReleaseTitle> releaseTitles;
+	private final List<String> artistIds;
+	private final Map<String, Double> trackLiveness;
+	private final List<String> isrcs;
+	private final List<String> upcs;
+	private final LongHashSet addedTrackFingerprints;
+	private final List<PendingAddition> pendingAdditions;
+
+	private CacheSnapshot(Builder builder) {
+		this.releaseIds = builder.releaseIds;
+		this.releaseNameFingerprints = builder.releaseNameFingerprints;
+		this.releaseTitles = builder.releaseTitles;
+		this.artistIds = builder.artistIds;
+		this.trackLiveness = builder.trackLiveness;
+		this.isrcs = builder.isrcs;
+		this.upcs = builder.upcs;
+		this.addedTrackFingerprints = builder.addedTrackFingerprints;
+		this.pendingAdditions = builder.pendingAdditions;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public Map<String, Long> getReleaseIds() {
+		return releaseIds;
+	}
+
+	public LongHashSet getReleaseNameFingerprints() {
+		return releaseNameFingerprints;
+	}
+
+	public List<ReleaseTitle> getReleaseTitles() {
+		return releaseTitles;
+	}
+
+	public List<String> getArtistIds() {
+		return artistIds;
+	}
+
+	public Map<String, Double> getTrackLiveness() {
+		return trackLiveness;
+	}
+
+	public List<String> getIsrcs() {
+		return isrcs;
+	}
+
+	public List<String> getUpcs() {
+		return upcs;
+	}
+
+	public LongHashSet getAddedTrackFingerprints() {
+		return addedTrackFingerprints;
+	}
+
+	public List<PendingAddition> getPendingAdditions() {
+		return pendingAdditions;
+	}
+
+	public static class Builder {
+		private Map<String, Long> releaseIds = Map.of();
+		private LongHashSet releaseNameFingerprints = new LongHashSet();
+		private List<ReleaseTitle> releaseTitles = List.of();
+		private List<String> artistIds = List.of();
+		private Map<String, Double> trackLiveness = Map.of();
+		private List<String> isrcs = List.of();
+		private List<String> upcs = List.of();
+		private LongHashSet addedTrackFingerprints = new LongHashSet();
+		private List<PendingAddition> pendingAdditions = List.of();
+
+		private Builder() {
+		}
+
+		/**
+		 * The cached release IDs mapped to the time they were cached at (epoch
+		 * seconds)
+		 */
+		public Builder releaseIds(Map<String, Long> releaseIds) {
+			this.releaseIds = releaseIds;
+			return this;
+		}
+
+		/**
+		 * The fingerprints of the cached release names
+		 */
+		public Builder releaseNameFingerprints(LongHashSet releaseNameFingerprints) {
+			this.releaseNameFingerprints = releaseNameFingerprints;
+			return this;
+		}
+
+		/**
+		 * The indexed normalized release titles
+		 */
+		public Builder releaseTitles(List<ReleaseTitle> releaseTitles) {
+			this.releaseTitles = releaseTitles;
+			return this;
+		}
+
+		/**
+		 * The cached artist IDs
+		 */
+		public Builder artistIds(List<String> artistIds) {
+			this.artistIds = artistIds;
+			return this;
+		}
+
+		/**
+		 * The cached liveness audio features by track ID
+		 */
+		public Builder trackLiveness(Map<String, Double> trackLiveness) {
+			this.trackLiveness = trackLiveness;
+			return this;
+		}
+
+		/**
+		 * The ISRCs of the added releases' tracks
+		 */
+		public Builder isrcs(List<String> isrcs) {
+			this.isrcs = isrcs;
+			return this;
+		}
+
+		/**
+		 * The UPCs of the added releases
+		 */
+		public Builder upcs(List<String> upcs) {
+			this.upcs = upcs;
+			return this;
+		}
+
+		/**
+		 * The fingerprints of the added tracks' IDs and ISRCs
+		 */
+		public Builder addedTrackFingerprints(LongHashSet addedTrackFingerprints) {
+			this.addedTrackFingerprints = addedTrackFingerprints;
+			return this;
+		}
+
+		/**
+		 * The playlist additions that haven't been written yet
+		 */
+		public Builder pendingAdditions(List<PendingAddition> pendingAdditions) {
+			this.pendingAdditions = pendingAdditions;
+			return this;
+		}
+
+		public CacheSnapshot build() {
+			return new CacheSnapshot(this);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package spotify.bot.config.database;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A pending insertion of rows into one or more columns of a cache table
+ */
+class CacheWrite {
+	private final String table;
+	private final List<String> columns;
+	private final List<List<?>> rows;
+
+	CacheWrite(String table, String column, Collection<?> values) {
+		this.table = table;
+		this.columns = List.of(column);
+		this.rows = values.stream()
+			.<List<?>>map(List::of)
+			.collect(Collectors.toUnmodifiableList());
+	}
+
+	CacheWrite(String table, List<String> columns, List<List<?>> rows) {
+		this.table = table;
+		this.columns = List.copyOf(columns);
+		this.rows = List.copyOf(rows);
+	}
+
+	String getTable() {
+		return table;
+	}
+
+	List<String> getColumns() {
+		return columns;
+	}
+
+	List<List<?>> getRows() {
+		return rows;
+	}
+}
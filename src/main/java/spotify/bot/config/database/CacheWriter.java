@@ -0,0 +1,175 @@
+package spotify.bot.config.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Write-behind writer for the cache tables. All cache writes are handed to a
+ * single background thread via a bounded queue, so that a crawl never has to
+ * wait for the disk. Whatever piled up in the queue while the previous
+ * transaction was running gets written together in a single transaction (group
+ * commit). The transactions run on the database's dedicated write connection,
+ * so reads on other threads are never affected by them. If a transaction fails,
+ * its writes are retried one by one, so a single failing write only loses its
+ * own rows instead of those of the entire group.
+ */
+@Component
+public class CacheWriter {
+	private final static int QUEUE_CAPACITY = 256;
+
+	/**
+	 * Where the queued writes end up, all given writes in a single transaction
+	 */
+	@FunctionalInterface
+	interface Transaction {
+		void insertAll(Collection<CacheWrite> cacheWrites) throws SQLException;
+	}
+
+	private final Transaction transaction;
+	private final DiscoveryBotLogger log;
+
+	private final BlockingQueue<CacheWrite> queue;
+	private final Thread writerThread;
+
+	private long submittedWrites;
+	private long completedWrites;
+	private volatile boolean running;
+
+	@Autowired
+	CacheWriter(DiscoveryDatabase discoveryDatabase, DiscoveryBotLogger discoveryBotLogger) {
+		this(discoveryDatabase::insertAllInTransaction, discoveryBotLogger);
+	}
+
+	CacheWriter(Transaction transaction, DiscoveryBotLogger discoveryBotLogger) {
+		this.transaction = transaction;
+		this.log = discoveryBotLogger;
+		this.queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+		this.running = true;
+		this.writerThread = new Thread(this::writeLoop, "cache-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Queue the given values to be inserted into the specified table's specified
+	 * column. Blocks only if the queue is full.
+	 */
+	void enqueue(Collection<?> values, String table, String column) {
+		if (values != null && !values.isEmpty()) {
+			enqueue(new CacheWrite(table, column, values));
+		}
+	}
+
+	/**
+	 * Queue the given rows to be inserted into the specified table's specified
+	 * columns. Blocks only if the queue is full.
+	 */
+	void enqueueRows(List<List<?>> rows, String table, List<String> columns) {
+		if (rows != null && !rows.isEmpty()) {
+			enqueue(new CacheWrite(table, columns, rows));
+		}
+	}
+
+	private void enqueue(CacheWrite cacheWrite) {
+		if (!running) {
+			throw new IllegalStateException("Cache writer has already been shut down");
+		}
+		synchronized (this) {
+			submittedWrites++;
+		}
+		try {
+			queue.put(cacheWrite);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			markCompleted(1);
+		}
+	}
+
+	/**
+	 * Block until every write that was queued before this call has been committed
+	 * to the database
+	 */
+	synchronized void flush() {
+		long target = submittedWrites;
+		while (completedWrites < target) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Write any remaining queued writes before the database connection is closed
+	 */
+	@PreDestroy
+	void shutdown() {
+		running = false;
+		flush();
+		writerThread.interrupt();
+	}
+
+	private void writeLoop() {
+		while (running || !queue.isEmpty()) {
+			List<CacheWrite> batch = new ArrayList<>();
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				if (queue.isEmpty()) {
+					return;
+				}
+			}
+			queue.drainTo(batch);
+			try {
+				writeBatch(batch);
+			} finally {
+				markCompleted(batch.size());
+			}
+		}
+	}
+
+	/**
+	 * Write the given batch in a single transaction. If that fails, every write is
+	 * retried in a transaction of its own, so that only the failing ones are lost.
+	 */
+	private void writeBatch(List<CacheWrite> batch) {
+		try {
+			transaction.insertAll(batch);
+		} catch (SQLException e) {
+			if (batch.size() == 1) {
+				logDroppedWrite(batch.get(0), e);
+			} else {
+				for (CacheWrite cacheWrite : batch) {
+					try {
+						transaction.insertAll(List.of(cacheWrite));
+					} catch (SQLException e2) {
+						logDroppedWrite(cacheWrite, e2);
+					}
+				}
+			}
+		}
+	}
+
+	private void logDroppedWrite(CacheWrite cacheWrite, SQLException e) {
+		log.warning(String.format("Dropped a cache write of %d row[s] into %s", cacheWrite.getRows().size(), cacheWrite.getTable()));
+		log.stackTrace(e);
+	}
+
+	private synchronized void markCompleted(int writes) {
+		completedWrites += writes;
+		notifyAll();
+	}
+}
@@ -8,10 +8,32 @@ class DBConstants {
 	// Database constants
 	public final static String TABLE_CACHE_RELEASES = "cache_releases";
 	public final static String COL_RELEASE_ID = "release_id";
+	public final static String COL_CACHED_AT = "cached_at";
 	
 	public final static String TABLE_CACHE_RELEASES_NAMES = "cache_releases_names";
-	public final static String COL_RELEASE_NAME = "release_name";
+	public final static String COL_RELEASE_FINGERPRINT = "release_fingerprint";
+	public final static String COL_RELEASE_NAME = "release_name"; // legacy, replaced by the fingerprint
+
+	public final static String TABLE_CACHE_RELEASES_TITLES = "cache_releases_titles";
+	public final static String COL_ALBUM_TYPE = "album_type";
+	public final static String COL_NORMALIZED_TITLE = "normalized_title";
 
 	public final static String TABLE_CACHE_ARTISTS = "cache_artists";
 	public final static String COL_ARTIST_ID = "artist_id";
+
+	public final static String TABLE_CACHE_AUDIO_FEATURES = "cache_audio_features";
+	public final static String COL_TRACK_ID = "track_id";
+	public final static String COL_LIVENESS = "liveness";
+
+	public final static String TABLE_CACHE_ISRCS = "cache_isrcs";
+	public final static String COL_ISRC = "isrc";
+
+	public final static String TABLE_CACHE_UPCS = "cache_upcs";
+	public final static String COL_UPC = "upc";
+
+	public final static String TABLE_CACHE_ADDED_TRACKS = "cache_added_tracks";
+	public final static String COL_TRACK_FINGERPRINT = "track_fingerprint";
+
+	public final static String TABLE_OUTBOX_ADDITIONS = "outbox_additions";
+	public final static String COL_ADDITION_KEY = "addition_key";
 }
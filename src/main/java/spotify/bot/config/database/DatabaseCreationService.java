@@ -1,15 +1,27 @@
 package spotify.bot.config.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotUtils;
+
 @Service
 public class DatabaseCreationService {
 
+  /**
+   * SQLite's auto_vacuum mode that allows freeing unused pages on demand
+   */
+  private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
   private static final String SQL_CACHE_ARTISTS =
       "CREATE TABLE if NOT EXISTS cache_artists (\n"
           + "    artist_id STRING NOT NULL\n"
@@ -20,25 +32,204 @@ public class DatabaseCreationService {
       "CREATE TABLE if NOT EXISTS cache_releases (\n"
           + "    release_id STRING NOT NULL\n"
           + "                    UNIQUE ON CONFLICT IGNORE\n"
-          + "                    PRIMARY KEY);";
+          + "                    PRIMARY KEY,\n"
+          + "    cached_at INTEGER NOT NULL\n"
+          + "                    DEFAULT (strftime('%s', 'now')));";
 
   private static final String SQL_CACHE_RELEASES_NAMES =
       "CREATE TABLE if NOT EXISTS cache_releases_names (\n"
-          + "    release_name STRING UNIQUE ON CONFLICT IGNORE\n"
-          + "                      NOT NULL\n"
-          + "                      PRIMARY KEY);";
+          + "    release_fingerprint INTEGER NOT NULL\n"
+          + "                        PRIMARY KEY ON CONFLICT IGNORE);";
+
+  private static final String SQL_CACHE_RELEASES_TITLES =
+      "CREATE TABLE if NOT EXISTS cache_releases_titles (\n"
+          + "    artist_id STRING NOT NULL,\n"
+          + "    album_type STRING NOT NULL,\n"
+          + "    normalized_title STRING NOT NULL,\n"
+          + "    PRIMARY KEY (artist_id, album_type, normalized_title)\n"
+          + "        ON CONFLICT IGNORE)\n"
+          + "    WITHOUT ROWID;";
+
+  private static final String SQL_CACHE_AUDIO_FEATURES =
+      "CREATE TABLE if NOT EXISTS cache_audio_features (\n"
+          + "    track_id STRING NOT NULL\n"
+          + "             PRIMARY KEY ON CONFLICT IGNORE,\n"
+          + "    liveness REAL NOT NULL)\n"
+          + "    WITHOUT ROWID;";
+
+  private static final String SQL_CACHE_ISRCS =
+      "CREATE TABLE if NOT EXISTS cache_isrcs (\n"
+          + "    isrc STRING NOT NULL\n"
+          + "         PRIMARY KEY ON CONFLICT IGNORE)\n"
+          + "    WITHOUT ROWID;";
+
+  private static final String SQL_CACHE_UPCS =
+      "CREATE TABLE if NOT EXISTS cache_upcs (\n"
+          + "    upc STRING NOT NULL\n"
+          + "        PRIMARY KEY ON CONFLICT IGNORE)\n"
+          + "    WITHOUT ROWID;";
+
+  private static final String SQL_CACHE_ADDED_TRACKS =
+      "CREATE TABLE if NOT EXISTS cache_added_tracks (\n"
+          + "    track_fingerprint INTEGER NOT NULL\n"
+          + "                      PRIMARY KEY ON CONFLICT IGNORE);";
+
+  private static final String SQL_OUTBOX_ADDITIONS =
+      "CREATE TABLE if NOT EXISTS outbox_additions (\n"
+          + "    addition_key STRING NOT NULL\n"
+          + "                 PRIMARY KEY ON CONFLICT IGNORE,\n"
+          + "    track_id STRING NOT NULL)\n"
+          + "    WITHOUT ROWID;";
+
+  private static final List<String> SQL_TABLE_CREATION_COMMANDS = List.of(SQL_CACHE_ARTISTS, SQL_CACHE_RELEASES, SQL_CACHE_RELEASES_NAMES, SQL_CACHE_RELEASES_TITLES, SQL_CACHE_AUDIO_FEATURES,
+      SQL_CACHE_ISRCS, SQL_CACHE_UPCS, SQL_CACHE_ADDED_TRACKS, SQL_OUTBOX_ADDITIONS);
 
-  private static final List<String> SQL_TABLE_CREATION_COMMANDS = List.of(SQL_CACHE_ARTISTS, SQL_CACHE_RELEASES, SQL_CACHE_RELEASES_NAMES);
+  private static final String SQL_MIGRATION_CACHE_RELEASES_CACHED_AT =
+      "CREATE TABLE cache_releases_migration (\n"
+          + "    release_id STRING NOT NULL\n"
+          + "                    UNIQUE ON CONFLICT IGNORE\n"
+          + "                    PRIMARY KEY,\n"
+          + "    cached_at INTEGER NOT NULL\n"
+          + "                    DEFAULT (strftime('%s', 'now')));\n"
+          + "INSERT INTO cache_releases_migration (release_id) SELECT release_id FROM cache_releases;\n"
+          + "DROP TABLE cache_releases;\n"
+          + "ALTER TABLE cache_releases_migration RENAME TO cache_releases;";
+
+  private static final String SQL_MIGRATION_CACHE_RELEASES_NAMES_FINGERPRINTS =
+      "CREATE TABLE cache_releases_names_migration (\n"
+          + "    release_fingerprint INTEGER NOT NULL\n"
+          + "                        PRIMARY KEY ON CONFLICT IGNORE);";
+
+  private final DiscoveryBotLogger log;
+
+  DatabaseCreationService(DiscoveryBotLogger discoveryBotLogger) {
+    this.log = discoveryBotLogger;
+  }
 
   /**
    * Create the discovery bot database with all required tables
    * (typically if this is the first time the app is launched)
    */
   public void createTables(Connection connection) throws SQLException {
+    enableIncrementalVacuum(connection);
     for (String tableCreationCommand : SQL_TABLE_CREATION_COMMANDS) {
       Statement statement = connection.createStatement();
       statement.execute(tableCreationCommand);
       statement.closeOnCompletion();
     }
+    migrateTables(connection);
+  }
+
+  /**
+   * Switch the database to incremental auto-vacuum, so that space freed by the
+   * cache retention can be returned to the file system without a full VACUUM
+   * on every run. Converting an existing database requires a single full VACUUM.
+   */
+  private void enableIncrementalVacuum(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      ResultSet rs = statement.executeQuery("PRAGMA auto_vacuum");
+      if (rs.next() && rs.getInt(1) != AUTO_VACUUM_INCREMENTAL) {
+        rs.close();
+        statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+        statement.execute("VACUUM");
+      }
+    }
+  }
+
+  /**
+   * Bring tables created by older versions of the bot up to date
+   */
+  private void migrateTables(Connection connection) throws SQLException {
+    if (!hasColumn(connection, DBConstants.TABLE_CACHE_RELEASES, DBConstants.COL_CACHED_AT)) {
+      // Existing releases count as cached just now, so the retention period starts with the migration
+      executeInTransaction(connection, SQL_MIGRATION_CACHE_RELEASES_CACHED_AT);
+    }
+    if (hasColumn(connection, DBConstants.TABLE_CACHE_RELEASES_NAMES, DBConstants.COL_RELEASE_NAME)) {
+      migrateReleaseNamesToFingerprints(connection);
+    }
+  }
+
+  /**
+   * Replace the cached release names by their 64-bit fingerprints. Two different
+   * names sharing a fingerprint would only merge into one cache entry (both still
+   * count as known), but any such collision is logged. The old table is only
+   * dropped once every fingerprint has been written.
+   */
+  private void migrateReleaseNamesToFingerprints(Connection connection) throws SQLException {
+    Map<Long, String> namesByFingerprint = new HashMap<>();
+    int collisions = 0;
+    try (Statement statement = connection.createStatement()) {
+      ResultSet rs = statement.executeQuery(String.format("SELECT %s FROM %s", DBConstants.COL_RELEASE_NAME, DBConstants.TABLE_CACHE_RELEASES_NAMES));
+      while (rs.next()) {
+        String releaseName = rs.getString(1);
+        if (releaseName != null) {
+          String existing = namesByFingerprint.putIfAbsent(DiscoveryBotUtils.fingerprint(releaseName), releaseName);
+          if (existing != null && !existing.equals(releaseName)) {
+            collisions++;
+            log.warning(String.format("Fingerprint collision between release names '%s' and '%s'", existing, releaseName), false);
+          }
+        }
+      }
+    }
+
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(SQL_MIGRATION_CACHE_RELEASES_NAMES_FINGERPRINTS);
+      try (PreparedStatement insert = connection.prepareStatement(String.format("INSERT INTO cache_releases_names_migration (%s) VALUES (?)", DBConstants.COL_RELEASE_FINGERPRINT))) {
+        for (Long fingerprint : namesByFingerprint.keySet()) {
+          insert.setLong(1, fingerprint);
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+      ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM cache_releases_names_migration");
+      long migratedCount = rs.next() ? rs.getLong(1) : 0;
+      rs.close();
+      if (migratedCount != namesByFingerprint.size()) {
+        throw new SQLException(String.format("Release name migration incomplete (%d of %d fingerprints written)", migratedCount, namesByFingerprint.size()));
+      }
+      statement.execute("DROP TABLE " + DBConstants.TABLE_CACHE_RELEASES_NAMES);
+      statement.execute("ALTER TABLE cache_releases_names_migration RENAME TO " + DBConstants.TABLE_CACHE_RELEASES_NAMES);
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(autoCommit);
+    }
+
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate("PRAGMA incremental_vacuum");
+    }
+    log.info(String.format("Migrated %d cached release names to fingerprints (%d collision[s])", namesByFingerprint.size() + collisions, collisions), false);
+  }
+
+  private boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      ResultSet rs = statement.executeQuery(String.format("PRAGMA table_info(%s)", table));
+      while (rs.next()) {
+        if (column.equals(rs.getString("name"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void executeInTransaction(Connection connection, String commands) throws SQLException {
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try (Statement statement = connection.createStatement()) {
+      for (String command : commands.split(";\n")) {
+        statement.execute(command);
+      }
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(autoCommit);
+    }
   }
 }
@@ -1,26 +1,23 @@
 package spotify.bot.config.database;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import org.springframework.stereotype.Service;
+import java.util.Map;
+import java.util.Set;
 
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
-import spotify.bot.util.DiscoveryBotLogger;
-import spotify.util.SpotifyUtils;
-
-@Service
-public class DatabaseService {
-	private final DiscoveryDatabase database;
-	private final DiscoveryBotLogger log;
+import spotify.bot.util.data.LongHashSet;
+import spotify.bot.util.data.PendingAddition;
+import spotify.bot.util.data.ReleaseTitle;
 
-	DatabaseService(DiscoveryDatabase discoveryDatabase, DiscoveryBotLogger botLogger) {
-		this.database = discoveryDatabase;
-		this.log = botLogger;
-	}
+/**
+ * Storage backend of the bot's caches. Which implementation is used is
+ * determined by the <code>CACHE_BACKEND</code> setting (see
+ * {@link DatabaseServiceConfig}).
+ */
+public interface DatabaseService {
 
 	////////////////////////
 	// READ
@@ -28,41 +25,50 @@ public class DatabaseService {
 	/**
 	 * Return the entire contents of the "cache_releases" table as Strings
 	 */
-	public List<String> getReleasesIdsCache() throws SQLException {
-		List<String> albumCacheIds = new ArrayList<>();
-		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES);
-		while (rs.next()) {
-			albumCacheIds.add(rs.getString(DBConstants.COL_RELEASE_ID));
-		}
-		return albumCacheIds;
-	}
-	
+	List<String> getReleasesIdsCache() throws SQLException;
+
+	/**
+	 * Return the subset of the given release IDs that is already cached
+	 */
+	Set<String> getCachedReleaseIds(Collection<String> releaseIds) throws SQLException;
+
 	/**
-	 * Return the entire contents of the "cache_releases_names" table as Strings
+	 * Return the entire contents of the "cache_releases_names" table (the 64-bit
+	 * fingerprints of the release identifier strings)
 	 */
-	public List<String> getReleaseNamesCache() throws SQLException {
-		List<String> albumCacheNames = new ArrayList<>();
-		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES_NAMES);
-		while (rs.next()) {
-			albumCacheNames.add(rs.getString(DBConstants.COL_RELEASE_NAME));
-		}
-		return albumCacheNames;
-	}
+	LongHashSet getReleaseNameFingerprints() throws SQLException;
+
+	/**
+	 * Return the entire contents of the "cache_releases_titles" table
+	 */
+	List<ReleaseTitle> getReleaseTitlesCache() throws SQLException;
 
 	/**
 	 * Return the entire contents of the "cache_artists" table as Strings
 	 */
-	public List<String> getArtistCache() throws SQLException {
-		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_ARTISTS);
-		List<String> cachedArtists = new ArrayList<>();
-		while (rs.next()) {
-			String string = rs.getString(DBConstants.COL_ARTIST_ID);
-			if (!SpotifyUtils.isNullString(string)) {
-				cachedArtists.add(string);
-			}
-		}
-		return cachedArtists;
-	}
+	List<String> getArtistCache() throws SQLException;
+
+	/**
+	 * Return the cached liveness audio feature of the given track IDs (tracks
+	 * without a cached value are omitted)
+	 */
+	Map<String, Double> getTrackLiveness(Collection<String> trackIds) throws SQLException;
+
+	/**
+	 * Return the subset of the given ISRCs that belongs to an already added release
+	 */
+	Set<String> getKnownIsrcs(Collection<String> isrcs) throws SQLException;
+
+	/**
+	 * Return the subset of the given UPCs that belongs to an already added release
+	 */
+	Set<String> getKnownUpcs(Collection<String> upcs) throws SQLException;
+
+	/**
+	 * Return the entire contents of the "cache_added_tracks" table (the 64-bit
+	 * fingerprints of the IDs and ISRCs of every track ever added)
+	 */
+	LongHashSet getAddedTrackFingerprints() throws SQLException;
 
 	////////////////////////
 	// WRITE
@@ -70,51 +76,106 @@ public class DatabaseService {
 	/**
 	 * Cache the album IDs of the given list of albums
 	 */
-	public void cacheAlbumIds(List<AlbumSimplified> albumsSimplified) {
-		List<String> albumIds = albumsSimplified.stream()
-			.map(AlbumSimplified::getId)
-			.collect(Collectors.toList());
-		try {
-			database.insertAll(
-				albumIds,
-				DBConstants.TABLE_CACHE_RELEASES,
-				DBConstants.COL_RELEASE_ID);
-		} catch (SQLException e) {
-			log.stackTrace(e);
-		}
-	}
-
-	/**
-	 * Cache the album names of the given list of albums
-	 */
-	public void cacheAlbumNames(List<AlbumSimplified> albumsSimplified) {
-		List<String> albumIds = albumsSimplified.stream()
-			.map(SpotifyUtils::albumIdentifierString)
-			.collect(Collectors.toList());
-		try {
-			database.insertAll(
-				albumIds,
-				DBConstants.TABLE_CACHE_RELEASES_NAMES,
-				DBConstants.COL_RELEASE_NAME);
-		} catch (SQLException e) {
-			log.stackTrace(e);
-		}
-	}
-
-	/**
-	 * Cache the artist IDs in a separate thread
-	 */
-	public synchronized void cacheArtistIds(List<String> followedArtists) {
-		try {
-			List<String> cachedArtists = getArtistCache();
-			if (cachedArtists != null) {
-				database.insertAll(
-					followedArtists,
-					DBConstants.TABLE_CACHE_ARTISTS,
-					DBConstants.COL_ARTIST_ID);
-			}
-		} catch (SQLException e) {
-			log.stackTrace(e);
-		}
-	}
+	void cacheAlbumIds(List<AlbumSimplified> albumsSimplified);
+
+	/**
+	 * Cache the album names of the given list of albums (as fingerprints)
+	 */
+	void cacheAlbumNames(List<AlbumSimplified> albumsSimplified);
+
+	/**
+	 * Cache the given normalized release titles
+	 */
+	void cacheReleaseTitles(Collection<ReleaseTitle> releaseTitles);
+
+	/**
+	 * Cache the given artist IDs
+	 */
+	void cacheArtistIds(List<String> followedArtists);
+
+	/**
+	 * Cache the given liveness audio features by track ID
+	 */
+	void cacheTrackLiveness(Map<String, Double> livenessByTrackId);
+
+	/**
+	 * Cache the given ISRCs (track codes) and UPCs (album codes) of added releases
+	 */
+	void cacheReleaseCodes(Collection<String> isrcs, Collection<String> upcs);
+
+	/**
+	 * Cache the given fingerprints of added tracks
+	 */
+	void cacheAddedTrackFingerprints(Collection<Long> fingerprints);
+
+	////////////////////////
+	// OUTBOX
+	// (unlike the cache writes, these are durable once the method returns)
+
+	/**
+	 * Return every planned playlist addition that hasn't been completed yet
+	 */
+	List<PendingAddition> getPendingAdditions() throws SQLException;
+
+	/**
+	 * Store the given planned playlist additions
+	 */
+	void addPendingAdditions(Collection<PendingAddition> pendingAdditions) throws SQLException;
+
+	/**
+	 * Remove the given playlist additions, as they have been written
+	 */
+	void completePendingAdditions(Collection<PendingAddition> pendingAdditions) throws SQLException;
+
+	////////////////////////
+	// MAINTENANCE
+
+	/**
+	 * Return the number of entries of every cache table
+	 */
+	Map<String, Long> getCacheTableSizes() throws SQLException;
+
+	/**
+	 * Return the size of the database file in bytes
+	 */
+	long getDatabaseFileSize() throws SQLException;
+
+	/**
+	 * Remove every release ID that was cached before the given point in time and
+	 * isn't part of the given set of still visible release IDs. The release names
+	 * are kept.
+	 *
+	 * @return the number of removed release IDs
+	 */
+	int pruneReleaseIds(Set<String> visibleReleaseIds, Instant cachedBefore) throws SQLException;
+
+	/**
+	 * Remove every cached artist ID that isn't part of the given followed artists
+	 *
+	 * @return the number of removed artist IDs
+	 */
+	int pruneArtistIds(Collection<String> followedArtists) throws SQLException;
+
+	/**
+	 * Return any free space of the database file back to the file system
+	 */
+	void compact() throws SQLException;
+
+	////////////////////////
+	// MIGRATION
+
+	/**
+	 * Export the entire cache, e.g. to migrate it into another backend
+	 */
+	CacheSnapshot exportCache() throws SQLException;
+
+	/**
+	 * Import the given cache snapshot in addition to the existing entries
+	 */
+	void importCache(CacheSnapshot cacheSnapshot) throws SQLException;
+
+	/**
+	 * Release the underlying storage. Pending writes are persisted first.
+	 */
+	void close() throws SQLException;
 }
@@ -0,0 +1,36 @@
+package spotify.bot.config.database;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import spotify.bot.config.properties.SettingsConfig;
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Provides the {@link DatabaseService} for the cache backend selected in the
+ * settings
+ */
+@Configuration
+public class DatabaseServiceConfig {
+
+	@Bean
+	DatabaseService databaseService(SettingsConfig settingsConfig, DiscoveryDatabase discoveryDatabase, CacheWriter cacheWriter, DiscoveryBotLogger discoveryBotLogger) {
+		CacheBackend cacheBackend = settingsConfig.getCacheBackend();
+		discoveryBotLogger.info("Using cache backend: " + cacheBackend, false);
+		return createDatabaseService(cacheBackend, discoveryDatabase, cacheWriter, discoveryBotLogger);
+	}
+
+	/**
+	 * Open a new {@link DatabaseService} for the given cache backend. Any service
+	 * opened outside of the Spring context must be closed manually.
+	 */
+	public static DatabaseService createDatabaseService(CacheBackend cacheBackend, DiscoveryDatabase discoveryDatabase, CacheWriter cacheWriter, DiscoveryBotLogger discoveryBotLogger) {
+		switch (cacheBackend) {
+			case MVSTORE:
+				return new MvStoreDatabaseService(discoveryBotLogger);
+			case SQLITE:
+			default:
+				return new SqliteDatabaseService(discoveryDatabase, cacheWriter);
+		}
+	}
+}
@@ -4,14 +4,23 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.annotation.PreDestroy;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import spotify.bot.util.DiscoveryBotLogger;
@@ -26,7 +35,16 @@ public class DiscoveryDatabase {
 	private final static String DB_URL_PREFIX = "jdbc:sqlite:";
 
 	private final static String FULL_SELECT_QUERY_MASK = "SELECT * FROM %s";
-	private final static String INSERT_QUERY_MASK = "INSERT INTO %s (%s) VALUES %s";
+	private final static String INSERT_QUERY_MASK = "INSERT INTO %s (%s) VALUES (%s)";
+	private final static String DELETE_QUERY_MASK = "DELETE FROM %s WHERE %s = ?";
+	private final static String INSERT_WITH_TIMESTAMP_QUERY_MASK = "INSERT OR IGNORE INTO %s (%s, %s) VALUES (?, ?)";
+	private final static String EXISTING_QUERY_MASK = "SELECT %s FROM %s WHERE %s IN (%s)";
+	private final static String VALUES_BY_KEYS_QUERY_MASK = "SELECT %s, %s FROM %s WHERE %s IN (%s)";
+	private final static String COUNT_QUERY_MASK = "SELECT COUNT(*) FROM %s";
+	private final static String OLDER_THAN_QUERY_MASK = "SELECT * FROM %s WHERE %s < %d";
+
+	// SQLite's default limit of host parameters in a single statement
+	private final static int MAX_QUERY_PARAMETERS = 999;
 
 	// Instance
 	private final static File WORKSPACE_LOCATION = new File(".");
@@ -36,10 +54,12 @@ public class DiscoveryDatabase {
 
 	private String dbUrl;
 	private Connection connection;
+	private Connection writeConnection;
 
 	/**
 	 * Initialize the Database connection to the local database
 	 */
+	@Autowired
 	DiscoveryDatabase(DiscoveryBotLogger discoveryBotLogger, DatabaseCreationService databaseCreationService) {
 		this.log = discoveryBotLogger;
 		this.databaseCreationService = databaseCreationService;
@@ -54,6 +74,17 @@ public class DiscoveryDatabase {
 		}
 	}
 
+	/**
+	 * Initialize the Database connection to a database at a custom location
+	 * (used for benchmarks)
+	 */
+	DiscoveryDatabase(File dbFile, DiscoveryBotLogger discoveryBotLogger, DatabaseCreationService databaseCreationService) throws SQLException {
+		this.log = discoveryBotLogger;
+		this.databaseCreationService = databaseCreationService;
+		this.dbUrl = DB_URL_PREFIX + dbFile.getAbsolutePath();
+		getConnectionInstance();
+	}
+
 	private File getDbFilePath() throws IOException {
 		File workingDirectoryDatabaseFilepath = new File(WORKSPACE_LOCATION, DB_FILE_NAME);
 		if (workingDirectoryDatabaseFilepath.exists()) {
@@ -70,22 +101,53 @@ public class DiscoveryDatabase {
 	//////////////
 
 	/**
-	 * Returns the Database connection instance. May create a new one if not already
-	 * set
+	 * Returns the Database connection instance used for reads. May create a new
+	 * one if not already set
 	 */
 	private Connection getConnectionInstance() throws SQLException {
 		if (connection == null || connection.isClosed()) {
-			connection = DriverManager.getConnection(dbUrl);
+			connection = openConnection();
 			databaseCreationService.createTables(connection);
 		}
 		return connection;
 	}
 
 	/**
-	 * Close the SQL connection if it's still live
+	 * Returns the dedicated Database connection instance used for writes (only
+	 * ever used while holding this instance's monitor). As all transactions run on
+	 * this connection, they never toggle the auto-commit mode of a connection that
+	 * is being read from at the same time. May create a new one if not already set.
+	 */
+	private Connection getWriteConnectionInstance() throws SQLException {
+		getConnectionInstance();
+		if (writeConnection == null || writeConnection.isClosed()) {
+			writeConnection = openConnection();
+		}
+		return writeConnection;
+	}
+
+	/**
+	 * Open a new connection. Write-ahead logging lets the read connection keep
+	 * reading the last committed state while the write connection is committing,
+	 * the busy timeout covers the short moments in which it can't.
+	 */
+	private Connection openConnection() throws SQLException {
+		Connection newConnection = DriverManager.getConnection(dbUrl);
+		try (Statement statement = newConnection.createStatement()) {
+			statement.execute("PRAGMA busy_timeout = 10000");
+			statement.execute("PRAGMA journal_mode = WAL");
+		}
+		return newConnection;
+	}
+
+	/**
+	 * Close the SQL connections if they're still live
 	 */
 	@PreDestroy
-	private void closeConnection() throws SQLException {
+	private synchronized void closeConnection() throws SQLException {
+		if (writeConnection != null) {
+			writeConnection.close();
+		}
 		if (connection != null) {
 			connection.close();
 		}
@@ -111,15 +173,182 @@ public class DiscoveryDatabase {
 	}
 
 	/**
-	 * Adds all given strings to the specified table's specified column
+	 * Executes all given cache writes in a single transaction (one batch per
+	 * table)
 	 */
-	synchronized void insertAll(Collection<String> strings, String table, String column) throws SQLException {
+	synchronized void insertAllInTransaction(Collection<CacheWrite> cacheWrites) throws SQLException {
+		if (cacheWrites != null && !cacheWrites.isEmpty()) {
+			Map<String, List<CacheWrite>> writesByTableColumn = cacheWrites.stream()
+				.collect(Collectors.groupingBy(DiscoveryDatabase::insertQuery, LinkedHashMap::new, Collectors.toList()));
+
+			Connection connection = getWriteConnectionInstance();
+			connection.setAutoCommit(false);
+			try {
+				for (Map.Entry<String, List<CacheWrite>> entry : writesByTableColumn.entrySet()) {
+					try (PreparedStatement statement = connection.prepareStatement(entry.getKey())) {
+						for (CacheWrite cacheWrite : entry.getValue()) {
+							for (List<?> row : cacheWrite.getRows()) {
+								for (int i = 0; i < row.size(); i++) {
+									statement.setObject(i + 1, row.get(i));
+								}
+								statement.addBatch();
+							}
+						}
+						statement.executeBatch();
+					}
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+
+	private static String insertQuery(CacheWrite cacheWrite) {
+		String columns = String.join(", ", cacheWrite.getColumns());
+		String placeholders = cacheWrite.getColumns().stream().map(c -> "?").collect(Collectors.joining(", "));
+		return String.format(INSERT_QUERY_MASK, cacheWrite.getTable(), columns, placeholders);
+	}
+
+	/**
+	 * Adds all given strings along with their epoch-seconds timestamps to the
+	 * specified table's specified columns in a single transaction. Strings that
+	 * already exist are skipped.
+	 */
+	synchronized void insertAllWithTimestamps(Map<String, Long> stringsWithTimestamps, String table, String column, String timestampColumn) throws SQLException {
+		if (stringsWithTimestamps != null && !stringsWithTimestamps.isEmpty()) {
+			Connection connection = getWriteConnectionInstance();
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(String.format(INSERT_WITH_TIMESTAMP_QUERY_MASK, table, column, timestampColumn))) {
+				for (Map.Entry<String, Long> entry : stringsWithTimestamps.entrySet()) {
+					statement.setString(1, entry.getKey());
+					statement.setLong(2, entry.getValue());
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+
+	/**
+	 * Return the subset of the given strings that exists in the specified table's
+	 * specified (primary key) column. This only does index lookups, unlike a full
+	 * table scan.
+	 */
+	Set<String> selectExisting(Collection<String> strings, String table, String column) throws SQLException {
+		Set<String> existing = new HashSet<>();
+		for (List<String> partition : SpotifyUtils.partitionList(new ArrayList<>(strings), MAX_QUERY_PARAMETERS)) {
+			String placeholders = partition.stream().map(s -> "?").collect(Collectors.joining(", "));
+			try (PreparedStatement statement = getConnectionInstance().prepareStatement(String.format(EXISTING_QUERY_MASK, column, table, column, placeholders))) {
+				for (int i = 0; i < partition.size(); i++) {
+					statement.setString(i + 1, partition.get(i));
+				}
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					existing.add(resultSet.getString(1));
+				}
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Return the values of the specified value column for the subset of the given
+	 * keys that exists in the specified table's specified (primary key) column
+	 */
+	Map<String, Double> selectDoubles(Collection<String> keys, String table, String keyColumn, String valueColumn) throws SQLException {
+		Map<String, Double> values = new HashMap<>();
+		for (List<String> partition : SpotifyUtils.partitionList(new ArrayList<>(keys), MAX_QUERY_PARAMETERS)) {
+			String placeholders = partition.stream().map(s -> "?").collect(Collectors.joining(", "));
+			try (PreparedStatement statement = getConnectionInstance().prepareStatement(String.format(VALUES_BY_KEYS_QUERY_MASK, keyColumn, valueColumn, table, keyColumn, placeholders))) {
+				for (int i = 0; i < partition.size(); i++) {
+					statement.setString(i + 1, partition.get(i));
+				}
+				ResultSet resultSet = statement.executeQuery();
+				while (resultSet.next()) {
+					values.put(resultSet.getString(1), resultSet.getDouble(2));
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Fetch all rows of a table whose epoch-seconds timestamp column is below the
+	 * given value
+	 */
+	ResultSet selectOlderThan(String tableName, String timestampColumn, long epochSeconds) throws SQLException {
+		Statement statement = createStatement();
+		ResultSet resultSet = statement.executeQuery(String.format(OLDER_THAN_QUERY_MASK, tableName, timestampColumn, epochSeconds));
+		statement.closeOnCompletion();
+		return resultSet;
+	}
+
+	/**
+	 * Count the rows of the given table
+	 */
+	long countRows(String tableName) throws SQLException {
+		try (Statement statement = createStatement()) {
+			ResultSet resultSet = statement.executeQuery(String.format(COUNT_QUERY_MASK, tableName));
+			return resultSet.next() ? resultSet.getLong(1) : 0;
+		}
+	}
+
+	/**
+	 * Removes all given strings from the specified table's specified column in a
+	 * single transaction
+	 */
+	synchronized void deleteAll(Collection<String> strings, String table, String column) throws SQLException {
 		if (strings != null && !strings.isEmpty()) {
-			Statement statement = createStatement();
+			Connection connection = getWriteConnectionInstance();
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(String.format(DELETE_QUERY_MASK, table, column))) {
+				for (String s : strings) {
+					statement.setString(1, s);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+
+	/**
+	 * Returns the current size of the database file in bytes
+	 */
+	long getFileSize() throws SQLException {
+		return readPragma("page_count") * readPragma("page_size");
+	}
+
+	/**
+	 * Return all free pages to the file system (requires incremental auto-vacuum
+	 * to be enabled, see {@link DatabaseCreationService})
+	 */
+	synchronized void incrementalVacuum() throws SQLException {
+		try (Statement statement = getWriteConnectionInstance().createStatement()) {
+			// The pragma frees one page per step, only executeUpdate steps it through to completion
+			statement.executeUpdate("PRAGMA incremental_vacuum");
+		}
+	}
 
-			String values = strings.stream().map(s -> String.format("('%s')", s)).collect(Collectors.joining(", "));
-			statement.executeUpdate(String.format(INSERT_QUERY_MASK, table, column, values));
-			statement.closeOnCompletion();
+	private long readPragma(String pragma) throws SQLException {
+		try (Statement statement = createStatement()) {
+			ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma);
+			return resultSet.next() ? resultSet.getLong(1) : 0;
 		}
 	}
 }
@@ -0,0 +1,336 @@
+package spotify.bot.config.database;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.data.LongHashSet;
+import spotify.bot.util.data.PendingAddition;
+import spotify.bot.util.data.ReleaseTitle;
+
+/**
+ * Alternative implementation of the cache, backed by an embedded key-value
+ * store (H2 MVStore). Each cache table is a persistent map, so membership
+ * lookups don't require the cache to be loaded into memory first. Writes are
+ * buffered by the store itself and committed in the background.
+ */
+public class MvStoreDatabaseService implements DatabaseService {
+	private final static String DB_FILE_NAME = DiscoveryBotUtils.BASE_CONFIG_PATH + "database.mv";
+	private final static int MAX_COMPACT_TIME_MS = 10 * 1000;
+
+	// Artist IDs and album types never contain this, so it's safe to use for the composite keys
+	private final static String RELEASE_TITLE_KEY_SEPARATOR = "|";
+
+	private final MVStore store;
+	private final MVMap<String, Long> releaseIds;
+	private final MVMap<Long, Boolean> releaseNames;
+	private final MVMap<String, Boolean> releaseTitles;
+	private final MVMap<String, Boolean> artistIds;
+	private final MVMap<String, Double> trackLiveness;
+	private final MVMap<String, Boolean> isrcs;
+	private final MVMap<String, Boolean> upcs;
+	private final MVMap<Long, Boolean> addedTracks;
+	private final MVMap<String, String> pendingAdditions;
+
+	MvStoreDatabaseService(DiscoveryBotLogger discoveryBotLogger) {
+		this(new File(DB_FILE_NAME), discoveryBotLogger);
+	}
+
+	MvStoreDatabaseService(File dbFile, DiscoveryBotLogger discoveryBotLogger) {
+		discoveryBotLogger.info("Opening MVStore cache: " + dbFile.getAbsolutePath(), false);
+		this.store = new MVStore.Builder()
+			.fileName(dbFile.getAbsolutePath())
+			.compress()
+			.open();
+		this.releaseIds = store.openMap(DBConstants.TABLE_CACHE_RELEASES);
+		this.releaseNames = openReleaseNamesMap(store);
+		this.releaseTitles = store.openMap(DBConstants.TABLE_CACHE_RELEASES_TITLES);
+		this.artistIds = store.openMap(DBConstants.TABLE_CACHE_ARTISTS);
+		this.trackLiveness = store.openMap(DBConstants.TABLE_CACHE_AUDIO_FEATURES);
+		this.isrcs = store.openMap(DBConstants.TABLE_CACHE_ISRCS);
+		this.upcs = store.openMap(DBConstants.TABLE_CACHE_UPCS);
+		this.addedTracks = store.openMap(DBConstants.TABLE_CACHE_ADDED_TRACKS);
+		this.pendingAdditions = store.openMap(DBConstants.TABLE_OUTBOX_ADDITIONS);
+	}
+
+	/**
+	 * Open the release names map. Names cached as plain strings by earlier
+	 * versions are replaced by their fingerprints on the fly.
+	 */
+	@SuppressWarnings("unchecked")
+	private static MVMap<Long, Boolean> openReleaseNamesMap(MVStore store) {
+		MVMap<Object, Boolean> releaseNames = store.openMap(DBConstants.TABLE_CACHE_RELEASES_NAMES);
+		List<String> legacyNames = new ArrayList<>();
+		for (Object key : releaseNames.keySet()) {
+			if (key instanceof String) {
+				legacyNames.add((String) key);
+			}
+		}
+		if (!legacyNames.isEmpty()) {
+			for (String legacyName : legacyNames) {
+				releaseNames.putIfAbsent(DiscoveryBotUtils.fingerprint(legacyName), Boolean.TRUE);
+				releaseNames.remove(legacyName);
+			}
+			store.commit();
+		}
+		return (MVMap<Long, Boolean>) (MVMap<?, Boolean>) releaseNames;
+	}
+
+	////////////////////////
+	// READ
+
+	@Override
+	public List<String> getReleasesIdsCache() {
+		return new ArrayList<>(releaseIds.keySet());
+	}
+
+	@Override
+	public Set<String> getCachedReleaseIds(Collection<String> ids) {
+		Set<String> cached = new HashSet<>();
+		for (String id : ids) {
+			if (releaseIds.containsKey(id)) {
+				cached.add(id);
+			}
+		}
+		return cached;
+	}
+
+	@Override
+	public LongHashSet getReleaseNameFingerprints() {
+		LongHashSet fingerprints = new LongHashSet(releaseNames.size());
+		releaseNames.keySet().forEach(fingerprints::add);
+		return fingerprints;
+	}
+
+	@Override
+	public List<ReleaseTitle> getReleaseTitlesCache() {
+		List<ReleaseTitle> titles = new ArrayList<>();
+		for (String key : releaseTitles.keySet()) {
+			String[] parts = key.split(Pattern.quote(RELEASE_TITLE_KEY_SEPARATOR), 3);
+			titles.add(new ReleaseTitle(parts[0], parts[1], parts[2]));
+		}
+		return titles;
+	}
+
+	@Override
+	public List<String> getArtistCache() {
+		return new ArrayList<>(artistIds.keySet());
+	}
+
+	@Override
+	public Map<String, Double> getTrackLiveness(Collection<String> trackIds) {
+		Map<String, Double> cached = new HashMap<>();
+		for (String trackId : trackIds) {
+			Double liveness = trackLiveness.get(trackId);
+			if (liveness != null) {
+				cached.put(trackId, liveness);
+			}
+		}
+		return cached;
+	}
+
+	@Override
+	public Set<String> getKnownIsrcs(Collection<String> codes) {
+		return selectExisting(isrcs, codes);
+	}
+
+	@Override
+	public Set<String> getKnownUpcs(Collection<String> codes) {
+		return selectExisting(upcs, codes);
+	}
+
+	@Override
+	public LongHashSet getAddedTrackFingerprints() {
+		LongHashSet fingerprints = new LongHashSet(addedTracks.size());
+		addedTracks.keySet().forEach(fingerprints::add);
+		return fingerprints;
+	}
+
+	private static Set<String> selectExisting(MVMap<String, ?> map, Collection<String> keys) {
+		Set<String> existing = new HashSet<>();
+		for (String key : keys) {
+			if (map.containsKey(key)) {
+				existing.add(key);
+			}
+		}
+		return existing;
+	}
+
+	////////////////////////
+	// WRITE
+
+	@Override
+	public void cacheAlbumIds(List<AlbumSimplified> albumsSimplified) {
+		Long now = Instant.now().getEpochSecond();
+		for (AlbumSimplified album : albumsSimplified) {
+			releaseIds.putIfAbsent(album.getId(), now);
+		}
+	}
+
+	@Override
+	public void cacheAlbumNames(List<AlbumSimplified> albumsSimplified) {
+		for (AlbumSimplified album : albumsSimplified) {
+			releaseNames.putIfAbsent(DiscoveryBotUtils.releaseNameFingerprint(album), Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public void cacheReleaseTitles(Collection<ReleaseTitle> titles) {
+		for (ReleaseTitle title : titles) {
+			releaseTitles.putIfAbsent(String.join(RELEASE_TITLE_KEY_SEPARATOR, title.getArtistId(), title.getAlbumType(), title.getNormalizedTitle()), Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public void cacheArtistIds(List<String> followedArtists) {
+		for (String artistId : followedArtists) {
+			artistIds.putIfAbsent(artistId, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public void cacheTrackLiveness(Map<String, Double> livenessByTrackId) {
+		livenessByTrackId.forEach(trackLiveness::putIfAbsent);
+	}
+
+	@Override
+	public void cacheReleaseCodes(Collection<String> isrcCodes, Collection<String> upcCodes) {
+		isrcCodes.forEach(isrc -> isrcs.putIfAbsent(isrc, Boolean.TRUE));
+		upcCodes.forEach(upc -> upcs.putIfAbsent(upc, Boolean.TRUE));
+	}
+
+	@Override
+	public void cacheAddedTrackFingerprints(Collection<Long> fingerprints) {
+		fingerprints.forEach(fingerprint -> addedTracks.putIfAbsent(fingerprint, Boolean.TRUE));
+	}
+
+	////////////////////////
+	// OUTBOX
+	// (committed right away, as they must be durable)
+
+	@Override
+	public List<PendingAddition> getPendingAdditions() {
+		List<PendingAddition> pending = new ArrayList<>();
+		pendingAdditions.forEach((key, trackId) -> pending.add(PendingAddition.fromKey(key, trackId)));
+		return pending;
+	}
+
+	@Override
+	public void addPendingAdditions(Collection<PendingAddition> additions) {
+		if (!additions.isEmpty()) {
+			additions.forEach(a -> pendingAdditions.putIfAbsent(a.getKey(), a.getTrackId()));
+			store.commit();
+		}
+	}
+
+	@Override
+	public void completePendingAdditions(Collection<PendingAddition> additions) {
+		if (!additions.isEmpty()) {
+			additions.forEach(a -> pendingAdditions.remove(a.getKey()));
+			store.commit();
+		}
+	}
+
+	////////////////////////
+	// MAINTENANCE
+
+	@Override
+	public Map<String, Long> getCacheTableSizes() {
+		Map<String, Long> tableSizes = new LinkedHashMap<>();
+		tableSizes.put(DBConstants.TABLE_CACHE_RELEASES, releaseIds.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_RELEASES_NAMES, releaseNames.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_RELEASES_TITLES, releaseTitles.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_ARTISTS, artistIds.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_AUDIO_FEATURES, trackLiveness.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_ISRCS, isrcs.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_UPCS, upcs.sizeAsLong());
+		tableSizes.put(DBConstants.TABLE_CACHE_ADDED_TRACKS, addedTracks.sizeAsLong());
+		return tableSizes;
+	}
+
+	@Override
+	public long getDatabaseFileSize() {
+		return store.getFileStore().size();
+	}
+
+	@Override
+	public int pruneReleaseIds(Set<String> visibleReleaseIds, Instant cachedBefore) {
+		long threshold = cachedBefore.getEpochSecond();
+		List<String> prunableReleaseIds = new ArrayList<>();
+		for (Map.Entry<String, Long> entry : releaseIds.entrySet()) {
+			if (entry.getValue() < threshold && !visibleReleaseIds.contains(entry.getKey())) {
+				prunableReleaseIds.add(entry.getKey());
+			}
+		}
+		prunableReleaseIds.forEach(releaseIds::remove);
+		store.commit();
+		return prunableReleaseIds.size();
+	}
+
+	@Override
+	public int pruneArtistIds(Collection<String> followedArtists) {
+		Set<String> unfollowedArtists = new HashSet<>(artistIds.keySet());
+		followedArtists.forEach(unfollowedArtists::remove);
+		unfollowedArtists.forEach(artistIds::remove);
+		store.commit();
+		return unfollowedArtists.size();
+	}
+
+	@Override
+	public void compact() {
+		store.commit();
+		store.compactFile(MAX_COMPACT_TIME_MS);
+	}
+
+	////////////////////////
+	// MIGRATION
+
+	@Override
+	public CacheSnapshot exportCache() {
+		return CacheSnapshot.builder()
+			.releaseIds(new HashMap<>(releaseIds))
+			.releaseNameFingerprints(getReleaseNameFingerprints())
+			.releaseTitles(getReleaseTitlesCache())
+			.artistIds(getArtistCache())
+			.trackLiveness(new HashMap<>(trackLiveness))
+			.isrcs(new ArrayList<>(isrcs.keySet()))
+			.upcs(new ArrayList<>(upcs.keySet()))
+			.addedTrackFingerprints(getAddedTrackFingerprints())
+			.pendingAdditions(getPendingAdditions())
+			.build();
+	}
+
+	@Override
+	public void importCache(CacheSnapshot cacheSnapshot) {
+		cacheSnapshot.getReleaseIds().forEach(releaseIds::putIfAbsent);
+		cacheSnapshot.getReleaseNameFingerprints().forEach(fingerprint -> releaseNames.putIfAbsent(fingerprint, Boolean.TRUE));
+		cacheSnapshot.getArtistIds().forEach(id -> artistIds.putIfAbsent(id, Boolean.TRUE));
+		cacheReleaseTitles(cacheSnapshot.getReleaseTitles());
+		cacheTrackLiveness(cacheSnapshot.getTrackLiveness());
+		cacheReleaseCodes(cacheSnapshot.getIsrcs(), cacheSnapshot.getUpcs());
+		cacheSnapshot.getAddedTrackFingerprints().forEach(fingerprint -> addedTracks.putIfAbsent(fingerprint, Boolean.TRUE));
+		cacheSnapshot.getPendingAdditions().forEach(a -> pendingAdditions.putIfAbsent(a.getKey(), a.getTrackId()));
+		store.commit();
+	}
+
+	@Override
+	public void close() {
+		if (!store.isClosed()) {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package spotify.bot.config.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.data.LongHashSet;
+import spotify.bot.util.data.PendingAddition;
+import spotify.bot.util.data.ReleaseTitle;
+import spotify.util.SpotifyUtils;
+
+/**
+ * Default implementation of the cache, backed by the SQLite database
+ */
+public class SqliteDatabaseService implements DatabaseService {
+	private final static List<String> RELEASE_TITLE_COLUMNS = List.of(DBConstants.COL_ARTIST_ID, DBConstants.COL_ALBUM_TYPE, DBConstants.COL_NORMALIZED_TITLE);
+	private final static List<String> AUDIO_FEATURE_COLUMNS = List.of(DBConstants.COL_TRACK_ID, DBConstants.COL_LIVENESS);
+	private final static List<String> OUTBOX_COLUMNS = List.of(DBConstants.COL_ADDITION_KEY, DBConstants.COL_TRACK_ID);
+
+	private final DiscoveryDatabase database;
+	private final CacheWriter cacheWriter;
+
+	SqliteDatabaseService(DiscoveryDatabase discoveryDatabase, CacheWriter cacheWriter) {
+		this.database = discoveryDatabase;
+		this.cacheWriter = cacheWriter;
+	}
+
+	////////////////////////
+	// READ
+
+	@Override
+	public List<String> getReleasesIdsCache() throws SQLException {
+		cacheWriter.flush();
+		List<String> albumCacheIds = new ArrayList<>();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES);
+		while (rs.next()) {
+			albumCacheIds.add(rs.getString(DBConstants.COL_RELEASE_ID));
+		}
+		return albumCacheIds;
+	}
+
+	@Override
+	public Set<String> getCachedReleaseIds(Collection<String> releaseIds) throws SQLException {
+		cacheWriter.flush();
+		return database.selectExisting(releaseIds, DBConstants.TABLE_CACHE_RELEASES, DBConstants.COL_RELEASE_ID);
+	}
+
+	@Override
+	public LongHashSet getReleaseNameFingerprints() throws SQLException {
+		cacheWriter.flush();
+		LongHashSet albumCacheNameFingerprints = new LongHashSet();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES_NAMES);
+		while (rs.next()) {
+			albumCacheNameFingerprints.add(rs.getLong(DBConstants.COL_RELEASE_FINGERPRINT));
+		}
+		return albumCacheNameFingerprints;
+	}
+
+	@Override
+	public List<ReleaseTitle> getReleaseTitlesCache() throws SQLException {
+		cacheWriter.flush();
+		List<ReleaseTitle> releaseTitles = new ArrayList<>();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES_TITLES);
+		while (rs.next()) {
+			releaseTitles.add(new ReleaseTitle(
+				rs.getString(DBConstants.COL_ARTIST_ID),
+				rs.getString(DBConstants.COL_ALBUM_TYPE),
+				rs.getString(DBConstants.COL_NORMALIZED_TITLE)));
+		}
+		return releaseTitles;
+	}
+
+	@Override
+	public List<String> getArtistCache() throws SQLException {
+		cacheWriter.flush();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_ARTISTS);
+		List<String> cachedArtists = new ArrayList<>();
+		while (rs.next()) {
+			String string = rs.getString(DBConstants.COL_ARTIST_ID);
+			if (!SpotifyUtils.isNullString(string)) {
+				cachedArtists.add(string);
+			}
+		}
+		return cachedArtists;
+	}
+
+	@Override
+	public Map<String, Double> getTrackLiveness(Collection<String> trackIds) throws SQLException {
+		cacheWriter.flush();
+		return database.selectDoubles(trackIds, DBConstants.TABLE_CACHE_AUDIO_FEATURES, DBConstants.COL_TRACK_ID, DBConstants.COL_LIVENESS);
+	}
+
+	@Override
+	public Set<String> getKnownIsrcs(Collection<String> isrcs) throws SQLException {
+		cacheWriter.flush();
+		return database.selectExisting(isrcs, DBConstants.TABLE_CACHE_ISRCS, DBConstants.COL_ISRC);
+	}
+
+	@Override
+	public Set<String> getKnownUpcs(Collection<String> upcs) throws SQLException {
+		cacheWriter.flush();
+		return database.selectExisting(upcs, DBConstants.TABLE_CACHE_UPCS, DBConstants.COL_UPC);
+	}
+
+	@Override
+	public LongHashSet getAddedTrackFingerprints() throws SQLException {
+		cacheWriter.flush();
+		LongHashSet addedTrackFingerprints = new LongHashSet();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_ADDED_TRACKS);
+		while (rs.next()) {
+			addedTrackFingerprints.add(rs.getLong(DBConstants.COL_TRACK_FINGERPRINT));
+		}
+		return addedTrackFingerprints;
+	}
+
+	////////////////////////
+	// WRITE
+	// (all writes are handed to the write-behind CacheWriter and committed in the background)
+
+	@Override
+	public void cacheAlbumIds(List<AlbumSimplified> albumsSimplified) {
+		List<String> albumIds = albumsSimplified.stream()
+			.map(AlbumSimplified::getId)
+			.collect(Collectors.toList());
+		cacheWriter.enqueue(albumIds, DBConstants.TABLE_CACHE_RELEASES, DBConstants.COL_RELEASE_ID);
+	}
+
+	@Override
+	public void cacheAlbumNames(List<AlbumSimplified> albumsSimplified) {
+		List<Long> albumNameFingerprints = albumsSimplified.stream()
+			.map(DiscoveryBotUtils::releaseNameFingerprint)
+			.collect(Collectors.toList());
+		cacheWriter.enqueue(albumNameFingerprints, DBConstants.TABLE_CACHE_RELEASES_NAMES, DBConstants.COL_RELEASE_FINGERPRINT);
+	}
+
+	@Override
+	public void cacheReleaseTitles(Collection<ReleaseTitle> releaseTitles) {
+		List<List<?>> rows = releaseTitles.stream()
+			.<List<?>>map(t -> List.of(t.getArtistId(), t.getAlbumType(), t.getNormalizedTitle()))
+			.collect(Collectors.toList());
+		cacheWriter.enqueueRows(rows, DBConstants.TABLE_CACHE_RELEASES_TITLES, RELEASE_TITLE_COLUMNS);
+	}
+
+	@Override
+	public void cacheArtistIds(List<String> followedArtists) {
+		cacheWriter.enqueue(followedArtists, DBConstants.TABLE_CACHE_ARTISTS, DBConstants.COL_ARTIST_ID);
+	}
+
+	@Override
+	public void cacheTrackLiveness(Map<String, Double> livenessByTrackId) {
+		List<List<?>> rows = livenessByTrackId.entrySet().stream()
+			.<List<?>>map(e -> List.of(e.getKey(), e.getValue()))
+			.collect(Collectors.toList());
+		cacheWriter.enqueueRows(rows, DBConstants.TABLE_CACHE_AUDIO_FEATURES, AUDIO_FEATURE_COLUMNS);
+	}
+
+	@Override
+	public void cacheReleaseCodes(Collection<String> isrcs, Collection<String> upcs) {
+		cacheWriter.enqueue(isrcs, DBConstants.TABLE_CACHE_ISRCS, DBConstants.COL_ISRC);
+		cacheWriter.enqueue(upcs, DBConstants.TABLE_CACHE_UPCS, DBConstants.COL_UPC);
+	}
+
+	@Override
+	public void cacheAddedTrackFingerprints(Collection<Long> fingerprints) {
+		cacheWriter.enqueue(fingerprints, DBConstants.TABLE_CACHE_ADDED_TRACKS, DBConstants.COL_TRACK_FINGERPRINT);
+	}
+
+	////////////////////////
+	// OUTBOX
+	// (written directly instead of through the CacheWriter, as they must be durable right away)
+
+	@Override
+	public List<PendingAddition> getPendingAdditions() throws SQLException {
+		List<PendingAddition> pendingAdditions = new ArrayList<>();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_OUTBOX_ADDITIONS);
+		while (rs.next()) {
+			pendingAdditions.add(PendingAddition.fromKey(rs.getString(DBConstants.COL_ADDITION_KEY), rs.getString(DBConstants.COL_TRACK_ID)));
+		}
+		return pendingAdditions;
+	}
+
+	@Override
+	public void addPendingAdditions(Collection<PendingAddition> pendingAdditions) throws SQLException {
+		if (!pendingAdditions.isEmpty()) {
+			List<List<?>> rows = pendingAdditions.stream()
+				.<List<?>>map(a -> List.of(a.getKey(), a.getTrackId()))
+				.collect(Collectors.toList());
+			database.insertAllInTransaction(List.of(new CacheWrite(DBConstants.TABLE_OUTBOX_ADDITIONS, OUTBOX_COLUMNS, rows)));
+		}
+	}
+
+	@Override
+	public void completePendingAdditions(Collection<PendingAddition> pendingAdditions) throws SQLException {
+		List<String> keys = pendingAdditions.stream()
+			.map(PendingAddition::getKey)
+			.collect(Collectors.toList());
+		database.deleteAll(keys, DBConstants.TABLE_OUTBOX_ADDITIONS, DBConstants.COL_ADDITION_KEY);
+	}
+
+	////////////////////////
+	// MAINTENANCE
+
+	@Override
+	public Map<String, Long> getCacheTableSizes() throws SQLException {
+		cacheWriter.flush();
+		Map<String, Long> tableSizes = new LinkedHashMap<>();
+		for (String table : List.of(DBConstants.TABLE_CACHE_RELEASES, DBConstants.TABLE_CACHE_RELEASES_NAMES, DBConstants.TABLE_CACHE_RELEASES_TITLES, DBConstants.TABLE_CACHE_ARTISTS, DBConstants.TABLE_CACHE_AUDIO_FEATURES,
+				DBConstants.TABLE_CACHE_ISRCS, DBConstants.TABLE_CACHE_UPCS, DBConstants.TABLE_CACHE_ADDED_TRACKS)) {
+			tableSizes.put(table, database.countRows(table));
+		}
+		return tableSizes;
+	}
+
+	@Override
+	public long getDatabaseFileSize() throws SQLException {
+		return database.getFileSize();
+	}
+
+	@Override
+	public int pruneReleaseIds(Set<String> visibleReleaseIds, Instant cachedBefore) throws SQLException {
+		cacheWriter.flush();
+		List<String> prunableReleaseIds = new ArrayList<>();
+		ResultSet rs = database.selectOlderThan(DBConstants.TABLE_CACHE_RELEASES, DBConstants.COL_CACHED_AT, cachedBefore.getEpochSecond());
+		while (rs.next()) {
+			String releaseId = rs.getString(DBConstants.COL_RELEASE_ID);
+			if (!visibleReleaseIds.contains(releaseId)) {
+				prunableReleaseIds.add(releaseId);
+			}
+		}
+		database.deleteAll(prunableReleaseIds, DBConstants.TABLE_CACHE_RELEASES, DBConstants.COL_RELEASE_ID);
+		return prunableReleaseIds.size();
+	}
+
+	@Override
+	public int pruneArtistIds(Collection<String> followedArtists) throws SQLException {
+		Set<String> unfollowedArtists = new HashSet<>(getArtistCache());
+		followedArtists.forEach(unfollowedArtists::remove);
+		database.deleteAll(unfollowedArtists, DBConstants.TABLE_CACHE_ARTISTS, DBConstants.COL_ARTIST_ID);
+		return unfollowedArtists.size();
+	}
+
+	@Override
+	public void compact() throws SQLException {
+		database.incrementalVacuum();
+	}
+
+	////////////////////////
+	// MIGRATION
+
+	@Override
+	public CacheSnapshot exportCache() throws SQLException {
+		cacheWriter.flush();
+		Map<String, Long> releaseIds = new HashMap<>();
+		ResultSet rs = database.selectAll(DBConstants.TABLE_CACHE_RELEASES);
+		while (rs.next()) {
+			releaseIds.put(rs.getString(DBConstants.COL_RELEASE_ID), rs.getLong(DBConstants.COL_CACHED_AT));
+		}
+		Map<String, Double> trackLiveness = new HashMap<>();
+		rs = database.selectAll(DBConstants.TABLE_CACHE_AUDIO_FEATURES);
+		while (rs.next()) {
+			trackLiveness.put(rs.getString(DBConstants.COL_TRACK_ID), rs.getDouble(DBConstants.COL_LIVENESS));
+		}
+		return CacheSnapshot.builder()
+			.releaseIds(releaseIds)
+			.releaseNameFingerprints(getReleaseNameFingerprints())
+			.releaseTitles(getReleaseTitlesCache())
+			.artistIds(getArtistCache())
+			.trackLiveness(trackLiveness)
+			.isrcs(selectAllStrings(DBConstants.TABLE_CACHE_ISRCS, DBConstants.COL_ISRC))
+			.upcs(selectAllStrings(DBConstants.TABLE_CACHE_UPCS, DBConstants.COL_UPC))
+			.addedTrackFingerprints(getAddedTrackFingerprints())
+			.pendingAdditions(getPendingAdditions())
+			.build();
+	}
+
+	@Override
+	public void importCache(CacheSnapshot cacheSnapshot) throws SQLException {
+		database.insertAllWithTimestamps(cacheSnapshot.getReleaseIds(), DBConstants.TABLE_CACHE_RELEASES, DBConstants.COL_RELEASE_ID, DBConstants.COL_CACHED_AT);
+		List<Long> releaseNameFingerprints = Arrays.stream(cacheSnapshot.getReleaseNameFingerprints().toArray()).boxed().collect(Collectors.toList());
+		cacheWriter.enqueue(releaseNameFingerprints, DBConstants.TABLE_CACHE_RELEASES_NAMES, DBConstants.COL_RELEASE_FINGERPRINT);
+		importMissing(cacheSnapshot.getArtistIds(), DBConstants.TABLE_CACHE_ARTISTS, DBConstants.COL_ARTIST_ID);
+		cacheReleaseTitles(cacheSnapshot.getReleaseTitles());
+		cacheTrackLiveness(cacheSnapshot.getTrackLiveness());
+		cacheReleaseCodes(cacheSnapshot.getIsrcs(), cacheSnapshot.getUpcs());
+		cacheAddedTrackFingerprints(Arrays.stream(cacheSnapshot.getAddedTrackFingerprints().toArray()).boxed().collect(Collectors.toList()));
+		cacheWriter.flush();
+		addPendingAdditions(cacheSnapshot.getPendingAdditions());
+	}
+
+	private List<String> selectAllStrings(String table, String column) throws SQLException {
+		List<String> values = new ArrayList<>();
+		ResultSet rs = database.selectAll(table);
+		while (rs.next()) {
+			values.add(rs.getString(column));
+		}
+		return values;
+	}
+
+	private void importMissing(List<String> values, String table, String column) throws SQLException {
+		cacheWriter.flush();
+		Set<String> missing = new HashSet<>(values);
+		missing.removeAll(database.selectExisting(missing, table, column));
+		cacheWriter.enqueue(missing, table, column);
+	}
+
+	@Override
+	public void close() {
+		// The connection itself is closed by the DiscoveryDatabase
+		cacheWriter.flush();
+	}
+}
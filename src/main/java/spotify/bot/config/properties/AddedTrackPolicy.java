@@ -0,0 +1,46 @@
+package spotify.bot.config.properties;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * How new releases are treated whose tracks have already been added to any of
+ * the playlists before (e.g. an album containing a previously released single)
+ */
+public enum AddedTrackPolicy {
+
+	/**
+	 * Add every track again (default)
+	 */
+	KEEP,
+
+	/**
+	 * Skip the already added tracks of every release. Releases without any new
+	 * tracks are skipped entirely.
+	 */
+	SKIP_TRACKS,
+
+	/**
+	 * Only skip releases that consist entirely of already added tracks
+	 */
+	SKIP_RELEASES;
+
+	/**
+	 * Returns the tracks of a release that are added under this policy
+	 *
+	 * @param tracks  all tracks of the release
+	 * @param isAdded whether a track has been added before
+	 * @return the tracks to add, empty if the whole release is skipped
+	 */
+	public <T> List<T> selectTracks(List<T> tracks, Predicate<T> isAdded) {
+		switch (this) {
+			case SKIP_TRACKS:
+				return tracks.stream().filter(isAdded.negate()).collect(Collectors.toList());
+			case SKIP_RELEASES:
+				return tracks.stream().allMatch(isAdded) ? List.of() : tracks;
+			default:
+				return tracks;
+		}
+	}
+}
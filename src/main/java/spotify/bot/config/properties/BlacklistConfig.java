@@ -4,52 +4,100 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.regex.PatternSyntaxException;
 
 import org.springframework.context.annotation.Configuration;
 
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.BlacklistRules;
 
 @Configuration
 public class BlacklistConfig {
   private final static String BLACKLIST_FILENAME = DiscoveryBotUtils.BASE_CONFIG_PATH + "blacklist.properties";
 
-  private final Map<String, List<AlbumGroupExtended>> blacklistMap;
+  private final static String TITLE_RULE_PREFIX = "title.";
+  private final static String TITLE_RULE_GROUPS_SUFFIX = ".groups";
+  private final static String TITLE_RULE_ARTIST_SUFFIX = ".artist";
+  private final static String ALL_ALBUM_GROUPS = "*";
+
+  private final BlacklistRules blacklistRules;
 
   BlacklistConfig() {
-    this.blacklistMap = getBlacklistFromPropertiesFile();
+    this.blacklistRules = getBlacklistFromPropertiesFile();
   }
 
-  private Map<String, List<AlbumGroupExtended>> getBlacklistFromPropertiesFile() {
-    Map<String, List<AlbumGroupExtended>> blacklistMap = new HashMap<>();
-    try {
-      File propertiesFile = new File(BLACKLIST_FILENAME);
-      if (propertiesFile.canRead()) {
-        FileReader reader = new FileReader(propertiesFile);
+  private BlacklistRules getBlacklistFromPropertiesFile() {
+    BlacklistRules.Builder builder = BlacklistRules.builder();
+    File propertiesFile = new File(BLACKLIST_FILENAME);
+    if (propertiesFile.canRead()) {
+      try (FileReader reader = new FileReader(propertiesFile)) {
         Properties properties = new Properties();
         properties.load(reader);
 
-        for (Object artistIdRaw : properties.keySet()) {
-          String artistId = (String) artistIdRaw;
-          String[] blacklistForArtist = properties.getProperty(artistId).split(",");
-          List<AlbumGroupExtended> blacklistedAlbumGroupsForArtist = new ArrayList<>();
-          for (String blacklistedType : blacklistForArtist) {
-            blacklistedAlbumGroupsForArtist.add(AlbumGroupExtended.valueOf(blacklistedType));
+        for (String key : properties.stringPropertyNames()) {
+          if (key.startsWith(TITLE_RULE_PREFIX)) {
+            String ruleKey = getTitleRuleKey(key);
+            if (ruleKey.equals(key)) {
+              addTitleRule(builder, properties, key);
+            } else if (!properties.containsKey(ruleKey)) {
+              System.out.println("Ignoring " + key + " in " + BLACKLIST_FILENAME + ", as there is no title rule " + ruleKey);
+            }
+          } else {
+            builder.artistRule(key, parseAlbumGroups(properties.getProperty(key)));
           }
-          blacklistMap.put(artistId, blacklistedAlbumGroupsForArtist);
         }
+      } catch (IOException e) {
+        System.out.println("Failed to read " + BLACKLIST_FILENAME);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Add the title rule of the given key. The album groups and the artist it's
+   * restricted to are optional and read from <code>&lt;key&gt;.groups</code> and
+   * <code>&lt;key&gt;.artist</code> respectively.
+   */
+  private void addTitleRule(BlacklistRules.Builder builder, Properties properties, String key) {
+    String regex = properties.getProperty(key);
+    String albumGroups = properties.getProperty(key + TITLE_RULE_GROUPS_SUFFIX, ALL_ALBUM_GROUPS);
+    String artistId = properties.getProperty(key + TITLE_RULE_ARTIST_SUFFIX);
+    try {
+      builder.titleRule(regex, parseAlbumGroups(albumGroups), artistId != null ? artistId.strip() : null);
+    } catch (PatternSyntaxException e) {
+      System.out.println("Invalid title pattern for " + key + " in " + BLACKLIST_FILENAME + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the key of the title rule the given key belongs to, i.e. the key
+   * itself without a <code>.groups</code> or <code>.artist</code> suffix
+   */
+  private String getTitleRuleKey(String key) {
+    for (String suffix : List.of(TITLE_RULE_GROUPS_SUFFIX, TITLE_RULE_ARTIST_SUFFIX)) {
+      if (key.endsWith(suffix)) {
+        return key.substring(0, key.length() - suffix.length());
       }
-    } catch (IOException e) {
-      System.out.println("Failed to read " + BLACKLIST_FILENAME);
     }
-    return blacklistMap;
+    return key;
+  }
+
+  private List<AlbumGroupExtended> parseAlbumGroups(String albumGroupsRaw) {
+    if (albumGroupsRaw.strip().equals(ALL_ALBUM_GROUPS)) {
+      return new ArrayList<>(EnumSet.allOf(AlbumGroupExtended.class));
+    }
+    List<AlbumGroupExtended> albumGroups = new ArrayList<>();
+    for (String albumGroup : albumGroupsRaw.split(",")) {
+      albumGroups.add(AlbumGroupExtended.valueOf(albumGroup.strip()));
+    }
+    return albumGroups;
   }
 
-  public Map<String, List<AlbumGroupExtended>> getBlacklistMap() {
-    return blacklistMap;
+  public BlacklistRules getBlacklistRules() {
+    return blacklistRules;
   }
 }
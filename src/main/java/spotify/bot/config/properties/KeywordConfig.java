@@ -0,0 +1,53 @@
+package spotify.bot.config.properties;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.springframework.context.annotation.Configuration;
+
+import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.data.KeywordAutomaton;
+import spotify.bot.util.data.TitleTag;
+
+@Configuration
+public class KeywordConfig {
+  private final static String KEYWORDS_FILENAME = DiscoveryBotUtils.BASE_CONFIG_PATH + "keywords.properties";
+
+  private final KeywordAutomaton keywordAutomaton;
+
+  KeywordConfig() {
+    this.keywordAutomaton = getKeywordsFromPropertiesFile();
+  }
+
+  /**
+   * Build the keyword automaton from the keywords.properties. Every tag that
+   * isn't defined there (or if the file doesn't exist) uses its default keywords.
+   */
+  private KeywordAutomaton getKeywordsFromPropertiesFile() {
+    Properties properties = new Properties();
+    File propertiesFile = new File(KEYWORDS_FILENAME);
+    if (propertiesFile.canRead()) {
+      try (FileReader reader = new FileReader(propertiesFile)) {
+        properties.load(reader);
+      } catch (IOException e) {
+        System.out.println("Failed to read " + KEYWORDS_FILENAME);
+      }
+    }
+
+    KeywordAutomaton.Builder builder = KeywordAutomaton.builder();
+    for (TitleTag tag : TitleTag.values()) {
+      String keywords = properties.getProperty(tag.getKey());
+      String[] tagKeywords = keywords != null ? keywords.split(",") : tag.getDefaultKeywords();
+      for (String keyword : tagKeywords) {
+        builder.add(tag, keyword);
+      }
+    }
+    return builder.build();
+  }
+
+  public KeywordAutomaton getKeywordAutomaton() {
+    return keywordAutomaton;
+  }
+}
@@ -5,48 +5,83 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.springframework.context.annotation.Configuration;
 
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.enums.AlbumGroup;
+import se.michaelthelin.spotify.exceptions.detailed.BadRequestException;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import spotify.api.SpotifyApiException;
 import spotify.api.SpotifyCall;
 import spotify.bot.service.PlaylistMetaService;
 import spotify.bot.service.performance.CachedUserService;
+import spotify.bot.service.performance.PlaylistMirrorService;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.util.SpotifyOptimizedExecutorService;
 
 @Configuration
 public class PlaylistStoreConfig {
 	private final static String PLAYLIST_STORE_FILENAME = DiscoveryBotUtils.BASE_CONFIG_PATH + "playlist.properties";
+	private final static String PLAYLIST_STATE_FILENAME = DiscoveryBotUtils.BASE_CONFIG_PATH + "playlist-state.properties";
+
+	private final static String STATE_PLAYLIST_ID_SUFFIX = ".playlist_id";
+	private final static String STATE_LAST_UPDATE_SUFFIX = ".last_update";
+	private final static String STATE_NEW_TRACKS_SUFFIX = ".new_tracks";
+	private final static String STATE_TRACK_SEPARATOR = ",";
+
+	private final static int PLAYLIST_VERIFICATION_ATTEMPTS = 3;
 
 	private Map<AlbumGroupExtended, PlaylistStore> playlistStoreMap;
 
 	private final List<AlbumGroupExtended> enabledAlbumGroups;
 	private final List<AlbumGroupExtended> disabledAlbumGroups;
+	private final Set<AlbumGroupExtended> restoredAlbumGroups;
 
 	private final SpotifyApi spotifyApi;
 	private final CachedUserService cachedUserService;
+	private final PlaylistMirrorService playlistMirrorService;
+	private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
 	private final DiscoveryBotLogger log;
 
-	PlaylistStoreConfig(SpotifyApi spotifyApi, CachedUserService cachedUserService, DiscoveryBotLogger discoveryBotLogger) {
+	PlaylistStoreConfig(SpotifyApi spotifyApi,
+			CachedUserService cachedUserService,
+			PlaylistMirrorService playlistMirrorService,
+			SpotifyOptimizedExecutorService spotifyOptimizedExecutorService,
+			DiscoveryBotLogger discoveryBotLogger) {
 		this.spotifyApi = spotifyApi;
 		this.cachedUserService = cachedUserService;
+		this.playlistMirrorService = playlistMirrorService;
+		this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
 		this.log = discoveryBotLogger;
-		this.enabledAlbumGroups = new ArrayList<>();
-		this.disabledAlbumGroups = new ArrayList<>();
+		this.enabledAlbumGroups = new CopyOnWriteArrayList<>();
+		this.disabledAlbumGroups = new CopyOnWriteArrayList<>();
+		this.restoredAlbumGroups = ConcurrentHashMap.newKeySet();
 	}
 
+	/**
+	 * Read the playlist stores from the playlist.properties (creating any missing
+	 * playlists) and restore their last persisted state. Apart from creating
+	 * missing playlists, this doesn't send any requests, the playlists are
+	 * verified later on by {@link PlaylistStoreConfig#verifyPlaylists}.
+	 */
 	public void setupPlaylistStores() {
 		try {
 			File propertiesFile = new File(PLAYLIST_STORE_FILENAME);
@@ -61,9 +96,10 @@ public class PlaylistStoreConfig {
 			FileReader reader = new FileReader(propertiesFile);
 			Properties properties = new Properties();
 			properties.load(reader);
-			verifyPlaylists(properties);
+			readAlbumGroups(properties);
 			createMissingPlaylists(properties);
 			this.playlistStoreMap = createPlaylistStoreMap(properties);
+			restorePlaylistState();
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
@@ -71,17 +107,12 @@ public class PlaylistStoreConfig {
 		}
 	}
 
-	private void verifyPlaylists(Properties properties) {
+	private void readAlbumGroups(Properties properties) {
 		for (AlbumGroupExtended albumGroupExtended : DiscoveryBotUtils.defaultPlaylistGroupOrderReversed()) {
 			String key = albumGroupExtended.getGroupName();
 			String playlistId = properties.getProperty(key);
 			if (playlistId != null && !playlistId.isBlank()) {
-				try {
-					SpotifyCall.execute(spotifyApi.getPlaylist(playlistId));
-					enabledAlbumGroups.add(albumGroupExtended);
-				} catch (SpotifyApiException e) {
-					throw new IllegalStateException("Playlist ID for '" + albumGroupExtended.getGroupName() + "' is invalid");
-				}
+				enabledAlbumGroups.add(albumGroupExtended);
 			} else {
 				disabledAlbumGroups.add(albumGroupExtended);
 			}
@@ -118,6 +149,174 @@ public class PlaylistStoreConfig {
 		return playlistStoreMap;
 	}
 
+	/**
+	 * Verify the playlists of all enabled album groups against the Spotify API, in
+	 * parallel. This loads their local mirrors at the same time, so later reads of
+	 * their details don't send any further requests. Any album group whose
+	 * playlist doesn't exist (or whose playlist ID is invalid) is disabled. Other
+	 * errors are retried, and if the playlist still can't be verified, its album
+	 * group stays enabled.
+	 */
+	public void verifyPlaylists() {
+		Map<AlbumGroupExtended, String> playlistIds = new LinkedHashMap<>();
+		for (AlbumGroupExtended albumGroupExtended : enabledAlbumGroups) {
+			playlistIds.put(albumGroupExtended, playlistStoreMap.get(albumGroupExtended).getPlaylistId());
+		}
+		Map<AlbumGroupExtended, Verification> verifications = verifyAll(playlistIds, playlistMirrorService::getPlaylist, spotifyOptimizedExecutorService::executeAndWaitVoid);
+
+		List<AlbumGroupExtended> missingAlbumGroups = albumGroupsVerifiedAs(verifications, Verification.MISSING);
+		if (!missingAlbumGroups.isEmpty()) {
+			enabledAlbumGroups.removeAll(missingAlbumGroups);
+			disabledAlbumGroups.addAll(missingAlbumGroups);
+			log.error("Disabled album groups (invalid playlist IDs set in " + PLAYLIST_STORE_FILENAME + "): " + missingAlbumGroups);
+		}
+		List<AlbumGroupExtended> unverifiedAlbumGroups = albumGroupsVerifiedAs(verifications, Verification.UNVERIFIED);
+		if (!unverifiedAlbumGroups.isEmpty()) {
+			log.warning("Failed to verify the playlists of these album groups, they stay enabled: " + unverifiedAlbumGroups);
+		}
+	}
+
+	/**
+	 * The outcome of verifying a playlist
+	 */
+	enum Verification {
+		/**
+		 * The playlist exists
+		 */
+		VALID,
+
+		/**
+		 * The playlist doesn't exist or its ID is invalid
+		 */
+		MISSING,
+
+		/**
+		 * The playlist couldn't be fetched for any other reason, even after retrying
+		 */
+		UNVERIFIED
+	}
+
+	/**
+	 * Verify the given playlists, each as its own task of the given executor
+	 *
+	 * @param playlistIds   the playlist IDs by album group
+	 * @param fetchPlaylist fetches a playlist by its ID
+	 * @param executor      runs the given tasks and waits for all of them
+	 * @return the verification of every album group
+	 */
+	static Map<AlbumGroupExtended, Verification> verifyAll(Map<AlbumGroupExtended, String> playlistIds, Consumer<String> fetchPlaylist, Consumer<List<Callable<Void>>> executor) {
+		Map<AlbumGroupExtended, Verification> verifications = new ConcurrentHashMap<>();
+		List<Callable<Void>> callables = new ArrayList<>();
+		for (Map.Entry<AlbumGroupExtended, String> entry : playlistIds.entrySet()) {
+			callables.add(() -> {
+				verifications.put(entry.getKey(), verify(entry.getValue(), fetchPlaylist));
+				return null; // must return something for Void class
+			});
+		}
+		executor.accept(callables);
+		return verifications;
+	}
+
+	/**
+	 * Fetch the given playlist, retrying on any error other than a missing
+	 * playlist or an invalid playlist ID
+	 */
+	static Verification verify(String playlistId, Consumer<String> fetchPlaylist) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				fetchPlaylist.accept(playlistId);
+				return Verification.VALID;
+			} catch (SpotifyApiException e) {
+				if (e.getCause() instanceof NotFoundException || e.getCause() instanceof BadRequestException) {
+					return Verification.MISSING;
+				}
+				if (attempt >= PLAYLIST_VERIFICATION_ATTEMPTS) {
+					return Verification.UNVERIFIED;
+				}
+			}
+		}
+	}
+
+	private static List<AlbumGroupExtended> albumGroupsVerifiedAs(Map<AlbumGroupExtended, Verification> verifications, Verification verification) {
+		return verifications.entrySet().stream()
+				.filter(entry -> entry.getValue() == verification)
+				.map(Map.Entry::getKey)
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Restore the last update and the recently added songs of every playlist store
+	 * from the playlist-state.properties, as long as its playlist hasn't been
+	 * changed in the playlist.properties since
+	 */
+	private void restorePlaylistState() {
+		File stateFile = new File(PLAYLIST_STATE_FILENAME);
+		if (stateFile.exists()) {
+			try (FileReader reader = new FileReader(stateFile)) {
+				Properties state = new Properties();
+				state.load(reader);
+				restoredAlbumGroups.addAll(restoreState(state, playlistStoreMap.values()));
+			} catch (IOException | DateTimeParseException e) {
+				log.warning("Failed to read " + PLAYLIST_STATE_FILENAME + ", the playlist state is restored from the playlists instead");
+			}
+		}
+	}
+
+	/**
+	 * Write the last update and the recently added songs of every playlist store
+	 * to the playlist-state.properties
+	 */
+	public synchronized void storePlaylistState() {
+		Properties state = toState(playlistStoreMap.values());
+		try (FileOutputStream outputStream = new FileOutputStream(PLAYLIST_STATE_FILENAME)) {
+			state.store(outputStream, null);
+		} catch (IOException e) {
+			log.warning("Failed to write " + PLAYLIST_STATE_FILENAME);
+		}
+	}
+
+	/**
+	 * Returns the state of the given playlist stores as properties
+	 */
+	static Properties toState(Collection<PlaylistStore> playlistStores) {
+		Properties state = new Properties();
+		for (PlaylistStore playlistStore : playlistStores) {
+			if (playlistStore.getPlaylistId() != null) {
+				String key = playlistStore.getAlbumGroupExtended().getGroupName();
+				LocalDateTime lastUpdate = playlistStore.getLastUpdate();
+				state.setProperty(key + STATE_PLAYLIST_ID_SUFFIX, playlistStore.getPlaylistId());
+				state.setProperty(key + STATE_LAST_UPDATE_SUFFIX, lastUpdate != null ? lastUpdate.toString() : "");
+				state.setProperty(key + STATE_NEW_TRACKS_SUFFIX, String.join(STATE_TRACK_SEPARATOR, playlistStore.getRecentlyAddedTrackIds()));
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Restore the given state into those of the given playlist stores that still
+	 * point to the same playlist
+	 *
+	 * @return the album groups of the restored playlist stores
+	 * @throws DateTimeParseException if a last update is malformed
+	 */
+	static Set<AlbumGroupExtended> restoreState(Properties state, Collection<PlaylistStore> playlistStores) {
+		Set<AlbumGroupExtended> restoredAlbumGroups = new HashSet<>();
+		for (PlaylistStore playlistStore : playlistStores) {
+			String key = playlistStore.getAlbumGroupExtended().getGroupName();
+			if (playlistStore.getPlaylistId() != null && playlistStore.getPlaylistId().equals(state.getProperty(key + STATE_PLAYLIST_ID_SUFFIX))) {
+				String lastUpdate = state.getProperty(key + STATE_LAST_UPDATE_SUFFIX, "");
+				playlistStore.setLastUpdate(!lastUpdate.isBlank() ? LocalDateTime.parse(lastUpdate) : null);
+				String newTracks = state.getProperty(key + STATE_NEW_TRACKS_SUFFIX, "");
+				if (!newTracks.isBlank()) {
+					playlistStore.getRecentlyAddedTrackIds().addAll(List.of(newTracks.split(STATE_TRACK_SEPARATOR)));
+				}
+				restoredAlbumGroups.add(playlistStore.getAlbumGroupExtended());
+			}
+		}
+		return restoredAlbumGroups;
+	}
+
 	/////////////////////////
 	// PLAYLIST STORE READERS
 
@@ -173,11 +372,48 @@ public class PlaylistStoreConfig {
 		return disabledAlbumGroups;
 	}
 
+	/**
+	 * Returns true if the state of the given album group's playlist store was
+	 * restored from the playlist-state.properties at startup
+	 */
+	public boolean isPlaylistStateRestored(AlbumGroupExtended albumGroupExtended) {
+		return restoredAlbumGroups.contains(albumGroupExtended);
+	}
+
+	/**
+	 * Replace the playlist of the given playlist store with a newly created, empty
+	 * one and link it in the playlist.properties. The previous playlist remains
+	 * untouched as archive.
+	 *
+	 * @param playlistStore the playlist store to roll over
+	 * @param playlistName  the name of the new playlist
+	 * @return the ID of the new playlist
+	 */
+	public synchronized String rolloverPlaylistStore(PlaylistStore playlistStore, String playlistName) throws SpotifyApiException {
+		Playlist newPlaylist = SpotifyCall.execute(spotifyApi.createPlaylist(cachedUserService.getUserId(), playlistName));
+		playlistStore.setPlaylistId(newPlaylist.getId());
+		try {
+			Properties properties = new Properties();
+			try (FileReader reader = new FileReader(PLAYLIST_STORE_FILENAME)) {
+				properties.load(reader);
+			}
+			properties.setProperty(playlistStore.getAlbumGroupExtended().getGroupName(), newPlaylist.getId());
+			try (FileOutputStream outputStream = new FileOutputStream(PLAYLIST_STORE_FILENAME)) {
+				properties.store(outputStream, null);
+			}
+		} catch (IOException e) {
+			log.warning("Failed to link the new playlist for '" + playlistStore.getAlbumGroupExtended().getGroupName() + "' in " + PLAYLIST_STORE_FILENAME
+				+ ", please set it manually: " + newPlaylist.getId());
+		}
+		return newPlaylist.getId();
+	}
+
 	/**
 	 * Set the playlist store for this album group to be last updated just now
 	 */
 	public void setPlaylistStoreUpdatedJustNow(AlbumGroupExtended albumGroup) {
 		playlistStoreMap.get(albumGroup).setLastUpdate(LocalDateTime.now());
+		storePlaylistState();
 	}
 
 	/**
@@ -185,17 +421,19 @@ public class PlaylistStoreConfig {
 	 */
 	public void unsetPlaylistStoreUpdatedRecently(AlbumGroupExtended albumGroup) {
 		playlistStoreMap.get(albumGroup).setLastUpdate(null);
+		storePlaylistState();
 	}
 
 	public static class PlaylistStore implements Comparable<PlaylistStore> {
 		private final AlbumGroupExtended albumGroupExtended;
-		private final String playlistId;
-
+		private final Set<String> recentlyAddedTrackIds;
+		private volatile String playlistId;
 		private LocalDateTime lastUpdate;
 
 		public PlaylistStore(AlbumGroupExtended albumGroupExtended, String playlistId) {
 			this.albumGroupExtended = albumGroupExtended;
 			this.playlistId = playlistId;
+			this.recentlyAddedTrackIds = ConcurrentHashMap.newKeySet();
 		}
 
 		/////////////
@@ -212,8 +450,24 @@ public class PlaylistStoreConfig {
 			return lastUpdate;
 		}
 
+		/**
+		 * Returns the (modifiable) IDs of the songs added since the [NEW] notifier
+		 * was last cleared
+		 */
+		public Set<String> getRecentlyAddedTrackIds() {
+			return recentlyAddedTrackIds;
+		}
+
 		/////////////
 
+		/**
+		 * Replace the playlist of this store (after a rollover). The ID is read by
+		 * other threads as well, such as the parallel playlist writes.
+		 */
+		public void setPlaylistId(String playlistId) {
+			this.playlistId = playlistId;
+		}
+
 		public void setLastUpdate(LocalDateTime lastUpdate) {
 			this.lastUpdate = lastUpdate;
 		}
@@ -0,0 +1,176 @@
+package spotify.bot.config.properties;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.springframework.context.annotation.Configuration;
+
+import spotify.bot.config.database.CacheBackend;
+import spotify.bot.util.DiscoveryBotUtils;
+
+/**
+ * General bot settings read from <code>settings.properties</code>. Every
+ * setting is optional and falls back to a sensible default if it's missing (or
+ * if the file doesn't exist at all).
+ */
+@Configuration
+public class SettingsConfig {
+	private final static String SETTINGS_FILENAME = DiscoveryBotUtils.BASE_CONFIG_PATH + "settings.properties";
+
+	private final static String PROP_CACHE_RETENTION_DAYS = "CACHE_RETENTION_DAYS";
+	private final static int DEFAULT_CACHE_RETENTION_DAYS = 365;
+
+	private final static String PROP_FILTER_STAGE_ORDER = "FILTER_STAGE_ORDER";
+
+	private final static String PROP_PARALLEL_FILTER_THRESHOLD = "PARALLEL_FILTER_THRESHOLD";
+	private final static int DEFAULT_PARALLEL_FILTER_THRESHOLD = 0;
+
+	private final static String PROP_CACHE_BACKEND = "CACHE_BACKEND";
+	private final static CacheBackend DEFAULT_CACHE_BACKEND = CacheBackend.SQLITE;
+
+	private final static String PROP_PLAYLIST_ROLLOVER_THRESHOLD = "PLAYLIST_ROLLOVER_THRESHOLD";
+	private final static int DEFAULT_PLAYLIST_ROLLOVER_THRESHOLD = 0;
+
+	private final static String PROP_ADDED_TRACK_POLICY = "ADDED_TRACK_POLICY";
+	private final static AddedTrackPolicy DEFAULT_ADDED_TRACK_POLICY = AddedTrackPolicy.KEEP;
+
+	private final static String PROP_ADDITION_COALESCING_SECONDS = "ADDITION_COALESCING_SECONDS";
+	private final static int DEFAULT_ADDITION_COALESCING_SECONDS = 0;
+
+	private final Properties properties;
+
+	SettingsConfig() {
+		this.properties = getSettingsFromPropertiesFile();
+	}
+
+	private Properties getSettingsFromPropertiesFile() {
+		Properties properties = new Properties();
+		try {
+			File propertiesFile = new File(SETTINGS_FILENAME);
+			if (propertiesFile.canRead()) {
+				try (FileReader reader = new FileReader(propertiesFile)) {
+					properties.load(reader);
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read " + SETTINGS_FILENAME + ". Using default settings!");
+		}
+		return properties;
+	}
+
+	/**
+	 * Returns the setting for the given key as integer or the given default value
+	 * if it isn't set (or isn't a valid number)
+	 */
+	private int getInt(String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value != null && !value.isBlank()) {
+			try {
+				return Integer.parseInt(value.strip());
+			} catch (NumberFormatException e) {
+				System.out.println("Invalid number for " + key + " in " + SETTINGS_FILENAME + ": " + value);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Returns the setting for the given key as constant of the given enum or the
+	 * given default value if it isn't set (or isn't a valid constant)
+	 */
+	private <E extends Enum<E>> E getEnum(String key, Class<E> enumClass, E defaultValue) {
+		String value = properties.getProperty(key);
+		if (value != null && !value.isBlank()) {
+			try {
+				return Enum.valueOf(enumClass, value.strip().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.out.println("Invalid value for " + key + " in " + SETTINGS_FILENAME + ": " + value);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Returns the setting for the given key as comma-separated list of lowercase
+	 * values or an empty list if it isn't set
+	 */
+	private List<String> getList(String key) {
+		String value = properties.getProperty(key);
+		if (value != null && !value.isBlank()) {
+			return Arrays.stream(value.split(","))
+				.map(String::strip)
+				.map(String::toLowerCase)
+				.filter(s -> !s.isEmpty())
+				.collect(Collectors.toList());
+		}
+		return List.of();
+	}
+
+	/////////////////////////
+	// SETTINGS
+
+	/**
+	 * Returns the number of days a cached release ID is kept at the very least.
+	 * Only releases that are no longer visible on any followed artist are pruned
+	 * after this period (their name stays cached for re-release detection).
+	 */
+	public int getCacheRetentionDays() {
+		return getInt(PROP_CACHE_RETENTION_DAYS, DEFAULT_CACHE_RETENTION_DAYS);
+	}
+
+	/**
+	 * Returns the custom order of the release filter stages, or an empty list to
+	 * use the default order
+	 */
+	public List<String> getFilterStageOrder() {
+		return getList(PROP_FILTER_STAGE_ORDER);
+	}
+
+	/**
+	 * Returns the number of releases from which on the CPU-bound filter and remap
+	 * steps are run in parallel (e.g. when seeding many newly followed artists), or
+	 * 0 to always run them sequentially
+	 */
+	public int getParallelFilterThreshold() {
+		return getInt(PROP_PARALLEL_FILTER_THRESHOLD, DEFAULT_PARALLEL_FILTER_THRESHOLD);
+	}
+
+	/**
+	 * Returns the storage backend of the cache. To switch the backend of an
+	 * existing cache, migrate it first (see <code>/migratecache</code>).
+	 */
+	public CacheBackend getCacheBackend() {
+		return getEnum(PROP_CACHE_BACKEND, CacheBackend.class, DEFAULT_CACHE_BACKEND);
+	}
+
+	/**
+	 * Returns the number of songs from which on a target playlist is archived and
+	 * replaced by a fresh one, instead of deleting its oldest songs to stay below
+	 * the playlist size limit. 0 (the default) disables the rollover.
+	 */
+	public int getPlaylistRolloverThreshold() {
+		return getInt(PROP_PLAYLIST_ROLLOVER_THRESHOLD, DEFAULT_PLAYLIST_ROLLOVER_THRESHOLD);
+	}
+
+	/**
+	 * Returns how new releases are treated whose tracks have already been added
+	 * before (by track ID or ISRC)
+	 */
+	public AddedTrackPolicy getAddedTrackPolicy() {
+		return getEnum(PROP_ADDED_TRACK_POLICY, AddedTrackPolicy.class, DEFAULT_ADDED_TRACK_POLICY);
+	}
+
+	/**
+	 * Returns for how many seconds new songs are held back before being written to
+	 * a playlist, so that the additions of several crawls in quick succession are
+	 * written together. 0 (the default) writes them right after every crawl.
+	 */
+	public int getAdditionCoalescingSeconds() {
+		return getInt(PROP_ADDITION_COALESCING_SECONDS, DEFAULT_ADDITION_COALESCING_SECONDS);
+	}
+}
@@ -8,49 +8,78 @@ import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
 import se.michaelthelin.spotify.enums.AlbumGroup;
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
-import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import spotify.bot.config.DeveloperMode;
 import spotify.bot.config.database.DatabaseService;
 import spotify.bot.config.properties.BlacklistConfig;
-import spotify.bot.config.properties.PlaylistStoreConfig;
+import spotify.bot.config.properties.KeywordConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.config.properties.SettingsConfig;
+import spotify.bot.filter.pipeline.ReleaseFilter;
+import spotify.bot.filter.pipeline.ReleaseFilterPipeline;
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.service.performance.ReleaseTitleIndexService;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.ArtistIndex;
+import spotify.bot.util.data.BlacklistRules;
+import spotify.bot.util.data.KeywordAutomaton;
+import spotify.bot.util.data.TitleTag;
+import spotify.bot.util.data.TrackSignatureIndex;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Service
 public class FilterService {
-	private final static String VARIOUS_ARTISTS = "Various Artists";
+	// Release filter stages (in their default order)
+	public final static String STAGE_NON_CACHED = "non_cached";
+	public final static String STAGE_FUTURE = "future";
+	public final static String STAGE_DUPLICATES = "duplicates";
+	public final static String STAGE_TOO_OLD = "too_old";
+	private final static List<String> DEFAULT_STAGE_ORDER = List.of(STAGE_NON_CACHED, STAGE_FUTURE, STAGE_DUPLICATES, STAGE_TOO_OLD);
+
+	// Every release that passed these stages gets cached, so they have to come first
+	private final static Set<String> CACHE_STAGES = Set.of(STAGE_NON_CACHED, STAGE_FUTURE);
 
 	private final DiscoveryBotLogger log;
 	private final DatabaseService databaseService;
-	private final PlaylistStoreConfig playlistStoreConfig;
 	private final BlacklistConfig blacklistConfig;
+	private final KeywordConfig keywordConfig;
+	private final ReleaseTitleIndexService releaseTitleIndexService;
+	private final SettingsConfig settingsConfig;
+	private final ParallelFilterExecutor parallelFilterExecutor;
 
 	FilterService(DiscoveryBotLogger discoveryBotLogger,
 			DatabaseService databaseService,
-			PlaylistStoreConfig playlistStoreConfig,
-			BlacklistConfig blacklistConfig) {
+			BlacklistConfig blacklistConfig,
+			KeywordConfig keywordConfig,
+			ReleaseTitleIndexService releaseTitleIndexService,
+			SettingsConfig settingsConfig,
+			ParallelFilterExecutor parallelFilterExecutor) {
 		this.log = discoveryBotLogger;
 		this.databaseService = databaseService;
-		this.playlistStoreConfig = playlistStoreConfig;
 		this.blacklistConfig = blacklistConfig;
+		this.keywordConfig = keywordConfig;
+		this.releaseTitleIndexService = releaseTitleIndexService;
+		this.settingsConfig = settingsConfig;
+		this.parallelFilterExecutor = parallelFilterExecutor;
 	}
 
 	private final static DateTimeFormatter RELEASE_DATE_PARSER = new DateTimeFormatterBuilder()
@@ -58,6 +87,51 @@ public class FilterService {
 		.parseDefaulting(ChronoField.DAY_OF_MONTH, 1).parseDefaulting(ChronoField.MONTH_OF_YEAR, 1)
 		.toFormatter();
 
+	///////////////////
+	// FILTER PIPELINE
+
+	/**
+	 * Create the pipeline of release filter stages in the order configured by the
+	 * <code>FILTER_STAGE_ORDER</code> setting. Once all cache-relevant stages have
+	 * run, the survivors are handed to the given consumer (these are the releases
+	 * to cache after the crawl) and then to the given transformation.
+	 *
+	 * @param albumsToCacheConsumer the consumer of the releases to be cached
+	 * @param postCacheTransformation a transformation to apply right after the cache stages
+	 * @return the pipeline
+	 */
+	public ReleaseFilterPipeline createReleaseFilterPipeline(Consumer<List<AlbumSimplified>> albumsToCacheConsumer, ReleaseFilter.Batch postCacheTransformation) {
+		Map<String, ReleaseFilter> stages = Map.of(
+			STAGE_NON_CACHED, ReleaseFilter.batch(STAGE_NON_CACHED, null, this::getNonCachedAlbums),
+			STAGE_FUTURE, ReleaseFilter.stateless(STAGE_FUTURE, null, this::isNotInTheFuture),
+			STAGE_DUPLICATES, ReleaseFilter.streaming(STAGE_DUPLICATES, "Dropped %d duplicate[s] released at the same time:", this::newDuplicateFilter),
+			STAGE_TOO_OLD, ReleaseFilter.stateless(STAGE_TOO_OLD, "Dropped %d non-cached but too-old release[s]:", this::isNewAlbum));
+
+		List<String> stageOrder = settingsConfig.getFilterStageOrder();
+		if (stageOrder.isEmpty()) {
+			stageOrder = DEFAULT_STAGE_ORDER;
+		} else if (!isValidStageOrder(stageOrder)) {
+			log.warning(String.format("Invalid FILTER_STAGE_ORDER %s (every stage of %s is required exactly once, starting with %s). Using the default order!",
+				stageOrder, DEFAULT_STAGE_ORDER, CACHE_STAGES), false);
+			stageOrder = DEFAULT_STAGE_ORDER;
+		}
+
+		ReleaseFilterPipeline.Builder builder = ReleaseFilterPipeline.builder(log, parallelFilterExecutor);
+		for (int i = 0; i < stageOrder.size(); i++) {
+			builder.then(stages.get(stageOrder.get(i)));
+			if (i == CACHE_STAGES.size() - 1) {
+				builder.checkpoint(albumsToCacheConsumer).then(postCacheTransformation);
+			}
+		}
+		return builder.build();
+	}
+
+	private boolean isValidStageOrder(List<String> stageOrder) {
+		return stageOrder.size() == DEFAULT_STAGE_ORDER.size()
+			&& stageOrder.containsAll(DEFAULT_STAGE_ORDER)
+			&& CACHE_STAGES.containsAll(stageOrder.subList(0, CACHE_STAGES.size()));
+	}
+
 	///////////////////
 	// FILTER BY CACHED
 
@@ -85,7 +159,7 @@ public class FilterService {
 			}
 		}
 
-		Set<String> albumCache = new HashSet<>(databaseService.getReleasesIdsCache());
+		Set<String> albumCache = databaseService.getCachedReleaseIds(filteredAlbums.keySet());
 		return filteredAlbums.values().stream()
 			.filter(a -> !albumCache.contains(a.getId()))
 			.collect(Collectors.toList());
@@ -131,12 +205,12 @@ public class FilterService {
 	// CACHED ALBUM NAMES
 
 	/**
-	 * Cache the given album names in the database
+	 * Cache the given album names (and their normalized titles) in the database
 	 */
 	public void cacheAlbumNames(List<AlbumSimplified> albums) {
 		if (!DeveloperMode.isCacheDisabled()) {
 			if (!albums.isEmpty()) {
-				databaseService.cacheAlbumNames(albums);
+				releaseTitleIndexService.cacheReleases(albums);
 			}
 		}
 	}
@@ -144,23 +218,12 @@ public class FilterService {
 	/////////////////////////
 	// FILTER FUTURE RELEASES
 
-	/**
-	 * Remove all albums that are going to be released in the future. This is
-	 * required because the Spotify sometimes returns (unavailable) releases that
-	 * aren't going to be unlocked for at least another day. This filter is mostly
-	 * for convenience, as a result.
-	 * 
-	 * @param albums the albums to filter
-	 * @return the albums without releases that had a release date after today
-	 */
-	public List<AlbumSimplified> filterFutureAlbums(List<AlbumSimplified> albums) {
-		return albums.stream()
-			.filter(this::isNotInTheFuture)
-			.collect(Collectors.toList());
-	}
-	
 	/**
 	 * Return true if this album's release date is either today or before today.
+	 * Albums that are going to be released in the future are removed, because
+	 * Spotify sometimes returns (unavailable) releases that aren't going to be
+	 * unlocked for at least another day. This filter is mostly for convenience, as
+	 * a result.
 	 * 
 	 * @param album the album
 	 * @return true if it isn't in the future
@@ -195,34 +258,68 @@ public class FilterService {
 	}
 
 	/**
-	 * Filter duplicate albums with an identical or very similar name released during the current crawl session
+	 * Create a filter for duplicate albums with an identical or very similar name
+	 * released during the current crawl session (only the first one is kept)
 	 */
-	public List<AlbumSimplified> filterDuplicatedAlbumsReleasedSimultaneously(List<AlbumSimplified> unfilteredAlbums) {
-		Map<String, AlbumSimplified> uniqueMap = new HashMap<>();
-		for (AlbumSimplified as : unfilteredAlbums) {
-			String identifier = SpotifyUtils.albumIdentifierString(as);
-			if (!uniqueMap.containsKey(identifier)) {
-				uniqueMap.put(identifier, as);
+	private Predicate<AlbumSimplified> newDuplicateFilter() {
+		Set<String> seenIdentifiers = new HashSet<>();
+		return as -> seenIdentifiers.add(SpotifyUtils.albumIdentifierString(as));
+	}
+	
+	/**
+	 * Remove near-duplicate releases of the current crawl session by comparing
+	 * their track lists (see {@link TrackSignatureIndex}). This catches the
+	 * explicit/clean pairs and regional variants that the name-based duplicate
+	 * filter lets through, as long as they were released around the same time. Of
+	 * every group of variants, the first one is kept, unless a later one is the
+	 * better variant.
+	 */
+	public List<AlbumTrackPair> filterNearDuplicateReleases(List<AlbumTrackPair> releases) {
+		TrackSignatureIndex trackSignatureIndex = new TrackSignatureIndex();
+		List<AlbumTrackPair> kept = new ArrayList<>();
+		List<Integer> keptPositionBySignature = new ArrayList<>();
+		for (AlbumTrackPair atp : releases) {
+			int duplicateOf = trackSignatureIndex.findOrAdd(atp);
+			if (duplicateOf == TrackSignatureIndex.NEW) {
+				if (!atp.getTracks().isEmpty()) {
+					keptPositionBySignature.add(kept.size());
+				}
+				kept.add(atp);
+			} else {
+				int position = keptPositionBySignature.get(duplicateOf);
+				if (isBetterVariant(atp, kept.get(position))) {
+					kept.set(position, atp);
+				}
 			}
 		}
-		Collection<AlbumSimplified> leftoverAlbums = uniqueMap.values();
-		log.printDroppedAlbumDifference(unfilteredAlbums, leftoverAlbums,
-			String.format("Dropped %d duplicate[s] released at the same time:", unfilteredAlbums.size() - leftoverAlbums.size()));
-		return new ArrayList<>(leftoverAlbums);
+		if (kept.size() < releases.size()) {
+			log.printDroppedAlbumTrackPairDifference(releases, kept, String.format("Dropped %d near-duplicate release[s] (released within %d days of the kept variant):",
+				releases.size() - kept.size(), TrackSignatureIndex.MAX_RELEASE_DATE_DIFFERENCE_DAYS));
+		}
+		return kept;
 	}
-	
+
+	/**
+	 * A variant is better if it has a superior album group or, for the same album
+	 * group, if it's the explicit (i.e. original) version of a clean one
+	 */
+	private boolean isBetterVariant(AlbumTrackPair variant, AlbumTrackPair kept) {
+		if (superiorAlbumGroup(variant.getAlbum(), kept.getAlbum())) {
+			return true;
+		}
+		return Objects.equals(variant.getAlbum().getAlbumGroup(), kept.getAlbum().getAlbumGroup()) && isExplicit(variant) && !isExplicit(kept);
+	}
+
+	private static boolean isExplicit(AlbumTrackPair atp) {
+		return atp.getTracks().stream().anyMatch(t -> Boolean.TRUE.equals(t.getIsExplicit()));
+	}
+
 	/**
 	 * Filter out all releases not released within the lookbackDays range. If
 	 * rerelease remapping is enabled, this will only be applied to non-albums
 	 */
-	public List<AlbumSimplified> filterNewAlbumsOnly(List<AlbumSimplified> unfilteredReleases) {
-		List<AlbumSimplified> filteredReleases = unfilteredReleases.stream()
-			.filter(release -> (AlbumGroup.ALBUM.equals(release.getAlbumGroup()))
-				|| isValidDate(release))
-			.collect(Collectors.toList());
-		log.printDroppedAlbumDifference(unfilteredReleases, filteredReleases,
-			String.format("Dropped %d non-cached but too-old release[s]:", unfilteredReleases.size() - filteredReleases.size()));
-		return filteredReleases;
+	private boolean isNewAlbum(AlbumSimplified release) {
+		return AlbumGroup.ALBUM.equals(release.getAlbumGroup()) || isValidDate(release);
 	}
 
 	/**
@@ -239,38 +336,64 @@ public class FilterService {
 		}
 	}
 
+	//////////////////////////////////
+	// FILTER BY ALBUM METADATA
+
+	/**
+	 * Remove every release that is going to be dropped anyway, before any of its
+	 * tracks are fetched. Only checks that need nothing but the album metadata are
+	 * applied: compilation and sampler appearances, as well as releases that can't
+	 * end up in any enabled playlist, or only in ones they are blacklisted for (by
+	 * artist or title). The final blacklist check still happens after remapping.
+	 *
+	 * @param albums          the releases
+	 * @param artistIndex     the followed artists of this crawl
+	 * @param targetGroupsFor the possible (enabled) target groups of an album group
+	 * @return the releases worth fetching the tracks of
+	 */
+	public List<AlbumSimplified> filterByAlbumMetadata(List<AlbumSimplified> albums, ArtistIndex artistIndex, Function<AlbumGroup, List<AlbumGroupExtended>> targetGroupsFor) {
+		BlacklistRules blacklistRules = blacklistConfig.getBlacklistRules();
+		Map<AlbumGroup, List<AlbumGroupExtended>> targetGroupsByAlbumGroup = new HashMap<>();
+		List<AlbumSimplified> collectionsOrSamplers = new ArrayList<>();
+		List<AlbumSimplified> withoutTargetPlaylist = new ArrayList<>();
+		List<AlbumSimplified> relevantAlbums = new ArrayList<>();
+		for (AlbumSimplified album : albums) {
+			AlbumGroup albumGroup = album.getAlbumGroup();
+			List<AlbumGroupExtended> targetGroups = albumGroup != null
+				? targetGroupsByAlbumGroup.computeIfAbsent(albumGroup, targetGroupsFor)
+				: List.of();
+			if (AlbumGroup.APPEARS_ON.equals(albumGroup) && isCollectionOrSampler(album)) {
+				collectionsOrSamplers.add(album);
+			} else if (targetGroups.stream().allMatch(g -> artistIndex.anyBlacklisted(album.getArtists(), g) || blacklistRules.matchesTitle(album, g))) {
+				withoutTargetPlaylist.add(album);
+			} else {
+				relevantAlbums.add(album);
+			}
+		}
+		log.printDroppedAlbums(collectionsOrSamplers, String.format("Dropped %d APPEARS_ON compilation[s] or sampler[s]:", collectionsOrSamplers.size()));
+		log.printDroppedAlbums(withoutTargetPlaylist, String.format("Dropped %d release[s] without an enabled, non-blacklisted target playlist:", withoutTargetPlaylist.size()));
+		return relevantAlbums;
+	}
+
 	////////////////////////////////
 	// INTELLIGENT APPEARS_ON_SEARCH
 
 	/**
 	 * Find all releases marked as "appears_on" by the given list of artists, but
 	 * filter the result such that only songs of artists you follow are preserved.
-	 * Also filter out any compilation appearances.
+	 * (Compilation appearances have already been removed by
+	 * {@link FilterService#filterByAlbumMetadata} before fetching the tracks.)
 	 */
-	public Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnSearch(Map<AlbumGroup, List<AlbumTrackPair>> categorizedFilteredAlbums, List<String> followedArtists) {
+	public Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnSearch(Map<AlbumGroup, List<AlbumTrackPair>> categorizedFilteredAlbums, ArtistIndex artistIndex) {
 		List<AlbumTrackPair> unfilteredAppearsOnAlbums = categorizedFilteredAlbums.get(AlbumGroup.APPEARS_ON);
 		if (!unfilteredAppearsOnAlbums.isEmpty()) {
-			// Preprocess into HashSet to speed up contains() operations
-			Set<String> followedArtistsSet = new HashSet<>(followedArtists);
-
-			// Filter out any collection, samplers, or albums whose primary artist is
-			// already a followee
-			List<AlbumTrackPair> albumsWithoutCollectionsOrSamplers = unfilteredAppearsOnAlbums.stream()
-				.filter(atp -> !isCollectionOrSampler(atp.getAlbum()))
-				.collect(Collectors.toList());
-
-			// Of those, filter out the actual songs where a featured artist is a followee
-			List<AlbumTrackPair> filteredAppearsOnAlbums = new ArrayList<>();
-			for (AlbumTrackPair atp : albumsWithoutCollectionsOrSamplers) {
+			// Filter out the actual songs where a featured artist is a followee
+			List<AlbumTrackPair> filteredAppearsOnAlbums = new ArrayList<>(parallelFilterExecutor.map(unfilteredAppearsOnAlbums, atp -> {
 				List<TrackSimplified> selectedSongsOfAlbum = atp.getTracks().stream()
-					.filter(song -> containsFeaturedArtist(followedArtistsSet, song.getArtists()))
+					.filter(song -> artistIndex.anyFollowed(song.getArtists()))
 					.collect(Collectors.toList());
-				filteredAppearsOnAlbums.add(AlbumTrackPair.of(atp.getAlbum(), selectedSongsOfAlbum));
-			}
-
-			// Show log message
-			int droppedAppearsOnCount = unfilteredAppearsOnAlbums.size() - filteredAppearsOnAlbums.size();
-			log.printDroppedAlbumTrackPairDifference(unfilteredAppearsOnAlbums, filteredAppearsOnAlbums, String.format("Dropped %d APPEARS_ON release[s]:", droppedAppearsOnCount));
+				return AlbumTrackPair.of(atp.getAlbum(), selectedSongsOfAlbum);
+			}));
 
 			// Finalize
 			Map<AlbumGroup, List<AlbumTrackPair>> intelligentAppearsOnFilteredMap = new HashMap<>(categorizedFilteredAlbums);
@@ -282,45 +405,37 @@ public class FilterService {
 
 	/**
 	 * Returns true if the album group is set to Compilation or the artist is
-	 * "Various Artists"
+	 * "Various Artists" (or any other sampler placeholder keyword)
 	 */
 	private boolean isCollectionOrSampler(AlbumSimplified a) {
 		if (!a.getAlbumGroup().equals(AlbumGroupExtended.COMPILATION.asAlbumGroup())) {
-			return Arrays.stream(a.getArtists()).anyMatch(as -> as.getName().equals(VARIOUS_ARTISTS));
+			KeywordAutomaton keywordAutomaton = keywordConfig.getKeywordAutomaton();
+			return Arrays.stream(a.getArtists()).anyMatch(as -> keywordAutomaton.scan(as.getName()).isEntireTitle(TitleTag.VARIOUS_ARTISTS));
 		}
 		return true;
 	}
 
-	/**
-	 * Checks if at least a single artist of the subset is part of the given artist
-	 * superset
-	 */
-	private static boolean containsFeaturedArtist(Collection<String> artistSuperset, ArtistSimplified[] artistSubset) {
-		Set<String> artistSubsetIds = Arrays.stream(artistSubset).map(ArtistSimplified::getId).collect(Collectors.toSet());
-		return artistSuperset.stream().anyMatch(artistSubsetIds::contains);
-	}
-
 	////////////////////////////////
 	// BLACKLISTED RELEASE TYPES
 
-	public Map<PlaylistStore, List<AlbumTrackPair>> filterBlacklistedReleaseTypesForArtists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPS) {
+	/**
+	 * Remove all releases that are blacklisted for the album group of the playlist
+	 * they would be added to, either because of one of their artists or because of
+	 * their title (a single pass over all releases)
+	 */
+	public Map<PlaylistStore, List<AlbumTrackPair>> filterBlacklistedReleaseTypesForArtists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPS, ArtistIndex artistIndex) {
+		BlacklistRules blacklistRules = blacklistConfig.getBlacklistRules();
 		List<Entry<AlbumSimplified, AlbumGroupExtended>> allDroppedReleases = new ArrayList<>();
-		Map<String, List<AlbumGroupExtended>> blacklistMap = blacklistConfig.getBlacklistMap();
-		for (Entry<String, List<AlbumGroupExtended>> blacklistedPair : blacklistMap.entrySet()) {
-			for (AlbumGroupExtended albumGroupExtended : blacklistedPair.getValue()) {
-				PlaylistStore playlistStore = playlistStoreConfig.getPlaylistStore(albumGroupExtended);
-				if (songsByPS.containsKey(playlistStore) ) {
-					List<AlbumTrackPair> albumTrackPairsToRemove = new ArrayList<>();
-					List<AlbumTrackPair> list = songsByPS.get(playlistStore);
-					for (AlbumTrackPair atp : list) {
-						if (SpotifyUtils.anyArtistMatches(atp.getAlbum(), blacklistedPair.getKey())) {
-							albumTrackPairsToRemove.add(atp);
-							allDroppedReleases.add(Map.entry(atp.getAlbum(), albumGroupExtended));
-						}
-					}
-					list.removeAll(albumTrackPairsToRemove);
+		for (Entry<PlaylistStore, List<AlbumTrackPair>> entry : songsByPS.entrySet()) {
+			AlbumGroupExtended albumGroupExtended = entry.getKey().getAlbumGroupExtended();
+			entry.getValue().removeIf(atp -> {
+				AlbumSimplified album = atp.getAlbum();
+				if (artistIndex.anyBlacklisted(album.getArtists(), albumGroupExtended) || blacklistRules.matchesTitle(album, albumGroupExtended)) {
+					allDroppedReleases.add(Map.entry(atp.getAlbum(), albumGroupExtended));
+					return true;
 				}
-			}
+				return false;
+			});
 		}
 		if (!allDroppedReleases.isEmpty()) {
 			log.printDroppedAlbumsCustomGroup(allDroppedReleases, "Dropped " + allDroppedReleases.size() + " blacklisted release[s]:");
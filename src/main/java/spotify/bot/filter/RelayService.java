@@ -17,12 +17,12 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import spotify.bot.config.DeveloperMode;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.ArtistIndex;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
@@ -78,11 +78,22 @@ public class RelayService {
 		}
 	}
 
-	public void relayResults(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist) {
+	/**
+	 * Returns the artist IDs whose releases get relayed (empty if relaying is
+	 * disabled or no artists are whitelisted)
+	 */
+	public List<String> getWhitelistedArtistIds() {
+		if (active && whitelistedArtistIds != null) {
+			return whitelistedArtistIds;
+		}
+		return List.of();
+	}
+
+	public void relayResults(Map<PlaylistStore, List<AlbumTrackPair>> newTracksByTargetPlaylist, ArtistIndex artistIndex) {
 		if (active && !DeveloperMode.isRelayingDisabled()) {
 			newTracksByTargetPlaylist.values().stream()
 				.flatMap(Collection::stream)
-				.filter(this::isWhitelistedArtist)
+				.filter(atp -> artistIndex.anyWhitelisted(atp.getAlbum().getArtists()))
 				.filter(this::isWhitelistedAlbumGroup)
 				.forEach(this::relayFilteredResult);
 		}
@@ -99,16 +110,6 @@ public class RelayService {
 		restTemplate.exchange(relayUrl, HttpMethod.POST, entity, String.class);
 	}
 
-	private boolean isWhitelistedArtist(AlbumTrackPair atp) {
-		for (ArtistSimplified artist : atp.getAlbum().getArtists()) {
-			String id = artist.getId();
-			if (whitelistedArtistIds.contains(id)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
 	private boolean isWhitelistedAlbumGroup(AlbumTrackPair atp) {
 		return WHITELISTED_ALBUM_GROUPS.contains(AlbumGroupExtended.fromAlbumGroup(atp.getAlbum().getAlbumGroup()));
 	}
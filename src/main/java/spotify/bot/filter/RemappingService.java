@@ -1,9 +1,13 @@
 package spotify.bot.filter;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
@@ -11,12 +15,11 @@ import se.michaelthelin.spotify.enums.AlbumGroup;
 import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
-import spotify.bot.filter.remapper.EpRemapper;
-import spotify.bot.filter.remapper.LiveRemapper;
 import spotify.bot.filter.remapper.Remapper;
-import spotify.bot.filter.remapper.Remapper.Action;
-import spotify.bot.filter.remapper.RemixRemapper;
-import spotify.bot.filter.remapper.RereleaseRemapper;
+import spotify.bot.filter.remapper.RemapClassifier;
+import spotify.bot.filter.remapper.RemapClassifier.Classification;
+import spotify.bot.filter.remapper.ReleaseFeatureExtractor;
+import spotify.bot.service.performance.ParallelFilterExecutor;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.data.AlbumTrackPair;
@@ -24,26 +27,68 @@ import spotify.util.data.AlbumTrackPair;
 @Service
 public class RemappingService {
 	private final PlaylistStoreConfig playlistStoreConfig;
-	private final EpRemapper epRemapper;
-	private final RemixRemapper remixRemapper;
-	private final RereleaseRemapper rereleaseRemapper;
-	private final LiveRemapper liveRemapper;
+	private final List<Remapper> remappers;
+	private final ParallelFilterExecutor parallelFilterExecutor;
+	private final ReleaseFeatureExtractor releaseFeatureExtractor;
 	private final DiscoveryBotLogger log;
 
 	RemappingService(PlaylistStoreConfig playlistStoreConfig,
-			EpRemapper epRemapper,
-			RemixRemapper remixRemapper,
-			RereleaseRemapper rereleaseRemapper,
-			LiveRemapper liveRemapper,
+			List<Remapper> remappers,
+			ParallelFilterExecutor parallelFilterExecutor,
+			ReleaseFeatureExtractor releaseFeatureExtractor,
 			DiscoveryBotLogger discoveryBotLogger) {
 		this.playlistStoreConfig = playlistStoreConfig;
-		this.epRemapper = epRemapper;
-		this.remixRemapper = remixRemapper;
-		this.rereleaseRemapper = rereleaseRemapper;
-		this.liveRemapper = liveRemapper;
+		this.remappers = remappers.stream()
+			.sorted(Comparator.comparingInt(Remapper::getPrecedence)
+				.thenComparing(remapper -> remapper.getClass().getName()))
+			.collect(Collectors.toList());
+		this.parallelFilterExecutor = parallelFilterExecutor;
+		this.releaseFeatureExtractor = releaseFeatureExtractor;
 		this.log = discoveryBotLogger;
 	}
 
+	/**
+	 * Returns every enabled album group a release of the given album group might
+	 * end up in: its own one and those of the active remappers that accept it
+	 */
+	public List<AlbumGroupExtended> getPossibleTargetGroups(AlbumGroup albumGroup) {
+		List<AlbumGroupExtended> targetGroups = new ArrayList<>();
+		if (albumGroup != null) {
+			AlbumGroupExtended baseGroup = AlbumGroupExtended.fromAlbumGroup(albumGroup);
+			targetGroups.add(baseGroup);
+			for (Remapper remapper : remappers) {
+				if (isRemapTarget(remapper.getAlbumGroup()) && remapper.isAllowedAlbumGroup(baseGroup)) {
+					targetGroups.add(remapper.getAlbumGroup());
+				}
+			}
+			targetGroups.removeAll(playlistStoreConfig.getDisabledAlbumGroups());
+		}
+		return targetGroups;
+	}
+
+	/**
+	 * Returns true if the remapper of the given extended album group is active,
+	 * i.e. if a playlist has been set up for it
+	 */
+	public boolean isRemapTarget(AlbumGroupExtended albumGroupExtended) {
+		PlaylistStore ps = playlistStoreConfig.getPlaylistStore(albumGroupExtended);
+		return ps != null && ps.getPlaylistId() != null;
+	}
+
+	/**
+	 * Returns the album groups whose releases can end up in any enabled playlist
+	 * at all (the only ones worth fetching)
+	 */
+	public Set<AlbumGroup> getRelevantAlbumGroups() {
+		Set<AlbumGroup> relevantAlbumGroups = new HashSet<>();
+		for (AlbumGroup albumGroup : AlbumGroup.values()) {
+			if (!getPossibleTargetGroups(albumGroup).isEmpty()) {
+				relevantAlbumGroups.add(albumGroup);
+			}
+		}
+		return relevantAlbumGroups;
+	}
+
 	/**
 	 * Transform the given map of releases by album group to the true destination
 	 * playlist IDs.
@@ -67,66 +112,25 @@ public class RemappingService {
 
 	/**
 	 * Perform extended remapping for EPs, Live releases, and Remix released (these
-	 * options need to be user-configured).
+	 * options need to be user-configured). All remappers are evaluated in a single
+	 * pass, in the order of their precedence (by default Re-Release, Remix, Live,
+	 * EP).
 	 */
 	public Map<PlaylistStore, List<AlbumTrackPair>> remapIntoExtendedPlaylists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPS) {
-		// Copy map first to retain the input map (makes debugging easier)
-		Map<PlaylistStore, List<AlbumTrackPair>> regroupedMap = new HashMap<>(songsByPS);
-
-		rereleaseRemapper.refreshCachedReleaseNames();
-		remap(rereleaseRemapper, regroupedMap);
-		remap(remixRemapper, regroupedMap);
-		remap(liveRemapper, regroupedMap);
-		remap(epRemapper, regroupedMap);
-
-		// Remove entries with empty lists (makes debugging easier)
-		regroupedMap.entrySet().removeIf(e -> e.getValue().isEmpty());
-		return regroupedMap;
-	}
-
-	private void remap(Remapper remapper, Map<PlaylistStore, List<AlbumTrackPair>> baseTrackMap) {
-		AlbumGroupExtended age = remapper.getAlbumGroup();
-		PlaylistStore ps = playlistStoreConfig.getPlaylistStore(age);
-
-		if (ps != null && ps.getPlaylistId() != null) {
-			List<AlbumTrackPair> remappedReleases = new ArrayList<>();
-			List<AlbumTrackPair> erasedReleases = new ArrayList<>();
-
-			for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : baseTrackMap.entrySet()) {
-				if (remapper.isAllowedAlbumGroup(entry.getKey().getAlbumGroupExtended())) {
-					List<AlbumTrackPair> releases = entry.getValue();
-					List<AlbumTrackPair> remove = new ArrayList<>();
-
-					if (releases != null && !releases.isEmpty()) {
-						for (AlbumTrackPair atp : releases) {
-							Action remapAction = remapper.determineRemapAction(atp);
-							switch (remapAction) {
-								case NONE:
-									break;
-								case REMAP:
-									remappedReleases.add(atp);
-									remove.add(atp);
-									break;
-								case ERASE:
-									erasedReleases.add(atp);
-									remove.add(atp);
-									break;
-							}
-						}
-						if (!remove.isEmpty()) {
-							releases.removeAll(remove);
-						}
-					}
-				}
+		RemapClassifier.Builder classifierBuilder = RemapClassifier.builder(parallelFilterExecutor, releaseFeatureExtractor);
+		for (Remapper remapper : remappers) {
+			PlaylistStore ps = playlistStoreConfig.getPlaylistStore(remapper.getAlbumGroup());
+			if (ps != null && ps.getPlaylistId() != null) {
+				classifierBuilder.add(remapper, ps);
 			}
+		}
+		Classification classification = classifierBuilder.build().classify(songsByPS);
 
-			log.printDroppedAlbumTrackPairs(erasedReleases,
-				String.format("Dropped %d invalid release[s] during remapping:", erasedReleases.size()));
+		List<AlbumTrackPair> erasedReleases = classification.getErasedReleases();
+		log.printDroppedAlbumTrackPairs(erasedReleases,
+			String.format("Dropped %d invalid release[s] during remapping:", erasedReleases.size()));
 
-			if (!remappedReleases.isEmpty()) {
-				baseTrackMap.put(ps, remappedReleases);
-			}
-		}
+		return classification.getReleasesByPlaylistStore();
 	}
 
 	public Map<PlaylistStore, List<AlbumTrackPair>> removeDisabledPlaylistStores(Map<PlaylistStore, List<AlbumTrackPair>> songsByPS) {
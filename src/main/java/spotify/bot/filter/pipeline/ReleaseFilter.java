@@ -0,0 +1,124 @@
+package spotify.bot.filter.pipeline;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.api.SpotifyApiException;
+
+/**
+ * A single stage of the {@link ReleaseFilterPipeline}. Stages either need to
+ * see the entire list at once ({@link Batch}) or decide on one release at a
+ * time ({@link Streaming}); consecutive streaming stages are fused into a
+ * single pass over the releases.
+ */
+public interface ReleaseFilter {
+
+	/**
+	 * The name of this stage, as used in the <code>FILTER_STAGE_ORDER</code>
+	 * setting and the timing log
+	 */
+	String getName();
+
+	/**
+	 * The log message for the releases dropped by this stage, with a
+	 * <code>%d</code> placeholder for their count. Null to not log them at all.
+	 */
+	String getDropLogMessage();
+
+	/**
+	 * A stage that requires the entire list of releases at once (e.g. for a
+	 * single database lookup). It may also transform the releases.
+	 */
+	interface Batch extends ReleaseFilter {
+		List<AlbumSimplified> apply(List<AlbumSimplified> releases) throws SQLException, SpotifyApiException;
+	}
+
+	/**
+	 * A stage that decides on one release at a time. The predicate is created
+	 * anew for every pipeline run, so it may keep state across the releases of a
+	 * single run (e.g. the releases it has already seen).
+	 */
+	interface Streaming extends ReleaseFilter {
+		Predicate<AlbumSimplified> newPass();
+
+		/**
+		 * Returns true if the predicate doesn't keep any state and is safe to be
+		 * evaluated concurrently, in any order. Only those stages are run in
+		 * parallel for large inputs.
+		 */
+		default boolean isStateless() {
+			return false;
+		}
+	}
+
+	@FunctionalInterface
+	interface BatchFunction {
+		List<AlbumSimplified> apply(List<AlbumSimplified> releases) throws SQLException, SpotifyApiException;
+	}
+
+	/////////////////
+
+	/**
+	 * Create a stage that keeps every release matching the given predicate
+	 */
+	static Streaming stateless(String name, String dropLogMessage, Predicate<AlbumSimplified> predicate) {
+		return streaming(name, dropLogMessage, () -> predicate, true);
+	}
+
+	/**
+	 * Create a stage that keeps every release matching a predicate freshly created
+	 * for each run
+	 */
+	static Streaming streaming(String name, String dropLogMessage, Supplier<Predicate<AlbumSimplified>> predicateFactory) {
+		return streaming(name, dropLogMessage, predicateFactory, false);
+	}
+
+	private static Streaming streaming(String name, String dropLogMessage, Supplier<Predicate<AlbumSimplified>> predicateFactory, boolean stateless) {
+		return new Streaming() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public String getDropLogMessage() {
+				return dropLogMessage;
+			}
+
+			@Override
+			public Predicate<AlbumSimplified> newPass() {
+				return predicateFactory.get();
+			}
+
+			@Override
+			public boolean isStateless() {
+				return stateless;
+			}
+		};
+	}
+
+	/**
+	 * Create a stage that processes the entire list at once
+	 */
+	static Batch batch(String name, String dropLogMessage, BatchFunction function) {
+		return new Batch() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public String getDropLogMessage() {
+				return dropLogMessage;
+			}
+
+			@Override
+			public List<AlbumSimplified> apply(List<AlbumSimplified> releases) throws SQLException, SpotifyApiException {
+				return function.apply(releases);
+			}
+		};
+	}
+}
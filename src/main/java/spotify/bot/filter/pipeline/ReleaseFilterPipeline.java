@@ -0,0 +1,221 @@
+package spotify.bot.filter.pipeline;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.api.SpotifyApiException;
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * An ordered chain of {@link ReleaseFilter} stages. Consecutive streaming
+ * stages are fused into a single pass over the releases, so they neither
+ * allocate intermediate lists nor need a set difference to log what they
+ * dropped. The number of dropped releases is logged per stage after each run,
+ * along with the time taken by each batch stage and each fused pass (timing
+ * every predicate call on its own would cost more than most predicates
+ * themselves). For large inputs, the stateless stages of a fused
+ * pass are evaluated in parallel upfront, while the stateful ones still see the
+ * releases one by one in their original order.
+ */
+public class ReleaseFilterPipeline {
+	private final List<Segment> segments;
+	private final DiscoveryBotLogger log;
+
+	private ReleaseFilterPipeline(List<Segment> segments, DiscoveryBotLogger log) {
+		this.segments = segments;
+		this.log = log;
+	}
+
+	public static Builder builder(DiscoveryBotLogger log, ParallelFilterExecutor parallelFilterExecutor) {
+		return new Builder(log, parallelFilterExecutor);
+	}
+
+	/**
+	 * Run all stages on the given releases
+	 *
+	 * @return the releases that passed every stage
+	 */
+	public List<AlbumSimplified> run(List<AlbumSimplified> releases) throws SQLException, SpotifyApiException {
+		StringJoiner stageStats = new StringJoiner(" > ");
+		List<AlbumSimplified> current = releases;
+		for (Segment segment : segments) {
+			current = segment.run(current, stageStats);
+		}
+		log.debug("Release filter stages: " + stageStats, false);
+		return current;
+	}
+
+	/////////////////
+
+	public static class Builder {
+		private final DiscoveryBotLogger log;
+		private final ParallelFilterExecutor parallelFilterExecutor;
+		private final List<Segment> segments;
+		private List<ReleaseFilter.Streaming> pendingStreamingStages;
+
+		private Builder(DiscoveryBotLogger log, ParallelFilterExecutor parallelFilterExecutor) {
+			this.log = log;
+			this.parallelFilterExecutor = parallelFilterExecutor;
+			this.segments = new ArrayList<>();
+			this.pendingStreamingStages = new ArrayList<>();
+		}
+
+		/**
+		 * Append the given stage
+		 */
+		public Builder then(ReleaseFilter stage) {
+			if (stage instanceof ReleaseFilter.Streaming) {
+				pendingStreamingStages.add((ReleaseFilter.Streaming) stage);
+			} else if (stage instanceof ReleaseFilter.Batch) {
+				flushStreamingStages();
+				segments.add(new BatchSegment((ReleaseFilter.Batch) stage, log));
+			} else {
+				throw new IllegalArgumentException("Unknown release filter type: " + stage.getName());
+			}
+			return this;
+		}
+
+		/**
+		 * Hand the releases that passed all stages added so far to the given
+		 * consumer, before the run continues with the next stage
+		 */
+		public Builder checkpoint(Consumer<List<AlbumSimplified>> consumer) {
+			flushStreamingStages();
+			segments.add(new CheckpointSegment(consumer));
+			return this;
+		}
+
+		public ReleaseFilterPipeline build() {
+			flushStreamingStages();
+			return new ReleaseFilterPipeline(List.copyOf(segments), log);
+		}
+
+		private void flushStreamingStages() {
+			if (!pendingStreamingStages.isEmpty()) {
+				segments.add(new FusedSegment(pendingStreamingStages, parallelFilterExecutor, log));
+				pendingStreamingStages = new ArrayList<>();
+			}
+		}
+	}
+
+	/////////////////
+
+	private interface Segment {
+		List<AlbumSimplified> run(List<AlbumSimplified> releases, StringJoiner stageStats) throws SQLException, SpotifyApiException;
+	}
+
+	private static class BatchSegment implements Segment {
+		private final ReleaseFilter.Batch stage;
+		private final DiscoveryBotLogger log;
+
+		private BatchSegment(ReleaseFilter.Batch stage, DiscoveryBotLogger log) {
+			this.stage = stage;
+			this.log = log;
+		}
+
+		@Override
+		public List<AlbumSimplified> run(List<AlbumSimplified> releases, StringJoiner stageStats) throws SQLException, SpotifyApiException {
+			long start = System.nanoTime();
+			List<AlbumSimplified> survivors = stage.apply(releases);
+			long elapsed = System.nanoTime() - start;
+
+			int droppedCount = releases.size() - survivors.size();
+			if (stage.getDropLogMessage() != null && droppedCount > 0) {
+				log.printDroppedAlbumDifference(releases, survivors, String.format(stage.getDropLogMessage(), droppedCount));
+			}
+			stageStats.add(formatDroppedCount(stage.getName(), droppedCount) + " " + formatElapsed(elapsed));
+			return survivors;
+		}
+	}
+
+	private static class FusedSegment implements Segment {
+		private final List<ReleaseFilter.Streaming> stages;
+		private final ParallelFilterExecutor parallelFilterExecutor;
+		private final DiscoveryBotLogger log;
+
+		private FusedSegment(List<ReleaseFilter.Streaming> stages, ParallelFilterExecutor parallelFilterExecutor, DiscoveryBotLogger log) {
+			this.stages = List.copyOf(stages);
+			this.parallelFilterExecutor = parallelFilterExecutor;
+			this.log = log;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public List<AlbumSimplified> run(List<AlbumSimplified> releases, StringJoiner stageStats) {
+			int stageCount = stages.size();
+			Predicate<AlbumSimplified>[] predicates = new Predicate[stageCount];
+			List<AlbumSimplified>[] dropped = new List[stageCount];
+			int[] droppedCounts = new int[stageCount];
+			boolean[][] precomputed = new boolean[stageCount][];
+			boolean parallel = parallelFilterExecutor.isParallel(releases.size());
+			long start = System.nanoTime();
+			for (int i = 0; i < stageCount; i++) {
+				predicates[i] = stages.get(i).newPass();
+				if (stages.get(i).getDropLogMessage() != null) {
+					dropped[i] = new ArrayList<>();
+				}
+				if (parallel && stages.get(i).isStateless()) {
+					precomputed[i] = parallelFilterExecutor.test(releases, predicates[i]);
+				}
+			}
+
+			List<AlbumSimplified> survivors = new ArrayList<>(releases.size());
+			for (int r = 0; r < releases.size(); r++) {
+				AlbumSimplified release = releases.get(r);
+				boolean kept = true;
+				for (int i = 0; i < stageCount && kept; i++) {
+					kept = precomputed[i] != null ? precomputed[i][r] : predicates[i].test(release);
+					if (!kept) {
+						droppedCounts[i]++;
+						if (dropped[i] != null) {
+							dropped[i].add(release);
+						}
+					}
+				}
+				if (kept) {
+					survivors.add(release);
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+
+			StringJoiner fusedStageStats = new StringJoiner(", ", "[", "]");
+			for (int i = 0; i < stageCount; i++) {
+				ReleaseFilter.Streaming stage = stages.get(i);
+				if (dropped[i] != null) {
+					log.printDroppedAlbums(dropped[i], String.format(stage.getDropLogMessage(), droppedCounts[i]));
+				}
+				fusedStageStats.add(formatDroppedCount(stage.getName(), droppedCounts[i]));
+			}
+			stageStats.add(fusedStageStats + " " + formatElapsed(elapsed));
+			return survivors;
+		}
+	}
+
+	private static class CheckpointSegment implements Segment {
+		private final Consumer<List<AlbumSimplified>> consumer;
+
+		private CheckpointSegment(Consumer<List<AlbumSimplified>> consumer) {
+			this.consumer = consumer;
+		}
+
+		@Override
+		public List<AlbumSimplified> run(List<AlbumSimplified> releases, StringJoiner stageStats) {
+			consumer.accept(releases);
+			return releases;
+		}
+	}
+
+	private static String formatDroppedCount(String stageName, int droppedCount) {
+		return String.format("%s (-%d)", stageName, droppedCount);
+	}
+
+	private static String formatElapsed(long elapsedNanos) {
+		return String.format("%dms", elapsedNanos / 1_000_000);
+	}
+}
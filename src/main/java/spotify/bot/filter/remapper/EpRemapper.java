@@ -3,11 +3,14 @@ package spotify.bot.filter.remapper;
 import org.springframework.stereotype.Component;
 
 import spotify.bot.util.data.AlbumGroupExtended;
-import spotify.util.SpotifyUtils;
-import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class EpRemapper implements Remapper {
+	@Override
+	public int getPrecedence() {
+		return 400;
+	}
+
 	@Override
 	public AlbumGroupExtended getAlbumGroup() {
 		return AlbumGroupExtended.EP;
@@ -22,7 +25,12 @@ public class EpRemapper implements Remapper {
 	}
 
 	@Override
-	public Action determineRemapAction(AlbumTrackPair atp) {
-		return Action.of(SpotifyUtils.isExtendedPlay(atp));
+	public Action determineRemapAction(ReleaseFeatures release) {
+		return Action.of(release.isExtendedPlay());
+	}
+
+	@Override
+	public Cost getCost() {
+		return Cost.CPU;
 	}
 }
@@ -1,19 +1,31 @@
 package spotify.bot.filter.remapper;
 
+import java.util.List;
+import java.util.OptionalDouble;
+
 import org.springframework.stereotype.Component;
 
+import spotify.bot.service.performance.AudioFeatureService;
 import spotify.bot.util.data.AlbumGroupExtended;
-import spotify.services.TrackService;
-import spotify.util.SpotifyUtils;
+import spotify.bot.util.data.TitleTag;
 import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class LiveRemapper implements Remapper {
+	// The rule of SpotifyUtils.isLiveRelease, which can't be used here as it always
+	// fetches the audio features itself (RemappingTests checks that both agree)
+	private final static double LIVENESS_THRESHOLD = 0.6;
+	private final static double LIVENESS_THRESHOLD_LIVE_TITLE = 0.3;
+
+	private final AudioFeatureService audioFeatureService;
 
-	private final TrackService trackService;
+	public LiveRemapper(AudioFeatureService audioFeatureService) {
+		this.audioFeatureService = audioFeatureService;
+	}
 
-	public LiveRemapper(TrackService trackService) {
-		this.trackService = trackService;
+	@Override
+	public int getPrecedence() {
+		return 300;
 	}
 
 	@Override
@@ -30,8 +42,40 @@ public class LiveRemapper implements Remapper {
 		return !albumGroupExtended.isExtendedType() && !AlbumGroupExtended.APPEARS_ON.equals(albumGroupExtended);
 	}
 
+	/**
+	 * Fetch the audio features of all candidate tracks in bulk, so that
+	 * {@link LiveRemapper#determineRemapAction} doesn't need to call the Spotify
+	 * API
+	 */
+	@Override
+	public void prepare(List<AlbumTrackPair> candidates) {
+		audioFeatureService.prefetchLiveness(candidates);
+	}
+
+	/**
+	 * A release is considered live if the average liveness of its tracks reaches
+	 * the threshold. The threshold is lower if the title contains a live keyword
+	 * anyway.
+	 */
+	@Override
+	public Action determineRemapAction(ReleaseFeatures release) {
+		OptionalDouble averageLiveness = release.getAverageLiveness();
+		if (averageLiveness.isEmpty()) {
+			return Action.NONE;
+		}
+		double threshold = release.getTitleTags().has(TitleTag.LIVE)
+			? LIVENESS_THRESHOLD_LIVE_TITLE
+			: LIVENESS_THRESHOLD;
+		return Action.of(averageLiveness.getAsDouble() >= threshold);
+	}
+
+	/**
+	 * The audio features are prefetched in {@link LiveRemapper#prepare} and the
+	 * classification never falls back to the Spotify API, so it is purely
+	 * CPU-bound
+	 */
 	@Override
-	public Action determineRemapAction(AlbumTrackPair atp) {
-		return Action.of(SpotifyUtils.isLiveRelease(atp, trackService));
+	public Cost getCost() {
+		return Cost.CPU;
 	}
 }
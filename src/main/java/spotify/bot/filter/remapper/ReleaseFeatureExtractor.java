@@ -0,0 +1,110 @@
+package spotify.bot.filter.remapper;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import org.springframework.stereotype.Component;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.bot.config.properties.KeywordConfig;
+import spotify.bot.filter.FilterService;
+import spotify.bot.service.performance.AudioFeatureService;
+import spotify.bot.service.performance.CachedUserService;
+import spotify.bot.service.performance.ReleaseCodeIndexService;
+import spotify.bot.service.performance.ReleaseTitleIndexService;
+import spotify.bot.util.data.KeywordAutomaton.TitleTags;
+import spotify.util.SpotifyUtils;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Computes the {@link ReleaseFeatures} the remappers decide on. Everything that
+ * needs the Spotify API (audio features, release codes) has to be prefetched in
+ * {@link Remapper#prepare}, so extracting a feature is purely CPU-bound.
+ */
+@Component
+public class ReleaseFeatureExtractor implements ReleaseFeatures.Source {
+	private final KeywordConfig keywordConfig;
+	private final CachedUserService cachedUserService;
+	private final AudioFeatureService audioFeatureService;
+	private final ReleaseCodeIndexService releaseCodeIndexService;
+	private final ReleaseTitleIndexService releaseTitleIndexService;
+	private final FilterService filterService;
+
+	public ReleaseFeatureExtractor(KeywordConfig keywordConfig, CachedUserService cachedUserService, AudioFeatureService audioFeatureService,
+		ReleaseCodeIndexService releaseCodeIndexService, ReleaseTitleIndexService releaseTitleIndexService, FilterService filterService) {
+		this.keywordConfig = keywordConfig;
+		this.cachedUserService = cachedUserService;
+		this.audioFeatureService = audioFeatureService;
+		this.releaseCodeIndexService = releaseCodeIndexService;
+		this.releaseTitleIndexService = releaseTitleIndexService;
+		this.filterService = filterService;
+	}
+
+	/**
+	 * Create the (not yet computed) features of the given release
+	 */
+	public ReleaseFeatures extract(AlbumTrackPair atp) {
+		return new ReleaseFeatures(atp, this);
+	}
+
+	@Override
+	public TitleTags scanTitle(AlbumTrackPair atp) {
+		return keywordConfig.getKeywordAutomaton().scan(atp.getAlbum().getName());
+	}
+
+	@Override
+	public boolean isComplete(AlbumTrackPair atp) {
+		CountryCode userMarket = cachedUserService.getUserMarket();
+		for (TrackSimplified track : atp.getTracks()) {
+			if (!Arrays.asList(track.getAvailableMarkets()).contains(userMarket)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isExtendedPlay(AlbumTrackPair atp) {
+		return SpotifyUtils.isExtendedPlay(atp);
+	}
+
+	@Override
+	public boolean isRemix(AlbumTrackPair atp) {
+		return SpotifyUtils.isRemix(atp);
+	}
+
+	@Override
+	public OptionalDouble getAverageLiveness(AlbumTrackPair atp) {
+		List<Double> liveness = audioFeatureService.getLiveness(atp.getTracks());
+		return liveness.stream().mapToDouble(Double::doubleValue).average();
+	}
+
+	/**
+	 * Check the UPC and ISRCs first, then whether a release of the same name (or a
+	 * near match after removing edition suffixes like "(Deluxe)") by the same
+	 * artist has been cached before
+	 */
+	@Override
+	public boolean isKnownRelease(AlbumTrackPair atp) {
+		AlbumSimplified album = atp.getAlbum();
+		if (releaseCodeIndexService.isKnownRelease(album)) {
+			return true;
+		}
+		try {
+			return releaseTitleIndexService.isKnownRelease(album);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	@Override
+	public boolean isRecent(AlbumTrackPair atp) {
+		return filterService.isValidDate(atp.getAlbum());
+	}
+}
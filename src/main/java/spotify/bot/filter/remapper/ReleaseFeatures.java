@@ -0,0 +1,138 @@
+package spotify.bot.filter.remapper;
+
+import java.util.OptionalDouble;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.bot.util.data.KeywordAutomaton.TitleTags;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * The signals the remappers decide on for a single release. Every feature is
+ * computed on first access and then shared by all remappers, so e.g. the title
+ * is scanned for keywords once rather than once per remapper, while features
+ * only needed by disabled remappers are never computed at all. A release is
+ * only ever classified by one thread at a time, so this isn't synchronized.
+ */
+public class ReleaseFeatures {
+	private final AlbumTrackPair atp;
+	private final Source source;
+
+	private TitleTags titleTags;
+	private Boolean complete;
+	private Boolean extendedPlay;
+	private Boolean remix;
+	private OptionalDouble averageLiveness;
+	private Boolean knownRelease;
+	private Boolean recent;
+
+	/**
+	 * @param atp    the release
+	 * @param source computes the features of the release
+	 */
+	public ReleaseFeatures(AlbumTrackPair atp, Source source) {
+		this.atp = atp;
+		this.source = source;
+	}
+
+	public AlbumTrackPair getAlbumTrackPair() {
+		return atp;
+	}
+
+	public AlbumSimplified getAlbum() {
+		return atp.getAlbum();
+	}
+
+	/**
+	 * Returns the keyword tags found in the release title
+	 */
+	public TitleTags getTitleTags() {
+		if (titleTags == null) {
+			titleTags = source.scanTitle(atp);
+		}
+		return titleTags;
+	}
+
+	/**
+	 * Returns true if all tracks are available in the user's market
+	 */
+	public boolean isComplete() {
+		if (complete == null) {
+			complete = source.isComplete(atp);
+		}
+		return complete;
+	}
+
+	/**
+	 * Returns true if the release has the shape of an EP
+	 */
+	public boolean isExtendedPlay() {
+		if (extendedPlay == null) {
+			extendedPlay = source.isExtendedPlay(atp);
+		}
+		return extendedPlay;
+	}
+
+	/**
+	 * Returns true if the title or the tracks mark the release as a remix
+	 */
+	public boolean isRemix() {
+		if (remix == null) {
+			remix = source.isRemix(atp);
+		}
+		return remix;
+	}
+
+	/**
+	 * Returns the average liveness of the tracks, empty if none of them has any
+	 * audio features
+	 */
+	public OptionalDouble getAverageLiveness() {
+		if (averageLiveness == null) {
+			averageLiveness = source.getAverageLiveness(atp);
+		}
+		return averageLiveness;
+	}
+
+	/**
+	 * Returns true if the release codes or the (near) name of the release are
+	 * already known from an earlier release
+	 */
+	public boolean isKnownRelease() {
+		if (knownRelease == null) {
+			knownRelease = source.isKnownRelease(atp);
+		}
+		return knownRelease;
+	}
+
+	/**
+	 * Returns true if the release date is recent enough to pass the date filter
+	 */
+	public boolean isRecent() {
+		if (recent == null) {
+			recent = source.isRecent(atp);
+		}
+		return recent;
+	}
+
+	/////////////////
+
+	/**
+	 * Computes the individual features of a release (see
+	 * {@link ReleaseFeatureExtractor})
+	 */
+	public interface Source {
+		TitleTags scanTitle(AlbumTrackPair atp);
+
+		boolean isComplete(AlbumTrackPair atp);
+
+		boolean isExtendedPlay(AlbumTrackPair atp);
+
+		boolean isRemix(AlbumTrackPair atp);
+
+		OptionalDouble getAverageLiveness(AlbumTrackPair atp);
+
+		boolean isKnownRelease(AlbumTrackPair atp);
+
+		boolean isRecent(AlbumTrackPair atp);
+	}
+}
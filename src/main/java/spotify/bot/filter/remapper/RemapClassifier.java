@@ -0,0 +1,206 @@
+package spotify.bot.filter.remapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.filter.remapper.Remapper.Action;
+import spotify.bot.filter.remapper.Remapper.Cost;
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Assigns every release its final playlist store in a single pass over all
+ * releases, instead of running one pass (and one <code>removeAll</code>) per
+ * remapper. The remappers are given in order of precedence: the first one that
+ * is allowed for the release's source album group and doesn't return
+ * {@link Action#NONE} decides the release's fate. This yields the same result
+ * as applying the remappers one after another.<br/>
+ * <br/>
+ * The features a remapper decides on are computed once per release and shared
+ * by all remappers ({@link ReleaseFeatures}), and the remap actions of a
+ * release are memoized, so every remapper looks at every release at most once.
+ * Before that, every remapper may fetch its data in bulk
+ * ({@link Remapper#prepare}). Actions of {@link Cost#CPU} remappers are
+ * computed upfront in one batch, which may be spread across threads for large
+ * inputs. {@link Cost#IO} remappers are only asked once no remapper of higher
+ * precedence has claimed the release.
+ */
+public class RemapClassifier {
+	private final List<Remapper> remappers;
+	private final List<PlaylistStore> targetPlaylistStores;
+	private final ParallelFilterExecutor parallelFilterExecutor;
+	private final ReleaseFeatures.Source featureSource;
+
+	private RemapClassifier(List<Remapper> remappers, List<PlaylistStore> targetPlaylistStores, ParallelFilterExecutor parallelFilterExecutor,
+		ReleaseFeatures.Source featureSource) {
+		this.remappers = remappers;
+		this.targetPlaylistStores = targetPlaylistStores;
+		this.parallelFilterExecutor = parallelFilterExecutor;
+		this.featureSource = featureSource;
+	}
+
+	/**
+	 * @param parallelFilterExecutor the executor for the {@link Cost#CPU}
+	 *                               remappers
+	 * @param featureSource          computes the features of the releases
+	 */
+	public static Builder builder(ParallelFilterExecutor parallelFilterExecutor, ReleaseFeatures.Source featureSource) {
+		return new Builder(parallelFilterExecutor, featureSource);
+	}
+
+	/**
+	 * Classify all releases of the given map
+	 *
+	 * @param songsByPS the releases by their current playlist store (not modified)
+	 * @return the classification result
+	 */
+	public Classification classify(Map<PlaylistStore, List<AlbumTrackPair>> songsByPS) {
+		List<ClassifiedRelease> releases = new ArrayList<>();
+		for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : songsByPS.entrySet()) {
+			if (entry.getValue() != null) {
+				AlbumGroupExtended sourceGroup = entry.getKey().getAlbumGroupExtended();
+				for (AlbumTrackPair atp : entry.getValue()) {
+					releases.add(new ClassifiedRelease(entry.getKey(), sourceGroup, new ReleaseFeatures(atp, featureSource)));
+				}
+			}
+		}
+
+		prepareRemappers(releases);
+		precomputeParallelizableActions(releases);
+
+		Map<PlaylistStore, List<AlbumTrackPair>> releasesByPlaylistStore = new HashMap<>();
+		List<AlbumTrackPair> erasedReleases = new ArrayList<>();
+		for (ClassifiedRelease release : releases) {
+			PlaylistStore target = release.source;
+			for (int i = 0; i < remappers.size(); i++) {
+				Action action = release.getAction(i);
+				if (action == Action.REMAP) {
+					target = targetPlaylistStores.get(i);
+					break;
+				} else if (action == Action.ERASE) {
+					target = null;
+					break;
+				}
+			}
+			if (target != null) {
+				releasesByPlaylistStore.computeIfAbsent(target, ps -> new ArrayList<>()).add(release.features.getAlbumTrackPair());
+			} else {
+				erasedReleases.add(release.features.getAlbumTrackPair());
+			}
+		}
+		return new Classification(releasesByPlaylistStore, erasedReleases);
+	}
+
+	private void prepareRemappers(List<ClassifiedRelease> releases) {
+		for (Remapper remapper : remappers) {
+			List<AlbumTrackPair> candidates = new ArrayList<>();
+			for (ClassifiedRelease release : releases) {
+				if (remapper.isAllowedAlbumGroup(release.sourceGroup)) {
+					candidates.add(release.features.getAlbumTrackPair());
+				}
+			}
+			remapper.prepare(candidates);
+		}
+	}
+
+	private void precomputeParallelizableActions(List<ClassifiedRelease> releases) {
+		boolean anyCpuBound = remappers.stream().anyMatch(r -> r.getCost() == Cost.CPU);
+		if (anyCpuBound) {
+			parallelFilterExecutor.map(releases, release -> {
+				for (int i = 0; i < remappers.size(); i++) {
+					if (remappers.get(i).getCost() == Cost.CPU) {
+						release.getAction(i);
+					}
+				}
+				return release;
+			});
+		}
+	}
+
+	/**
+	 * The features and the memoized remap actions of a single release. Each slot
+	 * is only written by the thread that classifies this release.
+	 */
+	private class ClassifiedRelease {
+		private final PlaylistStore source;
+		private final AlbumGroupExtended sourceGroup;
+		private final ReleaseFeatures features;
+		private final Action[] actions;
+
+		private ClassifiedRelease(PlaylistStore source, AlbumGroupExtended sourceGroup, ReleaseFeatures features) {
+			this.source = source;
+			this.sourceGroup = sourceGroup;
+			this.features = features;
+			this.actions = new Action[remappers.size()];
+		}
+
+		private Action getAction(int remapperIndex) {
+			if (actions[remapperIndex] == null) {
+				Remapper remapper = remappers.get(remapperIndex);
+				actions[remapperIndex] = remapper.isAllowedAlbumGroup(sourceGroup)
+					? remapper.determineRemapAction(features)
+					: Action.NONE;
+			}
+			return actions[remapperIndex];
+		}
+	}
+
+	/**
+	 * The result of {@link RemapClassifier#classify}
+	 */
+	public static class Classification {
+		private final Map<PlaylistStore, List<AlbumTrackPair>> releasesByPlaylistStore;
+		private final List<AlbumTrackPair> erasedReleases;
+
+		private Classification(Map<PlaylistStore, List<AlbumTrackPair>> releasesByPlaylistStore, List<AlbumTrackPair> erasedReleases) {
+			this.releasesByPlaylistStore = releasesByPlaylistStore;
+			this.erasedReleases = erasedReleases;
+		}
+
+		/**
+		 * Returns the releases by their final playlist store (without empty lists)
+		 */
+		public Map<PlaylistStore, List<AlbumTrackPair>> getReleasesByPlaylistStore() {
+			return releasesByPlaylistStore;
+		}
+
+		/**
+		 * Returns the releases that were erased by a remapper
+		 */
+		public List<AlbumTrackPair> getErasedReleases() {
+			return erasedReleases;
+		}
+	}
+
+	public static class Builder {
+		private final ParallelFilterExecutor parallelFilterExecutor;
+		private final ReleaseFeatures.Source featureSource;
+		private final List<Remapper> remappers = new ArrayList<>();
+		private final List<PlaylistStore> targetPlaylistStores = new ArrayList<>();
+
+		private Builder(ParallelFilterExecutor parallelFilterExecutor, ReleaseFeatures.Source featureSource) {
+			this.parallelFilterExecutor = parallelFilterExecutor;
+			this.featureSource = featureSource;
+		}
+
+		/**
+		 * Add a remapper with a lower precedence than all previously added ones
+		 *
+		 * @param remapper            the remapper
+		 * @param targetPlaylistStore the playlist store remapped releases are moved to
+		 */
+		public Builder add(Remapper remapper, PlaylistStore targetPlaylistStore) {
+			remappers.add(remapper);
+			targetPlaylistStores.add(targetPlaylistStore);
+			return this;
+		}
+
+		public RemapClassifier build() {
+			return new RemapClassifier(List.copyOf(remappers), List.copyOf(targetPlaylistStores), parallelFilterExecutor, featureSource);
+		}
+	}
+}
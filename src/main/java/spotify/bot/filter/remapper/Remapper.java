@@ -1,10 +1,38 @@
 package spotify.bot.filter.remapper;
 
+import java.util.List;
+
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.util.data.AlbumTrackPair;
 
+/**
+ * Classifies releases into one of the extended album groups. Every Spring bean
+ * implementing this interface is picked up by the remapping automatically; the
+ * remappers are asked in the order of their {@link Remapper#getPrecedence}.
+ */
 public interface Remapper {
 
+	/**
+	 * The cost of {@link Remapper#determineRemapAction}
+	 */
+	enum Cost {
+
+		/**
+		 * Purely CPU-bound and safe to be called concurrently. These remappers are
+		 * evaluated upfront for all releases at once, spread across threads for
+		 * large inputs.
+		 */
+		CPU,
+
+		/**
+		 * Requires I/O (e.g. the Spotify API). These remappers are only asked,
+		 * sequentially, for releases that haven't been claimed by a remapper of
+		 * higher precedence. Any data can be fetched in bulk beforehand in
+		 * {@link Remapper#prepare}.
+		 */
+		IO
+	}
+
 	/**
 	 * An Action describes what to do with a release after
 	 * {@link Remapper#determineRemapAction} has been called
@@ -62,8 +90,37 @@ public interface Remapper {
 	 * largely implementation-specific; see the respective implementation Javadocs
 	 * for more details.
 	 *
-	 * @param atp the AlbumTrackPair
+	 * @param release the features of the release, shared by all remappers
 	 * @return the action to be applied
 	 */
-	Action determineRemapAction(AlbumTrackPair atp);
+	Action determineRemapAction(ReleaseFeatures release);
+
+	/**
+	 * Called once before {@link Remapper#determineRemapAction} with all releases
+	 * this remapper may be asked about, so that any data it needs from the Spotify
+	 * API can be fetched in bulk upfront. Does nothing by default.
+	 *
+	 * @param candidates the releases of all allowed album groups
+	 */
+	default void prepare(List<AlbumTrackPair> candidates) {
+	}
+
+	/**
+	 * The precedence of this remapper. If several remappers claim the same
+	 * release, the one with the lowest value wins. Remappers of equal precedence
+	 * are ordered by their class name.
+	 *
+	 * @return the precedence
+	 */
+	int getPrecedence();
+
+	/**
+	 * Returns the cost of {@link Remapper#determineRemapAction}. Remappers that
+	 * call the Spotify API must not declare {@link Cost#CPU}.
+	 *
+	 * @return the cost
+	 */
+	default Cost getCost() {
+		return Cost.IO;
+	}
 }
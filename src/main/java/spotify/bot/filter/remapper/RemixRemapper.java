@@ -3,12 +3,15 @@ package spotify.bot.filter.remapper;
 import org.springframework.stereotype.Component;
 
 import spotify.bot.util.data.AlbumGroupExtended;
-import spotify.util.SpotifyUtils;
-import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class RemixRemapper implements Remapper {
 
+	@Override
+	public int getPrecedence() {
+		return 200;
+	}
+
 	@Override
 	public AlbumGroupExtended getAlbumGroup() {
 		return AlbumGroupExtended.REMIX;
@@ -23,7 +26,12 @@ public class RemixRemapper implements Remapper {
 	}
 
 	@Override
-	public Action determineRemapAction(AlbumTrackPair atp) {
-		return Action.of(SpotifyUtils.isRemix(atp));
+	public Action determineRemapAction(ReleaseFeatures release) {
+		return Action.of(release.isRemix());
+	}
+
+	@Override
+	public Cost getCost() {
+		return Cost.CPU;
 	}
 }
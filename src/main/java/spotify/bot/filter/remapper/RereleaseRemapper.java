@@ -1,43 +1,28 @@
 package spotify.bot.filter.remapper;
 
-import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.springframework.stereotype.Component;
 
-import com.neovisionaries.i18n.CountryCode;
-
-import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
-import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
-import spotify.bot.config.database.DatabaseService;
 import spotify.bot.filter.FilterService;
-import spotify.bot.service.performance.CachedUserService;
+import spotify.bot.service.performance.ReleaseCodeIndexService;
 import spotify.bot.util.data.AlbumGroupExtended;
-import spotify.util.SpotifyUtils;
+import spotify.bot.util.data.KeywordAutomaton.TitleTags;
+import spotify.bot.util.data.TitleTag;
 import spotify.util.data.AlbumTrackPair;
 
 @Component
 public class RereleaseRemapper implements Remapper {
 
-	private final static Pattern ALBUM_TITLE_MATCHER = Pattern
-		.compile("(anniversary|re\\W?(issue|master|record)|\\d+\\W+(jahr|year))",
-			Pattern.CASE_INSENSITIVE);
-
-	private final FilterService filterService;
-	private final CachedUserService cachedUserService;
-	private final DatabaseService databaseService;
+	private final ReleaseCodeIndexService releaseCodeIndexService;
 
-	private Set<String> releaseNamesCache;
+	public RereleaseRemapper(ReleaseCodeIndexService releaseCodeIndexService) {
+		this.releaseCodeIndexService = releaseCodeIndexService;
+	}
 
-	public RereleaseRemapper(FilterService filterService, CachedUserService cachedUserService, DatabaseService databaseService) {
-		this.filterService = filterService;
-		this.cachedUserService = cachedUserService;
-		this.databaseService = databaseService;
-		this.releaseNamesCache = Set.of();
+	@Override
+	public int getPrecedence() {
+		return 100;
 	}
 
 	@Override
@@ -53,6 +38,16 @@ public class RereleaseRemapper implements Remapper {
 		return !albumGroupExtended.isExtendedType();
 	}
 
+	/**
+	 * Fetch the release codes (UPC and ISRCs) of all candidates in bulk, so that
+	 * {@link RereleaseRemapper#determineRemapAction} doesn't need to call the
+	 * Spotify API
+	 */
+	@Override
+	public void prepare(List<AlbumTrackPair> candidates) {
+		releaseCodeIndexService.prefetch(candidates);
+	}
+
 	/**
 	 * Determine the action to apply for the album, whether it qualifies as
 	 * rerelease or might even be disposable trash as a result of a weird,
@@ -82,23 +77,22 @@ public class RereleaseRemapper implements Remapper {
 	 * 
 	 * Legend:
 	 * <ul>
+	 * <li>CACHED: Is the UPC or the majority of the ISRCs already known from an
+	 * added release, or has a release of the same name been cached before?
 	 * <li>NORMAL: Is the album title normal (i.e. does it not contain any giveaway
 	 * terms like "Remaster", "Rerelease", "Reissue", "Rerecord", "Anniversary")?
 	 * <li>COMPLETE: Are all tracks available in the current market (since a lot of
 	 * rereleases for some reason have only some of the tracks available)?
 	 * <li>RECENT: Is the release date young enough to be qualified as valid by
-	 * {@link FilterService#filterNewAlbumsOnly} (if this remapper were disabled)?
+	 * {@link FilterService#isValidDate} (if this remapper were disabled)?
 	 * </ul>
 	 */
 	@Override
-	public Action determineRemapAction(AlbumTrackPair atp) {
-		AlbumSimplified album = atp.getAlbum();
-		List<TrackSimplified> tracks = atp.getTracks();
-
-		boolean normal = !containsRereleaseWord(album.getName());
-		boolean complete = tracks.stream().allMatch(this::isTrackAvailable);
-		boolean recent = filterService.isValidDate(album);
-		boolean cached = hasReleaseNameBeenCachedAlready(album);
+	public Action determineRemapAction(ReleaseFeatures release) {
+		boolean normal = !containsRereleaseWord(release.getTitleTags());
+		boolean complete = release.isComplete();
+		boolean recent = release.isRecent();
+		boolean cached = release.isKnownRelease();
 
 		if (cached) {
 			if (complete) {
@@ -122,28 +116,20 @@ public class RereleaseRemapper implements Remapper {
 		}
 	}
 
-	private boolean containsRereleaseWord(String albumTitle) {
-		Matcher matcher = ALBUM_TITLE_MATCHER.matcher(albumTitle);
-		if (matcher.find()) {
-			return matcher.start() > 0;
-		}
-		return false;
-	}
-
-	private boolean isTrackAvailable(TrackSimplified ts) {
-		CountryCode userMarket = cachedUserService.getUserMarket();
-		return Arrays.asList(ts.getAvailableMarkets()).contains(userMarket);
-	}
-
-	private boolean hasReleaseNameBeenCachedAlready(AlbumSimplified album) {
-		return releaseNamesCache.contains(SpotifyUtils.albumIdentifierString(album));
+	/**
+	 * The release codes are prefetched in {@link RereleaseRemapper#prepare}, so the
+	 * classification itself is purely CPU-bound
+	 */
+	@Override
+	public Cost getCost() {
+		return Cost.CPU;
 	}
 
-	public void refreshCachedReleaseNames() {
-		try {
-			this.releaseNamesCache = Set.copyOf(databaseService.getReleaseNamesCache());
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+	/**
+	 * A giveaway term at the very beginning of the title doesn't count (e.g.
+	 * "Remastered Hits" is just a name)
+	 */
+	private boolean containsRereleaseWord(TitleTags titleTags) {
+		return titleTags.has(TitleTag.RE_RELEASE) && !titleTags.isAtStart(TitleTag.RE_RELEASE);
 	}
 }
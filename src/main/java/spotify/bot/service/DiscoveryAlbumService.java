@@ -23,6 +23,7 @@ import se.michaelthelin.spotify.requests.data.artists.GetArtistsAlbumsRequest;
 import spotify.api.SpotifyApiException;
 import spotify.api.SpotifyCall;
 import spotify.bot.service.performance.CachedUserService;
+import spotify.bot.util.data.FetchedReleases;
 import spotify.services.AlbumService;
 import spotify.util.SpotifyOptimizedExecutorService;
 import spotify.util.SpotifyUtils;
@@ -31,32 +32,45 @@ import spotify.util.SpotifyUtils;
 public class DiscoveryAlbumService {
   private static final int MAX_ALBUM_FETCH_LIMIT = 50;
 
-  private final String albumGroupString;
+  public static final Set<AlbumGroup> ALL_ALBUM_GROUPS = Set.of(AlbumGroup.ALBUM, AlbumGroup.SINGLE, AlbumGroup.COMPILATION, AlbumGroup.APPEARS_ON);
 
   private final SpotifyApi spotifyApi;
+  private final AlbumService albumService;
   private final CachedUserService cachedUserService;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
 
   DiscoveryAlbumService(SpotifyApi spotifyApi, AlbumService albumService, CachedUserService cachedUserService, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService) {
     this.spotifyApi = spotifyApi;
+    this.albumService = albumService;
     this.cachedUserService = cachedUserService;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
-    this.albumGroupString = albumService.createAlbumGroupString(Set.of(AlbumGroup.ALBUM, AlbumGroup.SINGLE, AlbumGroup.COMPILATION, AlbumGroup.APPEARS_ON));
   }
 
   /**
-   * Fetch all albums of the given artists. (Note: This will very likely take up
-   * the majority of the crawling process, as it requires firing at least one
-   * Spotify Web API request for EVERY SINGLE ARTIST!)
+   * Fetch all albums of the given album groups of the given artists. (Note: This
+   * will very likely take up the majority of the crawling process, as it requires
+   * firing at least one Spotify Web API request for EVERY SINGLE ARTIST!)
+   *
+   * @param followedArtists the artist IDs
+   * @param albumGroups the album groups to fetch ({@link #ALL_ALBUM_GROUPS} to
+   *          initialize the cache for new artists)
+   * @return the albums, along with the artists whose albums were fetched completely
    */
-  public List<AlbumSimplified> getAllAlbumsOfArtists(List<String> followedArtists) throws SpotifyApiException {
+  public FetchedReleases getAllAlbumsOfArtists(List<String> followedArtists, Set<AlbumGroup> albumGroups) throws SpotifyApiException {
+    Set<AlbumGroup> relevantAlbumGroups = albumGroups.stream()
+        .filter(ALL_ALBUM_GROUPS::contains)
+        .collect(Collectors.toSet());
+    if (relevantAlbumGroups.isEmpty()) {
+      return FetchedReleases.combine(List.of());
+    }
+    String albumGroupString = albumService.createAlbumGroupString(relevantAlbumGroups);
     CountryCode marketOfCurrentUser = cachedUserService.getUserMarket();
 
-    List<Callable<List<AlbumSimplified>>> callables = new ArrayList<>();
+    List<Callable<List<FetchedReleases>>> callables = new ArrayList<>();
     for (String artist : followedArtists) {
-      callables.add(() -> getAlbumIdsOfSingleArtist(artist, albumGroupString, marketOfCurrentUser));
+      callables.add(() -> List.of(FetchedReleases.ofArtist(artist, getAlbumIdsOfSingleArtist(artist, albumGroupString, marketOfCurrentUser))));
     }
-    return spotifyOptimizedExecutorService.executeAndWait(callables);
+    return FetchedReleases.combine(spotifyOptimizedExecutorService.executeAndWait(callables));
   }
 
   /**
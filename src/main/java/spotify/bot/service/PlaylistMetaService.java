@@ -4,13 +4,12 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
@@ -18,25 +17,22 @@ import org.springframework.stereotype.Service;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.IPlaylistItem;
 import se.michaelthelin.spotify.model_objects.miscellaneous.CurrentlyPlaying;
-import se.michaelthelin.spotify.model_objects.specification.Playlist;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import se.michaelthelin.spotify.model_objects.specification.Track;
-import se.michaelthelin.spotify.requests.data.playlists.ChangePlaylistsDetailsRequest;
 import spotify.api.SpotifyApiException;
 import spotify.api.SpotifyCall;
 import spotify.bot.config.DeveloperMode;
 import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.service.performance.PlaylistMirrorService;
+import spotify.bot.service.performance.PlaylistMirrorService.PlaylistMirror;
 import spotify.bot.util.DiscoveryBotLogger;
-import spotify.services.PlaylistService;
+import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.PlaybackCheck;
 import spotify.util.SpotifyUtils;
 import spotify.util.SpotifyOptimizedExecutorService;
-import spotify.util.data.AlbumTrackPair;
 
 @Service
 public class PlaylistMetaService {
-  private final static int MAX_PLAYLIST_TRACK_FETCH_LIMIT = 50;
-
   /**
    * The amount of days after which an unread notification will automatically be set to read
    */
@@ -63,36 +59,61 @@ public class PlaylistMetaService {
    */
   public static final String DESCRIPTION_PREFIX = "Last Discovery: ";
 
+  /**
+   * The bounds of the pause between two checks of the currently played song
+   * while nothing is playing (see {@link PlaybackCheck})
+   */
+  private final static long MIN_IDLE_PLAYBACK_BACKOFF_MS = 10 * 1000;
+  private final static long MAX_IDLE_PLAYBACK_BACKOFF_MS = 5 * 60 * 1000;
+
   private final SpotifyApi spotifyApi;
-  private final PlaylistService playlistService;
+  private final PlaylistMirrorService playlistMirrorService;
   private final PlaylistStoreConfig playlistStoreConfig;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
   private final DiscoveryBotLogger log;
 
+  private final Set<AlbumGroupExtended> clearedNotifiers;
+  private final PlaybackCheck playbackCheck;
+  private volatile boolean notifiersInitialized;
+
   PlaylistMetaService(SpotifyApi spotifyApi,
-      PlaylistService playlistService,
+      PlaylistMirrorService playlistMirrorService,
       PlaylistStoreConfig playlistStoreConfig,
       SpotifyOptimizedExecutorService spotifyOptimizedExecutorService,
       DiscoveryBotLogger discoveryBotLogger) {
     this.spotifyApi = spotifyApi;
-    this.playlistService = playlistService;
+    this.playlistMirrorService = playlistMirrorService;
     this.playlistStoreConfig = playlistStoreConfig;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
     this.log = discoveryBotLogger;
+    this.clearedNotifiers = ConcurrentHashMap.newKeySet();
+    this.playbackCheck = new PlaybackCheck(MIN_IDLE_PLAYBACK_BACKOFF_MS, MAX_IDLE_PLAYBACK_BACKOFF_MS);
   }
 
   /**
-   * To be run once at startup, before the first crawl. This sets the "last updated" parameter
-   * inside the PlaylistStores based on their value from the description.
+   * Returns the given playlist name without any notifier
+   */
+  public static String stripNotifiers(String playlistName) {
+    return playlistName != null ? playlistName.replace(INDICATOR_NEW, "").replace(INDICATOR_OFF, "").trim() : "";
+  }
+
+  /**
+   * To be run once at startup, after the playlists have been verified. This sets the "last updated"
+   * parameter inside the PlaylistStores based on their value from the description, unless it has
+   * been restored from the persisted playlist state already. No notifiers are cleared before this
+   * has finished.
    */
   public void initLastUpdatedFromPlaylistDescriptions() {
     if (!DeveloperMode.isNotificationMarkersDisabled()) {
       List<Callable<Void>> callables = new ArrayList<>();
       for (PlaylistStore ps : playlistStoreConfig.getEnabledPlaylistStores()) {
+        if (playlistStoreConfig.isPlaylistStateRestored(ps.getAlbumGroupExtended())) {
+          continue;
+        }
         callables.add(() -> {
-          Playlist playlist = SpotifyCall.execute(spotifyApi.getPlaylist(ps.getPlaylistId()));
-          String description = playlist.getDescription();
-          if (description.startsWith(DESCRIPTION_PREFIX)) {
+          PlaylistMirror mirror = playlistMirrorService.getPlaylist(ps.getPlaylistId());
+          String description = mirror.getDescription();
+          if (description != null && description.startsWith(DESCRIPTION_PREFIX)) {
             String rawDate = description.replace(DESCRIPTION_PREFIX, "").trim();
             try {
               LocalDateTime lastUpdateFromDescription = DESCRIPTION_TIMESTAMP_FORMAT.parse(rawDate, LocalDateTime::from);
@@ -101,50 +122,80 @@ public class PlaylistMetaService {
               e.printStackTrace();
             }
           }
+          if (mirror.getName() != null && mirror.getName().contains(INDICATOR_NEW)) {
+            // Recover the songs of a notifier that was shown before the restart from the mirror
+            mirror.getHeadItems().stream()
+                .filter(item -> item.getId() != null && SpotifyUtils.isWithinTimeoutWindow(item.getAddedAt(), NEW_NOTIFICATION_TIMEOUT_DAYS))
+                .forEach(item -> ps.getRecentlyAddedTrackIds().add(item.getId()));
+          }
           return null; // must return something for Void class
         });
       }
-      spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+      if (!callables.isEmpty()) {
+        spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+        playlistStoreConfig.storePlaylistState();
+      }
     }
+    notifiersInitialized = true;
   }
 
   /**
-   * Display the [NEW] notifiers of the given album groups' playlists titles, if
-   * any songs were added
+   * Display the [NEW] notifiers of the given playlists titles, which just had
+   * songs added to them
    */
-  public void showNotifiers(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SpotifyApiException {
+  public void showNotifiers(Collection<PlaylistStore> playlistStores) throws SpotifyApiException {
     if (!DeveloperMode.isNotificationMarkersDisabled()) {
-      List<PlaylistStore> sortedPlaylistStores = songsByPlaylist.keySet().stream().sorted().collect(Collectors.toList());
+      List<PlaylistStore> sortedPlaylistStores = playlistStores.stream().sorted().collect(Collectors.toList());
       List<Callable<Void>> callables = new ArrayList<>();
       for (PlaylistStore ps : sortedPlaylistStores) {
-        List<AlbumTrackPair> albumTrackPairs = songsByPlaylist.get(ps);
-        Collections.sort(albumTrackPairs);
         callables.add(() -> {
           updatePlaylistTitleAndDescription(ps, INDICATOR_OFF, INDICATOR_NEW, true);
           playlistStoreConfig.setPlaylistStoreUpdatedJustNow(ps.getAlbumGroupExtended());
+          clearedNotifiers.remove(ps.getAlbumGroupExtended());
           return null; // must return something for Void class
         });
       }
       spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+
+      playbackCheck.reset();
     }
   }
 
   /**
-   * Convenience method to try and clear every obsolete New indicator
+   * Remember the given songs as just added to the playlist, so that its [NEW]
+   * notifier is cleared once any of them is played
+   */
+  public void rememberAddedTracks(PlaylistStore playlistStore, Collection<String> trackIds) {
+    playlistStore.getRecentlyAddedTrackIds().addAll(trackIds);
+  }
+
+  /**
+   * Convenience method to try and clear every obsolete New indicator. The
+   * currently played song is only requested once for all playlists, and only if
+   * any of them has a [NEW] notifier; it's then compared to the songs the bot
+   * has added to those playlists. While nothing is being played, it's checked
+   * less and less often.
    *
    * @return true if at least one playlist name was changed
    */
-  public boolean clearObsoleteNotifiers() throws SpotifyApiException {
+  public synchronized boolean clearObsoleteNotifiers() throws SpotifyApiException {
     boolean changed = false;
-    if (!DeveloperMode.isNotificationMarkersDisabled()) {
+    if (notifiersInitialized && !DeveloperMode.isNotificationMarkersDisabled()) {
+      List<PlaylistStore> notifiedPlaylistStores = new ArrayList<>();
       for (PlaylistStore ps : playlistStoreConfig.getEnabledPlaylistStores()) {
-        if (shouldIndicatorBeMarkedAsRead(ps)) {
-          if (updatePlaylistTitleAndDescription(ps, INDICATOR_NEW, INDICATOR_OFF, false)) {
-            changed = true;
-            playlistStoreConfig.unsetPlaylistStoreUpdatedRecently(ps.getAlbumGroupExtended());
+        if (!clearedNotifiers.contains(ps.getAlbumGroupExtended())) {
+          if (isNotifierExpired(ps)) {
+            changed |= clearNotifier(ps);
+          } else {
+            notifiedPlaylistStores.add(ps);
           }
         }
       }
+      List<PlaylistStore> playedPlaylistStores = playbackCheck.findPlayed(notifiedPlaylistStores,
+          PlaylistStore::getRecentlyAddedTrackIds, this::getCurrentlyPlayingTrackId, System.currentTimeMillis());
+      for (PlaylistStore ps : playedPlaylistStores) {
+        changed |= clearNotifier(ps);
+      }
     }
     return changed;
   }
@@ -173,25 +224,13 @@ public class PlaylistMetaService {
         newDescription = DESCRIPTION_PREFIX + LocalDateTime.now().format(DESCRIPTION_TIMESTAMP_FORMAT);
       }
 
-      Playlist p = playlistService.getPlaylist(playlistId);
-      if (p != null) {
-        String playlistName = p.getName();
-        if (playlistName != null && playlistName.contains(notifierTarget)) {
-          newPlaylistName = playlistName.replace(notifierTarget, notifierReplacement).trim();
-          changed = true;
-        }
+      String playlistName = playlistMirrorService.getPlaylist(playlistId).getName();
+      if (playlistName != null && playlistName.contains(notifierTarget)) {
+        newPlaylistName = playlistName.replace(notifierTarget, notifierReplacement).trim();
+        changed = true;
       }
 
-      if (newPlaylistName != null || newDescription != null) {
-        ChangePlaylistsDetailsRequest.Builder playlistDetailsBuilder = spotifyApi.changePlaylistsDetails(playlistId);
-        if (newPlaylistName != null) {
-          playlistDetailsBuilder = playlistDetailsBuilder.name(newPlaylistName);
-        }
-        if (newDescription != null) {
-          playlistDetailsBuilder = playlistDetailsBuilder.description(newDescription);
-        }
-        SpotifyCall.execute(playlistDetailsBuilder);
-      }
+      playlistMirrorService.changeDetails(playlistId, newPlaylistName, newDescription);
     }
     return changed;
   }
@@ -199,57 +238,47 @@ public class PlaylistMetaService {
   ////////////////////////////////
 
   /**
-   * Check if the [NEW] indicator for this playlist store should be removed. This
-   * is either done by timeout or by checking if the currently played song is
-   * within the most recently added songs of the playlist.
+   * Check if the [NEW] indicator for this playlist store should be removed
+   * without looking at the currently played song, either because it's not set,
+   * its timeout expired, or there are no recently added songs to listen to
    */
-  private boolean shouldIndicatorBeMarkedAsRead(PlaylistStore playlistStore) {
-    try {
-      // Case 1: Notification timestamp is already unset
-      LocalDateTime lastUpdated = playlistStore.getLastUpdate();
-      if (lastUpdated == null) {
-        return true;
-      }
-
-      // Case 2: Timeout since playlist was last updated expired
-      if (!SpotifyUtils.isWithinTimeoutWindow(lastUpdated, NEW_NOTIFICATION_TIMEOUT_DAYS)) {
-        return true;
-      }
-
-      // Case 3: Currently played song is within the recently added playlist tracks
-      String playlistId = playlistStore.getPlaylistId();
-
-      PlaylistTrack[] topmostPlaylistTracks = SpotifyCall.execute(spotifyApi
-          .getPlaylistsItems(playlistId)
-          .limit(MAX_PLAYLIST_TRACK_FETCH_LIMIT))
-          .getItems();
-      List<PlaylistTrack> recentlyAddedPlaylistTracks = Arrays.stream(topmostPlaylistTracks)
-          .filter((pt -> SpotifyUtils.isWithinTimeoutWindow(pt.getAddedAt(), NEW_NOTIFICATION_TIMEOUT_DAYS)))
-          .collect(Collectors.toList());
+  private boolean isNotifierExpired(PlaylistStore playlistStore) {
+    LocalDateTime lastUpdated = playlistStore.getLastUpdate();
+    return lastUpdated == null
+        || !SpotifyUtils.isWithinTimeoutWindow(lastUpdated, NEW_NOTIFICATION_TIMEOUT_DAYS)
+        || playlistStore.getRecentlyAddedTrackIds().isEmpty();
+  }
 
-      // -- Case 3a: Playlist does not have recently added tracks or is still empty
-      if (recentlyAddedPlaylistTracks.isEmpty()) {
-        return true;
-      }
+  /**
+   * Remove the [NEW] indicator of this playlist store (if there is one) and
+   * forget about its recently added songs. It isn't checked again until the
+   * next songs are added.
+   *
+   * @return true if the playlist name was changed
+   */
+  private boolean clearNotifier(PlaylistStore playlistStore) throws SpotifyApiException {
+    boolean changed = updatePlaylistTitleAndDescription(playlistStore, INDICATOR_NEW, INDICATOR_OFF, false);
+    playlistStore.getRecentlyAddedTrackIds().clear();
+    playlistStoreConfig.unsetPlaylistStoreUpdatedRecently(playlistStore.getAlbumGroupExtended());
+    clearedNotifiers.add(playlistStore.getAlbumGroupExtended());
+    return changed;
+  }
 
-      // -- Case 3b: Playlist does have recently added tracks, check if the currently
-      // played song is within that list
+  /**
+   * Returns the ID of the currently played song (null if nothing, or something
+   * other than a song, is played or on any error)
+   */
+  private String getCurrentlyPlayingTrackId() {
+    try {
       CurrentlyPlaying currentlyPlaying = SpotifyCall.execute(spotifyApi.getUsersCurrentlyPlayingTrack());
-      if (currentlyPlaying != null) {
+      if (currentlyPlaying != null && Boolean.TRUE.equals(currentlyPlaying.getIs_playing())) {
         IPlaylistItem item = currentlyPlaying.getItem();
-        if (item instanceof Track) {
-          String currentlyPlayingSongId = item.getId();
-          return recentlyAddedPlaylistTracks.stream()
-              .map(PlaylistTrack::getTrack)
-              .map(IPlaylistItem::getId)
-              .filter(Objects::nonNull)
-              .anyMatch(id -> Objects.equals(id, currentlyPlayingSongId));
-        }
+        return item instanceof Track ? item.getId() : null;
       }
     } catch (Exception e) {
       // Don't care, indicator clearance has absolutely no priority
       log.stackTrace(e);
     }
-    return false;
+    return null;
   }
 }
@@ -1,152 +1,342 @@
 package spotify.bot.service;
 
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
 import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 
-import se.michaelthelin.spotify.model_objects.IPlaylistItem;
-import se.michaelthelin.spotify.model_objects.specification.Playlist;
-import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
-import se.michaelthelin.spotify.model_objects.specification.Track;
-import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import spotify.api.SpotifyApiException;
 import spotify.bot.config.DeveloperMode;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.config.properties.PlaylistStoreConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.config.properties.SettingsConfig;
+import spotify.bot.service.performance.AddedTrackIndexService;
+import spotify.bot.service.performance.PlaylistMirrorService;
+import spotify.bot.service.performance.PlaylistMirrorService.PlaylistMirror;
+import spotify.bot.service.performance.ReleaseCodeIndexService;
 import spotify.bot.util.DiscoveryBotLogger;
-import spotify.services.PlaylistService;
+import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.PendingAddition;
+import spotify.bot.util.data.PendingAdditionWriter;
+import spotify.bot.util.data.PendingAdditionWriter.FlushPlan;
+import spotify.bot.util.data.PlaylistInsertionPlan;
+import spotify.bot.util.data.PlaylistRollover;
+import spotify.bot.util.data.PlaylistTrimmer;
+import spotify.bot.util.data.QueuedReleases;
 import spotify.util.SpotifyOptimizedExecutorService;
-import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
 @Service
 public class PlaylistSongsService {
-  private final static int TOP_OF_PLAYLIST = 0;
-  private final static int PLAYLIST_ADDITION_COOLDOWN = 1000;
   private final static int PLAYLIST_ADD_LIMIT = 100;
   private final static int PLAYLIST_SIZE_LIMIT = 10000;
-  private final static String TRACK_PREFIX = "spotify:track:";
 
-  private final PlaylistService playlistService;
+  private final PlaylistMirrorService playlistMirrorService;
+  private final PlaylistMetaService playlistMetaService;
+  private final PlaylistStoreConfig playlistStoreConfig;
+  private final SettingsConfig settingsConfig;
+  private final DatabaseService databaseService;
   private final SpotifyOptimizedExecutorService spotifyOptimizedExecutorService;
+  private final ReleaseCodeIndexService releaseCodeIndexService;
+  private final AddedTrackIndexService addedTrackIndexService;
+  private final PlaylistTrimmer playlistTrimmer;
+  private final PendingAdditionWriter pendingAdditionWriter;
   private final DiscoveryBotLogger log;
 
-  PlaylistSongsService(PlaylistService playlistService, SpotifyOptimizedExecutorService spotifyOptimizedExecutorService, DiscoveryBotLogger discoveryBotLogger) {
-    this.playlistService = playlistService;
+  private final Set<String> intactBatches;
+  private final QueuedReleases queuedReleases;
+  private volatile long nextFlushAt;
+
+  PlaylistSongsService(PlaylistMirrorService playlistMirrorService,
+      PlaylistMetaService playlistMetaService,
+      PlaylistStoreConfig playlistStoreConfig,
+      SettingsConfig settingsConfig,
+      DatabaseService databaseService,
+      SpotifyOptimizedExecutorService spotifyOptimizedExecutorService,
+      ReleaseCodeIndexService releaseCodeIndexService,
+      AddedTrackIndexService addedTrackIndexService,
+      DiscoveryBotLogger discoveryBotLogger) {
+    this.playlistMirrorService = playlistMirrorService;
+    this.playlistMetaService = playlistMetaService;
+    this.playlistStoreConfig = playlistStoreConfig;
+    this.settingsConfig = settingsConfig;
+    this.databaseService = databaseService;
     this.spotifyOptimizedExecutorService = spotifyOptimizedExecutorService;
+    this.releaseCodeIndexService = releaseCodeIndexService;
+    this.addedTrackIndexService = addedTrackIndexService;
+    // Trimming runs within the playlist writes, which already are tasks of the executor
+    this.playlistTrimmer = new PlaylistTrimmer(PlaylistTrimmer::executeOnCallingThread);
+    this.pendingAdditionWriter = new PendingAdditionWriter(PLAYLIST_ADD_LIMIT);
     this.log = discoveryBotLogger;
+    this.intactBatches = ConcurrentHashMap.newKeySet();
+    this.queuedReleases = new QueuedReleases();
+    this.nextFlushAt = Long.MAX_VALUE;
   }
 
   /**
-   * Adds all releases to the given playlists
+   * Queue all releases for the given playlists. The planned additions are
+   * stored in the outbox and only removed from it once they have been written
+   * by {@link PlaylistSongsService#flushPendingAdditions}, so if anything fails
+   * halfway through, only the remaining songs are written by the next flush.
+   * The releases are remembered until then, to report and cache them once
+   * written.
    */
-  public void addAllReleasesToSetPlaylists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SpotifyApiException {
+  public void queueAllReleasesForSetPlaylists(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SQLException {
     log.info("Adding to playlists:");
     List<PlaylistStore> sortedPlaylistStores = songsByPlaylist.keySet().stream().sorted().collect(Collectors.toList());
-    List<Callable<Void>> callables = new ArrayList<>();
+    long batchId = System.currentTimeMillis();
+    List<PendingAddition> pendingAdditions = new ArrayList<>();
     for (PlaylistStore ps : sortedPlaylistStores) {
       List<AlbumTrackPair> albumTrackPairs = songsByPlaylist.get(ps);
       Collections.sort(albumTrackPairs);
+      if (!albumTrackPairs.isEmpty() && !DeveloperMode.isPlaylistAdditionDisabled()) {
+        List<PendingAddition> plannedAdditions = planAdditions(ps, albumTrackPairs, batchId);
+        queuedReleases.remember(albumTrackPairs, plannedAdditions);
+        pendingAdditions.addAll(plannedAdditions);
+        intactBatches.add(batchKey(ps.getAlbumGroupExtended(), batchId));
+      }
+      log.printAlbumTrackPairs(albumTrackPairs, ps.getAlbumGroupExtended());
+    }
+    databaseService.addPendingAdditions(pendingAdditions);
+    if (!pendingAdditions.isEmpty()) {
+      nextFlushAt = Math.min(nextFlushAt, batchId + coalescingWindowMs());
+    }
+  }
+
+  /**
+   * Schedule the next flush for the additions left in the outbox by a previous
+   * run of the bot, if any, as if they had been queued by this one
+   */
+  public void initNextFlushAt() throws SQLException {
+    nextFlushAt = Math.min(nextFlushAt, PendingAdditionWriter.firstFlushAt(databaseService.getPendingAdditions(), coalescingWindowMs()));
+  }
+
+  /**
+   * Check if the coalescing window of any queued additions has expired
+   */
+  public boolean isFlushDue() {
+    return System.currentTimeMillis() >= nextFlushAt;
+  }
+
+  /**
+   * Write the pending additions of every playlist store whose oldest queued
+   * batch has been waiting for the coalescing window (immediately, if it's
+   * disabled). All batches queued for a playlist store in the meantime (e.g. by
+   * several crawls in quick succession) are written as one ordered sequence,
+   * with the latest release on top. This includes any additions left over by a
+   * previously failed or interrupted flush.
+   *
+   * @return the written songs by playlist store, as releases with only the
+   *         written tracks. Every playlist store that has been written to is
+   *         included, but songs queued by a previous run of the bot are missing,
+   *         as their releases aren't known anymore.
+   */
+  public Map<PlaylistStore, List<AlbumTrackPair>> flushPendingAdditions() throws SpotifyApiException, SQLException {
+    List<PendingAddition> pendingAdditions = databaseService.getPendingAdditions();
+    nextFlushAt = Long.MAX_VALUE;
+    if (pendingAdditions.isEmpty()) {
+      return Map.of();
+    }
+
+    FlushPlan<PlaylistStore> flushPlan = PendingAdditionWriter.planFlush(pendingAdditions, this::getSetPlaylistStore, coalescingWindowMs(), System.currentTimeMillis());
+    List<PendingAddition> orphanedAdditions = flushPlan.getOrphanedAdditions();
+    if (!orphanedAdditions.isEmpty()) {
+      log.warning("Dropped " + orphanedAdditions.size() + " pending addition[s] for playlists that are no longer set");
+      databaseService.completePendingAdditions(orphanedAdditions);
+      queuedReleases.forget(orphanedAdditions);
+    }
+    nextFlushAt = Math.min(nextFlushAt, flushPlan.getNextFlushAt());
+
+    Map<PlaylistStore, List<PendingAddition>> dueAdditionsByPlaylist = flushPlan.getDueAdditions();
+    Map<PlaylistStore, List<AlbumTrackPair>> writtenSongsByPlaylist = new ConcurrentHashMap<>();
+    List<Callable<Void>> callables = new ArrayList<>();
+    for (Map.Entry<PlaylistStore, List<PendingAddition>> entry : dueAdditionsByPlaylist.entrySet()) {
       callables.add(() -> {
-        addSongsForPlaylistStore(ps, albumTrackPairs);
+        writtenSongsByPlaylist.put(entry.getKey(), writeAdditionsForPlaylistStore(entry.getKey(), entry.getValue()));
         return null; // must return something for Void class
       });
-      log.printAlbumTrackPairs(albumTrackPairs, ps.getAlbumGroupExtended());
     }
     spotifyOptimizedExecutorService.executeAndWaitVoid(callables);
+    return writtenSongsByPlaylist;
   }
 
-  private void addSongsForPlaylistStore(PlaylistStore ps, List<AlbumTrackPair> albumTrackPairs) {
-    if (!albumTrackPairs.isEmpty() && !DeveloperMode.isPlaylistAdditionDisabled()) {
-      addSongsToPlaylistId(ps.getPlaylistId(), albumTrackPairs);
+  /**
+   * Plan the addition of the given releases to the top of the playlist, with
+   * the last release on top (see {@link PlaylistInsertionPlan}). The sequence of
+   * every track counts from the bottom of the batch, so that later batches
+   * simply continue on top of it.
+   */
+  private static List<PendingAddition> planAdditions(PlaylistStore ps, List<AlbumTrackPair> albumTrackPairs, long batchId) {
+    List<String> trackIds = PlaylistInsertionPlan.topOfPlaylist(albumTrackPairs).getTrackIds();
+    List<PendingAddition> pendingAdditions = new ArrayList<>();
+    for (int i = 0; i < trackIds.size(); i++) {
+      int sequence = trackIds.size() - 1 - i;
+      pendingAdditions.add(new PendingAddition(ps.getAlbumGroupExtended(), batchId, sequence, trackIds.get(i)));
     }
+    return pendingAdditions;
   }
 
   /**
-   * Add the given list of song IDs to the playlist (a delay of a second per
-   * release is used to retain order). May remove older songs to make room.
+   * Write the pending additions of the given playlist store with the
+   * {@link PendingAdditionWriter}. May remove older songs to make room or roll
+   * the playlist over. If any of the batches wasn't queued by this instance or a
+   * previous flush of it failed, the additions are resumed, i.e. the chunk
+   * written last is looked for at the top of the playlist first.
+   *
+   * @return the written releases (as far as they are known), each with only the
+   *         written tracks
    */
-  public void addSongsToPlaylistId(String playlistId, List<AlbumTrackPair> albumTrackPairs) throws SpotifyApiException {
-    if (!albumTrackPairs.isEmpty()) {
-      Playlist playlist = playlistService.getPlaylist(playlistId);
-      circularPlaylistFitting(playlist, albumTrackPairs);
-      List<List<TrackSimplified>> bundledReleases = extractTrackLists(albumTrackPairs);
-      for (List<TrackSimplified> t : bundledReleases) {
-        for (List<TrackSimplified> partition : SpotifyUtils.partitionList(t, PLAYLIST_ADD_LIMIT)) {
-          List<String> ids = partition.stream().map(TrackSimplified::getId).collect(Collectors.toList());
-          playlistService.addSongsToPlaylistById(playlist, ids, TOP_OF_PLAYLIST);
-          SpotifyUtils.sneakySleep(PLAYLIST_ADDITION_COOLDOWN);
-        }
+  private List<AlbumTrackPair> writeAdditionsForPlaylistStore(PlaylistStore ps, List<PendingAddition> pendingAdditions) throws SpotifyApiException, SQLException {
+    PendingAdditionWriter.Target target = new PendingAdditionWriter.Target() {
+      @Override
+      public List<String> getTopTrackIds(int limit) {
+        return playlistMirrorService.getTrackIds(ps.getPlaylistId(), 0, limit);
       }
+
+      @Override
+      public void rollover(int songsToAddCount) {
+        rolloverPlaylistOnThreshold(ps, songsToAddCount);
+      }
+
+      @Override
+      public void makeRoom(int songsToAddCount) {
+        circularPlaylistFitting(ps.getPlaylistId(), songsToAddCount);
+      }
+
+      @Override
+      public void addToTop(List<String> trackIds) {
+        playlistMirrorService.addTracks(ps.getPlaylistId(), trackIds, 0);
+      }
+    };
+    Map<AlbumTrackPair, Set<String>> writtenTrackIdsByRelease = new LinkedHashMap<>();
+    PendingAdditionWriter.Outbox outbox = writtenAdditions -> {
+      playlistMetaService.rememberAddedTracks(ps, PendingAdditionWriter.topFirstTrackIds(writtenAdditions));
+      databaseService.completePendingAdditions(writtenAdditions);
+      cacheWrittenReleases(queuedReleases.take(writtenAdditions, writtenTrackIdsByRelease));
+    };
+
+    try {
+      boolean resumed = pendingAdditions.stream().anyMatch(a -> !intactBatches.contains(batchKey(a.getAlbumGroupExtended(), a.getBatchId())));
+      if (resumed) {
+        log.info(String.format("Resuming %d pending addition[s] for '%s'", pendingAdditions.size(), ps.getAlbumGroupExtended().getHumanName()));
+      }
+      pendingAdditionWriter.write(target, outbox, pendingAdditions, resumed);
+    } finally {
+      // Whatever is left of these batches after this point is treated as interrupted
+      pendingAdditions.forEach(a -> intactBatches.remove(batchKey(a.getAlbumGroupExtended(), a.getBatchId())));
     }
+    return QueuedReleases.withTracks(writtenTrackIdsByRelease);
+  }
+
+  /**
+   * Cache the release codes (only needed for the re-release detection) and the
+   * tracks of the given written releases, so that they are only ever treated as
+   * added once they actually are in a playlist
+   */
+  private void cacheWrittenReleases(List<AlbumTrackPair> writtenReleases) throws SQLException {
+    if (!writtenReleases.isEmpty()) {
+      if (getSetPlaylistStore(AlbumGroupExtended.RE_RELEASE) != null) {
+        releaseCodeIndexService.cacheAddedReleases(writtenReleases);
+      }
+      addedTrackIndexService.cacheAddedTracks(writtenReleases);
+    }
+  }
+
+  /**
+   * Returns the playlist store of the given album group, if its playlist is set
+   */
+  private PlaylistStore getSetPlaylistStore(AlbumGroupExtended albumGroupExtended) {
+    PlaylistStore ps = playlistStoreConfig.getPlaylistStore(albumGroupExtended);
+    return ps != null && ps.getPlaylistId() != null ? ps : null;
+  }
+
+  private static String batchKey(AlbumGroupExtended albumGroupExtended, long batchId) {
+    return albumGroupExtended.name() + batchId;
+  }
+
+  private long coalescingWindowMs() {
+    return Math.max(0, settingsConfig.getAdditionCoalescingSeconds()) * 1000L;
   }
 
   /**
-   * Extract all the ATP tracks into a new list
+   * If the rollover is enabled and the given number of songs would push the
+   * playlist over the threshold, archive the playlist and continue with a fresh
+   * one. This costs two requests (creating the new playlist and renaming the old
+   * one), whereas trimming a full playlist fetches and deletes its oldest songs.
    */
-  private List<List<TrackSimplified>> extractTrackLists(List<AlbumTrackPair> allReleases) {
-    List<List<TrackSimplified>> bundled = new ArrayList<>();
-    for (AlbumTrackPair atp : allReleases) {
-      bundled.add(atp.getTracks());
+  private void rolloverPlaylistOnThreshold(PlaylistStore ps, int songsToAddCount) throws SpotifyApiException {
+    PlaylistRollover rollover = new PlaylistRollover(settingsConfig.getPlaylistRolloverThreshold(), PLAYLIST_SIZE_LIMIT);
+    if (rollover.isEnabled()) {
+      String playlistId = ps.getPlaylistId();
+      PlaylistMirror mirror = playlistMirrorService.getPlaylist(playlistId);
+      if (rollover.isDue(mirror.getTotal(), songsToAddCount)) {
+        String playlistName = PlaylistMetaService.stripNotifiers(mirror.getName());
+        String newPlaylistId = playlistStoreConfig.rolloverPlaylistStore(ps, PlaylistMetaService.INDICATOR_OFF + " " + playlistName);
+        playlistMirrorService.changeDetails(playlistId, playlistName + " (Archive " + LocalDate.now() + ")", null);
+        playlistMirrorService.invalidate(playlistId);
+        log.info(String.format("Playlist for '%s' reached %d songs and was archived, new playlist: %s",
+            ps.getAlbumGroupExtended().getHumanName(), mirror.getTotal(), newPlaylistId));
+      }
     }
-    return bundled;
   }
 
   /**
-   * Check if circular playlist fitting is required
+   * Check if circular playlist fitting is required (the current size is taken
+   * from the local playlist mirror)
    */
-  private void circularPlaylistFitting(Playlist playlist, List<AlbumTrackPair> albumTrackPairs) throws SpotifyApiException {
-    int songsToAddCount = albumTrackPairs.stream().mapToInt(AlbumTrackPair::trackCount).sum();
-    final int currentPlaylistCount = playlist.getTracks().getTotal();
+  private void circularPlaylistFitting(String playlistId, int songsToAddCount) throws SpotifyApiException {
+    final int currentPlaylistCount = playlistMirrorService.getPlaylist(playlistId).getTotal();
     if (currentPlaylistCount + songsToAddCount > PLAYLIST_SIZE_LIMIT) {
-      deleteSongsFromBottomOnLimit(playlist, currentPlaylistCount, songsToAddCount);
+      deleteSongsFromBottomOnLimit(playlistId, songsToAddCount);
     }
   }
 
   /**
    * Delete as many songs from the bottom as necessary to make room for any new
-   * songs to add, as Spotify playlists have a fixed limit of 10000 songs.
-   *
-   * If circularPlaylistFitting isn't enabled, an exception is thrown on a full
-   * playlist instead.
+   * songs to add, as Spotify playlists have a fixed limit of 10000 songs. The
+   * whole range is removed in one pass of the {@link PlaylistTrimmer}: its pages
+   * are fetched on the calling thread (this already runs as a task of the
+   * executor, so waiting on further tasks of it could exhaust its threads) and
+   * deleted bottom-up in chunks bound to the
+   * playlist's snapshot_id, after which the resulting size gets verified.
    */
-  private void deleteSongsFromBottomOnLimit(Playlist playlist, int currentPlaylistCount, int songsToAddCount) throws SpotifyApiException {
-    String playlistId = playlist.getId();
-
-    int totalSongsToDeleteCount = currentPlaylistCount + songsToAddCount - PLAYLIST_SIZE_LIMIT;
-    boolean repeat = totalSongsToDeleteCount > PLAYLIST_ADD_LIMIT;
-    int songsToDeleteCount = repeat ? PLAYLIST_ADD_LIMIT : totalSongsToDeleteCount;
-    final int offset = currentPlaylistCount - songsToDeleteCount;
-
-    List<PlaylistTrack> tracksToDelete = playlistService.getPlaylistTracks(playlistId, offset);
-
-    JsonArray json = new JsonArray();
-    for (int i = 0; i < tracksToDelete.size(); i++) {
-      IPlaylistItem track = tracksToDelete.get(i).getTrack();
-      if (track instanceof Track) {
-        String id = track.getId();
-        JsonObject object = new JsonObject();
-        object.addProperty("uri", TRACK_PREFIX + id);
-        JsonArray positions = new JsonArray();
-        positions.add(currentPlaylistCount - songsToDeleteCount + i);
-        object.add("positions", positions);
-        json.add(object);
+  private void deleteSongsFromBottomOnLimit(String playlistId, int songsToAddCount) throws SpotifyApiException {
+    PlaylistMirror mirror = playlistMirrorService.getPlaylist(playlistId);
+    int currentPlaylistCount = mirror.getTotal();
+    int songsToDeleteCount = currentPlaylistCount + songsToAddCount - PLAYLIST_SIZE_LIMIT;
+
+    PlaylistTrimmer.Target target = new PlaylistTrimmer.Target() {
+      @Override
+      public List<String> getTrackIds(int offset, int limit) {
+        return playlistMirrorService.getTrackIds(playlistId, offset, limit);
       }
-    }
 
-    playlistService.deleteTracksFromPlaylist(playlistId, json);
+      @Override
+      public String removeItems(JsonArray items, String snapshotId) {
+        return playlistMirrorService.removeTracks(playlistId, items, snapshotId);
+      }
+
+      @Override
+      public int getVerifiedTotal() {
+        return playlistMirrorService.verify(playlistId).getTotal();
+      }
+    };
 
-    // Repeat if more than 100 songs have to be added/deleted (should rarely happen,
-    // so a recursion will be slow, but it'll do the job)
-    if (repeat) {
-      deleteSongsFromBottomOnLimit(playlist, currentPlaylistCount - 100, songsToAddCount);
+    PlaylistTrimmer.Result result = playlistTrimmer.trimBottom(target, currentPlaylistCount, mirror.getSnapshotId(), songsToDeleteCount);
+    if (!result.isVerified()) {
+      log.warning(String.format("Playlist %s has %d songs after trimming, expected %d", playlistId, result.getVerifiedTotal(), result.getExpectedTotal()));
     }
   }
 
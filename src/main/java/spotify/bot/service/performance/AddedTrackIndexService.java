@@ -0,0 +1,137 @@
+package spotify.bot.service.performance;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.config.properties.AddedTrackPolicy;
+import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.config.properties.SettingsConfig;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.data.LongHashSet;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Performance service that remembers every track the bot has ever added to any
+ * of the playlists, by the fingerprints of its ID and its ISRC (so the same
+ * recording on another release counts as well, e.g. a single that's later part
+ * of the album). The fingerprints are read from the database only once and
+ * kept in a primitive set, so even millions of tracks take only a few bytes
+ * each. What happens to already added tracks is determined by the
+ * <code>ADDED_TRACK_POLICY</code> setting. The ISRCs are only fetched while
+ * that isn't <code>keep</code>; otherwise only those known anyway (from the
+ * re-release detection) are remembered.
+ */
+@Service
+public class AddedTrackIndexService {
+  private final DatabaseService databaseService;
+  private final ReleaseCodeIndexService releaseCodeIndexService;
+  private final SettingsConfig settingsConfig;
+  private final DiscoveryBotLogger log;
+
+  private LongHashSet addedTrackFingerprints;
+
+  AddedTrackIndexService(DatabaseService databaseService, ReleaseCodeIndexService releaseCodeIndexService, SettingsConfig settingsConfig, DiscoveryBotLogger discoveryBotLogger) {
+    this.databaseService = databaseService;
+    this.releaseCodeIndexService = releaseCodeIndexService;
+    this.settingsConfig = settingsConfig;
+    this.log = discoveryBotLogger;
+  }
+
+  /**
+   * Remove any tracks that have been added before from the given releases, as
+   * determined by the <code>ADDED_TRACK_POLICY</code>. Releases without any
+   * remaining tracks are removed as well.
+   */
+  public synchronized Map<PlaylistStore, List<AlbumTrackPair>> filterAddedTracks(Map<PlaylistStore, List<AlbumTrackPair>> songsByPlaylist) throws SQLException {
+    AddedTrackPolicy policy = settingsConfig.getAddedTrackPolicy();
+    if (policy == AddedTrackPolicy.KEEP) {
+      return songsByPlaylist;
+    }
+    ensureLoaded();
+    releaseCodeIndexService.fetchIsrcs(songsByPlaylist.values().stream()
+        .flatMap(List::stream)
+        .collect(Collectors.toList()));
+
+    int skippedTrackCount = 0;
+    Map<PlaylistStore, List<AlbumTrackPair>> filtered = new LinkedHashMap<>();
+    for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : songsByPlaylist.entrySet()) {
+      List<AlbumTrackPair> remaining = new ArrayList<>();
+      for (AlbumTrackPair atp : entry.getValue()) {
+        List<TrackSimplified> newTracks = policy.selectTracks(atp.getTracks(), this::isAdded);
+        if (newTracks.size() == atp.getTracks().size()) {
+          remaining.add(atp);
+        } else {
+          skippedTrackCount += atp.getTracks().size() - newTracks.size();
+          if (!newTracks.isEmpty()) {
+            remaining.add(AlbumTrackPair.of(atp.getAlbum(), newTracks));
+          }
+        }
+      }
+      filtered.put(entry.getKey(), remaining);
+    }
+    if (skippedTrackCount > 0) {
+      log.debug(String.format("Skipped %d previously added track[s]", skippedTrackCount));
+    }
+    return filtered;
+  }
+
+  /**
+   * Remember the tracks of the given (added) releases
+   */
+  public synchronized void cacheAddedTracks(List<AlbumTrackPair> releases) throws SQLException {
+    ensureLoaded();
+    if (settingsConfig.getAddedTrackPolicy() != AddedTrackPolicy.KEEP) {
+      releaseCodeIndexService.fetchIsrcs(releases);
+    }
+    List<Long> fingerprints = new ArrayList<>();
+    for (AlbumTrackPair atp : releases) {
+      for (TrackSimplified track : atp.getTracks()) {
+        for (long fingerprint : fingerprints(track)) {
+          if (addedTrackFingerprints.add(fingerprint)) {
+            fingerprints.add(fingerprint);
+          }
+        }
+      }
+    }
+    databaseService.cacheAddedTrackFingerprints(fingerprints);
+  }
+
+  /////////////////
+
+  private void ensureLoaded() throws SQLException {
+    if (addedTrackFingerprints == null) {
+      long time = System.currentTimeMillis();
+      addedTrackFingerprints = databaseService.getAddedTrackFingerprints();
+      log.debug(String.format("Loaded %d added track fingerprint[s] in %dms", addedTrackFingerprints.size(), System.currentTimeMillis() - time));
+    }
+  }
+
+  private boolean isAdded(TrackSimplified track) {
+    for (long fingerprint : fingerprints(track)) {
+      if (addedTrackFingerprints.contains(fingerprint)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long[] fingerprints(TrackSimplified track) {
+    if (track.getId() == null) {
+      return new long[0];
+    }
+    String isrc = releaseCodeIndexService.getIsrc(track.getId());
+    if (isrc == null) {
+      return new long[] { DiscoveryBotUtils.fingerprint(track.getId()) };
+    }
+    return new long[] { DiscoveryBotUtils.fingerprint(track.getId()), DiscoveryBotUtils.fingerprint(isrc) };
+  }
+}
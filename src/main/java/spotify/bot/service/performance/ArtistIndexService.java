@@ -0,0 +1,41 @@
+package spotify.bot.service.performance;
+
+import org.springframework.stereotype.Service;
+
+import spotify.bot.config.properties.BlacklistConfig;
+import spotify.bot.filter.RelayService;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.data.ArtistIndex;
+import spotify.bot.util.data.CachedArtistsContainer;
+
+/**
+ * Performance service to combine the followed artists with the artist-specific
+ * settings (relay whitelist, blacklist) into a single {@link ArtistIndex} once
+ * per crawl, which is then shared by all filters
+ */
+@Service
+public class ArtistIndexService {
+  private final BlacklistConfig blacklistConfig;
+  private final RelayService relayService;
+  private final DiscoveryBotLogger log;
+
+  ArtistIndexService(BlacklistConfig blacklistConfig, RelayService relayService, DiscoveryBotLogger discoveryBotLogger) {
+    this.blacklistConfig = blacklistConfig;
+    this.relayService = relayService;
+    this.log = discoveryBotLogger;
+  }
+
+  /**
+   * Build the artist index for the given followed artists
+   */
+  public ArtistIndex buildIndex(CachedArtistsContainer cachedArtistsContainer) {
+    long time = System.currentTimeMillis();
+    ArtistIndex artistIndex = ArtistIndex.builder()
+        .followed(cachedArtistsContainer)
+        .whitelisted(relayService.getWhitelistedArtistIds())
+        .blacklisted(blacklistConfig.getBlacklistRules().getArtistRules())
+        .build();
+    log.debug(String.format("Artist index built (%d followed artists) in %dms", artistIndex.getFollowedArtistIds().size(), System.currentTimeMillis() - time), false);
+    return artistIndex;
+  }
+}
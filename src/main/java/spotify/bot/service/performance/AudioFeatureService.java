@@ -0,0 +1,129 @@
+package spotify.bot.service.performance;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.AudioFeatures;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.api.SpotifyApiException;
+import spotify.api.SpotifyCall;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.util.SpotifyUtils;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Performance service for the audio features needed by the live detection. The
+ * features of all candidate tracks are prefetched in batches before remapping
+ * starts, so that the remapping itself doesn't have to go back to the Spotify
+ * API for every single release. Since the audio features of a track never
+ * change, they are cached permanently in the database, so re-checks and
+ * re-crawls don't cost any requests at all. Looking up the liveness never calls
+ * the API, so it is safe to do from the remapping worker threads.
+ */
+@Service
+public class AudioFeatureService {
+  private final static int MAX_TRACK_IDS_PER_REQUEST = 100;
+
+  // Marks prefetched tracks without any audio features (ConcurrentHashMap doesn't allow null values)
+  private final static Double NO_AUDIO_FEATURES = Double.NaN;
+
+  private final SpotifyApi spotifyApi;
+  private final DatabaseService databaseService;
+  private final DiscoveryBotLogger log;
+
+  private volatile Map<String, Double> prefetchedLiveness;
+
+  AudioFeatureService(SpotifyApi spotifyApi, DatabaseService databaseService, DiscoveryBotLogger discoveryBotLogger) {
+    this.spotifyApi = spotifyApi;
+    this.databaseService = databaseService;
+    this.log = discoveryBotLogger;
+    this.prefetchedLiveness = Map.of();
+  }
+
+  /**
+   * Load the liveness of every track of the given releases, from the database
+   * cache where possible and from the Spotify API (in batches of 100) otherwise.
+   * Tracks without any audio features are remembered as such until the next
+   * prefetch. Replaces whatever was prefetched before.
+   */
+  public void prefetchLiveness(List<AlbumTrackPair> releases) {
+    Set<String> trackIds = new HashSet<>();
+    for (AlbumTrackPair atp : releases) {
+      for (TrackSimplified track : atp.getTracks()) {
+        if (track.getId() != null) {
+          trackIds.add(track.getId());
+        }
+      }
+    }
+    long time = System.currentTimeMillis();
+    Map<String, Double> loadedLiveness = loadLiveness(trackIds);
+    Map<String, Double> liveness = new ConcurrentHashMap<>(loadedLiveness);
+    for (String trackId : trackIds) {
+      liveness.putIfAbsent(trackId, NO_AUDIO_FEATURES);
+    }
+    this.prefetchedLiveness = liveness;
+    if (!trackIds.isEmpty()) {
+      log.debug(String.format("Prefetched the audio features of %d track[s] in %dms (%d without any)",
+        loadedLiveness.size(), System.currentTimeMillis() - time, trackIds.size() - loadedLiveness.size()));
+    }
+  }
+
+  /**
+   * Returns the liveness of all given tracks that have audio features. Only the
+   * prefetched values are considered (see {@link #prefetchLiveness}); tracks
+   * that weren't prefetched are treated like tracks without audio features.
+   */
+  public List<Double> getLiveness(List<TrackSimplified> tracks) {
+    Map<String, Double> liveness = prefetchedLiveness;
+    List<Double> result = new ArrayList<>();
+    for (TrackSimplified track : tracks) {
+      Double value = track.getId() != null ? liveness.get(track.getId()) : null;
+      if (value != null && !value.isNaN()) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  /////////////////
+
+  private Map<String, Double> loadLiveness(Collection<String> trackIds) {
+    Map<String, Double> liveness = new HashMap<>();
+    try {
+      liveness.putAll(databaseService.getTrackLiveness(trackIds));
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+
+    List<String> uncachedTrackIds = new ArrayList<>(trackIds);
+    uncachedTrackIds.removeAll(liveness.keySet());
+    Map<String, Double> fetchedLiveness = new HashMap<>();
+    for (List<String> partition : SpotifyUtils.partitionList(uncachedTrackIds, MAX_TRACK_IDS_PER_REQUEST)) {
+      try {
+        AudioFeatures[] audioFeatures = SpotifyCall.execute(spotifyApi.getAudioFeaturesForSeveralTracks(partition.toArray(String[]::new)));
+        for (AudioFeatures af : audioFeatures) {
+          // Tracks without any audio features (yet) are returned as null and get requested again next time
+          if (af != null && af.getId() != null && af.getLiveness() != null) {
+            fetchedLiveness.put(af.getId(), af.getLiveness().doubleValue());
+          }
+        }
+      } catch (SpotifyApiException e) {
+        log.stackTrace(e);
+      }
+    }
+    databaseService.cacheTrackLiveness(fetchedLiveness);
+    liveness.putAll(fetchedLiveness);
+    return liveness;
+  }
+}
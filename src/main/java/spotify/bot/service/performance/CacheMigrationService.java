@@ -0,0 +1,63 @@
+package spotify.bot.service.performance;
+
+import java.sql.SQLException;
+
+import org.springframework.stereotype.Service;
+
+import spotify.bot.config.database.CacheBackend;
+import spotify.bot.config.database.CacheSnapshot;
+import spotify.bot.config.database.CacheWriter;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.config.database.DatabaseServiceConfig;
+import spotify.bot.config.database.DiscoveryDatabase;
+import spotify.bot.config.properties.SettingsConfig;
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Copies the entire cache of the active backend into another backend, so the
+ * <code>CACHE_BACKEND</code> setting can be switched without losing the cache
+ */
+@Service
+public class CacheMigrationService {
+  private final DatabaseService databaseService;
+  private final DiscoveryDatabase discoveryDatabase;
+  private final CacheWriter cacheWriter;
+  private final SettingsConfig settingsConfig;
+  private final DiscoveryBotLogger log;
+
+  CacheMigrationService(DatabaseService databaseService, DiscoveryDatabase discoveryDatabase, CacheWriter cacheWriter, SettingsConfig settingsConfig, DiscoveryBotLogger discoveryBotLogger) {
+    this.databaseService = databaseService;
+    this.discoveryDatabase = discoveryDatabase;
+    this.cacheWriter = cacheWriter;
+    this.settingsConfig = settingsConfig;
+    this.log = discoveryBotLogger;
+  }
+
+  /**
+   * Copy the cache of the active backend into the given target backend. Entries
+   * that already exist in the target are kept.
+   *
+   * @return a summary of the migration
+   */
+  public String migrateCache(CacheBackend target) throws SQLException {
+    CacheBackend source = settingsConfig.getCacheBackend();
+    if (source == target) {
+      throw new IllegalArgumentException("Cache backend " + target + " is already active");
+    }
+
+    long time = System.currentTimeMillis();
+    CacheSnapshot cacheSnapshot = databaseService.exportCache();
+    DatabaseService targetDatabaseService = DatabaseServiceConfig.createDatabaseService(target, discoveryDatabase, cacheWriter, log);
+    try {
+      targetDatabaseService.importCache(cacheSnapshot);
+    } finally {
+      targetDatabaseService.close();
+    }
+
+    String summary = String.format("Migrated cache from %s to %s (%d release IDs / %d release names / %d artists / %d pending playlist additions) in %dms. Set CACHE_BACKEND=%s and restart the bot to use it.",
+        source, target, cacheSnapshot.getReleaseIds().size(), cacheSnapshot.getReleaseNameFingerprints().size(), cacheSnapshot.getArtistIds().size(),
+        cacheSnapshot.getPendingAdditions().size(), System.currentTimeMillis() - time, target);
+    log.info(summary);
+    return summary;
+  }
+}
@@ -0,0 +1,119 @@
+package spotify.bot.service.performance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.bot.config.DeveloperMode;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.config.properties.SettingsConfig;
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Performance service to keep the cache tables from growing indefinitely. Every
+ * release ID that is returned by the Spotify API is remembered until the next
+ * maintenance run. Cached release IDs that haven't been seen during any crawl
+ * since then and are older than the configured retention period can't be
+ * rediscovered and are therefore pruned. Unfollowed artists are removed as well.
+ * As the cache doesn't know which artist a release belongs to, no releases are
+ * pruned at all while any followed artist couldn't be fetched since the last
+ * maintenance run (its releases would otherwise be pruned and rediscovered).
+ */
+@Service
+public class CacheRetentionService {
+  private final DatabaseService databaseService;
+  private final CachedArtistService cachedArtistService;
+  private final SettingsConfig settingsConfig;
+  private final DiscoveryBotLogger log;
+
+  private Set<String> visibleReleaseIds;
+  private Set<String> fetchedArtistIds;
+
+  CacheRetentionService(DatabaseService databaseService, CachedArtistService cachedArtistService, SettingsConfig settingsConfig, DiscoveryBotLogger discoveryBotLogger) {
+    this.databaseService = databaseService;
+    this.cachedArtistService = cachedArtistService;
+    this.settingsConfig = settingsConfig;
+    this.log = discoveryBotLogger;
+  }
+
+  /**
+   * Remember the IDs of all releases returned during a crawl as still visible,
+   * along with the artists whose releases were fetched completely. Both are
+   * collected across all crawls until the next maintenance run.
+   */
+  public synchronized void rememberVisibleReleases(Collection<String> fetchedArtistIds, List<AlbumSimplified> allAlbums) {
+    if (visibleReleaseIds == null) {
+      visibleReleaseIds = new HashSet<>();
+      this.fetchedArtistIds = new HashSet<>();
+    }
+    this.fetchedArtistIds.addAll(fetchedArtistIds);
+    for (AlbumSimplified album : allAlbums) {
+      if (album != null) {
+        visibleReleaseIds.add(album.getId());
+      }
+    }
+  }
+
+  /**
+   * Prune obsolete cache entries, compact the database, and log a summary of the
+   * table sizes and the effect on the cache load time
+   *
+   * @return the summary
+   */
+  public synchronized String runCacheMaintenance() throws SQLException {
+    long loadTimeBefore = measureCacheLoadTime();
+    long fileSizeBefore = databaseService.getDatabaseFileSize();
+    Map<String, Long> tableSizesBefore = databaseService.getCacheTableSizes();
+
+    int prunedReleases = 0;
+    int prunedArtists = 0;
+    if (!DeveloperMode.isCacheDisabled()) {
+      List<String> followedArtistIds = cachedArtistService.getLastKnownFollowedArtistIds();
+      if (visibleReleaseIds != null && !visibleReleaseIds.isEmpty() && followedArtistIds != null) {
+        long unfetchedArtists = followedArtistIds.stream().filter(id -> !fetchedArtistIds.contains(id)).count();
+        if (unfetchedArtists == 0) {
+          Instant cachedBefore = Instant.now().minus(Duration.ofDays(settingsConfig.getCacheRetentionDays()));
+          prunedReleases = databaseService.pruneReleaseIds(visibleReleaseIds, cachedBefore);
+        } else {
+          log.warning(String.format("Skipped pruning releases, as %d followed artist[s] couldn't be fetched since the last maintenance", unfetchedArtists));
+        }
+        visibleReleaseIds = null;
+        fetchedArtistIds = null;
+      }
+      if (followedArtistIds != null && !followedArtistIds.isEmpty()) {
+        prunedArtists = databaseService.pruneArtistIds(followedArtistIds);
+      }
+    }
+    databaseService.compact();
+
+    long loadTimeAfter = measureCacheLoadTime();
+    long fileSizeAfter = databaseService.getDatabaseFileSize();
+    Map<String, Long> tableSizesAfter = databaseService.getCacheTableSizes();
+
+    String tableSizes = tableSizesAfter.entrySet().stream()
+        .map(e -> String.format("%s: %d -> %d", e.getKey(), tableSizesBefore.getOrDefault(e.getKey(), 0L), e.getValue()))
+        .collect(Collectors.joining(" / "));
+    String summary = String.format("Cache maintenance: pruned %d release[s] and %d unfollowed artist[s] [%s] | Database: %d KB -> %d KB | Cache load time: %dms -> %dms",
+        prunedReleases, prunedArtists, tableSizes, fileSizeBefore / 1024, fileSizeAfter / 1024, loadTimeBefore, loadTimeAfter);
+    log.info(summary);
+    return summary;
+  }
+
+  /**
+   * Time a full read of the release ID cache, as it's done at the start of every crawl
+   */
+  private long measureCacheLoadTime() throws SQLException {
+    long start = System.currentTimeMillis();
+    databaseService.getReleasesIdsCache();
+    return System.currentTimeMillis() - start;
+  }
+}
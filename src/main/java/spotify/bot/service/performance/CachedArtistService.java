@@ -35,6 +35,7 @@ public class CachedArtistService {
   private final DiscoveryBotLogger log;
 
   private LocalDate artistCacheLastUpdated;
+  private List<String> lastKnownFollowedArtistIds;
 
   CachedArtistService(ArtistService artistService, DatabaseService databaseService, FilterService filterService, DiscoveryAlbumService discoveryAlbumService, DiscoveryBotLogger discoveryBotLogger) {
     this.artistService = artistService;
@@ -56,6 +57,7 @@ public class CachedArtistService {
       }
       filterService.cacheArtistIds(followedArtistIds);
       this.artistCacheLastUpdated = ZonedDateTime.now().toLocalDate();
+      this.lastKnownFollowedArtistIds = List.copyOf(followedArtistIds);
       return repackageIntoContainer(followedArtistIds, cachedArtists);
     } else {
       return new CachedArtistsContainer(cachedArtists, List.of());
@@ -90,6 +92,15 @@ public class CachedArtistService {
     return databaseService.getArtistCache();
   }
 
+  /**
+   * Get the followed artists as they were most recently returned by the Spotify API
+   * (unlike the cached artists, this doesn't include any artists that have been unfollowed
+   * since). May be null if the followed artists haven't been fetched yet.
+   */
+  public List<String> getLastKnownFollowedArtistIds() {
+    return lastKnownFollowedArtistIds;
+  }
+
   private boolean isArtistCacheExpired() {
     return artistCacheLastUpdated == null || ZonedDateTime.now().toLocalDate().isAfter(artistCacheLastUpdated);
   }
@@ -104,7 +115,7 @@ public class CachedArtistService {
           .map(Artist::getName)
           .sorted()
           .collect(Collectors.joining(", ")));
-      List<AlbumSimplified> allAlbumsOfNewFollowees = discoveryAlbumService.getAllAlbumsOfArtists(newArtists);
+      List<AlbumSimplified> allAlbumsOfNewFollowees = discoveryAlbumService.getAllAlbumsOfArtists(newArtists, DiscoveryAlbumService.ALL_ALBUM_GROUPS).getAlbums();
       List<AlbumSimplified> albumsToInitialize = filterService.getNonCachedAlbums(allAlbumsOfNewFollowees);
       filterService.cacheAlbumIds(albumsToInitialize);
       filterService.cacheAlbumNames(albumsToInitialize);
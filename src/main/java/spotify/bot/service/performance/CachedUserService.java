@@ -13,7 +13,7 @@ import spotify.services.UserService;
  */
 @Service
 public class CachedUserService {
-  private User user;
+  private volatile User user;
 
   private final UserService userService;
 
@@ -23,7 +23,12 @@ public class CachedUserService {
 
   public User getUser() {
     if (user == null) {
-      user = userService.getCurrentUser();
+      // Double-checked, as the market is looked up concurrently during parallel remapping
+      synchronized (this) {
+        if (user == null) {
+          user = userService.getCurrentUser();
+        }
+      }
     }
     return user;
   }
@@ -0,0 +1,130 @@
+package spotify.bot.service.performance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import spotify.bot.config.properties.SettingsConfig;
+
+/**
+ * Runs CPU-bound per-release work (filter predicates, remap classification) on
+ * a dedicated fork-join pool once the number of releases reaches the
+ * <code>PARALLEL_FILTER_THRESHOLD</code> setting. Smaller inputs are processed
+ * on the calling thread, as the fork/join overhead outweighs the gain there.
+ * The setting is 0 (never parallel) unless a crossover has been measured for
+ * the given machine with the <code>ParallelFilterBenchmark</code>.
+ * Results are always returned in input order, so the output is the same either
+ * way.
+ */
+@Component
+public class ParallelFilterExecutor {
+  private final int threshold;
+  private final ForkJoinPool pool;
+
+  @Autowired
+  ParallelFilterExecutor(SettingsConfig settingsConfig) {
+    this(settingsConfig.getParallelFilterThreshold(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param threshold   the minimum number of items to process in parallel, 0
+   *                    to never process them in parallel
+   * @param parallelism the number of worker threads
+   */
+  public ParallelFilterExecutor(int threshold, int parallelism) {
+    this.threshold = threshold;
+    this.pool = new ForkJoinPool(parallelism, pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("release-filter-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+  }
+
+  /**
+   * Returns true if the given number of items is processed in parallel
+   */
+  public boolean isParallel(int itemCount) {
+    return threshold > 0 && itemCount >= threshold && pool.getParallelism() > 1;
+  }
+
+  /**
+   * Apply the given function to every item
+   *
+   * @return the results in the order of the items
+   */
+  public <T, R> List<R> map(List<T> items, Function<T, R> function) {
+    if (!isParallel(items.size())) {
+      List<R> results = new ArrayList<>(items.size());
+      for (T item : items) {
+        results.add(function.apply(item));
+      }
+      return results;
+    }
+    Object[] results = new Object[items.size()];
+    runParallel(items.size(), i -> results[i] = function.apply(items.get(i)));
+    @SuppressWarnings("unchecked")
+    List<R> resultList = (List<R>) Arrays.asList(results);
+    return resultList;
+  }
+
+  /**
+   * Evaluate the given predicate for every item
+   *
+   * @return the results in the order of the items
+   */
+  public <T> boolean[] test(List<T> items, Predicate<T> predicate) {
+    boolean[] results = new boolean[items.size()];
+    if (!isParallel(items.size())) {
+      for (int i = 0; i < results.length; i++) {
+        results[i] = predicate.test(items.get(i));
+      }
+    } else {
+      runParallel(items.size(), i -> results[i] = predicate.test(items.get(i)));
+    }
+    return results;
+  }
+
+  /**
+   * Stop the worker threads
+   */
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /////////////////
+
+  private interface IndexTask {
+    void run(int index);
+  }
+
+  private void runParallel(int count, IndexTask task) {
+    try {
+      // A parallel stream started from within the pool runs on the pool's workers
+      pool.submit(() -> IntStream.range(0, count).parallel().forEach(task::run)).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while filtering releases", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+}
@@ -0,0 +1,361 @@
+package spotify.bot.service.performance;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.IPlaylistItem;
+import se.michaelthelin.spotify.model_objects.special.SnapshotResult;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
+import se.michaelthelin.spotify.model_objects.specification.Playlist;
+import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import se.michaelthelin.spotify.requests.data.playlists.ChangePlaylistsDetailsRequest;
+import spotify.api.SpotifyApiException;
+import spotify.api.SpotifyCall;
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Performance service that keeps a local mirror of every target playlist: its
+ * name, description, total track count, topmost items, and snapshot_id. All
+ * writes of the bot go through this service and update the mirror from their
+ * own responses, so reads are local lookups. A mirror that hasn't been verified
+ * for a while is checked against the playlist's current snapshot_id (a tiny
+ * request) and only refetched in full if the playlist was changed by anyone
+ * else in the meantime.
+ */
+@Service
+public class PlaylistMirrorService {
+  /**
+   * The number of topmost playlist items kept in the mirror
+   */
+  public final static int HEAD_SIZE = 50;
+
+  private final static long VERIFICATION_INTERVAL_MS = 60 * 1000;
+  private final static String SNAPSHOT_ID_FIELD = "snapshot_id";
+  private final static String TRACK_PREFIX = "spotify:track:";
+
+  private final SpotifyApi spotifyApi;
+  private final DiscoveryBotLogger log;
+
+  private final Map<String, PlaylistMirror> mirrors;
+
+  PlaylistMirrorService(SpotifyApi spotifyApi, DiscoveryBotLogger discoveryBotLogger) {
+    this.spotifyApi = spotifyApi;
+    this.log = discoveryBotLogger;
+    this.mirrors = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the up-to-date mirror of the given playlist
+   */
+  public PlaylistMirror getPlaylist(String playlistId) throws SpotifyApiException {
+    PlaylistMirror mirror = mirrors.computeIfAbsent(playlistId, PlaylistMirror::new);
+    synchronized (mirror) {
+      if (!mirror.isValid()) {
+        refetch(mirror);
+      } else if (System.currentTimeMillis() - mirror.verifiedAt > VERIFICATION_INTERVAL_MS) {
+        Playlist snapshotOnly = SpotifyCall.execute(spotifyApi.getPlaylist(playlistId).fields(SNAPSHOT_ID_FIELD));
+        if (!mirror.confirmSnapshot(snapshotOnly.getSnapshotId())) {
+          log.debug("Playlist " + playlistId + " was changed externally, refetching it");
+          refetch(mirror);
+        }
+      }
+      return mirror;
+    }
+  }
+
+  /**
+   * Insert the given tracks at the given position of the playlist. Unlike a
+   * removal, an insertion can't be tied to a snapshot_id, so the current one is
+   * fetched right before. If the playlist was changed by anyone else since it
+   * was mirrored, the mirror is invalidated instead of updated.
+   */
+  public void addTracks(String playlistId, List<String> trackIds, int position) throws SpotifyApiException {
+    PlaylistMirror mirror = getPlaylist(playlistId);
+    String[] uris = trackIds.stream().map(id -> TRACK_PREFIX + id).toArray(String[]::new);
+    synchronized (mirror) {
+      Playlist snapshotOnly = SpotifyCall.execute(spotifyApi.getPlaylist(playlistId).fields(SNAPSHOT_ID_FIELD));
+      SnapshotResult result = SpotifyCall.execute(spotifyApi.addItemsToPlaylist(playlistId, uris).position(position));
+      mirror.insert(trackIds, position, new Date(), snapshotOnly.getSnapshotId(), result.getSnapshotId());
+    }
+  }
+
+  /**
+   * Returns the track IDs of the given page of the playlist (null for any item
+   * that isn't a track). Always read from the Spotify API, as only the topmost
+   * items are mirrored.
+   */
+  public List<String> getTrackIds(String playlistId, int offset, int limit) throws SpotifyApiException {
+    Paging<PlaylistTrack> page = SpotifyCall.execute(spotifyApi.getPlaylistsItems(playlistId).offset(offset).limit(limit));
+    List<String> trackIds = new ArrayList<>();
+    for (PlaylistTrack item : page.getItems()) {
+      trackIds.add(item.getTrack() instanceof Track ? item.getTrack().getId() : null);
+    }
+    return trackIds;
+  }
+
+  /**
+   * Remove the given tracks from the playlist. Every entry has to specify the
+   * positions of its track (as expected by the Spotify API), relative to the
+   * given snapshot_id.
+   *
+   * @return the new snapshot_id
+   */
+  public String removeTracks(String playlistId, JsonArray tracks, String snapshotId) throws SpotifyApiException {
+    PlaylistMirror mirror = mirrors.computeIfAbsent(playlistId, PlaylistMirror::new);
+    SnapshotResult result = SpotifyCall.execute(spotifyApi.removeItemsFromPlaylist(playlistId, tracks).snapshotId(snapshotId));
+    List<Integer> positions = new ArrayList<>();
+    for (JsonElement track : tracks) {
+      for (JsonElement position : track.getAsJsonObject().getAsJsonArray("positions")) {
+        positions.add(position.getAsInt());
+      }
+    }
+    synchronized (mirror) {
+      mirror.remove(positions, snapshotId, result.getSnapshotId());
+    }
+    return result.getSnapshotId();
+  }
+
+  /**
+   * Verify the mirror of the given playlist against its current snapshot_id right
+   * away (refetching it if necessary) and return it
+   */
+  public PlaylistMirror verify(String playlistId) throws SpotifyApiException {
+    PlaylistMirror mirror = mirrors.computeIfAbsent(playlistId, PlaylistMirror::new);
+    synchronized (mirror) {
+      mirror.verifiedAt = 0;
+    }
+    return getPlaylist(playlistId);
+  }
+
+  /**
+   * Change the name and/or the description of the playlist (null values remain
+   * unchanged)
+   */
+  public void changeDetails(String playlistId, String name, String description) throws SpotifyApiException {
+    if (name != null || description != null) {
+      ChangePlaylistsDetailsRequest.Builder playlistDetailsBuilder = spotifyApi.changePlaylistsDetails(playlistId);
+      if (name != null) {
+        playlistDetailsBuilder = playlistDetailsBuilder.name(name);
+      }
+      if (description != null) {
+        playlistDetailsBuilder = playlistDetailsBuilder.description(description);
+      }
+      SpotifyCall.execute(playlistDetailsBuilder);
+
+      // The details request doesn't return the new snapshot_id, so only that is
+      // fetched (instead of refetching the whole playlist on the next read)
+      PlaylistMirror mirror = mirrors.get(playlistId);
+      if (mirror != null) {
+        synchronized (mirror) {
+          if (mirror.isValid()) {
+            Playlist snapshotOnly = SpotifyCall.execute(spotifyApi.getPlaylist(playlistId).fields(SNAPSHOT_ID_FIELD));
+            mirror.changeDetails(name, description, snapshotOnly.getSnapshotId());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Drop the mirror of the given playlist, so that it's refetched on the next read
+   */
+  public void invalidate(String playlistId) {
+    mirrors.remove(playlistId);
+  }
+
+  /////////////////
+
+  private void refetch(PlaylistMirror mirror) throws SpotifyApiException {
+    Playlist playlist = SpotifyCall.execute(spotifyApi.getPlaylist(mirror.playlistId));
+    List<HeadItem> headItems = new ArrayList<>();
+    PlaylistTrack[] items = playlist.getTracks().getItems();
+    if (items != null) {
+      for (PlaylistTrack item : items) {
+        IPlaylistItem track = item.getTrack();
+        headItems.add(new HeadItem(track != null ? track.getId() : null, item.getAddedAt()));
+      }
+    }
+    mirror.replace(playlist.getName(), playlist.getDescription(), playlist.getTracks().getTotal(), headItems, playlist.getSnapshotId());
+  }
+
+  /**
+   * The local mirror of a single playlist. Only modified by the
+   * {@link PlaylistMirrorService}, which applies the outcome of each of its
+   * requests through the package-private methods.
+   */
+  public static class PlaylistMirror {
+    private final String playlistId;
+    private final List<HeadItem> headItems;
+    private String name;
+    private String description;
+    private int total;
+    private String snapshotId;
+    private long verifiedAt;
+
+    PlaylistMirror(String playlistId) {
+      this.playlistId = playlistId;
+      this.headItems = new ArrayList<>();
+    }
+
+    /**
+     * Returns false if the mirror has to be refetched before it can be used
+     */
+    synchronized boolean isValid() {
+      return snapshotId != null;
+    }
+
+    /**
+     * Mark the mirror as verified if it still matches the playlist's current
+     * snapshot_id
+     *
+     * @return false if the playlist was changed by anyone else and has to be
+     *         refetched
+     */
+    synchronized boolean confirmSnapshot(String currentSnapshotId) {
+      if (isValid() && Objects.equals(snapshotId, currentSnapshotId)) {
+        verifiedAt = System.currentTimeMillis();
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Replace the whole mirror with the freshly fetched playlist
+     */
+    synchronized void replace(String name, String description, int total, List<HeadItem> headItems, String snapshotId) {
+      this.name = name;
+      this.description = description;
+      this.total = total;
+      this.headItems.clear();
+      this.headItems.addAll(headItems);
+      trimHead();
+      acceptSnapshot(snapshotId);
+    }
+
+    /**
+     * Apply the insertion of the given tracks at the given position, relative to
+     * the expected snapshot_id. The mirror is invalidated if the playlist had been
+     * changed by anyone else beforehand.
+     */
+    synchronized void insert(List<String> trackIds, int position, Date addedAt, String expectedSnapshotId, String snapshotId) {
+      if (!Objects.equals(this.snapshotId, expectedSnapshotId)) {
+        this.snapshotId = null;
+        return;
+      }
+      total += trackIds.size();
+      if (position < HEAD_SIZE) {
+        List<HeadItem> addedItems = new ArrayList<>();
+        for (String trackId : trackIds) {
+          addedItems.add(new HeadItem(trackId, addedAt));
+        }
+        headItems.addAll(Math.min(position, headItems.size()), addedItems);
+        trimHead();
+      }
+      acceptSnapshot(snapshotId);
+    }
+
+    /**
+     * Apply the removal of the items at the given positions, relative to the
+     * expected snapshot_id. Only the bottom of a playlist is ever trimmed, so the
+     * mirror is invalidated if the removal affected the head or if the playlist
+     * had been changed by anyone else beforehand.
+     */
+    synchronized void remove(List<Integer> positions, String expectedSnapshotId, String snapshotId) {
+      total = Math.max(0, total - positions.size());
+      boolean headAffected = positions.stream().anyMatch(position -> position < headItems.size());
+      if (headAffected || !Objects.equals(this.snapshotId, expectedSnapshotId)) {
+        this.snapshotId = null;
+      } else {
+        acceptSnapshot(snapshotId);
+      }
+    }
+
+    /**
+     * Apply the change of the name and/or the description (null values remain
+     * unchanged). An invalid mirror stays invalid.
+     */
+    synchronized void changeDetails(String name, String description, String snapshotId) {
+      if (name != null) {
+        this.name = name;
+      }
+      if (description != null) {
+        this.description = description;
+      }
+      if (isValid()) {
+        acceptSnapshot(snapshotId);
+      }
+    }
+
+    private void acceptSnapshot(String snapshotId) {
+      this.snapshotId = snapshotId;
+      this.verifiedAt = System.currentTimeMillis();
+    }
+
+    private void trimHead() {
+      while (headItems.size() > HEAD_SIZE) {
+        headItems.remove(headItems.size() - 1);
+      }
+    }
+
+    public String getPlaylistId() {
+      return playlistId;
+    }
+
+    public synchronized String getSnapshotId() {
+      return snapshotId;
+    }
+
+    public synchronized String getName() {
+      return name;
+    }
+
+    public synchronized String getDescription() {
+      return description;
+    }
+
+    public synchronized int getTotal() {
+      return total;
+    }
+
+    /**
+     * Returns a copy of the topmost items of the playlist (at most
+     * {@link PlaylistMirrorService#HEAD_SIZE})
+     */
+    public synchronized List<HeadItem> getHeadItems() {
+      return new ArrayList<>(headItems);
+    }
+  }
+
+  /**
+   * A single mirrored playlist item: its ID (null for local files) and when it
+   * was added
+   */
+  public static class HeadItem {
+    private final String id;
+    private final Date addedAt;
+
+    HeadItem(String id, Date addedAt) {
+      this.id = id;
+      this.addedAt = addedAt;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public Date getAddedAt() {
+      return addedAt;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package spotify.bot.service.performance;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.enums.AlbumType;
+import se.michaelthelin.spotify.model_objects.specification.Album;
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ExternalId;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.api.SpotifyApiException;
+import spotify.api.SpotifyCall;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.data.ReleaseCodes;
+import spotify.util.SpotifyUtils;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Performance service for the re-release detection by release codes. The UPC
+ * (album level) and the ISRCs (track level) of every added release are cached
+ * permanently, so a re-upload under a new ID (and maybe an identical name) is
+ * recognized by index lookup instead of by title heuristics. The codes aren't
+ * part of the simplified objects returned by the album and track listings, so
+ * they are fetched in batches of full albums (20 per request) and full tracks
+ * (50 per request) once per crawl for all candidates. The ISRCs of singles
+ * aren't cached (see {@link ReleaseCodes}).
+ */
+@Service
+public class ReleaseCodeIndexService {
+  private final static int MAX_ALBUM_IDS_PER_REQUEST = 20;
+  private final static int MAX_TRACK_IDS_PER_REQUEST = 50;
+
+  private final static String UPC = "upc";
+  private final static String ISRC = "isrc";
+
+  private final SpotifyApi spotifyApi;
+  private final DatabaseService databaseService;
+  private final DiscoveryBotLogger log;
+
+  private final Map<String, String> upcByAlbumId;
+  private final Map<String, String> isrcByTrackId;
+  private volatile Set<String> knownAlbumIds;
+
+  ReleaseCodeIndexService(SpotifyApi spotifyApi, DatabaseService databaseService, DiscoveryBotLogger discoveryBotLogger) {
+    this.spotifyApi = spotifyApi;
+    this.databaseService = databaseService;
+    this.log = discoveryBotLogger;
+    this.upcByAlbumId = new HashMap<>();
+    this.isrcByTrackId = new HashMap<>();
+    this.knownAlbumIds = Set.of();
+  }
+
+  /**
+   * Fetch the release codes of the given releases in bulk and look them up in the
+   * index, so that {@link ReleaseCodeIndexService#isKnownRelease} doesn't need
+   * any further requests. Replaces whatever was prefetched before.
+   */
+  public synchronized void prefetch(List<AlbumTrackPair> releases) {
+    long time = System.currentTimeMillis();
+    upcByAlbumId.clear();
+    isrcByTrackId.clear();
+    fetchCodes(releases);
+
+    Set<String> knownUpcs = Set.of();
+    Set<String> knownIsrcs = Set.of();
+    try {
+      knownUpcs = databaseService.getKnownUpcs(upcByAlbumId.values());
+      knownIsrcs = databaseService.getKnownIsrcs(isrcByTrackId.values());
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+
+    Set<String> known = new HashSet<>();
+    for (AlbumTrackPair atp : releases) {
+      if (getReleaseCodes(atp).isKnown(knownUpcs, knownIsrcs)) {
+        known.add(atp.getAlbum().getId());
+      }
+    }
+    this.knownAlbumIds = known;
+    if (!releases.isEmpty()) {
+      log.debug(String.format("Prefetched the release codes of %d release[s] in %dms (%d known)", releases.size(), System.currentTimeMillis() - time, known.size()));
+    }
+  }
+
+  /**
+   * Check if the given release has been identified as a re-upload of an already
+   * added release by the last {@link ReleaseCodeIndexService#prefetch}
+   */
+  public boolean isKnownRelease(AlbumSimplified album) {
+    return knownAlbumIds.contains(album.getId());
+  }
+
+  /**
+   * Returns the ISRC of the given track, if it was fetched by the last
+   * {@link ReleaseCodeIndexService#prefetch} or any fetch since (null otherwise)
+   */
+  public synchronized String getIsrc(String trackId) {
+    return isrcByTrackId.get(trackId);
+  }
+
+  /**
+   * Fetch the ISRCs of the tracks of the given releases that haven't been
+   * fetched yet (e.g. because the re-release detection is disabled)
+   */
+  public synchronized void fetchIsrcs(List<AlbumTrackPair> releases) {
+    List<String> missingTrackIds = releases.stream()
+        .flatMap(atp -> atp.getTracks().stream())
+        .map(TrackSimplified::getId)
+        .filter(id -> id != null && !isrcByTrackId.containsKey(id))
+        .distinct()
+        .collect(Collectors.toList());
+    for (List<String> partition : SpotifyUtils.partitionList(missingTrackIds, MAX_TRACK_IDS_PER_REQUEST)) {
+      try {
+        Track[] tracks = SpotifyCall.execute(spotifyApi.getSeveralTracks(partition.toArray(String[]::new)));
+        for (Track track : tracks) {
+          if (track != null) {
+            putCode(isrcByTrackId, track.getId(), track.getExternalIds(), ISRC);
+          }
+        }
+      } catch (SpotifyApiException e) {
+        log.stackTrace(e);
+      }
+    }
+  }
+
+  /**
+   * Cache the release codes of the given (added) releases. Codes that weren't
+   * prefetched are fetched now.
+   */
+  public synchronized void cacheAddedReleases(List<AlbumTrackPair> releases) {
+    fetchCodes(releases);
+    List<String> upcs = new ArrayList<>();
+    List<String> isrcs = new ArrayList<>();
+    for (AlbumTrackPair atp : releases) {
+      ReleaseCodes releaseCodes = getReleaseCodes(atp);
+      if (releaseCodes.getUpc() != null) {
+        upcs.add(releaseCodes.getUpc());
+      }
+      isrcs.addAll(releaseCodes.getIndexedIsrcs());
+    }
+    databaseService.cacheReleaseCodes(isrcs, upcs);
+  }
+
+  /**
+   * Forget all release codes fetched so far (and the result of the last
+   * {@link ReleaseCodeIndexService#prefetch}). Called at the end of every crawl
+   * and flush, so the fetched codes are only kept for as long as they are
+   * needed, even while the re-release detection (and with it the prefetch) is
+   * disabled.
+   */
+  public synchronized void clear() {
+    upcByAlbumId.clear();
+    isrcByTrackId.clear();
+    knownAlbumIds = Set.of();
+  }
+
+  /////////////////
+
+  private ReleaseCodes getReleaseCodes(AlbumTrackPair atp) {
+    AlbumSimplified album = atp.getAlbum();
+    List<String> isrcs = new ArrayList<>();
+    for (TrackSimplified track : atp.getTracks()) {
+      String isrc = isrcByTrackId.get(track.getId());
+      if (isrc != null) {
+        isrcs.add(isrc);
+      }
+    }
+    return new ReleaseCodes(upcByAlbumId.get(album.getId()), isrcs, album.getAlbumType() == AlbumType.SINGLE);
+  }
+
+  private void fetchCodes(List<AlbumTrackPair> releases) {
+    List<String> missingAlbumIds = releases.stream()
+        .map(atp -> atp.getAlbum().getId())
+        .filter(id -> id != null && !upcByAlbumId.containsKey(id))
+        .distinct()
+        .collect(Collectors.toList());
+    for (List<String> partition : SpotifyUtils.partitionList(missingAlbumIds, MAX_ALBUM_IDS_PER_REQUEST)) {
+      try {
+        Album[] albums = SpotifyCall.execute(spotifyApi.getSeveralAlbums(partition.toArray(String[]::new)));
+        for (Album album : albums) {
+          if (album != null) {
+            putCode(upcByAlbumId, album.getId(), album.getExternalIds(), UPC);
+          }
+        }
+      } catch (SpotifyApiException e) {
+        log.stackTrace(e);
+      }
+    }
+    fetchIsrcs(releases);
+  }
+
+  private static void putCode(Map<String, String> codesById, String id, ExternalId externalId, String type) {
+    if (id != null && externalId != null && externalId.getExternalIds() != null) {
+      String code = externalId.getExternalIds().get(type);
+      if (!SpotifyUtils.isNullString(code)) {
+        codesById.put(id, code.strip().toUpperCase());
+      }
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package spotify.bot.service.performance;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import spotify.bot.config.database.DatabaseService;
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.DiscoveryBotUtils;
+import spotify.bot.util.data.LongHashSet;
+import spotify.bot.util.data.ReleaseTitle;
+import spotify.bot.util.data.ReleaseTitleIndex;
+
+/**
+ * Performance service to look up whether a release of the same name has been
+ * cached before (used for re-release detection). The release name fingerprints
+ * and the normalized per-artist titles are read from the database only once and
+ * kept up-to-date in memory whenever new releases are cached. Lookups may run
+ * concurrently (parallel remapping); updates are exclusive.
+ */
+@Service
+public class ReleaseTitleIndexService {
+  private final DatabaseService databaseService;
+  private final DiscoveryBotLogger log;
+
+  private final ReadWriteLock lock;
+
+  private LongHashSet releaseNameFingerprints;
+  private volatile ReleaseTitleIndex releaseTitleIndex;
+  private boolean backfillPending;
+
+  ReleaseTitleIndexService(DatabaseService databaseService, DiscoveryBotLogger discoveryBotLogger) {
+    this.databaseService = databaseService;
+    this.log = discoveryBotLogger;
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  /**
+   * Check if the given release has been cached before, either by its exact name
+   * or by a similar normalized title of any of its artists
+   */
+  public boolean isKnownRelease(AlbumSimplified album) throws SQLException {
+    ensureLoaded();
+    lock.readLock().lock();
+    try {
+      if (releaseNameFingerprints.contains(DiscoveryBotUtils.releaseNameFingerprint(album))) {
+        return true;
+      }
+      for (ReleaseTitle releaseTitle : toReleaseTitles(album)) {
+        if (releaseTitleIndex.containsSimilar(releaseTitle)) {
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Cache the names and normalized titles of the given releases
+   */
+  public void cacheReleases(List<AlbumSimplified> albums) {
+    List<ReleaseTitle> titles = albums.stream()
+        .flatMap(a -> toReleaseTitles(a).stream())
+        .collect(Collectors.toList());
+    lock.writeLock().lock();
+    try {
+      databaseService.cacheAlbumNames(albums);
+      databaseService.cacheReleaseTitles(titles);
+      if (releaseTitleIndex != null) {
+        albums.forEach(a -> releaseNameFingerprints.add(DiscoveryBotUtils.releaseNameFingerprint(a)));
+        titles.forEach(releaseTitleIndex::add);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Databases created before the title index existed only have the exact release
+   * names. Index the titles of all visible releases that are already cached
+   * (by ID) once, so the fuzzy lookup covers them as well.
+   */
+  public void backfillFromCachedReleases(List<AlbumSimplified> allAlbums) throws SQLException {
+    ensureLoaded();
+    lock.writeLock().lock();
+    try {
+      backfill(allAlbums);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void backfill(List<AlbumSimplified> allAlbums) throws SQLException {
+    if (backfillPending && !allAlbums.isEmpty()) {
+      Set<String> allAlbumIds = allAlbums.stream()
+          .map(AlbumSimplified::getId)
+          .collect(Collectors.toSet());
+      Set<String> cachedAlbumIds = databaseService.getCachedReleaseIds(allAlbumIds);
+      List<ReleaseTitle> titles = allAlbums.stream()
+          .filter(a -> cachedAlbumIds.contains(a.getId()))
+          .flatMap(a -> toReleaseTitles(a).stream())
+          .distinct()
+          .collect(Collectors.toList());
+      databaseService.cacheReleaseTitles(titles);
+      titles.forEach(releaseTitleIndex::add);
+      backfillPending = false;
+      log.info("Release title index backfilled with " + titles.size() + " title[s]", false);
+    }
+  }
+
+  private void ensureLoaded() throws SQLException {
+    if (releaseTitleIndex == null) {
+      lock.writeLock().lock();
+      try {
+        load();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private void load() throws SQLException {
+    if (releaseTitleIndex == null) {
+      long time = System.currentTimeMillis();
+      releaseNameFingerprints = databaseService.getReleaseNameFingerprints();
+      ReleaseTitleIndex index = new ReleaseTitleIndex();
+      List<ReleaseTitle> releaseTitles = databaseService.getReleaseTitlesCache();
+      releaseTitles.forEach(index::add);
+      backfillPending = releaseTitles.isEmpty() && !releaseNameFingerprints.isEmpty();
+      releaseTitleIndex = index;
+      log.info(String.format("Release title index loaded (%d names / %d titles) in %dms", releaseNameFingerprints.size(), releaseTitleIndex.size(), System.currentTimeMillis() - time), false);
+    }
+  }
+
+  private static List<ReleaseTitle> toReleaseTitles(AlbumSimplified album) {
+    List<ReleaseTitle> releaseTitles = new ArrayList<>();
+    if (album.getArtists() != null && album.getName() != null && album.getAlbumType() != null) {
+      String normalizedTitle = ReleaseTitleIndex.normalize(album.getName());
+      String albumType = album.getAlbumType().getType();
+      for (ArtistSimplified artist : album.getArtists()) {
+        if (artist.getId() != null) {
+          releaseTitles.add(new ReleaseTitle(artist.getId(), albumType, normalizedTitle));
+        }
+      }
+    }
+    return releaseTitles;
+  }
+}
@@ -1,5 +1,9 @@
 package spotify.bot.util;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -122,6 +126,28 @@ public class DiscoveryBotUtils {
     return String.valueOf(build);
   }
 
+  /**
+   * Stable 64-bit fingerprint of the given string (the first 8 bytes of its
+   * SHA-256 hash). Used to cache identifiers in a fraction of their size.
+   */
+  public static long fingerprint(String string) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(string.getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(hash).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Fingerprint of the identifier string of the given album, as stored in the
+   * release names cache
+   */
+  public static long releaseNameFingerprint(AlbumSimplified album) {
+    return fingerprint(SpotifyUtils.albumIdentifierString(album));
+  }
+
   /**
    * Same as DEFAULT_PLAYLIST_GROUP_ORDER, but reversed
    */
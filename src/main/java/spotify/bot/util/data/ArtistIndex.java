@@ -0,0 +1,185 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+
+/**
+ * Immutable lookup table of every artist the bot knows something about
+ * (followed, newly followed, whitelisted for relaying, blacklisted for certain
+ * album groups). Built once per crawl and shared by all filters, so that
+ * membership checks are a single hash lookup without any allocations, instead
+ * of a scan over a list of IDs.
+ */
+public class ArtistIndex {
+	private final static Attributes NONE = new Attributes(false, false, false, Set.of());
+
+	private final Map<String, Attributes> attributesById;
+	private final List<String> followedArtistIds;
+
+	private ArtistIndex(Map<String, Attributes> attributesById, List<String> followedArtistIds) {
+		this.attributesById = attributesById;
+		this.followedArtistIds = followedArtistIds;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the IDs of all followed artists, in the order they were added
+	 */
+	public List<String> getFollowedArtistIds() {
+		return followedArtistIds;
+	}
+
+	public boolean isFollowed(String artistId) {
+		return get(artistId).followed;
+	}
+
+	public boolean isNewlyFollowed(String artistId) {
+		return get(artistId).newlyFollowed;
+	}
+
+	public boolean isWhitelisted(String artistId) {
+		return get(artistId).whitelisted;
+	}
+
+	public boolean isBlacklisted(String artistId, AlbumGroupExtended albumGroupExtended) {
+		return get(artistId).blacklistedGroups.contains(albumGroupExtended);
+	}
+
+	/**
+	 * Returns true if at least one of the given artists is followed
+	 */
+	public boolean anyFollowed(ArtistSimplified[] artists) {
+		for (ArtistSimplified artist : artists) {
+			if (isFollowed(artist.getId())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if at least one of the given artists is whitelisted
+	 */
+	public boolean anyWhitelisted(ArtistSimplified[] artists) {
+		for (ArtistSimplified artist : artists) {
+			if (isWhitelisted(artist.getId())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if at least one of the given artists has blacklisted the given
+	 * album group
+	 */
+	public boolean anyBlacklisted(ArtistSimplified[] artists, AlbumGroupExtended albumGroupExtended) {
+		for (ArtistSimplified artist : artists) {
+			if (isBlacklisted(artist.getId(), albumGroupExtended)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Attributes get(String artistId) {
+		if (artistId == null) {
+			return NONE;
+		}
+		return attributesById.getOrDefault(artistId, NONE);
+	}
+
+	/////////////////
+
+	private static class Attributes {
+		private final boolean followed;
+		private final boolean newlyFollowed;
+		private final boolean whitelisted;
+		private final Set<AlbumGroupExtended> blacklistedGroups;
+
+		private Attributes(boolean followed, boolean newlyFollowed, boolean whitelisted, Set<AlbumGroupExtended> blacklistedGroups) {
+			this.followed = followed;
+			this.newlyFollowed = newlyFollowed;
+			this.whitelisted = whitelisted;
+			this.blacklistedGroups = blacklistedGroups;
+		}
+	}
+
+	public static class Builder {
+		private final Map<String, MutableAttributes> attributesById;
+		private final List<String> followedArtistIds;
+
+		private Builder() {
+			this.attributesById = new HashMap<>();
+			this.followedArtistIds = new ArrayList<>();
+		}
+
+		/**
+		 * Add the followed artists of the given container
+		 */
+		public Builder followed(CachedArtistsContainer cachedArtistsContainer) {
+			for (String artistId : cachedArtistsContainer.getAllArtists()) {
+				MutableAttributes attributes = attributes(artistId);
+				if (!attributes.followed) {
+					attributes.followed = true;
+					followedArtistIds.add(artistId);
+				}
+			}
+			for (String artistId : cachedArtistsContainer.getNewArtists()) {
+				attributes(artistId).newlyFollowed = true;
+			}
+			return this;
+		}
+
+		/**
+		 * Add the given artists as whitelisted
+		 */
+		public Builder whitelisted(Collection<String> artistIds) {
+			for (String artistId : artistIds) {
+				attributes(artistId).whitelisted = true;
+			}
+			return this;
+		}
+
+		/**
+		 * Add the given blacklisted album groups per artist
+		 */
+		public Builder blacklisted(Map<String, ? extends Collection<AlbumGroupExtended>> blacklistedGroupsByArtist) {
+			for (Map.Entry<String, ? extends Collection<AlbumGroupExtended>> entry : blacklistedGroupsByArtist.entrySet()) {
+				attributes(entry.getKey()).blacklistedGroups.addAll(entry.getValue());
+			}
+			return this;
+		}
+
+		public ArtistIndex build() {
+			Map<String, Attributes> frozen = new HashMap<>(attributesById.size() * 4 / 3 + 1);
+			for (Map.Entry<String, MutableAttributes> entry : attributesById.entrySet()) {
+				MutableAttributes attributes = entry.getValue();
+				frozen.put(entry.getKey(), new Attributes(attributes.followed, attributes.newlyFollowed, attributes.whitelisted,
+					attributes.blacklistedGroups.isEmpty() ? Set.of() : EnumSet.copyOf(attributes.blacklistedGroups)));
+			}
+			return new ArtistIndex(frozen, List.copyOf(followedArtistIds));
+		}
+
+		private MutableAttributes attributes(String artistId) {
+			return attributesById.computeIfAbsent(artistId.strip(), id -> new MutableAttributes());
+		}
+	}
+
+	private static class MutableAttributes {
+		private boolean followed;
+		private boolean newlyFollowed;
+		private boolean whitelisted;
+		private final Set<AlbumGroupExtended> blacklistedGroups = EnumSet.noneOf(AlbumGroupExtended.class);
+	}
+}
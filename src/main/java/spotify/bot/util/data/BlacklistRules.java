@@ -0,0 +1,157 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+
+/**
+ * Compiled decision table of all blacklist rules. Artist rules are a plain
+ * lookup of the blacklisted album groups per artist ID (see
+ * {@link ArtistIndex}). Title rules are indexed by the artist they're scoped to
+ * (if any) and by album group, and all title patterns of the same cell are
+ * merged into a single pattern, so a release is checked with at most one
+ * pattern per artist instead of once per rule.
+ */
+public class BlacklistRules {
+	private final static int PATTERN_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+	private final Map<String, Set<AlbumGroupExtended>> artistRules;
+	private final Map<AlbumGroupExtended, Pattern> titlePatternsByGroup;
+	private final Map<String, Map<AlbumGroupExtended, Pattern>> titlePatternsByArtistAndGroup;
+	private final int ruleCount;
+
+	private BlacklistRules(Map<String, Set<AlbumGroupExtended>> artistRules, Map<AlbumGroupExtended, Pattern> titlePatternsByGroup,
+		Map<String, Map<AlbumGroupExtended, Pattern>> titlePatternsByArtistAndGroup, int ruleCount) {
+		this.artistRules = artistRules;
+		this.titlePatternsByGroup = titlePatternsByGroup;
+		this.titlePatternsByArtistAndGroup = titlePatternsByArtistAndGroup;
+		this.ruleCount = ruleCount;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the album groups blacklisted per artist ID (regardless of the title)
+	 */
+	public Map<String, Set<AlbumGroupExtended>> getArtistRules() {
+		return artistRules;
+	}
+
+	/**
+	 * Returns true if the title of the given release is blacklisted for the given
+	 * album group, either globally or for any of the release's artists
+	 */
+	public boolean matchesTitle(AlbumSimplified album, AlbumGroupExtended albumGroupExtended) {
+		String title = album.getName();
+		if (title == null) {
+			return false;
+		}
+		Pattern globalPattern = titlePatternsByGroup.get(albumGroupExtended);
+		if (globalPattern != null && globalPattern.matcher(title).find()) {
+			return true;
+		}
+		if (!titlePatternsByArtistAndGroup.isEmpty()) {
+			for (ArtistSimplified artist : album.getArtists()) {
+				Map<AlbumGroupExtended, Pattern> artistPatterns = titlePatternsByArtistAndGroup.get(artist.getId());
+				if (artistPatterns != null) {
+					Pattern artistPattern = artistPatterns.get(albumGroupExtended);
+					if (artistPattern != null && artistPattern.matcher(title).find()) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the total number of rules
+	 */
+	public int size() {
+		return ruleCount;
+	}
+
+	/////////////////
+
+	public static class Builder {
+		// Scope key for title rules that apply to every artist
+		private final static String ANY_ARTIST = "";
+
+		private final Map<String, Set<AlbumGroupExtended>> artistRules;
+		private final Map<String, Map<AlbumGroupExtended, List<String>>> titleRegexes;
+		private int ruleCount;
+
+		private Builder() {
+			this.artistRules = new HashMap<>();
+			this.titleRegexes = new HashMap<>();
+		}
+
+		/**
+		 * Blacklist the given album groups for every release of the given artist
+		 */
+		public Builder artistRule(String artistId, Collection<AlbumGroupExtended> albumGroups) {
+			artistRules.computeIfAbsent(artistId, id -> EnumSet.noneOf(AlbumGroupExtended.class)).addAll(albumGroups);
+			ruleCount++;
+			return this;
+		}
+
+		/**
+		 * Blacklist every release whose title contains a match of the given regular
+		 * expression (case-insensitive) for the given album groups
+		 *
+		 * @param regex       the regular expression
+		 * @param albumGroups the album groups the rule applies to
+		 * @param artistId    the artist the rule is restricted to, null for all artists
+		 * @throws java.util.regex.PatternSyntaxException if the regex is invalid
+		 */
+		public Builder titleRule(String regex, Collection<AlbumGroupExtended> albumGroups, String artistId) {
+			Pattern.compile(regex, PATTERN_FLAGS);
+			Map<AlbumGroupExtended, List<String>> regexesByGroup = titleRegexes.computeIfAbsent(artistId != null ? artistId : ANY_ARTIST, id -> new EnumMap<>(AlbumGroupExtended.class));
+			for (AlbumGroupExtended albumGroup : albumGroups) {
+				regexesByGroup.computeIfAbsent(albumGroup, ag -> new ArrayList<>()).add(regex);
+			}
+			ruleCount++;
+			return this;
+		}
+
+		public BlacklistRules build() {
+			Map<String, Set<AlbumGroupExtended>> compiledArtistRules = new HashMap<>();
+			artistRules.forEach((artistId, groups) -> compiledArtistRules.put(artistId, Set.copyOf(groups)));
+
+			Map<AlbumGroupExtended, Pattern> titlePatternsByGroup = new EnumMap<>(AlbumGroupExtended.class);
+			Map<String, Map<AlbumGroupExtended, Pattern>> titlePatternsByArtistAndGroup = new HashMap<>();
+			for (Map.Entry<String, Map<AlbumGroupExtended, List<String>>> entry : titleRegexes.entrySet()) {
+				Map<AlbumGroupExtended, Pattern> patterns = entry.getKey().equals(ANY_ARTIST)
+					? titlePatternsByGroup
+					: titlePatternsByArtistAndGroup.computeIfAbsent(entry.getKey(), id -> new EnumMap<>(AlbumGroupExtended.class));
+				entry.getValue().forEach((albumGroup, regexes) -> patterns.put(albumGroup, mergePatterns(regexes)));
+			}
+			return new BlacklistRules(Map.copyOf(compiledArtistRules), titlePatternsByGroup, titlePatternsByArtistAndGroup, ruleCount);
+		}
+
+		/**
+		 * Merge the given regexes into a single alternation. Each one is wrapped in
+		 * a non-capturing group, so their own alternations stay intact (numbered
+		 * backreferences are not supported, as the group numbers shift).
+		 */
+		private static Pattern mergePatterns(List<String> regexes) {
+			String merged = regexes.stream()
+				.distinct()
+				.map(regex -> "(?:" + regex + ")")
+				.collect(Collectors.joining("|"));
+			return Pattern.compile(merged, PATTERN_FLAGS);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+
+/**
+ * The releases fetched for a list of artists, along with the artists whose
+ * releases were fetched completely. An artist whose request failed is left out
+ * of both, so its previously cached releases can't be mistaken for vanished.
+ */
+public class FetchedReleases {
+	private final List<AlbumSimplified> albums;
+	private final Set<String> fetchedArtistIds;
+
+	private FetchedReleases(List<AlbumSimplified> albums, Set<String> fetchedArtistIds) {
+		this.albums = albums;
+		this.fetchedArtistIds = fetchedArtistIds;
+	}
+
+	/**
+	 * The complete releases of a single artist
+	 */
+	public static FetchedReleases ofArtist(String artistId, List<AlbumSimplified> albums) {
+		return new FetchedReleases(albums, Set.of(artistId));
+	}
+
+	/**
+	 * Combine the results of the individual artists. Artists without a result
+	 * (e.g. because their request failed) aren't marked as fetched.
+	 *
+	 * @param resultsByArtist the results of every artist fetched completely (null
+	 *                        entries are skipped)
+	 * @return the combined result
+	 */
+	public static FetchedReleases combine(Collection<FetchedReleases> resultsByArtist) {
+		List<AlbumSimplified> albums = new ArrayList<>();
+		Set<String> fetchedArtistIds = new HashSet<>();
+		for (FetchedReleases result : resultsByArtist) {
+			if (result != null) {
+				albums.addAll(result.getAlbums());
+				fetchedArtistIds.addAll(result.getFetchedArtistIds());
+			}
+		}
+		return new FetchedReleases(albums, fetchedArtistIds);
+	}
+
+	/**
+	 * The releases of all artists fetched completely
+	 */
+	public List<AlbumSimplified> getAlbums() {
+		return albums;
+	}
+
+	/**
+	 * The IDs of the artists whose releases were fetched completely
+	 */
+	public Set<String> getFetchedArtistIds() {
+		return fetchedArtistIds;
+	}
+}
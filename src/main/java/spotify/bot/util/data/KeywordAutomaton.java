@@ -0,0 +1,265 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a dictionary of keywords, each belonging to a
+ * {@link TitleTag}. A title is tagged with every tag in one linear scan,
+ * regardless of the number of keywords, instead of running one regular
+ * expression per heuristic.<br/>
+ * <br/>
+ * Titles and keywords are normalized before matching: lowercase, every run of
+ * digits becomes <code>#</code>, and every run of other characters becomes a
+ * single space (so "Re-Issue" matches the keyword "re issue", and "10 Years"
+ * matches "# year*"). A keyword has to start at a word boundary, unless it's
+ * defined with a leading <code>*</code> ("*remaster" matches "Unremaster"). It
+ * has to end at one as well, unless it's defined with a trailing
+ * <code>*</code>, in which case the word may continue ("remaster*" matches
+ * "Remastered"). Immutable and thread-safe once built.
+ */
+public class KeywordAutomaton {
+	private final static char DIGITS = '#';
+	private final static char SEPARATOR = ' ';
+	private final static String WILDCARD = "*";
+
+	private final static int NO_MATCH = -1;
+
+	// Per node: the sorted transition characters and their target nodes
+	private final char[][] transitionChars;
+	private final int[][] transitionTargets;
+	private final int[] failure;
+
+	// Per node: the keywords ending here (including those reached via failure links)
+	private final Keyword[][] outputs;
+
+	private KeywordAutomaton(char[][] transitionChars, int[][] transitionTargets, int[] failure, Keyword[][] outputs) {
+		this.transitionChars = transitionChars;
+		this.transitionTargets = transitionTargets;
+		this.failure = failure;
+		this.outputs = outputs;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Tag the given title in a single pass
+	 *
+	 * @param title the title (may be null)
+	 * @return the tags found in the title
+	 */
+	public TitleTags scan(String title) {
+		int[] firstMatches = new int[TitleTag.values().length];
+		boolean[] entireMatches = new boolean[TitleTag.values().length];
+		Arrays.fill(firstMatches, NO_MATCH);
+		if (title == null) {
+			return new TitleTags(firstMatches, entireMatches);
+		}
+		String text = normalize(title, false);
+		int node = 0;
+		for (int i = 0; i < text.length(); i++) {
+			node = next(node, text.charAt(i));
+			for (Keyword keyword : outputs[node]) {
+				int start = i - keyword.length + 1;
+				if ((keyword.prefixAllowed || isWordStart(text, start)) && (keyword.suffixAllowed || isWordEnd(text, i + 1))) {
+					int tag = keyword.tag.ordinal();
+					if (firstMatches[tag] == NO_MATCH || start < firstMatches[tag]) {
+						firstMatches[tag] = start;
+					}
+					if (start == 0 && i + 1 == text.length()) {
+						entireMatches[tag] = true;
+					}
+				}
+			}
+		}
+		return new TitleTags(firstMatches, entireMatches);
+	}
+
+	/**
+	 * Normalize the given title or keyword as described in the class
+	 * documentation. Within keywords, <code>#</code> stands for a number.
+	 */
+	static String normalize(String s, boolean keyword) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			char last = sb.length() > 0 ? sb.charAt(sb.length() - 1) : 0;
+			if (Character.isLetter(c)) {
+				sb.append(Character.toLowerCase(c));
+			} else if (Character.isDigit(c) || (keyword && c == DIGITS)) {
+				if (last != DIGITS) {
+					sb.append(DIGITS);
+				}
+			} else if (last != SEPARATOR) {
+				sb.append(SEPARATOR);
+			}
+		}
+		return keyword ? sb.toString().strip() : sb.toString();
+	}
+
+	private int next(int node, char c) {
+		while (true) {
+			int index = Arrays.binarySearch(transitionChars[node], c);
+			if (index >= 0) {
+				return transitionTargets[node][index];
+			}
+			if (node == 0) {
+				return 0;
+			}
+			node = failure[node];
+		}
+	}
+
+	private static boolean isWordStart(String text, int start) {
+		return start == 0 || text.charAt(start - 1) == SEPARATOR;
+	}
+
+	private static boolean isWordEnd(String text, int end) {
+		return end == text.length() || text.charAt(end) == SEPARATOR;
+	}
+
+	/////////////////
+
+	private static class Keyword {
+		private final TitleTag tag;
+		private final int length;
+		private final boolean prefixAllowed;
+		private final boolean suffixAllowed;
+
+		private Keyword(TitleTag tag, int length, boolean prefixAllowed, boolean suffixAllowed) {
+			this.tag = tag;
+			this.length = length;
+			this.prefixAllowed = prefixAllowed;
+			this.suffixAllowed = suffixAllowed;
+		}
+	}
+
+	/**
+	 * The tags of a single title
+	 */
+	public static class TitleTags {
+		private final int[] firstMatches;
+		private final boolean[] entireMatches;
+
+		private TitleTags(int[] firstMatches, boolean[] entireMatches) {
+			this.firstMatches = firstMatches;
+			this.entireMatches = entireMatches;
+		}
+
+		/**
+		 * Returns true if any keyword of the given tag was found
+		 */
+		public boolean has(TitleTag tag) {
+			return firstMatches[tag.ordinal()] != NO_MATCH;
+		}
+
+		/**
+		 * Returns true if the leftmost keyword of the given tag was found at the very
+		 * beginning of the title
+		 */
+		public boolean isAtStart(TitleTag tag) {
+			return firstMatches[tag.ordinal()] == 0;
+		}
+
+		/**
+		 * Returns true if a keyword of the given tag spans the entire title (after
+		 * normalization)
+		 */
+		public boolean isEntireTitle(TitleTag tag) {
+			return entireMatches[tag.ordinal()];
+		}
+	}
+
+	public static class Builder {
+		private final List<Map<Character, Integer>> trie = new ArrayList<>();
+		private final List<List<Keyword>> keywordsByNode = new ArrayList<>();
+
+		private Builder() {
+			addNode();
+		}
+
+		/**
+		 * Add a keyword for the given tag (see the class documentation for the
+		 * syntax). Blank keywords are ignored.
+		 */
+		public Builder add(TitleTag tag, String keyword) {
+			String raw = keyword.strip();
+			boolean prefixAllowed = raw.startsWith(WILDCARD);
+			if (prefixAllowed) {
+				raw = raw.substring(WILDCARD.length());
+			}
+			boolean suffixAllowed = raw.endsWith(WILDCARD);
+			if (suffixAllowed) {
+				raw = raw.substring(0, raw.length() - WILDCARD.length());
+			}
+			String normalized = normalize(raw, true);
+			if (!normalized.isEmpty()) {
+				int node = 0;
+				for (char c : normalized.toCharArray()) {
+					Integer child = trie.get(node).get(c);
+					if (child == null) {
+						child = addNode();
+						trie.get(node).put(c, child);
+					}
+					node = child;
+				}
+				keywordsByNode.get(node).add(new Keyword(tag, normalized.length(), prefixAllowed, suffixAllowed));
+			}
+			return this;
+		}
+
+		private int addNode() {
+			trie.add(new TreeMap<>());
+			keywordsByNode.add(new ArrayList<>());
+			return trie.size() - 1;
+		}
+
+		public KeywordAutomaton build() {
+			int nodeCount = trie.size();
+			char[][] transitionChars = new char[nodeCount][];
+			int[][] transitionTargets = new int[nodeCount][];
+			int[] failure = new int[nodeCount];
+			Keyword[][] outputs = new Keyword[nodeCount][];
+
+			for (int node = 0; node < nodeCount; node++) {
+				Map<Character, Integer> transitions = trie.get(node);
+				transitionChars[node] = new char[transitions.size()];
+				transitionTargets[node] = new int[transitions.size()];
+				int i = 0;
+				for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+					transitionChars[node][i] = transition.getKey();
+					transitionTargets[node][i] = transition.getValue();
+					i++;
+				}
+			}
+
+			// Breadth-first, so the failure target of every node is complete before its children are visited
+			KeywordAutomaton automaton = new KeywordAutomaton(transitionChars, transitionTargets, failure, outputs);
+			outputs[0] = keywordsByNode.get(0).toArray(Keyword[]::new);
+			Deque<Integer> queue = new ArrayDeque<>();
+			for (int child : trie.get(0).values()) {
+				failure[child] = 0;
+				queue.add(child);
+			}
+			while (!queue.isEmpty()) {
+				int node = queue.poll();
+				List<Keyword> nodeOutputs = new ArrayList<>(keywordsByNode.get(node));
+				nodeOutputs.addAll(Arrays.asList(outputs[failure[node]]));
+				outputs[node] = nodeOutputs.toArray(Keyword[]::new);
+				for (Map.Entry<Character, Integer> transition : trie.get(node).entrySet()) {
+					int child = transition.getValue();
+					failure[child] = automaton.next(failure[node], transition.getKey());
+					queue.add(child);
+				}
+			}
+			return automaton;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package spotify.bot.util.data;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Minimal open-addressing hash set of primitive longs. Takes about a quarter
+ * of the memory of a {@code HashSet<Long>} and doesn't box on lookups. Not
+ * thread-safe.
+ */
+public class LongHashSet {
+	private final static int DEFAULT_CAPACITY = 16;
+	private final static float LOAD_FACTOR = 0.5f;
+
+	// 0 marks a free slot, so the value 0 itself is tracked separately
+	private long[] slots;
+	private boolean containsZero;
+	private int size;
+
+	public LongHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongHashSet(int expectedSize) {
+		this.slots = new long[tableSizeFor(expectedSize)];
+	}
+
+	/**
+	 * Add the given value
+	 *
+	 * @return true if it wasn't already contained
+	 */
+	public boolean add(long value) {
+		if (value == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int index = indexOf(slots, value);
+		if (slots[index] == value) {
+			return false;
+		}
+		slots[index] = value;
+		size++;
+		if (size > slots.length * LOAD_FACTOR) {
+			resize();
+		}
+		return true;
+	}
+
+	public boolean contains(long value) {
+		if (value == 0) {
+			return containsZero;
+		}
+		return slots[indexOf(slots, value)] == value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void forEach(LongConsumer action) {
+		if (containsZero) {
+			action.accept(0);
+		}
+		for (long value : slots) {
+			if (value != 0) {
+				action.accept(value);
+			}
+		}
+	}
+
+	public long[] toArray() {
+		long[] values = new long[size];
+		int[] i = { 0 };
+		forEach(value -> values[i[0]++] = value);
+		return values;
+	}
+
+	/////////////////
+
+	/**
+	 * Return the slot holding the given value or the free slot it would be
+	 * inserted at (linear probing)
+	 */
+	private static int indexOf(long[] table, long value) {
+		int mask = table.length - 1;
+		int index = mix(value) & mask;
+		while (table[index] != 0 && table[index] != value) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private void resize() {
+		long[] newSlots = new long[slots.length * 2];
+		for (long value : slots) {
+			if (value != 0) {
+				newSlots[indexOf(newSlots, value)] = value;
+			}
+		}
+		slots = newSlots;
+	}
+
+	static int mix(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		return Math.max(DEFAULT_CAPACITY, capacity);
+	}
+}
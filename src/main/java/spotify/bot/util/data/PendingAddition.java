@@ -0,0 +1,54 @@
+package spotify.bot.util.data;
+
+/**
+ * A single track that is planned to be added to a playlist, as stored in the
+ * addition outbox until it has been written. The sequence is the track's
+ * position within its batch, counted from the bottom (0 is the bottommost
+ * track), so later batches can be stacked on top of it.
+ */
+public class PendingAddition {
+	private final static String KEY_SEPARATOR = "|";
+
+	private final AlbumGroupExtended albumGroupExtended;
+	private final long batchId;
+	private final int sequence;
+	private final String trackId;
+
+	public PendingAddition(AlbumGroupExtended albumGroupExtended, long batchId, int sequence, String trackId) {
+		this.albumGroupExtended = albumGroupExtended;
+		this.batchId = batchId;
+		this.sequence = sequence;
+		this.trackId = trackId;
+	}
+
+	/**
+	 * Restore a pending addition from its key and its track ID
+	 */
+	public static PendingAddition fromKey(String key, String trackId) {
+		String[] parts = key.split("\\" + KEY_SEPARATOR, 3);
+		return new PendingAddition(AlbumGroupExtended.valueOf(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]), trackId);
+	}
+
+	/**
+	 * The unique key of this pending addition (playlist, batch, and sequence)
+	 */
+	public String getKey() {
+		return String.join(KEY_SEPARATOR, albumGroupExtended.name(), Long.toString(batchId), Integer.toString(sequence));
+	}
+
+	public AlbumGroupExtended getAlbumGroupExtended() {
+		return albumGroupExtended;
+	}
+
+	public long getBatchId() {
+		return batchId;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public String getTrackId() {
+		return trackId;
+	}
+}
@@ -0,0 +1,225 @@
+package spotify.bot.util.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the pending additions of a playlist from the addition outbox, ordered
+ * from the bottom (the oldest batch) to the top (the latest batch). They are
+ * written in chunks, starting with the bottommost one, each inserted at the
+ * top of the playlist, so the position of a chunk never depends on how much has
+ * been written before. Every chunk is removed from the outbox right after it
+ * has been written.<br/>
+ * <br/>
+ * If the additions are resumed (e.g. after a crash), the chunk written last
+ * might not have been removed from the outbox. Since chunks are only ever
+ * written bottom-up and new batches are stacked on top of the old ones, that
+ * chunk is the bottommost part of the remaining additions and is found at the
+ * top of the playlist. It's only removed from the outbox then, so no song is
+ * added twice.
+ */
+public class PendingAdditionWriter {
+
+	/**
+	 * The operations on the playlist to write to
+	 */
+	public interface Target {
+		/**
+		 * Returns the track IDs of (at most) the given number of topmost items of the
+		 * playlist
+		 */
+		List<String> getTopTrackIds(int limit);
+
+		/**
+		 * Archive the playlist and continue with a fresh one, if it would otherwise
+		 * grow beyond the rollover threshold. Only called at the start of a batch,
+		 * so a batch never ends up split across two playlists.
+		 */
+		void rollover(int songsToAddCount);
+
+		/**
+		 * Make room for the given number of songs
+		 */
+		void makeRoom(int songsToAddCount);
+
+		/**
+		 * Insert the given tracks at the top of the playlist, in the given order
+		 */
+		void addToTop(List<String> trackIds);
+	}
+
+	/**
+	 * The addition outbox
+	 */
+	@FunctionalInterface
+	public interface Outbox {
+		/**
+		 * Remove the given additions from the outbox, as they have been written
+		 */
+		void complete(List<PendingAddition> writtenAdditions) throws SQLException;
+	}
+
+	private final int chunkSize;
+
+	/**
+	 * @param chunkSize the maximum number of tracks per request
+	 */
+	public PendingAdditionWriter(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Write the given pending additions of a single playlist
+	 *
+	 * @param target           the playlist
+	 * @param outbox           the outbox the additions are stored in
+	 * @param pendingAdditions the pending additions (in any order)
+	 * @param resumed          whether the chunk written last might still be in the
+	 *                         outbox (if any of the batches wasn't queued by this
+	 *                         instance or a previous write of it failed)
+	 * @return the additions that are in the playlist now, bottom first
+	 */
+	public List<PendingAddition> write(Target target, Outbox outbox, List<PendingAddition> pendingAdditions, boolean resumed) throws SQLException {
+		List<PendingAddition> remaining = pendingAdditions.stream()
+			.sorted(Comparator.comparingLong(PendingAddition::getBatchId).thenComparingInt(PendingAddition::getSequence))
+			.collect(Collectors.toList());
+		List<PendingAddition> written = new ArrayList<>();
+		if (resumed && !remaining.isEmpty()) {
+			int alreadyWrittenCount = countAlreadyWritten(target, remaining);
+			if (alreadyWrittenCount > 0) {
+				List<PendingAddition> alreadyWritten = remaining.subList(0, alreadyWrittenCount);
+				outbox.complete(alreadyWritten);
+				written.addAll(alreadyWritten);
+				remaining = remaining.subList(alreadyWrittenCount, remaining.size());
+			}
+		}
+		if (!remaining.isEmpty()) {
+			if (remaining.get(0).getSequence() == 0) {
+				target.rollover(remaining.size());
+			}
+			target.makeRoom(remaining.size());
+			for (int from = 0; from < remaining.size(); from += chunkSize) {
+				List<PendingAddition> chunk = remaining.subList(from, Math.min(from + chunkSize, remaining.size()));
+				target.addToTop(topFirstTrackIds(chunk));
+				outbox.complete(chunk);
+				written.addAll(chunk);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Returns how many of the bottommost given additions are already at the top of
+	 * the playlist. The chunk written last might have been smaller than a full one
+	 * (e.g. the end of a batch that more batches were stacked on since), so the
+	 * largest matching count wins.
+	 */
+	int countAlreadyWritten(Target target, List<PendingAddition> sortedAdditions) {
+		int maxCount = Math.min(chunkSize, sortedAdditions.size());
+		List<String> topTrackIds = target.getTopTrackIds(maxCount);
+		for (int count = Math.min(maxCount, topTrackIds.size()); count > 0; count--) {
+			if (topFirstTrackIds(sortedAdditions.subList(0, count)).equals(topTrackIds.subList(0, count))) {
+				return count;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the track IDs of the given additions from the top to the bottom
+	 */
+	public static List<String> topFirstTrackIds(List<PendingAddition> additions) {
+		List<String> trackIds = additions.stream()
+			.map(PendingAddition::getTrackId)
+			.collect(Collectors.toList());
+		Collections.reverse(trackIds);
+		return trackIds;
+	}
+
+	/**
+	 * Returns when the oldest of the given pending additions is due, i.e. when the
+	 * coalescing window of its batch expires (<code>Long.MAX_VALUE</code> if there
+	 * are none). Used to schedule additions left over by a previous run of the bot
+	 * as if they had been queued by this one.
+	 */
+	public static long firstFlushAt(List<PendingAddition> pendingAdditions, long windowMs) {
+		OptionalLong oldestBatchId = pendingAdditions.stream().mapToLong(PendingAddition::getBatchId).min();
+		return oldestBatchId.isPresent() ? oldestBatchId.getAsLong() + windowMs : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Decide which of the pending additions are due for writing: all those of a
+	 * playlist whose oldest batch has been waiting for the coalescing window.
+	 * Additions for a playlist that is no longer set are orphaned.
+	 *
+	 * @param pendingAdditions all pending additions
+	 * @param playlistOf       the playlist of an album group (null if it isn't set)
+	 * @param windowMs         the coalescing window
+	 * @param now              the current time
+	 * @return the plan
+	 */
+	public static <P> FlushPlan<P> planFlush(List<PendingAddition> pendingAdditions, Function<AlbumGroupExtended, P> playlistOf, long windowMs, long now) {
+		Map<P, List<PendingAddition>> additionsByPlaylist = new LinkedHashMap<>();
+		List<PendingAddition> orphanedAdditions = new ArrayList<>();
+		for (PendingAddition pendingAddition : pendingAdditions) {
+			P playlist = playlistOf.apply(pendingAddition.getAlbumGroupExtended());
+			if (playlist != null) {
+				additionsByPlaylist.computeIfAbsent(playlist, k -> new ArrayList<>()).add(pendingAddition);
+			} else {
+				orphanedAdditions.add(pendingAddition);
+			}
+		}
+
+		Map<P, List<PendingAddition>> dueAdditions = new LinkedHashMap<>();
+		long nextFlushAt = Long.MAX_VALUE;
+		for (Map.Entry<P, List<PendingAddition>> entry : additionsByPlaylist.entrySet()) {
+			long oldestBatchId = entry.getValue().stream().mapToLong(PendingAddition::getBatchId).min().getAsLong();
+			if (oldestBatchId + windowMs <= now) {
+				dueAdditions.put(entry.getKey(), entry.getValue());
+			} else {
+				nextFlushAt = Math.min(nextFlushAt, oldestBatchId + windowMs);
+			}
+		}
+		return new FlushPlan<>(dueAdditions, orphanedAdditions, nextFlushAt);
+	}
+
+	/**
+	 * The pending additions to write now (by playlist) and to drop, and when the
+	 * remaining ones are due
+	 */
+	public static class FlushPlan<P> {
+		private final Map<P, List<PendingAddition>> dueAdditions;
+		private final List<PendingAddition> orphanedAdditions;
+		private final long nextFlushAt;
+
+		private FlushPlan(Map<P, List<PendingAddition>> dueAdditions, List<PendingAddition> orphanedAdditions, long nextFlushAt) {
+			this.dueAdditions = dueAdditions;
+			this.orphanedAdditions = orphanedAdditions;
+			this.nextFlushAt = nextFlushAt;
+		}
+
+		public Map<P, List<PendingAddition>> getDueAdditions() {
+			return dueAdditions;
+		}
+
+		public List<PendingAddition> getOrphanedAdditions() {
+			return orphanedAdditions;
+		}
+
+		/**
+		 * Returns when the next playlist is due (<code>Long.MAX_VALUE</code> if none
+		 * is waiting)
+		 */
+		public long getNextFlushAt() {
+			return nextFlushAt;
+		}
+	}
+}
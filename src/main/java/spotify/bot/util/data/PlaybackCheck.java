@@ -0,0 +1,71 @@
+package spotify.bot.util.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The shared check of the currently played song, used to clear the [NEW]
+ * notifiers of the playlists. The song is requested at most once per round for
+ * all notified playlists, and only if there are any, and then compared with the
+ * songs recently added to each of them. While no song is being played, the
+ * pause between two requests is doubled after every request (within the given
+ * bounds) until a song is played again or the check is reset.
+ */
+public class PlaybackCheck {
+	private final long minIdleBackoffMs;
+	private final long maxIdleBackoffMs;
+
+	private long idleBackoffMs;
+	private long nextCheckAt;
+
+	/**
+	 * @param minIdleBackoffMs the pause after the first request that found no song
+	 *                         being played
+	 * @param maxIdleBackoffMs the maximum pause
+	 */
+	public PlaybackCheck(long minIdleBackoffMs, long maxIdleBackoffMs) {
+		this.minIdleBackoffMs = minIdleBackoffMs;
+		this.maxIdleBackoffMs = maxIdleBackoffMs;
+	}
+
+	/**
+	 * Returns the notified playlists whose recently added songs include the
+	 * currently played one
+	 *
+	 * @param notifiedPlaylists      the playlists with a [NEW] notifier
+	 * @param recentlyAddedTrackIds  the recently added songs of a playlist
+	 * @param currentlyPlayedTrackId requests the ID of the currently played song
+	 *                               (null if none is played); only called if any
+	 *                               playlist is notified and the pause is over
+	 * @param now                    the current time
+	 * @return the playlists whose notifiers can be cleared
+	 */
+	public synchronized <P> List<P> findPlayed(Collection<P> notifiedPlaylists, Function<P, Set<String>> recentlyAddedTrackIds, Supplier<String> currentlyPlayedTrackId, long now) {
+		if (notifiedPlaylists.isEmpty() || now < nextCheckAt) {
+			return List.of();
+		}
+		String trackId = currentlyPlayedTrackId.get();
+		if (trackId == null) {
+			idleBackoffMs = Math.min(Math.max(idleBackoffMs * 2, minIdleBackoffMs), maxIdleBackoffMs);
+			nextCheckAt = now + idleBackoffMs;
+			return List.of();
+		}
+		reset();
+		return notifiedPlaylists.stream()
+			.filter(playlist -> recentlyAddedTrackIds.apply(playlist).contains(trackId))
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Stop backing off, e.g. because new songs have just been added, which are
+	 * likely to be listened to soon
+	 */
+	public synchronized void reset() {
+		idleBackoffMs = 0;
+		nextCheckAt = 0;
+	}
+}
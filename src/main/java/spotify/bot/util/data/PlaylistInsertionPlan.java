@@ -0,0 +1,57 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Plan to insert the tracks of several releases at the top of a playlist without
+ * relying on any delay between the requests. The final ordered track list is
+ * built up front (the last release on top, every release in its own track
+ * order). It's then written by the {@link PendingAdditionWriter} in chunks from
+ * the bottom up, each inserted at the very top of the playlist, so the order
+ * holds no matter how quickly the requests follow each other.
+ */
+public class PlaylistInsertionPlan {
+	private final List<String> trackIds;
+
+	private PlaylistInsertionPlan(List<String> trackIds) {
+		this.trackIds = trackIds;
+	}
+
+	/**
+	 * Plan the insertion of the given releases at the top of a playlist
+	 *
+	 * @param sortedReleases the releases in their sort order (the last one ends up
+	 *                       on top of the playlist)
+	 * @return the plan
+	 */
+	public static PlaylistInsertionPlan topOfPlaylist(List<AlbumTrackPair> sortedReleases) {
+		List<String> orderedTrackIds = new ArrayList<>();
+		List<AlbumTrackPair> topFirst = new ArrayList<>(sortedReleases);
+		Collections.reverse(topFirst);
+		for (AlbumTrackPair atp : topFirst) {
+			for (TrackSimplified track : atp.getTracks()) {
+				orderedTrackIds.add(track.getId());
+			}
+		}
+		return new PlaylistInsertionPlan(orderedTrackIds);
+	}
+
+	/**
+	 * The track IDs in their final order, from the top to the bottom
+	 */
+	public List<String> getTrackIds() {
+		return trackIds;
+	}
+
+	/**
+	 * The total number of tracks to be inserted
+	 */
+	public int getTrackCount() {
+		return trackIds.size();
+	}
+}
@@ -0,0 +1,38 @@
+package spotify.bot.util.data;
+
+/**
+ * Decides when a full playlist is archived and continued in a fresh one
+ * instead of having its oldest songs trimmed. The threshold never exceeds the
+ * playlist size limit, and an empty playlist is never rolled over, even if a
+ * single batch is bigger than the threshold.
+ */
+public class PlaylistRollover {
+	private final int threshold;
+
+	/**
+	 * @param configuredThreshold the configured rollover threshold (0 or less
+	 *                            disables the rollover)
+	 * @param playlistSizeLimit   the maximum number of songs of a playlist
+	 */
+	public PlaylistRollover(int configuredThreshold, int playlistSizeLimit) {
+		this.threshold = Math.min(configuredThreshold, playlistSizeLimit);
+	}
+
+	/**
+	 * Returns true if the rollover is enabled at all
+	 */
+	public boolean isEnabled() {
+		return threshold > 0;
+	}
+
+	/**
+	 * Check if the playlist has to be rolled over before the given number of songs
+	 * is added to it
+	 *
+	 * @param currentTotal    the current number of songs in the playlist
+	 * @param songsToAddCount the number of songs about to be added
+	 */
+	public boolean isDue(int currentTotal, int songsToAddCount) {
+		return isEnabled() && currentTotal > 0 && currentTotal + songsToAddCount > threshold;
+	}
+}
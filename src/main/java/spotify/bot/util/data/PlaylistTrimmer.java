@@ -0,0 +1,183 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Removes a range of tracks from the bottom of a playlist in as few rounds as
+ * possible. The whole deletion range is computed up front and its pages are
+ * fetched together (in parallel, if the given executor allows). The positions are then deleted in chunks, starting with
+ * the bottommost one, each bound to the snapshot_id returned by the previous
+ * chunk. As only positions below the remaining ones are removed, the positions
+ * of every later chunk stay valid for the new snapshot. Finally, the resulting
+ * size is verified.
+ */
+public class PlaylistTrimmer {
+	public final static int PAGE_SIZE = 100;
+
+	private final static String TRACK_PREFIX = "spotify:track:";
+
+	/**
+	 * The operations on the playlist to trim
+	 */
+	public interface Target {
+		/**
+		 * Returns the track IDs of the given page of the playlist (null for any item
+		 * that isn't a track). May be called concurrently.
+		 */
+		List<String> getTrackIds(int offset, int limit);
+
+		/**
+		 * Remove the given items (by URI and position), with positions relative to
+		 * the given snapshot_id
+		 *
+		 * @return the new snapshot_id
+		 */
+		String removeItems(JsonArray items, String snapshotId);
+
+		/**
+		 * Returns the current size of the playlist, as verified against the Spotify
+		 * API
+		 */
+		int getVerifiedTotal();
+	}
+
+	/**
+	 * Runs the given callables (possibly in parallel) and returns all their
+	 * results
+	 */
+	@FunctionalInterface
+	public interface ParallelExecutor {
+		<T> List<T> executeAndWait(List<Callable<List<T>>> callables);
+	}
+
+	/**
+	 * Runs the given callables one after another on the calling thread, e.g. if
+	 * the trimmer itself already runs as a task of a bounded executor that it
+	 * mustn't wait on
+	 */
+	public static <T> List<T> executeOnCallingThread(List<Callable<List<T>>> callables) {
+		List<T> results = new ArrayList<>();
+		for (Callable<List<T>> callable : callables) {
+			try {
+				results.addAll(callable.call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return results;
+	}
+
+	private final ParallelExecutor parallelExecutor;
+
+	public PlaylistTrimmer(ParallelExecutor parallelExecutor) {
+		this.parallelExecutor = parallelExecutor;
+	}
+
+	/**
+	 * Remove the given number of tracks from the bottom of the playlist
+	 *
+	 * @param target     the playlist
+	 * @param total      the current size of the playlist
+	 * @param snapshotId the snapshot_id belonging to that size
+	 * @param count      the number of tracks to remove
+	 * @return the result
+	 */
+	public Result trimBottom(Target target, int total, String snapshotId, int count) {
+		int from = Math.max(0, total - Math.max(0, count));
+		if (from >= total) {
+			return new Result(snapshotId, 0, total, total);
+		}
+
+		List<Callable<List<PositionedTrack>>> callables = new ArrayList<>();
+		for (int offset = from; offset < total; offset += PAGE_SIZE) {
+			int pageOffset = offset;
+			int limit = Math.min(PAGE_SIZE, total - offset);
+			callables.add(() -> {
+				List<PositionedTrack> page = new ArrayList<>();
+				List<String> trackIds = target.getTrackIds(pageOffset, limit);
+				for (int i = 0; i < trackIds.size() && i < limit; i++) {
+					if (trackIds.get(i) != null) {
+						page.add(new PositionedTrack(pageOffset + i, trackIds.get(i)));
+					}
+				}
+				return page;
+			});
+		}
+		List<PositionedTrack> tracksToDelete = new ArrayList<>(parallelExecutor.executeAndWait(callables));
+		tracksToDelete.sort(Comparator.comparingInt((PositionedTrack t) -> t.position).reversed());
+
+		String currentSnapshotId = snapshotId;
+		for (int i = 0; i < tracksToDelete.size(); i += PAGE_SIZE) {
+			JsonArray items = new JsonArray();
+			for (PositionedTrack track : tracksToDelete.subList(i, Math.min(i + PAGE_SIZE, tracksToDelete.size()))) {
+				JsonObject item = new JsonObject();
+				item.addProperty("uri", TRACK_PREFIX + track.trackId);
+				JsonArray positions = new JsonArray();
+				positions.add(track.position);
+				item.add("positions", positions);
+				items.add(item);
+			}
+			currentSnapshotId = target.removeItems(items, currentSnapshotId);
+		}
+
+		int expectedTotal = total - tracksToDelete.size();
+		return new Result(currentSnapshotId, tracksToDelete.size(), expectedTotal, target.getVerifiedTotal());
+	}
+
+	/////////////////
+
+	private static class PositionedTrack {
+		private final int position;
+		private final String trackId;
+
+		private PositionedTrack(int position, String trackId) {
+			this.position = position;
+			this.trackId = trackId;
+		}
+	}
+
+	public static class Result {
+		private final String snapshotId;
+		private final int removedCount;
+		private final int expectedTotal;
+		private final int verifiedTotal;
+
+		private Result(String snapshotId, int removedCount, int expectedTotal, int verifiedTotal) {
+			this.snapshotId = snapshotId;
+			this.removedCount = removedCount;
+			this.expectedTotal = expectedTotal;
+			this.verifiedTotal = verifiedTotal;
+		}
+
+		public String getSnapshotId() {
+			return snapshotId;
+		}
+
+		public int getRemovedCount() {
+			return removedCount;
+		}
+
+		public int getExpectedTotal() {
+			return expectedTotal;
+		}
+
+		public int getVerifiedTotal() {
+			return verifiedTotal;
+		}
+
+		/**
+		 * Returns true if the playlist ended up with the expected size
+		 */
+		public boolean isVerified() {
+			return expectedTotal == verifiedTotal;
+		}
+	}
+}
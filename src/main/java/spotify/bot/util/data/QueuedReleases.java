@@ -0,0 +1,88 @@
+package spotify.bot.util.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * The releases of the queued playlist additions by their outbox keys, so they
+ * can be reported (and cached) once their songs have actually been written.
+ * Additions queued by a previous run of the bot aren't known here.
+ */
+public class QueuedReleases {
+	private final Map<String, AlbumTrackPair> releasesByKey;
+
+	public QueuedReleases() {
+		this.releasesByKey = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Remember the release of every planned addition
+	 */
+	public void remember(List<AlbumTrackPair> albumTrackPairs, List<PendingAddition> plannedAdditions) {
+		Map<String, AlbumTrackPair> releasesByTrackId = new HashMap<>();
+		for (AlbumTrackPair atp : albumTrackPairs) {
+			for (TrackSimplified track : atp.getTracks()) {
+				releasesByTrackId.put(track.getId(), atp);
+			}
+		}
+		for (PendingAddition plannedAddition : plannedAdditions) {
+			AlbumTrackPair atp = releasesByTrackId.get(plannedAddition.getTrackId());
+			if (atp != null) {
+				releasesByKey.put(plannedAddition.getKey(), atp);
+			}
+		}
+	}
+
+	/**
+	 * Forget about the given additions without reporting them (e.g. because
+	 * their playlist is no longer set)
+	 */
+	public void forget(List<PendingAddition> droppedAdditions) {
+		droppedAdditions.forEach(a -> releasesByKey.remove(a.getKey()));
+	}
+
+	/**
+	 * Forget about the given written additions and add their tracks to the given
+	 * written tracks by release
+	 *
+	 * @return the releases of the given additions (as far as they are known), each
+	 *         with only the tracks of these additions
+	 */
+	public List<AlbumTrackPair> take(List<PendingAddition> writtenAdditions, Map<AlbumTrackPair, Set<String>> writtenTrackIdsByRelease) {
+		Map<AlbumTrackPair, Set<String>> trackIdsByRelease = new LinkedHashMap<>();
+		for (PendingAddition writtenAddition : writtenAdditions) {
+			AlbumTrackPair atp = releasesByKey.remove(writtenAddition.getKey());
+			if (atp != null) {
+				trackIdsByRelease.computeIfAbsent(atp, k -> new HashSet<>()).add(writtenAddition.getTrackId());
+				writtenTrackIdsByRelease.computeIfAbsent(atp, k -> new HashSet<>()).add(writtenAddition.getTrackId());
+			}
+		}
+		return withTracks(trackIdsByRelease);
+	}
+
+	/**
+	 * Returns the given releases, each with only the given tracks (in the order of
+	 * the release)
+	 */
+	public static List<AlbumTrackPair> withTracks(Map<AlbumTrackPair, Set<String>> trackIdsByRelease) {
+		List<AlbumTrackPair> releases = new ArrayList<>();
+		for (Map.Entry<AlbumTrackPair, Set<String>> entry : trackIdsByRelease.entrySet()) {
+			AlbumTrackPair atp = entry.getKey();
+			List<TrackSimplified> tracks = atp.getTracks().stream()
+				.filter(track -> entry.getValue().contains(track.getId()))
+				.collect(Collectors.toList());
+			releases.add(AlbumTrackPair.of(atp.getAlbum(), tracks));
+		}
+		return releases;
+	}
+}
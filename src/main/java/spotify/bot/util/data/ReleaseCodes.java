@@ -0,0 +1,68 @@
+package spotify.bot.util.data;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The release codes of a single release: the UPC of the album and the ISRCs of
+ * its tracks (either might be unknown). The ISRCs of singles (Spotify also
+ * counts EPs as singles) are never indexed, since their tracks usually reappear
+ * on the album they were released ahead of, which would otherwise be taken for
+ * a re-release. A re-upload of a single is therefore only recognized by its UPC.
+ */
+public class ReleaseCodes {
+	/**
+	 * A release counts as known once more than this share of its ISRCs belongs to
+	 * already added releases (a deluxe re-release adds a few new tracks, a
+	 * compilation might share a single one)
+	 */
+	private final static double KNOWN_ISRC_SHARE = 0.5;
+
+	private final String upc;
+	private final List<String> isrcs;
+	private final boolean single;
+
+	/**
+	 * @param upc    the UPC of the album (null if unknown)
+	 * @param isrcs  the known ISRCs of its tracks
+	 * @param single whether the release is a single or an EP
+	 */
+	public ReleaseCodes(String upc, List<String> isrcs, boolean single) {
+		this.upc = upc;
+		this.isrcs = isrcs;
+		this.single = single;
+	}
+
+	public String getUpc() {
+		return upc;
+	}
+
+	public List<String> getIsrcs() {
+		return isrcs;
+	}
+
+	/**
+	 * Returns the ISRCs to put into the index once this release has been added
+	 * (none for singles)
+	 */
+	public List<String> getIndexedIsrcs() {
+		return single ? List.of() : isrcs;
+	}
+
+	/**
+	 * Check if this release is a re-upload of an already added one, i.e. if its
+	 * UPC or the majority of its ISRCs are known
+	 *
+	 * @param knownUpcs  the UPCs of the added releases (at least those among
+	 *                   this release's one)
+	 * @param knownIsrcs the indexed ISRCs of the added releases (at least those
+	 *                   among this release's ones)
+	 */
+	public boolean isKnown(Set<String> knownUpcs, Set<String> knownIsrcs) {
+		if (upc != null && knownUpcs.contains(upc)) {
+			return true;
+		}
+		long knownIsrcCount = isrcs.stream().filter(knownIsrcs::contains).count();
+		return !isrcs.isEmpty() && knownIsrcCount > isrcs.size() * KNOWN_ISRC_SHARE;
+	}
+}
@@ -0,0 +1,48 @@
+package spotify.bot.util.data;
+
+import java.util.Objects;
+
+/**
+ * A normalized release title of an artist, as stored in the release title index
+ * used for re-release detection (see {@link ReleaseTitleIndex})
+ */
+public class ReleaseTitle {
+	private final String artistId;
+	private final String albumType;
+	private final String normalizedTitle;
+
+	public ReleaseTitle(String artistId, String albumType, String normalizedTitle) {
+		this.artistId = artistId;
+		this.albumType = albumType;
+		this.normalizedTitle = normalizedTitle;
+	}
+
+	public String getArtistId() {
+		return artistId;
+	}
+
+	public String getAlbumType() {
+		return albumType;
+	}
+
+	public String getNormalizedTitle() {
+		return normalizedTitle;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ReleaseTitle)) {
+			return false;
+		}
+		ReleaseTitle that = (ReleaseTitle) o;
+		return artistId.equals(that.artistId) && albumType.equals(that.albumType) && normalizedTitle.equals(that.normalizedTitle);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(artistId, albumType, normalizedTitle);
+	}
+}
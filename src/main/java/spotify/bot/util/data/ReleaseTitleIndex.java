@@ -0,0 +1,168 @@
+package spotify.bot.util.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of normalized release titles, bucketed per artist and album
+ * type. Edition suffixes such as "(Deluxe)" or "- Remastered 2021" are removed
+ * during normalization, and titles within a small edit distance of a known
+ * title count as a match as well. Not thread-safe.
+ */
+public class ReleaseTitleIndex {
+
+	private final static String EDITION_KEYWORDS = "deluxe|remaster(?:ed)?|expanded|anniversary|edition|re-?issued?|re-?recorded|bonus|special|collector'?s";
+
+	private final static Pattern BRACKETED_EDITION_SUFFIX = Pattern
+		.compile("\\s*[(\\[][^()\\[\\]]*\\b(" + EDITION_KEYWORDS + ")\\b[^()\\[\\]]*[)\\]]\\s*$", Pattern.CASE_INSENSITIVE);
+
+	private final static Pattern DASHED_EDITION_SUFFIX = Pattern
+		.compile("\\s+[-\u2013\u2014]\\s+[^-\u2013\u2014]*\\b(" + EDITION_KEYWORDS + ")\\b[^-\u2013\u2014]*$", Pattern.CASE_INSENSITIVE);
+
+	private final static Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private final static Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private final static Pattern DIGITS = Pattern.compile("\\d+");
+	private final static Pattern ROMAN_NUMERAL = Pattern.compile("[ivx]+");
+	private final static Set<String> NUMBERING_WORDS = Set.of("vol", "volume", "part", "pt", "chapter", "book", "episode");
+
+	private final Map<String, Set<String>> titlesByBucket;
+
+	public ReleaseTitleIndex() {
+		this.titlesByBucket = new HashMap<>();
+	}
+
+	/**
+	 * Add the given title to the index
+	 */
+	public void add(ReleaseTitle releaseTitle) {
+		titlesByBucket
+			.computeIfAbsent(bucketKey(releaseTitle.getArtistId(), releaseTitle.getAlbumType()), k -> new HashSet<>())
+			.add(releaseTitle.getNormalizedTitle());
+	}
+
+	/**
+	 * Check if the given title (or a title within a small edit distance of it) has
+	 * been indexed for the given artist and album type. Numbers in the title must
+	 * match exactly, so "Vol. 2" isn't mistaken for "Vol. 3". Roman numerals only
+	 * count as numbers at the end of the title or after a word like "Part", so the
+	 * word "I" in "I Want You" isn't one.
+	 */
+	public boolean containsSimilar(ReleaseTitle releaseTitle) {
+		Set<String> titles = titlesByBucket.get(bucketKey(releaseTitle.getArtistId(), releaseTitle.getAlbumType()));
+		if (titles == null) {
+			return false;
+		}
+		String title = releaseTitle.getNormalizedTitle();
+		if (titles.contains(title)) {
+			return true;
+		}
+		int maxDistance = maxEditDistance(title.length());
+		if (maxDistance > 0) {
+			List<String> numbers = numberTokens(title);
+			for (String candidate : titles) {
+				if (Math.abs(candidate.length() - title.length()) <= maxDistance
+					&& editDistanceWithin(title, candidate, maxDistance)
+					&& numbers.equals(numberTokens(candidate))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the number of indexed titles
+	 */
+	public int size() {
+		return titlesByBucket.values().stream().mapToInt(Set::size).sum();
+	}
+
+	/////////////////
+
+	/**
+	 * Normalize the given release title: remove any edition suffixes, diacritics,
+	 * punctuation, and casing
+	 */
+	public static String normalize(String title) {
+		String stripped = title.strip();
+		String previous;
+		do {
+			previous = stripped;
+			stripped = BRACKETED_EDITION_SUFFIX.matcher(stripped).replaceFirst("");
+			stripped = DASHED_EDITION_SUFFIX.matcher(stripped).replaceFirst("");
+		} while (!stripped.equals(previous) && !stripped.isBlank());
+		if (stripped.isBlank()) {
+			// The entire title is an edition keyword, keep it as is
+			stripped = title;
+		}
+
+		String decomposed = Normalizer.normalize(stripped.toLowerCase(), Normalizer.Form.NFKD);
+		String normalized = NON_ALPHANUMERIC.matcher(DIACRITICS.matcher(decomposed).replaceAll("")).replaceAll(" ").strip();
+		return normalized.isEmpty() ? title.strip().toLowerCase() : normalized;
+	}
+
+	private static String bucketKey(String artistId, String albumType) {
+		return artistId + "|" + albumType;
+	}
+
+	/**
+	 * Short titles must match exactly, longer ones may contain one or two typos
+	 */
+	private static int maxEditDistance(int length) {
+		if (length < 8) {
+			return 0;
+		} else if (length < 20) {
+			return 1;
+		}
+		return 2;
+	}
+
+	static List<String> numberTokens(String normalizedTitle) {
+		List<String> numbers = new ArrayList<>();
+		String[] tokens = normalizedTitle.split(" ");
+		for (int i = 0; i < tokens.length; i++) {
+			String token = tokens[i];
+			if (DIGITS.matcher(token).matches()) {
+				numbers.add(token);
+			} else if (ROMAN_NUMERAL.matcher(token).matches() && i > 0
+				&& (i == tokens.length - 1 || NUMBERING_WORDS.contains(tokens[i - 1]))) {
+				numbers.add(token);
+			}
+		}
+		return numbers;
+	}
+
+	/**
+	 * Levenshtein distance check that bails out as soon as every path through the
+	 * current row exceeds the given maximum distance
+	 */
+	private static boolean editDistanceWithin(String a, String b, int maxDistance) {
+		int[] previousRow = new int[b.length() + 1];
+		int[] currentRow = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previousRow[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			currentRow[0] = i;
+			int rowMinimum = currentRow[0];
+			for (int j = 1; j <= b.length(); j++) {
+				int substitutionCost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				currentRow[j] = Math.min(Math.min(currentRow[j - 1] + 1, previousRow[j] + 1), previousRow[j - 1] + substitutionCost);
+				rowMinimum = Math.min(rowMinimum, currentRow[j]);
+			}
+			if (rowMinimum > maxDistance) {
+				return false;
+			}
+			int[] swap = previousRow;
+			previousRow = currentRow;
+			currentRow = swap;
+		}
+		return previousRow[b.length()] <= maxDistance;
+	}
+}
@@ -0,0 +1,51 @@
+package spotify.bot.util.data;
+
+/**
+ * The tags a title (or artist name) may be given by the
+ * {@link KeywordAutomaton}, along with their default keywords
+ */
+public enum TitleTag {
+
+	/**
+	 * Giveaway terms of a re-release (e.g. "Remastered", "Reissue", "10 Years").
+	 * Like the original regex, they may appear anywhere within a word (e.g.
+	 * "Pre-Recorded").
+	 */
+	RE_RELEASE("re_release", "*anniversary*", "*remaster*", "*re master*", "*reissue*", "*re issue*", "*rerecord*", "*re record*", "*# year*", "*# jahr*"),
+
+	/**
+	 * Terms indicating a live recording
+	 */
+	LIVE("live", "live"),
+
+	/**
+	 * Placeholder artists of samplers. These have to match the entire artist name
+	 * (case-insensitive), so e.g. a band called "Various Artists Tribute" doesn't
+	 * count.
+	 */
+	VARIOUS_ARTISTS("various_artists", "various artists", "verschiedene interpreten", "varios artistas", "artistes divers");
+
+	private final String key;
+	private final String[] defaultKeywords;
+
+	TitleTag(String key, String... defaultKeywords) {
+		this.key = key;
+		this.defaultKeywords = defaultKeywords;
+	}
+
+	/**
+	 * The (lowercase) name of this tag, as used in the
+	 * <code>keywords.properties</code>
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * The keywords used if the <code>keywords.properties</code> doesn't define
+	 * this tag
+	 */
+	public String[] getDefaultKeywords() {
+		return defaultKeywords;
+	}
+}
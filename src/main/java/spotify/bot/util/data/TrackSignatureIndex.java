@@ -0,0 +1,220 @@
+package spotify.bot.util.data;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * In-memory index of track list signatures to find near-duplicate releases
+ * (explicit/clean pairs, regional variants with slightly different titles)
+ * within a single crawl. Every release is reduced to the normalized names,
+ * durations, and count of its tracks. The set of normalized names is MinHashed
+ * and split into bands, so near-duplicates end up in a shared bucket with high
+ * probability and every release is only compared with the few candidates of its
+ * buckets (linear time instead of comparing all pairs). Candidates are then
+ * verified by their actual track lists and release dates (variants are
+ * released around the same time, unlike e.g. a remastered re-release with the
+ * same track list). Not thread-safe.
+ */
+public class TrackSignatureIndex {
+	public final static int NEW = -1;
+
+	private final static int BANDS = 8;
+	private final static int ROWS_PER_BAND = 2;
+
+	/**
+	 * Share of positionally matching tracks required for two releases to count as
+	 * near-duplicates
+	 */
+	private final static double MIN_MATCHING_TRACK_SHARE = 0.8;
+
+	/**
+	 * Maximum duration difference of two matching tracks (clean edits and regional
+	 * masters are rarely more than a second or two apart)
+	 */
+	private final static int MAX_DURATION_DIFFERENCE_MS = 3000;
+
+	/**
+	 * Maximum number of days between the release dates of two near-duplicates
+	 * (variants are usually released on the same day, regional ones might trail
+	 * by a few days)
+	 */
+	public final static int MAX_RELEASE_DATE_DIFFERENCE_DAYS = 7;
+
+	private final static DateTimeFormatter RELEASE_DATE_PARSER = new DateTimeFormatterBuilder()
+		.append(DateTimeFormatter.ofPattern("yyyy[-MM[-dd]]"))
+		.parseDefaulting(ChronoField.DAY_OF_MONTH, 1).parseDefaulting(ChronoField.MONTH_OF_YEAR, 1)
+		.toFormatter();
+
+	private final static Pattern VERSION_SUFFIX = Pattern
+		.compile("\\s*([(\\[][^()\\[\\]]*\\b(clean|explicit|censored|edited|dirty)\\b[^()\\[\\]]*[)\\]]|\\s-\\s.*\\b(clean|explicit|censored|edited|dirty)\\b.*)\\s*$", Pattern.CASE_INSENSITIVE);
+	private final static Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private final static Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+	private final List<Signature> signatures;
+	private final Map<Long, List<Integer>> candidatesByBucket;
+
+	public TrackSignatureIndex() {
+		this.signatures = new ArrayList<>();
+		this.candidatesByBucket = new HashMap<>();
+	}
+
+	/**
+	 * Look up a near-duplicate of the given release among the releases indexed so
+	 * far. If there is none, the release itself is indexed.
+	 *
+	 * @param atp the release
+	 * @return the insertion number of the indexed near-duplicate, or {@link #NEW}
+	 *         if the release got indexed itself (insertion numbers count the
+	 *         indexed releases from 0)
+	 */
+	public int findOrAdd(AlbumTrackPair atp) {
+		if (atp.getTracks() == null || atp.getTracks().isEmpty()) {
+			return NEW;
+		}
+		Signature signature = new Signature(atp);
+		long[] bucketKeys = signature.bucketKeys();
+		Set<Integer> checked = new HashSet<>();
+		for (long bucketKey : bucketKeys) {
+			for (int candidate : candidatesByBucket.getOrDefault(bucketKey, List.of())) {
+				if (checked.add(candidate) && signature.isNearDuplicateOf(signatures.get(candidate))) {
+					return candidate;
+				}
+			}
+		}
+		int index = signatures.size();
+		signatures.add(signature);
+		for (long bucketKey : bucketKeys) {
+			candidatesByBucket.computeIfAbsent(bucketKey, k -> new ArrayList<>()).add(index);
+		}
+		return NEW;
+	}
+
+	/**
+	 * Normalize the given track name: remove any clean/explicit version suffix,
+	 * diacritics, punctuation, and casing
+	 */
+	static String normalize(String trackName) {
+		if (trackName == null) {
+			return "";
+		}
+		String stripped = VERSION_SUFFIX.matcher(trackName.strip()).replaceFirst("");
+		if (stripped.isBlank()) {
+			stripped = trackName;
+		}
+		String decomposed = Normalizer.normalize(stripped.toLowerCase(), Normalizer.Form.NFKD);
+		return NON_ALPHANUMERIC.matcher(DIACRITICS.matcher(decomposed).replaceAll("")).replaceAll(" ").strip();
+	}
+
+	/////////////////
+
+	private static class Signature {
+		private final String[] names;
+		private final int[] durations;
+		private final Set<String> artistIds;
+		private final LocalDate releaseDate;
+
+		private Signature(AlbumTrackPair atp) {
+			List<TrackSimplified> tracks = atp.getTracks();
+			this.names = new String[tracks.size()];
+			this.durations = new int[tracks.size()];
+			for (int i = 0; i < tracks.size(); i++) {
+				TrackSimplified track = tracks.get(i);
+				names[i] = normalize(track.getName());
+				durations[i] = track.getDurationMs() != null ? track.getDurationMs() : 0;
+			}
+			this.artistIds = new HashSet<>();
+			if (atp.getAlbum().getArtists() != null) {
+				for (ArtistSimplified artist : atp.getAlbum().getArtists()) {
+					artistIds.add(artist.getId());
+				}
+			}
+			this.releaseDate = parseReleaseDate(atp.getAlbum().getReleaseDate());
+		}
+
+		/**
+		 * MinHash the set of track names and combine every band of rows (and the track
+		 * count, which has to match anyway) into one bucket key
+		 */
+		private long[] bucketKeys() {
+			long[] minHashes = new long[BANDS * ROWS_PER_BAND];
+			Arrays.fill(minHashes, Long.MAX_VALUE);
+			for (String name : names) {
+				long hash = mix(name.hashCode());
+				for (int i = 0; i < minHashes.length; i++) {
+					minHashes[i] = Math.min(minHashes[i], mix(hash + i));
+				}
+			}
+			long[] bucketKeys = new long[BANDS];
+			for (int band = 0; band < BANDS; band++) {
+				long key = mix(((long) band << 32) | names.length);
+				for (int row = 0; row < ROWS_PER_BAND; row++) {
+					key = mix(key ^ minHashes[band * ROWS_PER_BAND + row]);
+				}
+				bucketKeys[band] = key;
+			}
+			return bucketKeys;
+		}
+
+		/**
+		 * Two releases are near-duplicates if they share an artist, were released
+		 * within a few days of each other (if both release dates are known), have the
+		 * same number of tracks, and enough of their tracks match by normalized name
+		 * and (roughly) duration at the same position
+		 */
+		private boolean isNearDuplicateOf(Signature other) {
+			if (names.length != other.names.length || artistIds.stream().noneMatch(other.artistIds::contains) || !isReleasedAroundTheSameTimeAs(other)) {
+				return false;
+			}
+			int matching = 0;
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(other.names[i]) && Math.abs(durations[i] - other.durations[i]) <= MAX_DURATION_DIFFERENCE_MS) {
+					matching++;
+				}
+			}
+			return matching >= names.length * MIN_MATCHING_TRACK_SHARE;
+		}
+
+		private boolean isReleasedAroundTheSameTimeAs(Signature other) {
+			if (releaseDate == null || other.releaseDate == null) {
+				return true;
+			}
+			return Math.abs(releaseDate.toEpochDay() - other.releaseDate.toEpochDay()) <= MAX_RELEASE_DATE_DIFFERENCE_DAYS;
+		}
+
+		private static LocalDate parseReleaseDate(String releaseDate) {
+			if (releaseDate == null) {
+				return null;
+			}
+			try {
+				return LocalDate.parse(releaseDate, RELEASE_DATE_PARSER);
+			} catch (DateTimeParseException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * SplitMix64 finalizer
+		 */
+		private static long mix(long z) {
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
+		}
+	}
+}
@@ -9,11 +9,13 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import spotify.api.SpotifyApiException;
 import spotify.bot.DiscoveryBotCrawler;
 import spotify.bot.config.DeveloperMode;
+import spotify.bot.config.database.CacheBackend;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.DiscoveryBotUtils;
 import spotify.bot.util.data.AlbumGroupExtended;
@@ -44,6 +46,29 @@ public class CrawlSchedulerController {
 		}
 	}
 
+	/**
+	 * Periodic task running every 10 seconds to write any queued playlist
+	 * additions once their coalescing window has expired. Will only run while
+	 * crawler is idle.
+	 *
+	 * @throws SpotifyApiException on an external exception related to the Spotify Web API
+	 * @throws SQLException on an internal exception related to the SQLite database
+	 */
+	@Scheduled(fixedDelay = 10 * 1000)
+	public void flushPendingAdditionsScheduler() throws SpotifyApiException, SQLException {
+		if (crawler.isReady() && crawler.isFlushOfPendingAdditionsDue()) {
+			try {
+				Map<AlbumGroupExtended, Integer> results = crawler.tryFlushPendingAdditions();
+				String response = DiscoveryBotUtils.compileResultString(results);
+				if (!response.isBlank()) {
+					log.info(response);
+				}
+			} finally {
+				log.resetAndPrintLine();
+			}
+		}
+	}
+
 	/**
 	 * Entry point for the bot crawler. May be called by the scheduler, but may also
 	 * be manually called from: http://localhost:8080/refresh<br/>
@@ -78,9 +103,76 @@ public class CrawlSchedulerController {
 		return ResponseEntity.status(HttpStatus.CONFLICT).body("Crawler isn't ready!");
 	}
 
+	/**
+	 * Run the cache maintenance once every night, while no new releases are to be expected.
+	 *
+	 * @throws SQLException on an internal exception related to the SQLite database
+	 */
+	@Scheduled(cron = "0 15 4 * * *")
+	private void scheduledCacheMaintenance() throws SQLException {
+		runCacheMaintenance();
+	}
+
+	/**
+	 * Prune obsolete entries from the cache and compact the database. May be called
+	 * by the scheduler, but may also be manually called from:
+	 * http://localhost:8182/compactcache
+	 *
+	 * @return a ResponseEntity with a summary of the result
+	 * @throws SQLException on an internal exception related to the SQLite database
+	 */
+	@RequestMapping("/compactcache")
+	public ResponseEntity<String> runCacheMaintenance() throws SQLException {
+		if (crawler.isReady()) {
+			try {
+				String summary = crawler.tryCacheMaintenance();
+				if (summary != null) {
+					return ResponseEntity.ok(summary);
+				}
+			} finally {
+				log.resetAndPrintLine();
+			}
+		}
+		return ResponseEntity.status(HttpStatus.CONFLICT).body("Can't run cache maintenance now, as crawler is currently in progress...");
+	}
+
+	/**
+	 * Copy the entire cache into another backend, to switch the
+	 * <code>CACHE_BACKEND</code> setting afterwards. Must be manually called
+	 * from: http://localhost:8182/migratecache?target=mvstore
+	 *
+	 * @param target the backend to copy the cache into (sqlite or mvstore)
+	 * @return a ResponseEntity with a summary of the result
+	 * @throws SQLException on an internal exception related to the SQLite database
+	 */
+	@RequestMapping("/migratecache")
+	public ResponseEntity<String> runCacheMigration(@RequestParam(value = "target") String target) throws SQLException {
+		CacheBackend cacheBackend;
+		try {
+			cacheBackend = CacheBackend.valueOf(target.strip().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body("Unknown cache backend: " + target);
+		}
+		if (crawler.isReady()) {
+			try {
+				String summary = crawler.tryCacheMigration(cacheBackend);
+				if (summary != null) {
+					return ResponseEntity.ok(summary);
+				}
+			} catch (IllegalArgumentException e) {
+				return ResponseEntity.badRequest().body(e.getMessage());
+			} finally {
+				log.resetAndPrintLine();
+			}
+		}
+		return ResponseEntity.status(HttpStatus.CONFLICT).body("Can't migrate the cache now, as crawler is currently in progress...");
+	}
+
 	/**
 	 * Periodic task running every 5 seconds to remove the [NEW] indicator where
-	 * applicable. Will only run while crawler is idle.
+	 * applicable. Will only run while crawler is idle. Only costs a request if
+	 * any playlist currently has a [NEW] indicator, and fewer while nothing is
+	 * being played.
 	 * 
 	 * @throws SpotifyApiException on an external exception related to the Spotify Web API
 	 */
@@ -0,0 +1,322 @@
+package remap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.filter.remapper.ReleaseFeatures;
+import spotify.bot.filter.remapper.RemapClassifier;
+import spotify.bot.filter.remapper.RemapClassifier.Classification;
+import spotify.bot.filter.remapper.Remapper;
+import spotify.bot.filter.remapper.Remapper.Action;
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.KeywordAutomaton.TitleTags;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Verifies that the single-pass {@link RemapClassifier} assigns every release
+ * to the same playlist store as the previous implementation, which applied
+ * the remappers one after another (Re-Release, Remix, Live, EP).
+ */
+public class RemapClassifierTests {
+	private final static List<AlbumGroupExtended> BASE_GROUPS = List.of(
+		AlbumGroupExtended.ALBUM, AlbumGroupExtended.SINGLE, AlbumGroupExtended.COMPILATION, AlbumGroupExtended.APPEARS_ON);
+
+	private final ParallelFilterExecutor sequential = new ParallelFilterExecutor(Integer.MAX_VALUE, 1);
+	private final ParallelFilterExecutor parallel = new ParallelFilterExecutor(1, 4);
+	private final CountingFeatureSource featureSource = new CountingFeatureSource();
+
+	@After
+	public void shutdown() {
+		sequential.shutdown();
+		parallel.shutdown();
+	}
+
+	@Test
+	public void equivalentToSequentialRemapping() {
+		Random random = new Random(42);
+		for (int round = 0; round < 200; round++) {
+			List<FakeRemapper> remappers = createRemappers(random);
+			Map<PlaylistStore, List<AlbumTrackPair>> input = createReleases(random, 1 + random.nextInt(60));
+
+			Map<PlaylistStore, List<AlbumTrackPair>> expectedErased = new HashMap<>();
+			Map<PlaylistStore, List<AlbumTrackPair>> expected = remapSequentially(remappers, copy(input), expectedErased);
+
+			for (ParallelFilterExecutor executor : List.of(sequential, parallel)) {
+				RemapClassifier.Builder builder = RemapClassifier.builder(executor, featureSource);
+				for (FakeRemapper remapper : remappers) {
+					if (remapper.enabled) {
+						builder.add(remapper, new PlaylistStore(remapper.getAlbumGroup(), remapper.getAlbumGroup().getGroupName()));
+					}
+				}
+				Classification classification = builder.build().classify(input);
+
+				assertEquals(albumIds(expected), albumIds(classification.getReleasesByPlaylistStore()));
+				assertEquals(albumIds(expectedErased.values().stream().flatMap(List::stream).collect(Collectors.toList())),
+					albumIds(classification.getErasedReleases()));
+			}
+		}
+	}
+
+	@Test
+	public void lowerPrecedenceRemappersAreOnlyAskedForUnclaimedReleases() {
+		FakeRemapper rerelease = new FakeRemapper(AlbumGroupExtended.RE_RELEASE, true, true, 0, 2);
+		FakeRemapper live = new FakeRemapper(AlbumGroupExtended.LIVE, false, true, 0, 2);
+		Map<PlaylistStore, List<AlbumTrackPair>> input = createReleases(new Random(7), 100);
+		Classification classification = RemapClassifier.builder(sequential, featureSource)
+			.add(rerelease, new PlaylistStore(AlbumGroupExtended.RE_RELEASE, "re_release"))
+			.add(live, new PlaylistStore(AlbumGroupExtended.LIVE, "live"))
+			.build()
+			.classify(input);
+
+		Set<String> rereleased = albumIds(classification.getReleasesByPlaylistStore().getOrDefault(new PlaylistStore(AlbumGroupExtended.RE_RELEASE, null), List.of()));
+		assertTrue(rereleased.size() > 0);
+		assertEquals(100, rerelease.calls.size());
+
+		// The live remapper isn't allowed for appears_on, so those releases aren't asked either
+		Set<String> expectedLiveCalls = new HashSet<>();
+		input.forEach((ps, atps) -> {
+			if (live.isAllowedAlbumGroup(ps.getAlbumGroupExtended())) {
+				expectedLiveCalls.addAll(albumIds(atps));
+			}
+		});
+		expectedLiveCalls.removeAll(rereleased);
+		assertEquals(expectedLiveCalls, live.calls.keySet());
+		assertTrue(rerelease.calls.values().stream().allMatch(count -> count == 1));
+		assertTrue(live.calls.values().stream().allMatch(count -> count == 1));
+	}
+
+	@Test
+	public void featuresAreComputedOncePerRelease() {
+		FakeRemapper rerelease = new FakeRemapper(AlbumGroupExtended.RE_RELEASE, true, true, 0, 1000);
+		FakeRemapper remix = new FakeRemapper(AlbumGroupExtended.REMIX, false, true, 0, 1000);
+		rerelease.readsFeatures = true;
+		remix.readsFeatures = true;
+		for (ParallelFilterExecutor executor : List.of(sequential, parallel)) {
+			CountingFeatureSource countingFeatureSource = new CountingFeatureSource();
+			RemapClassifier.builder(executor, countingFeatureSource)
+				.add(rerelease, new PlaylistStore(AlbumGroupExtended.RE_RELEASE, "re_release"))
+				.add(remix, new PlaylistStore(AlbumGroupExtended.REMIX, "remix"))
+				.build()
+				.classify(createReleases(new Random(3), 50));
+
+			assertEquals(50, countingFeatureSource.completeCalls.get());
+			assertEquals(0, countingFeatureSource.livenessCalls.get());
+		}
+	}
+
+	///////////////
+
+	/**
+	 * The remapping as it was done before the {@link RemapClassifier}: one pass
+	 * per remapper, removing the remapped releases from their source lists
+	 */
+	private static Map<PlaylistStore, List<AlbumTrackPair>> remapSequentially(List<FakeRemapper> remappers,
+			Map<PlaylistStore, List<AlbumTrackPair>> regroupedMap, Map<PlaylistStore, List<AlbumTrackPair>> erased) {
+		for (FakeRemapper remapper : remappers) {
+			if (!remapper.enabled) {
+				continue;
+			}
+			PlaylistStore ps = new PlaylistStore(remapper.getAlbumGroup(), remapper.getAlbumGroup().getGroupName());
+			List<AlbumTrackPair> remappedReleases = new ArrayList<>();
+			for (Map.Entry<PlaylistStore, List<AlbumTrackPair>> entry : regroupedMap.entrySet()) {
+				if (remapper.isAllowedAlbumGroup(entry.getKey().getAlbumGroupExtended())) {
+					List<AlbumTrackPair> remove = new ArrayList<>();
+					for (AlbumTrackPair atp : entry.getValue()) {
+						switch (remapper.decide(atp)) {
+							case NONE:
+								break;
+							case REMAP:
+								remappedReleases.add(atp);
+								remove.add(atp);
+								break;
+							case ERASE:
+								erased.computeIfAbsent(ps, p -> new ArrayList<>()).add(atp);
+								remove.add(atp);
+								break;
+						}
+					}
+					entry.getValue().removeAll(remove);
+				}
+			}
+			if (!remappedReleases.isEmpty()) {
+				regroupedMap.put(ps, remappedReleases);
+			}
+		}
+		regroupedMap.entrySet().removeIf(e -> e.getValue().isEmpty());
+		return regroupedMap;
+	}
+
+	private static List<FakeRemapper> createRemappers(Random random) {
+		return List.of(
+			new FakeRemapper(AlbumGroupExtended.RE_RELEASE, random.nextBoolean(), random.nextInt(4) > 0, 3, random.nextInt(3) + 2),
+			new FakeRemapper(AlbumGroupExtended.REMIX, random.nextBoolean(), random.nextInt(4) > 0, 0, random.nextInt(3) + 2),
+			new FakeRemapper(AlbumGroupExtended.LIVE, false, random.nextInt(4) > 0, 0, random.nextInt(3) + 2),
+			new FakeRemapper(AlbumGroupExtended.EP, true, random.nextInt(4) > 0, 0, random.nextInt(3) + 2));
+	}
+
+	private static Map<PlaylistStore, List<AlbumTrackPair>> createReleases(Random random, int count) {
+		Map<PlaylistStore, List<AlbumTrackPair>> releases = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			AlbumGroupExtended group = BASE_GROUPS.get(random.nextInt(BASE_GROUPS.size()));
+			AlbumSimplified album = new AlbumSimplified.Builder()
+				.setId("album" + i)
+				.setName("Album " + random.nextInt(1000))
+				.build();
+			releases.computeIfAbsent(new PlaylistStore(group, group.getGroupName()), ps -> new ArrayList<>())
+				.add(AlbumTrackPair.of(album, List.of()));
+		}
+		return releases;
+	}
+
+	private static Map<PlaylistStore, List<AlbumTrackPair>> copy(Map<PlaylistStore, List<AlbumTrackPair>> releases) {
+		Map<PlaylistStore, List<AlbumTrackPair>> copy = new HashMap<>();
+		releases.forEach((ps, atps) -> copy.put(ps, new ArrayList<>(atps)));
+		return copy;
+	}
+
+	/**
+	 * Releases are sorted by the playlist services anyway, so only the contents
+	 * of each playlist store are compared
+	 */
+	private static Map<AlbumGroupExtended, Set<String>> albumIds(Map<PlaylistStore, List<AlbumTrackPair>> releases) {
+		Map<AlbumGroupExtended, Set<String>> ids = new TreeMap<>();
+		releases.forEach((ps, atps) -> ids.put(ps.getAlbumGroupExtended(), albumIds(atps)));
+		return ids;
+	}
+
+	private static Set<String> albumIds(List<AlbumTrackPair> releases) {
+		return releases.stream().map(atp -> atp.getAlbum().getId()).collect(Collectors.toSet());
+	}
+
+	/**
+	 * A remapper that deterministically decides by the album name, mimicking the
+	 * allowed album groups of the respective real remapper
+	 */
+	private static class FakeRemapper implements Remapper {
+		private final AlbumGroupExtended albumGroup;
+		private final boolean parallelizable;
+		private final boolean enabled;
+		private final int eraseModulo;
+		private final int remapModulo;
+		private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+		private boolean readsFeatures;
+
+		FakeRemapper(AlbumGroupExtended albumGroup, boolean parallelizable, boolean enabled, int eraseModulo, int remapModulo) {
+			this.albumGroup = albumGroup;
+			this.parallelizable = parallelizable;
+			this.enabled = enabled;
+			this.eraseModulo = eraseModulo;
+			this.remapModulo = remapModulo;
+		}
+
+		@Override
+		public AlbumGroupExtended getAlbumGroup() {
+			return albumGroup;
+		}
+
+		@Override
+		public boolean isAllowedAlbumGroup(AlbumGroupExtended albumGroupExtended) {
+			switch (albumGroup) {
+				case EP:
+					return AlbumGroupExtended.SINGLE.equals(albumGroupExtended);
+				case LIVE:
+					return !albumGroupExtended.isExtendedType() && !AlbumGroupExtended.APPEARS_ON.equals(albumGroupExtended);
+				default:
+					return !albumGroupExtended.isExtendedType();
+			}
+		}
+
+		@Override
+		public Action determineRemapAction(ReleaseFeatures release) {
+			AlbumTrackPair atp = release.getAlbumTrackPair();
+			calls.merge(atp.getAlbum().getId(), 1, Integer::sum);
+			if (readsFeatures) {
+				release.isComplete();
+			}
+			return decide(atp);
+		}
+
+		@Override
+		public int getPrecedence() {
+			return 0;
+		}
+
+		@Override
+		public Cost getCost() {
+			return parallelizable ? Cost.CPU : Cost.IO;
+		}
+
+		private Action decide(AlbumTrackPair atp) {
+			int hash = Math.abs((atp.getAlbum().getName() + albumGroup).hashCode());
+			if (eraseModulo > 0 && hash % eraseModulo == 0) {
+				return Action.ERASE;
+			}
+			return hash % remapModulo == 1 ? Action.REMAP : Action.NONE;
+		}
+	}
+
+	/**
+	 * Counts how often each feature is computed. The fake remappers only decide
+	 * by the album name, so the values themselves don't matter.
+	 */
+	private static class CountingFeatureSource implements ReleaseFeatures.Source {
+		private final AtomicInteger completeCalls = new AtomicInteger();
+		private final AtomicInteger livenessCalls = new AtomicInteger();
+
+		@Override
+		public TitleTags scanTitle(AlbumTrackPair atp) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isComplete(AlbumTrackPair atp) {
+			completeCalls.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean isExtendedPlay(AlbumTrackPair atp) {
+			return false;
+		}
+
+		@Override
+		public boolean isRemix(AlbumTrackPair atp) {
+			return false;
+		}
+
+		@Override
+		public OptionalDouble getAverageLiveness(AlbumTrackPair atp) {
+			livenessCalls.incrementAndGet();
+			return OptionalDouble.empty();
+		}
+
+		@Override
+		public boolean isKnownRelease(AlbumTrackPair atp) {
+			return false;
+		}
+
+		@Override
+		public boolean isRecent(AlbumTrackPair atp) {
+			return false;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package remap;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -24,24 +25,34 @@ import spotify.api.SpotifyApiAuthorization;
 import spotify.api.SpotifyApiException;
 import spotify.api.SpotifyApiWrapper;
 import spotify.api.SpotifyCall;
+import spotify.bot.config.database.CacheWriter;
 import spotify.bot.config.database.DatabaseCreationService;
-import spotify.bot.config.database.DatabaseService;
+import spotify.bot.config.database.DatabaseServiceConfig;
 import spotify.bot.config.database.DiscoveryDatabase;
 import spotify.bot.config.properties.BlacklistConfig;
+import spotify.bot.config.properties.KeywordConfig;
 import spotify.bot.config.properties.PlaylistStoreConfig;
+import spotify.bot.config.properties.SettingsConfig;
 import spotify.bot.filter.FilterService;
 import spotify.bot.filter.remapper.EpRemapper;
 import spotify.bot.filter.remapper.LiveRemapper;
+import spotify.bot.filter.remapper.ReleaseFeatureExtractor;
 import spotify.bot.filter.remapper.Remapper;
 import spotify.bot.filter.remapper.Remapper.Action;
 import spotify.bot.filter.remapper.RemixRemapper;
 import spotify.bot.filter.remapper.RereleaseRemapper;
+import spotify.bot.service.performance.AudioFeatureService;
 import spotify.bot.service.performance.CachedUserService;
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.service.performance.PlaylistMirrorService;
+import spotify.bot.service.performance.ReleaseCodeIndexService;
+import spotify.bot.service.performance.ReleaseTitleIndexService;
 import spotify.bot.util.DiscoveryBotLogger;
 import spotify.bot.util.data.AlbumGroupExtended;
 import spotify.config.SpotifyApiConfig;
 import spotify.services.TrackService;
 import spotify.services.UserService;
+import spotify.util.SpotifyOptimizedExecutorService;
 import spotify.util.SpotifyUtils;
 import spotify.util.data.AlbumTrackPair;
 
@@ -49,7 +60,9 @@ import spotify.util.data.AlbumTrackPair;
 @SpringBootTest(classes = {
 	DiscoveryBotLogger.class,
 	DiscoveryDatabase.class,
-	DatabaseService.class,
+	DatabaseServiceConfig.class,
+	SettingsConfig.class,
+	CacheWriter.class,
 	FilterService.class,
 	SpotifyApiConfig.class,
 	SpotifyApiWrapper.class,
@@ -57,10 +70,17 @@ import spotify.util.data.AlbumTrackPair;
 	TrackService.class,
 	UserService.class,
 	CachedUserService.class,
+	ReleaseTitleIndexService.class,
+	ParallelFilterExecutor.class,
+	AudioFeatureService.class,
+	ReleaseCodeIndexService.class,
+	ReleaseFeatureExtractor.class,
 	DatabaseCreationService.class,
 	PlaylistStoreConfig.class,
+	PlaylistMirrorService.class,
+	SpotifyOptimizedExecutorService.class,
 	BlacklistConfig.class,
-	DatabaseService.class,
+	KeywordConfig.class,
 	SpotifyDiscoveryBot.Scopes.class
 
 })
@@ -74,16 +94,16 @@ public class RemappingTests {
 	private SpotifyApiAuthorization spotifyApiAuthorization;
 
 	@Autowired
-	private TrackService trackService;
+	private AudioFeatureService audioFeatureService;
 
 	@Autowired
-	private FilterService filterService;
+	private ReleaseCodeIndexService releaseCodeIndexService;
 
 	@Autowired
-	private CachedUserService cachedUserService;
+	private ReleaseFeatureExtractor releaseFeatureExtractor;
 
 	@Autowired
-	private DatabaseService databaseService;
+	private TrackService trackService;
 
 	private static EpRemapper epRemapper;
 	private static LiveRemapper liveRemapper;
@@ -96,10 +116,10 @@ public class RemappingTests {
 	public void createRemappers() {
 		if (!initialized) {
 			epRemapper = new EpRemapper();
-			liveRemapper = new LiveRemapper(trackService);
+			liveRemapper = new LiveRemapper(audioFeatureService);
 			remixRemapper = new RemixRemapper();
 
-			rereleaseRemapper = new RereleaseRemapper(filterService, cachedUserService, databaseService);
+			rereleaseRemapper = new RereleaseRemapper(releaseCodeIndexService);
 
 			login();
 			
@@ -129,14 +149,19 @@ public class RemappingTests {
 	}
 
 	private Action getRemapAction(Remapper remapper, String albumId) {
+		AlbumTrackPair atp = getAlbumTrackPair(albumId);
+		if (!remapper.isAllowedAlbumGroup(AlbumGroupExtended.fromAlbumGroup(atp.getAlbum().getAlbumGroup()))) {
+			fail("Didn't fulfill isAllowedAlbumGroup requirement");
+		}
+		remapper.prepare(List.of(atp));
+		return remapper.determineRemapAction(releaseFeatureExtractor.extract(atp));
+	}
+
+	private AlbumTrackPair getAlbumTrackPair(String albumId) {
 		try {
 			AlbumSimplified album = getAlbumSimplified(albumId);
-			if (!remapper.isAllowedAlbumGroup(AlbumGroupExtended.fromAlbumGroup(album.getAlbumGroup()))) {
-				fail("Didn't fulfill isAllowedAlbumGroup requirement");
-			}
 			List<TrackSimplified> tracks = getTracksOfSingleAlbum(album);
-			AlbumTrackPair atp = AlbumTrackPair.of(album, tracks);
-			return remapper.determineRemapAction(atp);
+			return AlbumTrackPair.of(album, tracks);
 		} catch (SpotifyApiException e) {
 			e.printStackTrace();
 			fail();
@@ -191,6 +216,25 @@ public class RemappingTests {
 		// assertTrue(willRemap(liveRemapper, "1jwEbO79yp9v5KaD8RlLtH")); // Epica - Omega Alive [impossible to fix due to shitty naming conventions... hate these semi-live albums]
 	}
 
+	/**
+	 * The live detection used to be delegated to the library, which fetches the
+	 * audio features on its own. The prefetching remapper has to come to the
+	 * same verdict for all test releases.
+	 */
+	@Test
+	public void liveParityWithLibrary() {
+		List<String> albumIds = List.of(
+			"6U2FX33shPcoezU7oZS0eW", "5tCkJBpsqSgjk1ZHvHdC2I", "6kJuATIGbPYxHmRoWCC5IB", "1C0CHLxgm1yWcR2pCaj0q7", "0NvnXREzEa8ZNCI5PRpukR",
+			"52SQNIbuBk99ZlpUh2tSz5", "7hrzbg8R1gI1loeF9Xmwdr", "0lB9qbHN7Km0TquNaQbNW9", "4PVyUMglBuxtPVip15aFfq", "3ODOZbMD8UDSjvco3YDxNS",
+			"1jwEbO79yp9v5KaD8RlLtH", "3WJZV73n2hL1Hd4ldmalZR", "4WXCtg5Qs7McMVarDVzSxd", "12cGa7OeAt3BiN8F8Ec1uJ", "7hRRdRCPsoWCF2gJr7yPZR",
+			"6dksdceqBM8roInjffIaZw", "7d3PsJu4ozQs75MTgWlBGC", "5C8a48NKuieqX1XlJvHzCs", "7FtlSQ9bDd5u1EPXHYsVCB");
+		for (String albumId : albumIds) {
+			AlbumTrackPair atp = getAlbumTrackPair(albumId);
+			boolean libraryVerdict = SpotifyUtils.isLiveRelease(atp, trackService);
+			assertEquals(albumId, libraryVerdict, willRemap(liveRemapper, albumId));
+		}
+	}
+
 	@Test
 	public void liveNegative() {
 		assertFalse(willRemap(liveRemapper, "3WJZV73n2hL1Hd4ldmalZR")); // Alestorm - Captain Morgan's Revenge (10th Anniversary Edition)
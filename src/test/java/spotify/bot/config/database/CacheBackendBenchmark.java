@@ -0,0 +1,103 @@
+package spotify.bot.config.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Compares the two cache backends with one million cached releases (import
+ * time, full cache load time, membership lookup latency, and file size). Not
+ * part of the regular test run, as it takes a while; remove the
+ * <code>@Ignore</code> to run it manually.
+ */
+@Ignore
+public class CacheBackendBenchmark {
+	private final static int RELEASE_COUNT = 1_000_000;
+	private final static int LOOKUP_ROUNDS = 100;
+	private final static int LOOKUP_BATCH_SIZE = 500;
+
+	@Test
+	public void compareBackends() throws Exception {
+		CacheSnapshot cacheSnapshot = createSnapshot();
+		DiscoveryBotLogger log = new DiscoveryBotLogger();
+		File tempDirectory = Files.createTempDirectory("cache-benchmark").toFile();
+
+		DiscoveryDatabase discoveryDatabase = new DiscoveryDatabase(new File(tempDirectory, "database.db"), log, new DatabaseCreationService(log));
+		CacheWriter cacheWriter = new CacheWriter(discoveryDatabase, log);
+		benchmark("SQLite", new SqliteDatabaseService(discoveryDatabase, cacheWriter), cacheSnapshot);
+		benchmark("MVStore", new MvStoreDatabaseService(new File(tempDirectory, "database.mv"), log), cacheSnapshot);
+	}
+
+	private void benchmark(String name, DatabaseService databaseService, CacheSnapshot cacheSnapshot) throws Exception {
+		try {
+			long importTime = time(() -> databaseService.importCache(cacheSnapshot));
+			databaseService.compact();
+
+			long loadTime = time(() -> assertEquals(RELEASE_COUNT, databaseService.getReleasesIdsCache().size()));
+
+			List<String> releaseIds = new ArrayList<>(cacheSnapshot.getReleaseIds().keySet());
+			Random random = new Random(42);
+			long lookupTime = time(() -> {
+				for (int i = 0; i < LOOKUP_ROUNDS; i++) {
+					List<String> lookup = new ArrayList<>();
+					for (int j = 0; j < LOOKUP_BATCH_SIZE; j++) {
+						lookup.add(j % 2 == 0 ? releaseIds.get(random.nextInt(RELEASE_COUNT)) : randomId(random));
+					}
+					Set<String> cached = databaseService.getCachedReleaseIds(lookup);
+					if (cached.size() > LOOKUP_BATCH_SIZE) {
+						throw new IllegalStateException();
+					}
+				}
+			});
+
+			System.out.println(String.format("%-8s import: %6dms | full load: %5dms | lookup of %d IDs: %7.2fms | file size: %6d KB",
+				name, importTime, loadTime, LOOKUP_BATCH_SIZE, (double) lookupTime / LOOKUP_ROUNDS, databaseService.getDatabaseFileSize() / 1024));
+		} finally {
+			databaseService.close();
+		}
+	}
+
+	private CacheSnapshot createSnapshot() {
+		Random random = new Random(1);
+		long now = Instant.now().getEpochSecond();
+		Map<String, Long> releaseIds = new HashMap<>();
+		while (releaseIds.size() < RELEASE_COUNT) {
+			releaseIds.put(randomId(random), now);
+		}
+		return CacheSnapshot.builder()
+			.releaseIds(releaseIds)
+			.build();
+	}
+
+	private static String randomId(Random random) {
+		String alphabet = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 22; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	private interface BenchmarkTask {
+		void run() throws Exception;
+	}
+
+	private static long time(BenchmarkTask task) throws Exception {
+		long start = System.currentTimeMillis();
+		task.run();
+		return System.currentTimeMillis() - start;
+	}
+}
@@ -0,0 +1,89 @@
+package spotify.bot.config.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import spotify.bot.util.DiscoveryBotLogger;
+import spotify.bot.util.data.AlbumGroupExtended;
+import spotify.bot.util.data.PendingAddition;
+
+/**
+ * Migrates a cache snapshot from one backend to the other and back, checking
+ * that the cache tables and the addition outbox survive the round trip
+ */
+public class CacheSnapshotTests {
+	private final static List<PendingAddition> PENDING_ADDITIONS = List.of(
+		new PendingAddition(AlbumGroupExtended.ALBUM, 1L, 0, "t1"),
+		new PendingAddition(AlbumGroupExtended.ALBUM, 1L, 1, "t2"),
+		new PendingAddition(AlbumGroupExtended.SINGLE, 2L, 0, "t3"));
+
+	@Test
+	public void snapshotSurvivesRoundTripBetweenBackends() throws Exception {
+		DiscoveryBotLogger log = new DiscoveryBotLogger();
+		File tempDirectory = Files.createTempDirectory("cache-snapshot").toFile();
+
+		DatabaseService mvStore = new MvStoreDatabaseService(new File(tempDirectory, "database.mv"), log);
+		DiscoveryDatabase discoveryDatabase = new DiscoveryDatabase(new File(tempDirectory, "database.db"), log, new DatabaseCreationService(log));
+		DatabaseService sqlite = new SqliteDatabaseService(discoveryDatabase, new CacheWriter(discoveryDatabase, log));
+		DatabaseService mvStoreCopy = new MvStoreDatabaseService(new File(tempDirectory, "copy.mv"), log);
+		try {
+			mvStore.importCache(CacheSnapshot.builder()
+				.releaseIds(Map.of("r1", 100L, "r2", 200L))
+				.artistIds(List.of("a1", "a2"))
+				.pendingAdditions(PENDING_ADDITIONS)
+				.build());
+
+			sqlite.importCache(mvStore.exportCache());
+			mvStoreCopy.importCache(sqlite.exportCache());
+
+			for (DatabaseService databaseService : List.of(sqlite, mvStoreCopy)) {
+				CacheSnapshot cacheSnapshot = databaseService.exportCache();
+				assertEquals(Map.of("r1", 100L, "r2", 200L), cacheSnapshot.getReleaseIds());
+				assertEquals(Set.of("a1", "a2"), Set.copyOf(cacheSnapshot.getArtistIds()));
+				assertEquals(toKeysAndTrackIds(PENDING_ADDITIONS), toKeysAndTrackIds(cacheSnapshot.getPendingAdditions()));
+			}
+		} finally {
+			mvStore.close();
+			sqlite.close();
+			mvStoreCopy.close();
+		}
+	}
+
+	@Test
+	public void importingTwiceKeepsPendingAdditionsUnique() throws Exception {
+		DiscoveryBotLogger log = new DiscoveryBotLogger();
+		File tempDirectory = Files.createTempDirectory("cache-snapshot").toFile();
+
+		DiscoveryDatabase discoveryDatabase = new DiscoveryDatabase(new File(tempDirectory, "database.db"), log, new DatabaseCreationService(log));
+		DatabaseService sqlite = new SqliteDatabaseService(discoveryDatabase, new CacheWriter(discoveryDatabase, log));
+		DatabaseService mvStore = new MvStoreDatabaseService(new File(tempDirectory, "database.mv"), log);
+		try {
+			CacheSnapshot cacheSnapshot = CacheSnapshot.builder()
+				.pendingAdditions(PENDING_ADDITIONS)
+				.build();
+			for (DatabaseService databaseService : List.of(sqlite, mvStore)) {
+				databaseService.importCache(cacheSnapshot);
+				databaseService.importCache(cacheSnapshot);
+				assertEquals(PENDING_ADDITIONS.size(), databaseService.getPendingAdditions().size());
+			}
+		} finally {
+			sqlite.close();
+			mvStore.close();
+		}
+	}
+
+	///////////////
+
+	private static Map<String, String> toKeysAndTrackIds(List<PendingAddition> pendingAdditions) {
+		return pendingAdditions.stream()
+			.collect(Collectors.toMap(PendingAddition::getKey, PendingAddition::getTrackId));
+	}
+}
@@ -0,0 +1,171 @@
+package spotify.bot.config.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Runs the {@link CacheWriter} against a local stand-in of the database and
+ * checks that the writes are committed in order, that flushing and shutting
+ * down wait for everything queued before, and that a failing write doesn't take
+ * the rest of its group down with it
+ */
+public class CacheWriterTests {
+	private final static String BROKEN_TABLE = "broken";
+
+	@Test
+	public void writesAreCommittedInOrder() {
+		StandInDatabase database = new StandInDatabase();
+		CacheWriter cacheWriter = new CacheWriter(database, new DiscoveryBotLogger());
+		for (int i = 0; i < 50; i++) {
+			cacheWriter.enqueue(List.of("v" + i), "table" + (i % 3), "column");
+		}
+		cacheWriter.flush();
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			expected.add("v" + i);
+		}
+		assertEquals(expected, database.committedValues());
+		cacheWriter.shutdown();
+	}
+
+	@Test
+	public void flushWaitsForGroupedWrites() {
+		StandInDatabase database = new StandInDatabase();
+		database.blockFirstTransaction();
+		CacheWriter cacheWriter = new CacheWriter(database, new DiscoveryBotLogger());
+		cacheWriter.enqueue(List.of("a"), "table", "column");
+		database.awaitFirstTransaction();
+
+		// Queued while the first transaction is running, so they are grouped
+		cacheWriter.enqueue(List.of("b"), "table", "column");
+		cacheWriter.enqueue(List.of("c", "d"), "table", "column");
+		database.release();
+		cacheWriter.flush();
+
+		assertEquals(List.of("a", "b", "c", "d"), database.committedValues());
+		assertEquals(2, database.transactionCount);
+		cacheWriter.shutdown();
+	}
+
+	@Test
+	public void shutdownWritesRemainingWrites() throws InterruptedException {
+		StandInDatabase database = new StandInDatabase();
+		database.blockFirstTransaction();
+		CacheWriter cacheWriter = new CacheWriter(database, new DiscoveryBotLogger());
+		cacheWriter.enqueue(List.of("a"), "table", "column");
+		database.awaitFirstTransaction();
+		cacheWriter.enqueue(List.of("b"), "table", "column");
+
+		Thread shutdown = new Thread(cacheWriter::shutdown);
+		shutdown.start();
+		database.release();
+		shutdown.join(TimeUnit.SECONDS.toMillis(5));
+
+		assertFalse(shutdown.isAlive());
+		assertEquals(List.of("a", "b"), database.committedValues());
+		try {
+			cacheWriter.enqueue(List.of("c"), "table", "column");
+			fail("Write accepted after shutdown");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void failingWriteOnlyLosesItsOwnRows() {
+		StandInDatabase database = new StandInDatabase();
+		database.blockFirstTransaction();
+		CacheWriter cacheWriter = new CacheWriter(database, new DiscoveryBotLogger());
+		cacheWriter.enqueue(List.of("a"), "table", "column");
+		database.awaitFirstTransaction();
+
+		cacheWriter.enqueue(List.of("b"), "table", "column");
+		cacheWriter.enqueue(List.of("lost"), BROKEN_TABLE, "column");
+		cacheWriter.enqueue(List.of("c"), "other", "column");
+		database.release();
+		cacheWriter.flush();
+
+		assertEquals(List.of("a", "b", "c"), database.committedValues());
+
+		// A failing write on its own doesn't stop the writer either
+		cacheWriter.enqueue(List.of("lost"), BROKEN_TABLE, "column");
+		cacheWriter.enqueue(List.of("d"), "table", "column");
+		cacheWriter.flush();
+		assertTrue(database.committedValues().contains("d"));
+		cacheWriter.shutdown();
+	}
+
+	///////////////
+
+	/**
+	 * Commits every transaction into a list, unless it contains a write into the
+	 * broken table. The first transaction can be held up to let further writes
+	 * pile up in the queue.
+	 */
+	private static class StandInDatabase implements CacheWriter.Transaction {
+		private final List<CacheWrite> committed = new ArrayList<>();
+		private final CountDownLatch firstTransactionStarted = new CountDownLatch(1);
+		private final CountDownLatch released = new CountDownLatch(1);
+		private boolean blockFirst;
+		private int transactionCount;
+
+		@Override
+		public void insertAll(Collection<CacheWrite> cacheWrites) throws SQLException {
+			if (firstTransactionStarted.getCount() > 0) {
+				firstTransactionStarted.countDown();
+				if (blockFirst) {
+					await(released);
+				}
+			}
+			synchronized (this) {
+				transactionCount++;
+				if (cacheWrites.stream().anyMatch(w -> w.getTable().equals(BROKEN_TABLE))) {
+					throw new SQLException("no such table: " + BROKEN_TABLE);
+				}
+				committed.addAll(cacheWrites);
+			}
+		}
+
+		void blockFirstTransaction() {
+			blockFirst = true;
+		}
+
+		void awaitFirstTransaction() {
+			await(firstTransactionStarted);
+		}
+
+		void release() {
+			released.countDown();
+		}
+
+		synchronized List<String> committedValues() {
+			return committed.stream()
+				.flatMap(w -> w.getRows().stream())
+				.map(row -> (String) row.get(0))
+				.collect(Collectors.toList());
+		}
+
+		private static void await(CountDownLatch latch) {
+			try {
+				assertTrue(latch.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package spotify.bot.config.properties;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks which tracks of a release each {@link AddedTrackPolicy} adds, given
+ * the tracks that have been added before
+ */
+public class AddedTrackPolicyTests {
+	private final static Set<String> ADDED = Set.of("single1", "single2");
+
+	/**
+	 * Policy, tracks of the release, expected tracks to add
+	 */
+	private final static Object[][] SELECTION = {
+		{ AddedTrackPolicy.KEEP, List.of("single1", "a", "single2"), List.of("single1", "a", "single2") },
+		{ AddedTrackPolicy.KEEP, List.of("single1"), List.of("single1") },
+		{ AddedTrackPolicy.SKIP_TRACKS, List.of("single1", "a", "single2", "b"), List.of("a", "b") },
+		{ AddedTrackPolicy.SKIP_TRACKS, List.of("single1", "single2"), List.of() },
+		{ AddedTrackPolicy.SKIP_TRACKS, List.of("a", "b"), List.of("a", "b") },
+		{ AddedTrackPolicy.SKIP_RELEASES, List.of("single1", "a", "single2"), List.of("single1", "a", "single2") },
+		{ AddedTrackPolicy.SKIP_RELEASES, List.of("single1", "single2"), List.of() },
+		{ AddedTrackPolicy.SKIP_RELEASES, List.of(), List.of() },
+	};
+
+	@Test
+	public void selectionTable() {
+		for (Object[] row : SELECTION) {
+			@SuppressWarnings("unchecked")
+			List<String> tracks = (List<String>) row[1];
+			assertEquals(row[0] + " / " + row[1], row[2], ((AddedTrackPolicy) row[0]).selectTracks(tracks, ADDED::contains));
+		}
+	}
+}
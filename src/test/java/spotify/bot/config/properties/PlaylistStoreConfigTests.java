@@ -0,0 +1,159 @@
+package spotify.bot.config.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.exceptions.detailed.BadRequestException;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.ServiceUnavailableException;
+import spotify.api.SpotifyApiException;
+import spotify.bot.config.properties.PlaylistStoreConfig.PlaylistStore;
+import spotify.bot.config.properties.PlaylistStoreConfig.Verification;
+import spotify.bot.util.data.AlbumGroupExtended;
+
+/**
+ * Checks the persisted playlist state (which is only restored while a store
+ * still points to the same playlist) and the playlist verification at startup,
+ * which only disables the album groups whose playlists definitely don't exist
+ */
+public class PlaylistStoreConfigTests {
+	private final static LocalDateTime LAST_UPDATE = LocalDateTime.of(2024, 3, 1, 12, 30);
+
+	@Test
+	public void stateIsRestoredForTheSamePlaylist() {
+		PlaylistStore album = new PlaylistStore(AlbumGroupExtended.ALBUM, "p1");
+		album.setLastUpdate(LAST_UPDATE);
+		album.getRecentlyAddedTrackIds().addAll(List.of("a", "b"));
+		PlaylistStore single = new PlaylistStore(AlbumGroupExtended.SINGLE, "p2");
+		Properties state = PlaylistStoreConfig.toState(List.of(album, single));
+
+		PlaylistStore restoredAlbum = new PlaylistStore(AlbumGroupExtended.ALBUM, "p1");
+		PlaylistStore restoredSingle = new PlaylistStore(AlbumGroupExtended.SINGLE, "p2");
+		Set<AlbumGroupExtended> restored = PlaylistStoreConfig.restoreState(state, List.of(restoredAlbum, restoredSingle));
+
+		assertEquals(Set.of(AlbumGroupExtended.ALBUM, AlbumGroupExtended.SINGLE), restored);
+		assertEquals(LAST_UPDATE, restoredAlbum.getLastUpdate());
+		assertEquals(Set.of("a", "b"), restoredAlbum.getRecentlyAddedTrackIds());
+		assertNull(restoredSingle.getLastUpdate());
+		assertTrue(restoredSingle.getRecentlyAddedTrackIds().isEmpty());
+	}
+
+	@Test
+	public void stateOfAChangedPlaylistIsIgnored() {
+		PlaylistStore album = new PlaylistStore(AlbumGroupExtended.ALBUM, "p1");
+		album.setLastUpdate(LAST_UPDATE);
+		album.getRecentlyAddedTrackIds().add("a");
+		PlaylistStore disabled = new PlaylistStore(AlbumGroupExtended.EP, null);
+		Properties state = PlaylistStoreConfig.toState(List.of(album, disabled));
+
+		PlaylistStore changedAlbum = new PlaylistStore(AlbumGroupExtended.ALBUM, "other");
+		PlaylistStore enabledEp = new PlaylistStore(AlbumGroupExtended.EP, "p3");
+		Set<AlbumGroupExtended> restored = PlaylistStoreConfig.restoreState(state, List.of(changedAlbum, enabledEp));
+
+		assertTrue(restored.isEmpty());
+		assertNull(changedAlbum.getLastUpdate());
+		assertTrue(changedAlbum.getRecentlyAddedTrackIds().isEmpty());
+	}
+
+	@Test
+	public void onlyMissingPlaylistsFailVerification() {
+		assertEquals(Verification.VALID, PlaylistStoreConfig.verify("p", id -> {}));
+		assertEquals(Verification.MISSING, PlaylistStoreConfig.verify("p", failing(new NotFoundException("Not found"))));
+		assertEquals(Verification.MISSING, PlaylistStoreConfig.verify("p", failing(new BadRequestException("Invalid base62 id"))));
+
+		AtomicInteger attempts = new AtomicInteger();
+		assertEquals(Verification.UNVERIFIED, PlaylistStoreConfig.verify("p", id -> {
+			attempts.incrementAndGet();
+			throw new SpotifyApiException(new ServiceUnavailableException("Service unavailable"));
+		}));
+		assertTrue(attempts.get() > 1);
+	}
+
+	@Test
+	public void transientErrorsAreRetried() {
+		AtomicInteger attempts = new AtomicInteger();
+		Verification verification = PlaylistStoreConfig.verify("p", id -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new SpotifyApiException(new ServiceUnavailableException("Service unavailable"));
+			}
+		});
+		assertEquals(Verification.VALID, verification);
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	public void playlistsAreVerifiedInParallel() throws Exception {
+		Map<AlbumGroupExtended, String> playlistIds = new LinkedHashMap<>();
+		playlistIds.put(AlbumGroupExtended.ALBUM, "album");
+		playlistIds.put(AlbumGroupExtended.SINGLE, "missing");
+		playlistIds.put(AlbumGroupExtended.EP, "unavailable");
+
+		// Every fetch waits for all others to have started, which only works if they run concurrently
+		CountDownLatch allStarted = new CountDownLatch(playlistIds.size());
+		Set<String> fetched = ConcurrentHashMap.newKeySet();
+		Map<AlbumGroupExtended, Verification> verifications = PlaylistStoreConfig.verifyAll(playlistIds, id -> {
+			if (fetched.add(id)) {
+				allStarted.countDown();
+			}
+			try {
+				assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			if (id.equals("missing")) {
+				throw new SpotifyApiException(new NotFoundException("Not found"));
+			} else if (id.equals("unavailable")) {
+				throw new SpotifyApiException(new ServiceUnavailableException("Service unavailable"));
+			}
+		}, PlaylistStoreConfigTests::executeAndWait);
+
+		assertEquals(Verification.VALID, verifications.get(AlbumGroupExtended.ALBUM));
+		assertEquals(Verification.MISSING, verifications.get(AlbumGroupExtended.SINGLE));
+		assertEquals(Verification.UNVERIFIED, verifications.get(AlbumGroupExtended.EP));
+	}
+
+	///////////////
+
+	private static Consumer<String> failing(Exception cause) {
+		return id -> {
+			throw new SpotifyApiException(cause);
+		};
+	}
+
+	private static void executeAndWait(List<Callable<Void>> callables) {
+		ExecutorService executorService = Executors.newFixedThreadPool(callables.size());
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Callable<Void> callable : callables) {
+				futures.add(executorService.submit(callable));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		} finally {
+			executorService.shutdown();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package spotify.bot.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.util.data.ReleaseTitle;
+import spotify.bot.util.data.ReleaseTitleIndex;
+
+/**
+ * Compares the sequential and the parallel mode of the
+ * {@link ParallelFilterExecutor} for a typical per-release workload (title
+ * normalization, fuzzy title lookup, release date parsing) at increasing input
+ * sizes, to find the crossover for the <code>PARALLEL_FILTER_THRESHOLD</code>
+ * setting on the given machine. Not part of the regular test run; remove the
+ * <code>@Ignore</code> to run it manually.
+ */
+@Ignore
+public class ParallelFilterBenchmark {
+	private final static int[] SIZES = { 100, 250, 500, 1_000, 2_000, 5_000, 10_000, 50_000 };
+	private final static int INDEXED_TITLES = 200_000;
+	private final static int ARTISTS = 5_000;
+	private final static int WARMUP_ROUNDS = 5;
+	private final static int ROUNDS = 20;
+
+	@Test
+	public void findCrossover() {
+		Random random = new Random(1);
+		ReleaseTitleIndex index = new ReleaseTitleIndex();
+		for (int i = 0; i < INDEXED_TITLES; i++) {
+			index.add(new ReleaseTitle(artistId(random), "album", ReleaseTitleIndex.normalize(randomTitle(random))));
+		}
+		Predicate<ReleaseTitle> workload = title -> isRecent(title) && !index.containsSimilar(
+			new ReleaseTitle(title.getArtistId(), title.getAlbumType(), ReleaseTitleIndex.normalize(title.getNormalizedTitle())));
+
+		ParallelFilterExecutor sequential = new ParallelFilterExecutor(Integer.MAX_VALUE, 1);
+		ParallelFilterExecutor parallel = new ParallelFilterExecutor(1, Runtime.getRuntime().availableProcessors());
+		try {
+			System.out.println("Parallelism: " + Runtime.getRuntime().availableProcessors());
+			for (int size : SIZES) {
+				List<ReleaseTitle> releases = new ArrayList<>();
+				for (int i = 0; i < size; i++) {
+					releases.add(new ReleaseTitle(artistId(random), "album", randomTitle(random) + " (Deluxe Edition)"));
+				}
+				assertArrayEquals(sequential.test(releases, workload), parallel.test(releases, workload));
+
+				double sequentialMicros = time(sequential, releases, workload);
+				double parallelMicros = time(parallel, releases, workload);
+				System.out.println(String.format("%6d releases | sequential: %9.1fus | parallel: %9.1fus | speedup: %5.2fx",
+					size, sequentialMicros, parallelMicros, sequentialMicros / parallelMicros));
+			}
+		} finally {
+			sequential.shutdown();
+			parallel.shutdown();
+		}
+	}
+
+	private static double time(ParallelFilterExecutor executor, List<ReleaseTitle> releases, Predicate<ReleaseTitle> workload) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			executor.test(releases, workload);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			executor.test(releases, workload);
+		}
+		return (System.nanoTime() - start) / 1000.0 / ROUNDS;
+	}
+
+	private static boolean isRecent(ReleaseTitle title) {
+		try {
+			return LocalDate.parse("2022-01-" + (10 + Math.abs(title.hashCode() % 18))).isAfter(LocalDate.of(2021, 1, 1));
+		} catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+	private static String artistId(Random random) {
+		return "artist" + random.nextInt(ARTISTS);
+	}
+
+	private static String randomTitle(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int words = 1 + random.nextInt(4);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			int length = 3 + random.nextInt(6);
+			for (int j = 0; j < length; j++) {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,123 @@
+package spotify.bot.filter.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import spotify.bot.service.performance.ParallelFilterExecutor;
+import spotify.bot.util.DiscoveryBotLogger;
+
+/**
+ * Checks that fused, batch and checkpoint segments of the
+ * {@link ReleaseFilterPipeline} keep the same releases in the same order as
+ * applying the stages one after another, both sequentially and in parallel
+ */
+public class ReleaseFilterPipelineTests {
+	private final static DiscoveryBotLogger LOG = new DiscoveryBotLogger();
+
+	@Test
+	public void fusedStagesOnlySeeSurvivorsOfEarlierStages() throws Exception {
+		List<String> seenBySecond = new ArrayList<>();
+		ReleaseFilterPipeline pipeline = ReleaseFilterPipeline.builder(LOG, sequential())
+			.then(ReleaseFilter.stateless("even", null, release -> index(release) % 2 == 0))
+			.then(ReleaseFilter.streaming("record", null, () -> release -> seenBySecond.add(release.getId())))
+			.build();
+
+		List<AlbumSimplified> survivors = pipeline.run(releases(6));
+
+		assertEquals(List.of("0", "2", "4"), ids(survivors));
+		assertEquals(List.of("0", "2", "4"), seenBySecond);
+	}
+
+	@Test
+	public void statefulStagesGetAFreshPredicatePerRun() throws Exception {
+		ReleaseFilterPipeline pipeline = ReleaseFilterPipeline.builder(LOG, sequential())
+			.then(ReleaseFilter.streaming("distinct", null, () -> {
+				Set<Integer> seen = new HashSet<>();
+				return release -> seen.add(index(release) % 3);
+			}))
+			.build();
+
+		assertEquals(List.of("0", "1", "2"), ids(pipeline.run(releases(6))));
+		assertEquals(List.of("0", "1", "2"), ids(pipeline.run(releases(6))));
+	}
+
+	@Test
+	public void batchStagesAndCheckpointsSplitTheFusedPasses() throws Exception {
+		List<List<String>> checkpoints = new ArrayList<>();
+		ReleaseFilterPipeline pipeline = ReleaseFilterPipeline.builder(LOG, sequential())
+			.then(ReleaseFilter.stateless("below8", null, release -> index(release) < 8))
+			.checkpoint(releases -> checkpoints.add(ids(releases)))
+			.then(ReleaseFilter.batch("reverse", null, releases -> {
+				List<AlbumSimplified> reversed = new ArrayList<>(releases);
+				Collections.reverse(reversed);
+				return reversed;
+			}))
+			.then(ReleaseFilter.stateless("odd", null, release -> index(release) % 2 == 1))
+			.build();
+
+		assertEquals(List.of("7", "5", "3", "1"), ids(pipeline.run(releases(10))));
+		assertEquals(List.of(List.of("0", "1", "2", "3", "4", "5", "6", "7")), checkpoints);
+	}
+
+	@Test
+	public void parallelRunKeepsTheSequentialResult() throws Exception {
+		List<AlbumSimplified> releases = releases(5_000);
+		ParallelFilterExecutor parallel = new ParallelFilterExecutor(1, 4);
+		try {
+			assertEquals(ids(mixedPipeline(sequential()).run(releases)), ids(mixedPipeline(parallel).run(releases)));
+		} finally {
+			parallel.shutdown();
+		}
+	}
+
+	///////////////
+
+	/**
+	 * Stateless stages mixed with a stateful one that depends on the order in
+	 * which it sees the releases
+	 */
+	private static ReleaseFilterPipeline mixedPipeline(ParallelFilterExecutor executor) {
+		Predicate<AlbumSimplified> notDivisibleBy7 = release -> index(release) % 7 != 0;
+		return ReleaseFilterPipeline.builder(LOG, executor)
+			.then(ReleaseFilter.stateless("not7", null, notDivisibleBy7))
+			.then(ReleaseFilter.streaming("firstPerHundredBucket", null, () -> {
+				Set<Integer> seenBuckets = new HashSet<>();
+				return release -> seenBuckets.add(index(release) / 100) || index(release) % 3 == 0;
+			}))
+			.then(ReleaseFilter.stateless("notDivisibleBy5", null, release -> index(release) % 5 != 0))
+			.build();
+	}
+
+	private static ParallelFilterExecutor sequential() {
+		return new ParallelFilterExecutor(Integer.MAX_VALUE, 1);
+	}
+
+	private static List<AlbumSimplified> releases(int count) {
+		List<AlbumSimplified> releases = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			releases.add(new AlbumSimplified.Builder()
+				.setId(String.valueOf(i))
+				.setName("Release " + i)
+				.build());
+		}
+		return releases;
+	}
+
+	private static int index(AlbumSimplified release) {
+		return Integer.parseInt(release.getId());
+	}
+
+	private static List<String> ids(List<AlbumSimplified> releases) {
+		return releases.stream().map(AlbumSimplified::getId).collect(Collectors.toList());
+	}
+}
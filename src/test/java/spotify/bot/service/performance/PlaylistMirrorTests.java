@@ -0,0 +1,126 @@
+package spotify.bot.service.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import spotify.bot.service.performance.PlaylistMirrorService.HeadItem;
+import spotify.bot.service.performance.PlaylistMirrorService.PlaylistMirror;
+
+/**
+ * Checks how a {@link PlaylistMirror} applies the outcome of the bot's own
+ * requests: which snapshot_ids it accepts, that the head never exceeds
+ * {@link PlaylistMirrorService#HEAD_SIZE} items, and when it's invalidated so
+ * that the playlist is refetched
+ */
+public class PlaylistMirrorTests {
+	private final static Date ADDED_AT = new Date(0);
+
+	@Test
+	public void ownChangesAreAccepted() {
+		PlaylistMirror mirror = mirror(3, "s1");
+		assertTrue(mirror.confirmSnapshot("s1"));
+		assertFalse(mirror.confirmSnapshot("foreign"));
+
+		mirror.insert(List.of("new"), 0, ADDED_AT, "s1", "s2");
+		assertEquals("s2", mirror.getSnapshotId());
+		assertTrue(mirror.confirmSnapshot("s2"));
+
+		mirror.changeDetails("New Name", null, "s3");
+		assertEquals("s3", mirror.getSnapshotId());
+		assertEquals("New Name", mirror.getName());
+		assertEquals("Description", mirror.getDescription());
+		assertTrue(mirror.confirmSnapshot("s3"));
+	}
+
+	@Test
+	public void invalidMirrorStaysInvalidAfterDetailsChange() {
+		PlaylistMirror mirror = new PlaylistMirror("playlist");
+		mirror.changeDetails("New Name", "New Description", "s1");
+		assertFalse(mirror.isValid());
+		assertFalse(mirror.confirmSnapshot("s1"));
+	}
+
+	@Test
+	public void headIsTrimmedToHeadSize() {
+		PlaylistMirror mirror = mirror(PlaylistMirrorService.HEAD_SIZE + 10, "s1");
+		assertEquals(PlaylistMirrorService.HEAD_SIZE, mirror.getHeadItems().size());
+		assertEquals(PlaylistMirrorService.HEAD_SIZE + 10, mirror.getTotal());
+
+		mirror.insert(List.of("a", "b"), 0, ADDED_AT, "s1", "s2");
+		assertEquals(PlaylistMirrorService.HEAD_SIZE, mirror.getHeadItems().size());
+		assertEquals(PlaylistMirrorService.HEAD_SIZE + 12, mirror.getTotal());
+		assertEquals(List.of("a", "b", "0", "1"), headIds(mirror).subList(0, 4));
+		assertEquals(String.valueOf(PlaylistMirrorService.HEAD_SIZE - 3), headIds(mirror).get(PlaylistMirrorService.HEAD_SIZE - 1));
+	}
+
+	@Test
+	public void insertionsBelowTheHeadOnlyCount() {
+		PlaylistMirror mirror = mirror(PlaylistMirrorService.HEAD_SIZE + 10, "s1");
+		List<String> headIds = headIds(mirror);
+
+		mirror.insert(List.of("a"), PlaylistMirrorService.HEAD_SIZE + 5, ADDED_AT, "s1", "s2");
+		assertEquals(headIds, headIds(mirror));
+		assertEquals(PlaylistMirrorService.HEAD_SIZE + 11, mirror.getTotal());
+		assertEquals("s2", mirror.getSnapshotId());
+	}
+
+	@Test
+	public void insertionAfterForeignChangeInvalidates() {
+		PlaylistMirror mirror = mirror(3, "s1");
+		mirror.insert(List.of("new"), 0, ADDED_AT, "foreign", "s2");
+		assertFalse(mirror.isValid());
+		assertFalse(mirror.confirmSnapshot("s2"));
+	}
+
+	@Test
+	public void trimmingTheBottomKeepsTheMirror() {
+		PlaylistMirror mirror = mirror(PlaylistMirrorService.HEAD_SIZE + 10, "s1");
+		mirror.remove(List.of(PlaylistMirrorService.HEAD_SIZE + 8, PlaylistMirrorService.HEAD_SIZE + 9), "s1", "s2");
+		assertTrue(mirror.isValid());
+		assertEquals("s2", mirror.getSnapshotId());
+		assertEquals(PlaylistMirrorService.HEAD_SIZE + 8, mirror.getTotal());
+	}
+
+	@Test
+	public void removalFromTheHeadInvalidates() {
+		PlaylistMirror mirror = mirror(PlaylistMirrorService.HEAD_SIZE + 10, "s1");
+		mirror.remove(List.of(3), "s1", "s2");
+		assertFalse(mirror.isValid());
+		assertFalse(mirror.confirmSnapshot("s2"));
+	}
+
+	@Test
+	public void removalAfterForeignChangeInvalidates() {
+		PlaylistMirror mirror = mirror(PlaylistMirrorService.HEAD_SIZE + 10, "s1");
+		mirror.remove(List.of(PlaylistMirrorService.HEAD_SIZE + 9), "foreign", "s2");
+		assertFalse(mirror.isValid());
+
+		mirror.replace("Name", "Description", 0, List.of(), "s3");
+		assertTrue(mirror.isValid());
+		assertTrue(mirror.confirmSnapshot("s3"));
+	}
+
+	///////////////
+
+	private static PlaylistMirror mirror(int total, String snapshotId) {
+		List<HeadItem> headItems = new ArrayList<>();
+		for (int i = 0; i < Math.min(total, PlaylistMirrorService.HEAD_SIZE + 10); i++) {
+			headItems.add(new HeadItem(String.valueOf(i), ADDED_AT));
+		}
+		PlaylistMirror mirror = new PlaylistMirror("playlist");
+		mirror.replace("Name", "Description", total, headItems, snapshotId);
+		return mirror;
+	}
+
+	private static List<String> headIds(PlaylistMirror mirror) {
+		return mirror.getHeadItems().stream().map(HeadItem::getId).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,89 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+
+/**
+ * Checks the decision table of the {@link BlacklistRules}: a title rule only
+ * applies to its album groups and, if scoped, to releases of its artist
+ * (including features), and merged patterns behave like the individual rules
+ */
+public class BlacklistRulesTests {
+	private final static String SCOPED_ARTIST = "scoped";
+	private final static String OTHER_ARTIST = "other";
+
+	/**
+	 * Title, release artists, album group, expected match for a global "Remix"
+	 * rule on singles and a "Live" rule scoped to one artist on albums and EPs
+	 */
+	private final static Object[][] SCOPE_AND_GROUP = {
+		{ "Song (Remix)", List.of(OTHER_ARTIST), AlbumGroupExtended.SINGLE, true },
+		{ "Song (Remix)", List.of(SCOPED_ARTIST), AlbumGroupExtended.SINGLE, true },
+		{ "Song (Remix)", List.of(OTHER_ARTIST), AlbumGroupExtended.ALBUM, false },
+		{ "Song (Live)", List.of(SCOPED_ARTIST), AlbumGroupExtended.ALBUM, true },
+		{ "Song (Live)", List.of(SCOPED_ARTIST), AlbumGroupExtended.EP, true },
+		{ "Song (Live)", List.of(SCOPED_ARTIST), AlbumGroupExtended.SINGLE, false },
+		{ "Song (Live)", List.of(OTHER_ARTIST), AlbumGroupExtended.ALBUM, false },
+		{ "Song (Live)", List.of(OTHER_ARTIST, SCOPED_ARTIST), AlbumGroupExtended.ALBUM, true },
+		{ "Song", List.of(SCOPED_ARTIST), AlbumGroupExtended.ALBUM, false },
+	};
+
+	@Test
+	public void scopeAndGroupDecisionTable() {
+		BlacklistRules rules = BlacklistRules.builder()
+			.titleRule("remix", List.of(AlbumGroupExtended.SINGLE), null)
+			.titleRule("\\blive\\b", List.of(AlbumGroupExtended.ALBUM, AlbumGroupExtended.EP), SCOPED_ARTIST)
+			.build();
+
+		for (Object[] row : SCOPE_AND_GROUP) {
+			@SuppressWarnings("unchecked")
+			AlbumSimplified release = release((String) row[0], (List<String>) row[1]);
+			assertEquals(row[0] + " / " + row[1] + " / " + row[2], row[3], rules.matchesTitle(release, (AlbumGroupExtended) row[2]));
+		}
+	}
+
+	@Test
+	public void mergedPatternsKeepTheirOwnAlternations() {
+		BlacklistRules rules = BlacklistRules.builder()
+			.titleRule("^(intro|outro)$", List.of(AlbumGroupExtended.SINGLE), null)
+			.titleRule("karaoke", List.of(AlbumGroupExtended.SINGLE), null)
+			.build();
+
+		assertTrue(rules.matchesTitle(release("Intro", List.of(OTHER_ARTIST)), AlbumGroupExtended.SINGLE));
+		assertTrue(rules.matchesTitle(release("Song (Karaoke Version)", List.of(OTHER_ARTIST)), AlbumGroupExtended.SINGLE));
+		assertFalse(rules.matchesTitle(release("Intro Song", List.of(OTHER_ARTIST)), AlbumGroupExtended.SINGLE));
+		assertEquals(2, rules.size());
+	}
+
+	@Test
+	public void artistRulesAreMergedPerArtist() {
+		BlacklistRules rules = BlacklistRules.builder()
+			.artistRule(SCOPED_ARTIST, List.of(AlbumGroupExtended.APPEARS_ON))
+			.artistRule(SCOPED_ARTIST, List.of(AlbumGroupExtended.COMPILATION))
+			.build();
+
+		assertEquals(Map.of(SCOPED_ARTIST, Set.of(AlbumGroupExtended.APPEARS_ON, AlbumGroupExtended.COMPILATION)), rules.getArtistRules());
+		assertFalse(rules.matchesTitle(release("Anything", List.of(SCOPED_ARTIST)), AlbumGroupExtended.APPEARS_ON));
+	}
+
+	///////////////
+
+	private static AlbumSimplified release(String title, List<String> artistIds) {
+		return new AlbumSimplified.Builder()
+			.setName(title)
+			.setArtists(artistIds.stream()
+				.map(id -> new ArtistSimplified.Builder().setId(id).build())
+				.toArray(ArtistSimplified[]::new))
+			.build();
+	}
+}
@@ -0,0 +1,72 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+
+/**
+ * Checks that only the artists whose releases were fetched completely are
+ * marked as fetched when the results of the individual artists are combined
+ */
+public class FetchedReleasesTests {
+
+	@Test
+	public void allArtistsFetched() {
+		FetchedReleases fetchedReleases = FetchedReleases.combine(List.of(
+			FetchedReleases.ofArtist("artist1", List.of(album("a1"), album("a2"))),
+			FetchedReleases.ofArtist("artist2", List.of(album("b1")))));
+
+		assertEquals(Set.of("artist1", "artist2"), fetchedReleases.getFetchedArtistIds());
+		assertEquals(List.of("a1", "a2", "b1"), albumIds(fetchedReleases));
+	}
+
+	@Test
+	public void failedArtistIsNotMarked() {
+		// The executor has no result for an artist whose request failed
+		FetchedReleases fetchedReleases = FetchedReleases.combine(Arrays.asList(
+			FetchedReleases.ofArtist("artist1", List.of(album("a1"))),
+			null,
+			FetchedReleases.ofArtist("artist3", List.of(album("c1")))));
+
+		assertEquals(Set.of("artist1", "artist3"), fetchedReleases.getFetchedArtistIds());
+		assertEquals(List.of("a1", "c1"), albumIds(fetchedReleases));
+	}
+
+	@Test
+	public void artistWithoutReleasesIsMarked() {
+		FetchedReleases fetchedReleases = FetchedReleases.combine(List.of(
+			FetchedReleases.ofArtist("artist1", List.of())));
+
+		assertEquals(Set.of("artist1"), fetchedReleases.getFetchedArtistIds());
+		assertEquals(List.of(), fetchedReleases.getAlbums());
+	}
+
+	@Test
+	public void nothingFetched() {
+		FetchedReleases fetchedReleases = FetchedReleases.combine(List.of());
+
+		assertEquals(Set.of(), fetchedReleases.getFetchedArtistIds());
+		assertEquals(List.of(), fetchedReleases.getAlbums());
+	}
+
+	///////////////
+
+	private static AlbumSimplified album(String id) {
+		return new AlbumSimplified.Builder()
+			.setId(id)
+			.build();
+	}
+
+	private static List<String> albumIds(FetchedReleases fetchedReleases) {
+		return fetchedReleases.getAlbums().stream()
+			.map(AlbumSimplified::getId)
+			.collect(Collectors.toList());
+	}
+}
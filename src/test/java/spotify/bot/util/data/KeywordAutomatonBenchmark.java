@@ -0,0 +1,114 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import spotify.bot.util.data.KeywordAutomaton.TitleTags;
+
+/**
+ * Compares the {@link KeywordAutomaton} with the separate regular expressions
+ * it replaced (re-release giveaway terms, live keyword, "Various Artists"), on
+ * the same randomly generated titles. Both approaches must come to the same
+ * result for every title. Not part of the regular test run; remove the
+ * <code>@Ignore</code> to run it manually.
+ */
+@Ignore
+public class KeywordAutomatonBenchmark {
+	private final static int TITLES = 100_000;
+	private final static int WARMUP_ROUNDS = 5;
+	private final static int ROUNDS = 20;
+
+	private final static Pattern RE_RELEASE_MATCHER = Pattern
+		.compile("(anniversary|re\\W?(issue|master|record)|\\d+\\W+(jahr|year))", Pattern.CASE_INSENSITIVE);
+	private final static Pattern LIVE_MATCHER = Pattern.compile("\\blive\\b", Pattern.CASE_INSENSITIVE);
+	private final static String VARIOUS_ARTISTS = "Various Artists";
+
+	private final static String[] WORDS = { "black", "plastic", "night", "ocean", "dreamer", "hotel", "citizen", "circus", "planet", "alive", "deliver" };
+	private final static String[] KEYWORDS = { "Remastered", "Re-Issue", "Reissue 2016", "20th Anniversary Edition", "10 Years", "30 Jahre", "Re-Recorded", "Pre-Recorded", "Unremastered", "2010s Yearbook", "Live", "Live at Wacken" };
+
+	@Test
+	public void compareWithRegex() {
+		KeywordAutomaton.Builder builder = KeywordAutomaton.builder();
+		for (TitleTag tag : TitleTag.values()) {
+			for (String keyword : tag.getDefaultKeywords()) {
+				builder.add(tag, keyword);
+			}
+		}
+		KeywordAutomaton automaton = builder.build();
+
+		Random random = new Random(1);
+		List<String> titles = new ArrayList<>();
+		for (int i = 0; i < TITLES; i++) {
+			titles.add(randomTitle(random));
+		}
+
+		for (String title : titles) {
+			assertEquals(title, classifyWithRegex(title), classifyWithAutomaton(automaton, title));
+		}
+
+		double regexMicros = time(() -> titles.forEach(KeywordAutomatonBenchmark::classifyWithRegex));
+		double automatonMicros = time(() -> titles.forEach(title -> classifyWithAutomaton(automaton, title)));
+		System.out.println(String.format("%d titles | regex: %9.1fus | automaton: %9.1fus | speedup: %5.2fx",
+			TITLES, regexMicros, automatonMicros, regexMicros / automatonMicros));
+	}
+
+	private static int classifyWithRegex(String title) {
+		Matcher matcher = RE_RELEASE_MATCHER.matcher(title);
+		boolean rerelease = matcher.find() && matcher.start() > 0;
+		boolean live = LIVE_MATCHER.matcher(title).find();
+		boolean variousArtists = title.equals(VARIOUS_ARTISTS);
+		return flags(rerelease, live, variousArtists);
+	}
+
+	private static int classifyWithAutomaton(KeywordAutomaton automaton, String title) {
+		TitleTags titleTags = automaton.scan(title);
+		boolean rerelease = titleTags.has(TitleTag.RE_RELEASE) && !titleTags.isAtStart(TitleTag.RE_RELEASE);
+		return flags(rerelease, titleTags.has(TitleTag.LIVE), titleTags.isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+	}
+
+	private static int flags(boolean rerelease, boolean live, boolean variousArtists) {
+		return (rerelease ? 1 : 0) | (live ? 2 : 0) | (variousArtists ? 4 : 0);
+	}
+
+	private static double time(Runnable runnable) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			runnable.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			runnable.run();
+		}
+		return (System.nanoTime() - start) / 1000.0 / ROUNDS;
+	}
+
+	private static String randomTitle(Random random) {
+		if (random.nextInt(20) == 0) {
+			return random.nextBoolean() ? VARIOUS_ARTISTS : VARIOUS_ARTISTS + " Tribute";
+		}
+		StringBuilder sb = new StringBuilder();
+		int words = 1 + random.nextInt(4);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		if (random.nextInt(3) == 0) {
+			String keyword = KEYWORDS[random.nextInt(KEYWORDS.length)];
+			if (random.nextBoolean()) {
+				sb.append(" (").append(keyword).append(')');
+			} else {
+				sb.insert(0, keyword + " - ");
+			}
+		}
+		return sb.toString();
+	}
+}
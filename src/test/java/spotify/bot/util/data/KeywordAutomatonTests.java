@@ -0,0 +1,144 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import spotify.bot.util.data.KeywordAutomaton.TitleTags;
+
+/**
+ * Checks the keyword syntax of the {@link KeywordAutomaton} (wildcards,
+ * <code>#</code>, word boundaries) and that the default keywords classify
+ * titles like the regular expressions they replaced
+ */
+public class KeywordAutomatonTests {
+	private final static Pattern OLD_RE_RELEASE_MATCHER = Pattern
+		.compile("(anniversary|re\\W?(issue|master|record)|\\d+\\W+(jahr|year))", Pattern.CASE_INSENSITIVE);
+	private final static Pattern OLD_LIVE_MATCHER = Pattern.compile("\\blive\\b", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Keyword, title, expected match
+	 */
+	private final static Object[][] SYNTAX = {
+		{ "remaster", "Remaster", true },
+		{ "remaster", "Remastered", false },
+		{ "remaster", "Unremaster", false },
+		{ "remaster*", "Remastered", true },
+		{ "remaster*", "Unremastered", false },
+		{ "*remaster", "Unremaster", true },
+		{ "*remaster", "Unremastered", false },
+		{ "*remaster*", "Unremastered", true },
+		{ "re issue", "Re-Issue", true },
+		{ "re issue", "Re - Issue", true },
+		{ "re issue", "Reissue", false },
+		{ "# year*", "10 Years", true },
+		{ "# year*", "10 - Years", true },
+		{ "# year*", "1999 Years", true },
+		{ "# year*", "Ten Years", false },
+		{ "# year*", "10Years", false },
+		{ "# year*", "A10 Years", false },
+		{ "*# year*", "A10 Years", true },
+		{ "live", "Live", true },
+		{ "live", "Alive", false },
+		{ "live", "Deliver", false },
+		{ "live", "Live!", true },
+		{ "live", "(Live)", true },
+		{ "live", "Live2", false },
+		{ "live at", "Live at Wacken", true },
+		{ "live at", "Live Atlantis", false },
+		{ "beyonce", "BEYONCE", true },
+	};
+
+	/**
+	 * Titles on which the default keywords have to agree with the old regexes,
+	 * including matches within words that the old regexes didn't exclude
+	 */
+	private final static String[] DEFAULT_KEYWORD_TITLES = {
+		"Abbey Road", "Abbey Road (Remastered 2019)", "Remastered Hits", "Hits (Remastered) - Remastered",
+		"Unremastered", "Pre-Recorded", "The Re-Issue", "Reissue", "Re Master", "Album - 20th Anniversary Edition",
+		"Anniversaryfest", "10 Years of Pain", "Sounds (10 Years)", "Sounds (10Years)", "Sounds - 30 Jahre",
+		"2010s Yearbook", "Live", "Live at Wacken", "Alive", "Deliver", "Live2", "Live! in Tokyo", "L+1VE", "Relive",
+	};
+
+	@Test
+	public void keywordSyntax() {
+		for (Object[] row : SYNTAX) {
+			KeywordAutomaton automaton = KeywordAutomaton.builder().add(TitleTag.LIVE, (String) row[0]).build();
+			assertEquals(row[0] + " / " + row[1], row[2], automaton.scan((String) row[1]).has(TitleTag.LIVE));
+		}
+	}
+
+	@Test
+	public void defaultKeywordsMatchOldRegexes() {
+		KeywordAutomaton automaton = defaultAutomaton();
+		for (String title : DEFAULT_KEYWORD_TITLES) {
+			TitleTags titleTags = automaton.scan(title);
+
+			Matcher matcher = OLD_RE_RELEASE_MATCHER.matcher(title);
+			boolean oldRerelease = matcher.find() && matcher.start() > 0;
+			boolean rerelease = titleTags.has(TitleTag.RE_RELEASE) && !titleTags.isAtStart(TitleTag.RE_RELEASE);
+			assertEquals(title, oldRerelease, rerelease);
+
+			assertEquals(title, OLD_LIVE_MATCHER.matcher(title).find(), titleTags.has(TitleTag.LIVE));
+		}
+	}
+
+	@Test
+	public void variousArtistsMustBeTheEntireName() {
+		KeywordAutomaton automaton = defaultAutomaton();
+		assertTrue(automaton.scan("Various Artists").isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+		assertTrue(automaton.scan("VARIOUS ARTISTS").isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+		assertTrue(automaton.scan("Verschiedene Interpreten").isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+		assertFalse(automaton.scan("Various Artists Tribute").isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+		assertFalse(automaton.scan("The Various Artists").isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+		assertFalse(automaton.scan("Various").isEntireTitle(TitleTag.VARIOUS_ARTISTS));
+	}
+
+	@Test
+	public void leftmostMatchDecidesIsAtStart() {
+		KeywordAutomaton automaton = defaultAutomaton();
+		assertTrue(automaton.scan("Remastered Hits (Remastered)").isAtStart(TitleTag.RE_RELEASE));
+		assertFalse(automaton.scan("Hits (Remastered)").isAtStart(TitleTag.RE_RELEASE));
+		assertFalse(automaton.scan("Hits").isAtStart(TitleTag.RE_RELEASE));
+	}
+
+	@Test
+	public void overlappingKeywordsOfDifferentTags() {
+		KeywordAutomaton automaton = KeywordAutomaton.builder()
+			.add(TitleTag.LIVE, "live at")
+			.add(TitleTag.RE_RELEASE, "at wacken")
+			.build();
+		TitleTags titleTags = automaton.scan("Live at Wacken");
+		assertTrue(titleTags.has(TitleTag.LIVE));
+		assertTrue(titleTags.has(TitleTag.RE_RELEASE));
+		assertTrue(titleTags.isAtStart(TitleTag.LIVE));
+		assertFalse(titleTags.isAtStart(TitleTag.RE_RELEASE));
+	}
+
+	@Test
+	public void nullTitleAndBlankKeywords() {
+		KeywordAutomaton automaton = KeywordAutomaton.builder()
+			.add(TitleTag.LIVE, " ")
+			.add(TitleTag.LIVE, "*")
+			.build();
+		assertFalse(automaton.scan(null).has(TitleTag.LIVE));
+		assertFalse(automaton.scan("Live").has(TitleTag.LIVE));
+	}
+
+	///////////////
+
+	private static KeywordAutomaton defaultAutomaton() {
+		KeywordAutomaton.Builder builder = KeywordAutomaton.builder();
+		for (TitleTag tag : TitleTag.values()) {
+			for (String keyword : tag.getDefaultKeywords()) {
+				builder.add(tag, keyword);
+			}
+		}
+		return builder.build();
+	}
+}
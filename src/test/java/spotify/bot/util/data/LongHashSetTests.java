@@ -0,0 +1,111 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks the special handling of 0 (the free-slot marker), negative keys,
+ * probing over colliding keys and lookups after the table has grown
+ */
+public class LongHashSetTests {
+
+	@Test
+	public void zeroIsTrackedSeparately() {
+		LongHashSet set = new LongHashSet();
+		assertFalse(set.contains(0));
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		assertTrue(set.contains(0));
+		assertEquals(1, set.size());
+		assertArrayEquals(new long[] { 0 }, set.toArray());
+	}
+
+	@Test
+	public void negativeKeys() {
+		LongHashSet set = new LongHashSet();
+		long[] values = { -1, Long.MIN_VALUE, Long.MAX_VALUE, -42, 42 };
+		for (long value : values) {
+			assertTrue(set.add(value));
+		}
+		for (long value : values) {
+			assertTrue(set.contains(value));
+			assertFalse(set.add(value));
+		}
+		assertFalse(set.contains(1));
+		assertFalse(set.contains(-2));
+		assertEquals(values.length, set.size());
+	}
+
+	@Test
+	public void collidingKeysAreAllFound() {
+		// All keys land in the same slot of the initial table, so every lookup has
+		// to probe past the others
+		long[] colliding = new long[7];
+		int found = 0;
+		for (long candidate = 1; found < colliding.length; candidate++) {
+			if ((LongHashSet.mix(candidate) & 15) == (LongHashSet.mix(1) & 15)) {
+				colliding[found++] = candidate;
+			}
+		}
+
+		LongHashSet set = new LongHashSet();
+		for (long value : colliding) {
+			assertTrue(set.add(value));
+		}
+		for (long value : colliding) {
+			assertTrue(set.contains(value));
+			assertFalse(set.add(value));
+		}
+		assertFalse(set.contains(colliding[colliding.length - 1] + 1));
+		assertEquals(colliding.length, set.size());
+	}
+
+	@Test
+	public void containsAfterGrowth() {
+		LongHashSet set = new LongHashSet(1);
+		Set<Long> expected = new HashSet<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			long value = random.nextLong();
+			assertEquals(expected.add(value), set.add(value));
+		}
+		set.add(0);
+		expected.add(0L);
+
+		assertEquals(expected.size(), set.size());
+		for (long value : expected) {
+			assertTrue(set.contains(value));
+		}
+		for (int i = 0; i < 1_000; i++) {
+			long value = random.nextLong();
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+
+		long[] values = set.toArray();
+		Arrays.sort(values);
+		assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), values);
+	}
+
+	@Test
+	public void sequentialKeysSurviveResizing() {
+		LongHashSet set = new LongHashSet();
+		for (long i = -5_000; i <= 5_000; i++) {
+			set.add(i);
+		}
+		assertEquals(10_001, set.size());
+		for (long i = -5_000; i <= 5_000; i++) {
+			assertTrue(set.contains(i));
+		}
+		assertFalse(set.contains(5_001));
+		assertFalse(set.contains(-5_001));
+	}
+}
@@ -0,0 +1,34 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Checks that a {@link PendingAddition} survives the round trip through its
+ * outbox key
+ */
+public class PendingAdditionTests {
+
+	@Test
+	public void keyRoundTrip() {
+		for (AlbumGroupExtended albumGroup : AlbumGroupExtended.values()) {
+			PendingAddition pendingAddition = new PendingAddition(albumGroup, 1_700_000_000_123L, 9_999, "4uLU6hMCjMI75M1A2tKUQC");
+			PendingAddition restored = PendingAddition.fromKey(pendingAddition.getKey(), pendingAddition.getTrackId());
+
+			assertEquals(pendingAddition.getKey(), restored.getKey());
+			assertEquals(albumGroup, restored.getAlbumGroupExtended());
+			assertEquals(1_700_000_000_123L, restored.getBatchId());
+			assertEquals(9_999, restored.getSequence());
+			assertEquals("4uLU6hMCjMI75M1A2tKUQC", restored.getTrackId());
+		}
+	}
+
+	@Test
+	public void keysOfDifferentAdditionsDiffer() {
+		String key = new PendingAddition(AlbumGroupExtended.ALBUM, 12, 3, "a").getKey();
+		assertFalse(key.equals(new PendingAddition(AlbumGroupExtended.ALBUM, 1, 23, "a").getKey()));
+		assertFalse(key.equals(new PendingAddition(AlbumGroupExtended.SINGLE, 12, 3, "a").getKey()));
+	}
+}
@@ -0,0 +1,300 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import spotify.bot.util.data.PendingAdditionWriter.FlushPlan;
+
+/**
+ * Writes pending additions into a local stand-in of a playlist and an outbox,
+ * both of which can simulate a crash at any request, and checks that resuming
+ * afterwards leaves every song in the playlist exactly once, in order
+ */
+public class PendingAdditionWriterTests {
+	private final static int CHUNK_SIZE = 100;
+
+	@Test
+	public void chunksAreStackedBottomFirst() throws SQLException {
+		StandInPlaylist playlist = new StandInPlaylist(List.of("old1", "old0"));
+		StandInOutbox outbox = new StandInOutbox();
+		List<PendingAddition> first = outbox.queue(batch(1, 150, "a"));
+		List<PendingAddition> second = outbox.queue(batch(2, 30, "b"));
+
+		new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), false);
+
+		assertEquals(expectedPlaylist(List.of("old1", "old0"), first, second), playlist.trackIds);
+		assertEquals(List.of(100, 80), playlist.addedChunkSizes);
+		assertEquals(PendingAdditionWriter.topFirstTrackIds(first.subList(0, 100)), playlist.addedChunks.get(0));
+		assertTrue(outbox.rows().isEmpty());
+	}
+
+	@Test
+	public void intactAdditionsAreNotComparedWithThePlaylist() throws SQLException {
+		StandInPlaylist playlist = new StandInPlaylist(List.of());
+		StandInOutbox outbox = new StandInOutbox();
+		outbox.queue(batch(1, 10, "a"));
+
+		new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), false);
+
+		assertEquals(0, playlist.topReads);
+	}
+
+	@Test
+	public void crashBeforeCompletingIsResumedWithoutDuplicates() throws SQLException {
+		for (int crashAt = 0; crashAt < 4; crashAt++) {
+			StandInPlaylist playlist = new StandInPlaylist(List.of("old"));
+			StandInOutbox outbox = new StandInOutbox();
+			List<PendingAddition> first = outbox.queue(batch(1, 250, "a"));
+			List<PendingAddition> second = outbox.queue(batch(2, 70, "b"));
+			outbox.crashBeforeCompleting = crashAt;
+
+			writeUntilCrash(playlist, outbox);
+			new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), true);
+
+			assertEquals("crash at " + crashAt, expectedPlaylist(List.of("old"), first, second), playlist.trackIds);
+			assertTrue(outbox.rows().isEmpty());
+		}
+	}
+
+	@Test
+	public void crashAfterCompletingIsResumedWithoutLoss() throws SQLException {
+		for (int crashAt = 0; crashAt < 4; crashAt++) {
+			StandInPlaylist playlist = new StandInPlaylist(List.of("old"));
+			StandInOutbox outbox = new StandInOutbox();
+			List<PendingAddition> first = outbox.queue(batch(1, 250, "a"));
+			List<PendingAddition> second = outbox.queue(batch(2, 70, "b"));
+			outbox.crashAfterCompleting = crashAt;
+
+			writeUntilCrash(playlist, outbox);
+			new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), true);
+
+			assertEquals("crash at " + crashAt, expectedPlaylist(List.of("old"), first, second), playlist.trackIds);
+			assertTrue(outbox.rows().isEmpty());
+		}
+	}
+
+	@Test
+	public void partialChunkIsFoundBelowNewlyQueuedBatches() throws SQLException {
+		StandInPlaylist playlist = new StandInPlaylist(List.of("old"));
+		StandInOutbox outbox = new StandInOutbox();
+		List<PendingAddition> first = outbox.queue(batch(1, 30, "a"));
+		outbox.crashBeforeCompleting = 0;
+		writeUntilCrash(playlist, outbox);
+
+		// A later crawl stacks another batch on top before the next flush
+		List<PendingAddition> second = outbox.queue(batch(2, 50, "b"));
+		new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), true);
+
+		assertEquals(expectedPlaylist(List.of("old"), first, second), playlist.trackIds);
+		assertEquals(List.of(30, 50), playlist.addedChunkSizes);
+		assertTrue(outbox.rows().isEmpty());
+	}
+
+	@Test
+	public void unwrittenAdditionsAreWrittenWhenResumed() throws SQLException {
+		StandInPlaylist playlist = new StandInPlaylist(List.of("old"));
+		StandInOutbox outbox = new StandInOutbox();
+		List<PendingAddition> first = outbox.queue(batch(1, 30, "a"));
+
+		List<PendingAddition> written = new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), true);
+
+		assertEquals(expectedPlaylist(List.of("old"), first), playlist.trackIds);
+		assertEquals(keys(first), keys(written));
+	}
+
+	@Test
+	public void rolloverOnlyAtTheStartOfABatch() throws SQLException {
+		StandInPlaylist playlist = new StandInPlaylist(List.of());
+		StandInOutbox outbox = new StandInOutbox();
+		outbox.queue(batch(1, 250, "a"));
+		new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), false);
+		assertEquals(List.of(250), playlist.rollovers);
+
+		playlist = new StandInPlaylist(List.of());
+		outbox = new StandInOutbox();
+		outbox.queue(batch(1, 250, "a"));
+		outbox.crashAfterCompleting = 0;
+		writeUntilCrash(playlist, outbox);
+		playlist.rollovers.clear();
+		playlist.makeRooms.clear();
+		new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), true);
+		assertEquals(List.of(), playlist.rollovers);
+		assertEquals(List.of(150), playlist.makeRooms);
+	}
+
+	@Test
+	public void flushPlanDropsOrphansAndWaitsForTheOldestBatch() {
+		List<PendingAddition> pendingAdditions = new ArrayList<>();
+		pendingAdditions.addAll(batch(AlbumGroupExtended.ALBUM, 1_000, 2, "a"));
+		pendingAdditions.addAll(batch(AlbumGroupExtended.ALBUM, 5_000, 2, "b"));
+		pendingAdditions.addAll(batch(AlbumGroupExtended.SINGLE, 4_000, 2, "c"));
+		pendingAdditions.addAll(batch(AlbumGroupExtended.EP, 1_000, 2, "d"));
+
+		FlushPlan<String> flushPlan = PendingAdditionWriter.planFlush(pendingAdditions,
+			albumGroup -> albumGroup == AlbumGroupExtended.EP ? null : albumGroup.name(), 2_000, 3_500);
+
+		assertEquals(List.of("ALBUM"), new ArrayList<>(flushPlan.getDueAdditions().keySet()));
+		assertEquals(4, flushPlan.getDueAdditions().get("ALBUM").size());
+		assertEquals(2, flushPlan.getOrphanedAdditions().size());
+		assertEquals(6_000, flushPlan.getNextFlushAt());
+
+		FlushPlan<String> nothingWaiting = PendingAdditionWriter.planFlush(pendingAdditions, AlbumGroupExtended::name, 0, 10_000);
+		assertEquals(Long.MAX_VALUE, nothingWaiting.getNextFlushAt());
+		assertTrue(nothingWaiting.getOrphanedAdditions().isEmpty());
+	}
+
+	@Test
+	public void leftoverAdditionsAreScheduledByTheirOldestBatch() {
+		List<PendingAddition> pendingAdditions = new ArrayList<>();
+		pendingAdditions.addAll(batch(AlbumGroupExtended.SINGLE, 4_000, 2, "c"));
+		pendingAdditions.addAll(batch(AlbumGroupExtended.ALBUM, 1_000, 2, "a"));
+
+		assertEquals(3_000, PendingAdditionWriter.firstFlushAt(pendingAdditions, 2_000));
+		assertEquals(1_000, PendingAdditionWriter.firstFlushAt(pendingAdditions, 0));
+		assertEquals(Long.MAX_VALUE, PendingAdditionWriter.firstFlushAt(List.of(), 2_000));
+
+		// Once the bot is back after a longer downtime, all of them are due right away
+		assertEquals(2, PendingAdditionWriter.planFlush(pendingAdditions, AlbumGroupExtended::name, 2_000, 10_000).getDueAdditions().size());
+	}
+
+	///////////////
+
+	private static void writeUntilCrash(StandInPlaylist playlist, StandInOutbox outbox) throws SQLException {
+		try {
+			new PendingAdditionWriter(CHUNK_SIZE).write(playlist, outbox, outbox.rows(), false);
+			fail("No crash");
+		} catch (Crash e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * A batch of the given size with the bottommost track first
+	 */
+	private static List<PendingAddition> batch(long batchId, int size, String prefix) {
+		return batch(AlbumGroupExtended.ALBUM, batchId, size, prefix);
+	}
+
+	private static List<PendingAddition> batch(AlbumGroupExtended albumGroup, long batchId, int size, String prefix) {
+		List<PendingAddition> batch = new ArrayList<>();
+		for (int sequence = 0; sequence < size; sequence++) {
+			batch.add(new PendingAddition(albumGroup, batchId, sequence, prefix + sequence));
+		}
+		return batch;
+	}
+
+	/**
+	 * The existing songs with the given batches stacked on top, one after another
+	 */
+	@SafeVarargs
+	private static List<String> expectedPlaylist(List<String> existing, List<PendingAddition>... batches) {
+		List<String> expected = new ArrayList<>(existing);
+		for (List<PendingAddition> batch : batches) {
+			expected.addAll(0, PendingAdditionWriter.topFirstTrackIds(batch));
+		}
+		assertEquals("duplicates", expected.size(), new HashSet<>(expected).size());
+		return expected;
+	}
+
+	private static List<String> keys(List<PendingAddition> pendingAdditions) {
+		return pendingAdditions.stream().map(PendingAddition::getKey).collect(Collectors.toList());
+	}
+
+	private static class Crash extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * A playlist as a plain list of track IDs, top first
+	 */
+	private static class StandInPlaylist implements PendingAdditionWriter.Target {
+		private final List<String> trackIds;
+		private final List<List<String>> addedChunks = new ArrayList<>();
+		private final List<Integer> addedChunkSizes = new ArrayList<>();
+		private final List<Integer> rollovers = new ArrayList<>();
+		private final List<Integer> makeRooms = new ArrayList<>();
+		private int topReads;
+
+		StandInPlaylist(List<String> trackIds) {
+			this.trackIds = new ArrayList<>(trackIds);
+		}
+
+		@Override
+		public List<String> getTopTrackIds(int limit) {
+			topReads++;
+			return new ArrayList<>(trackIds.subList(0, Math.min(limit, trackIds.size())));
+		}
+
+		@Override
+		public void rollover(int songsToAddCount) {
+			rollovers.add(songsToAddCount);
+		}
+
+		@Override
+		public void makeRoom(int songsToAddCount) {
+			makeRooms.add(songsToAddCount);
+		}
+
+		@Override
+		public void addToTop(List<String> trackIds) {
+			assertTrue(trackIds.size() <= CHUNK_SIZE);
+			this.trackIds.addAll(0, trackIds);
+			addedChunks.add(trackIds);
+			addedChunkSizes.add(trackIds.size());
+		}
+	}
+
+	/**
+	 * The outbox rows by key. Crashes right before or after the given completion
+	 * (counted from 0), i.e. after the chunk has been written to the playlist.
+	 */
+	private static class StandInOutbox implements PendingAdditionWriter.Outbox {
+		private final Map<String, PendingAddition> rowsByKey = new LinkedHashMap<>();
+		private int crashBeforeCompleting = -1;
+		private int crashAfterCompleting = -1;
+		private int completions;
+
+		List<PendingAddition> queue(List<PendingAddition> pendingAdditions) {
+			pendingAdditions.forEach(a -> assertFalse(rowsByKey.containsKey(a.getKey())));
+			pendingAdditions.forEach(a -> rowsByKey.put(a.getKey(), a));
+			return pendingAdditions;
+		}
+
+		/**
+		 * The rows as read from the database, in no particular order
+		 */
+		List<PendingAddition> rows() {
+			List<PendingAddition> rows = rowsByKey.values().stream()
+				.map(a -> PendingAddition.fromKey(a.getKey(), a.getTrackId()))
+				.collect(Collectors.toList());
+			Collections.shuffle(rows, new Random(rows.size()));
+			return rows;
+		}
+
+		@Override
+		public void complete(List<PendingAddition> writtenAdditions) {
+			int completion = completions++;
+			if (completion == crashBeforeCompleting) {
+				throw new Crash();
+			}
+			writtenAdditions.forEach(a -> rowsByKey.remove(a.getKey()));
+			if (completion == crashAfterCompleting) {
+				throw new Crash();
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * Checks that the currently played song is requested only once for all
+ * notified playlists, that it only clears the notifiers of the playlists it was
+ * added to, and that the requests back off while nothing is playing
+ */
+public class PlaybackCheckTests {
+	private final static long MIN_BACKOFF_MS = 10_000;
+	private final static long MAX_BACKOFF_MS = 40_000;
+
+	private final static Map<String, Set<String>> RECENTLY_ADDED = Map.of(
+		"albums", Set.of("a1", "a2"),
+		"singles", Set.of("s1"),
+		"eps", Set.of("a1"));
+
+	@Test
+	public void playedSongClearsOnlyItsPlaylists() {
+		PlaybackCheck playbackCheck = new PlaybackCheck(MIN_BACKOFF_MS, MAX_BACKOFF_MS);
+		CountingPlayback playback = new CountingPlayback("a1");
+
+		List<String> played = playbackCheck.findPlayed(List.of("albums", "singles", "eps"), RECENTLY_ADDED::get, playback, 0);
+
+		assertEquals(List.of("albums", "eps"), played);
+		assertEquals(1, playback.requests.get());
+	}
+
+	@Test
+	public void nothingIsRequestedWithoutNotifiers() {
+		PlaybackCheck playbackCheck = new PlaybackCheck(MIN_BACKOFF_MS, MAX_BACKOFF_MS);
+		CountingPlayback playback = new CountingPlayback("a1");
+
+		assertEquals(List.of(), playbackCheck.findPlayed(List.<String>of(), RECENTLY_ADDED::get, playback, 0));
+		assertEquals(0, playback.requests.get());
+	}
+
+	@Test
+	public void idleRequestsBackOffUntilSomethingIsPlayed() {
+		PlaybackCheck playbackCheck = new PlaybackCheck(MIN_BACKOFF_MS, MAX_BACKOFF_MS);
+		CountingPlayback playback = new CountingPlayback(null);
+		List<String> notified = List.of("albums");
+
+		// Requested at 0, 10s, 30s, 70s, and then every 40s
+		for (long now = 0; now <= 150_000; now += 5_000) {
+			playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, now);
+		}
+		assertEquals(6, playback.requests.get());
+
+		playback.trackId = "a2";
+		assertEquals(List.of(), playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, 155_000));
+		assertEquals(List.of("albums"), playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, 150_000 + MAX_BACKOFF_MS));
+		assertEquals(7, playback.requests.get());
+
+		// Playing resets the backoff
+		assertEquals(List.of("albums"), playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, 190_001));
+		assertEquals(8, playback.requests.get());
+	}
+
+	@Test
+	public void resetEndsTheBackoff() {
+		PlaybackCheck playbackCheck = new PlaybackCheck(MIN_BACKOFF_MS, MAX_BACKOFF_MS);
+		CountingPlayback playback = new CountingPlayback(null);
+		List<String> notified = List.of("singles");
+
+		playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, 0);
+		playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, 1_000);
+		assertEquals(1, playback.requests.get());
+
+		playbackCheck.reset();
+		playback.trackId = "s1";
+		assertEquals(List.of("singles"), playbackCheck.findPlayed(notified, RECENTLY_ADDED::get, playback, 1_000));
+		assertEquals(2, playback.requests.get());
+	}
+
+	///////////////
+
+	private static class CountingPlayback implements Supplier<String> {
+		private final AtomicInteger requests = new AtomicInteger();
+		private String trackId;
+
+		private CountingPlayback(String trackId) {
+			this.trackId = trackId;
+		}
+
+		@Override
+		public String get() {
+			requests.incrementAndGet();
+			return trackId;
+		}
+	}
+}
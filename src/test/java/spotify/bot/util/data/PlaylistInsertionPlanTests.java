@@ -0,0 +1,93 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Applies insertion plans to a local stand-in of a playlist (a plain list of
+ * track IDs) in chunks from the bottom up, as the {@link PendingAdditionWriter}
+ * does, and checks the final order
+ */
+public class PlaylistInsertionPlanTests {
+	private final static int CHUNK_SIZE = 100;
+
+	@Test
+	public void sameOrderAsOneByOneInsertionAtTheTop() {
+		Random random = new Random(1);
+		for (int round = 0; round < 100; round++) {
+			List<AlbumTrackPair> releases = randomReleases(random, 1 + random.nextInt(80), CHUNK_SIZE);
+			List<String> existing = ids("old", random.nextInt(300));
+
+			// Reference: every release inserted at the top on its own, one after another
+			List<String> expected = new ArrayList<>(existing);
+			for (AlbumTrackPair atp : releases) {
+				expected.addAll(0, trackIds(atp));
+			}
+
+			assertEquals(expected, apply(PlaylistInsertionPlan.topOfPlaylist(releases), existing));
+		}
+	}
+
+	@Test
+	public void releasesLongerThanOneChunkKeepTheirTrackOrder() {
+		Random random = new Random(2);
+		List<AlbumTrackPair> releases = randomReleases(random, 3, 350);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = releases.size() - 1; i >= 0; i--) {
+			expected.addAll(trackIds(releases.get(i)));
+		}
+
+		PlaylistInsertionPlan plan = PlaylistInsertionPlan.topOfPlaylist(releases);
+		assertEquals(expected, apply(plan, List.of()));
+		assertEquals(expected.size(), plan.getTrackCount());
+	}
+
+	///////////////
+
+	private static List<String> apply(PlaylistInsertionPlan plan, List<String> existing) {
+		List<String> playlist = new ArrayList<>(existing);
+		List<String> trackIds = plan.getTrackIds();
+		for (int to = trackIds.size(); to > 0; to -= CHUNK_SIZE) {
+			playlist.addAll(0, trackIds.subList(Math.max(0, to - CHUNK_SIZE), to));
+		}
+		return playlist;
+	}
+
+	private static List<AlbumTrackPair> randomReleases(Random random, int count, int maxTracks) {
+		List<AlbumTrackPair> releases = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			List<TrackSimplified> tracks = new ArrayList<>();
+			for (String id : ids("r" + i + "t", 1 + random.nextInt(maxTracks))) {
+				tracks.add(new TrackSimplified.Builder().setId(id).build());
+			}
+			releases.add(AlbumTrackPair.of(new AlbumSimplified.Builder().setId("r" + i).build(), tracks));
+		}
+		return releases;
+	}
+
+	private static List<String> ids(String prefix, int count) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ids.add(prefix + i);
+		}
+		return ids;
+	}
+
+	private static List<String> trackIds(AlbumTrackPair atp) {
+		List<String> ids = new ArrayList<>();
+		for (TrackSimplified track : atp.getTracks()) {
+			ids.add(track.getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,40 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Checks when the {@link PlaylistRollover} archives a playlist
+ */
+public class PlaylistRolloverTests {
+	private final static int SIZE_LIMIT = 10000;
+
+	/**
+	 * Configured threshold, current total, songs to add, expected rollover
+	 */
+	private final static Object[][] ROLLOVER = {
+		{ 0, 9950, 100, false },
+		{ -1, 9950, 100, false },
+		{ 5000, 4900, 100, false },
+		{ 5000, 4901, 100, true },
+		{ 5000, 0, 6000, false },
+		{ 5000, 1, 6000, true },
+		{ 20000, 9901, 100, true },
+		{ 20000, 9900, 100, false },
+	};
+
+	@Test
+	public void rolloverDecisionTable() {
+		for (Object[] row : ROLLOVER) {
+			PlaylistRollover rollover = new PlaylistRollover((int) row[0], SIZE_LIMIT);
+			assertEquals(row[0] + " / " + row[1] + " / " + row[2], row[3], rollover.isDue((int) row[1], (int) row[2]));
+		}
+	}
+
+	@Test
+	public void disabledByDefault() {
+		assertFalse(new PlaylistRollover(0, SIZE_LIMIT).isEnabled());
+	}
+}
@@ -0,0 +1,162 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Trims a full local stand-in of a playlist (which validates every request
+ * the way the Spotify API would) and checks the remaining tracks
+ */
+public class PlaylistTrimmerTests {
+	private final static int PLAYLIST_SIZE_LIMIT = 10000;
+
+	@Test
+	public void trimFullPlaylistSequentially() {
+		StandInPlaylist playlist = new StandInPlaylist(PLAYLIST_SIZE_LIMIT);
+		PlaylistTrimmer.Result result = new PlaylistTrimmer(PlaylistTrimmer::executeOnCallingThread)
+			.trimBottom(playlist, PLAYLIST_SIZE_LIMIT, playlist.snapshotId(), 2500);
+
+		assertEquals(ids(7500), playlist.trackIds);
+		assertEquals(2500, result.getRemovedCount());
+		assertEquals(playlist.snapshotId(), result.getSnapshotId());
+		assertTrue(result.isVerified());
+		assertEquals(25, playlist.removeRequests);
+	}
+
+	@Test
+	public void trimFullPlaylistInParallel() {
+		StandInPlaylist playlist = new StandInPlaylist(PLAYLIST_SIZE_LIMIT);
+		PlaylistTrimmer.Result result = new PlaylistTrimmer(PlaylistTrimmerTests::executeInParallel)
+			.trimBottom(playlist, PLAYLIST_SIZE_LIMIT, playlist.snapshotId(), 1234);
+
+		assertEquals(ids(PLAYLIST_SIZE_LIMIT - 1234), playlist.trackIds);
+		assertTrue(result.isVerified());
+		assertEquals(13, playlist.removeRequests);
+	}
+
+	@Test
+	public void nothingToTrim() {
+		StandInPlaylist playlist = new StandInPlaylist(500);
+		PlaylistTrimmer.Result result = new PlaylistTrimmer(PlaylistTrimmer::executeOnCallingThread)
+			.trimBottom(playlist, 500, playlist.snapshotId(), 0);
+
+		assertEquals(ids(500), playlist.trackIds);
+		assertEquals(0, result.getRemovedCount());
+		assertEquals(0, playlist.removeRequests);
+	}
+
+	/**
+	 * Local files can't be removed by URI, so they are skipped (and remain)
+	 */
+	@Test
+	public void skipLocalFiles() {
+		StandInPlaylist playlist = new StandInPlaylist(300);
+		playlist.trackIds.set(250, null);
+		PlaylistTrimmer.Result result = new PlaylistTrimmer(PlaylistTrimmer::executeOnCallingThread)
+			.trimBottom(playlist, 300, playlist.snapshotId(), 100);
+
+		List<String> expected = ids(200);
+		expected.add(null);
+		assertEquals(expected, playlist.trackIds);
+		assertEquals(99, result.getRemovedCount());
+		assertTrue(result.isVerified());
+	}
+
+	///////////////
+
+	/**
+	 * Stand-in for a playlist on the Spotify API. Rejects removals for outdated
+	 * snapshots, with too many items, or with a URI not matching its position.
+	 */
+	private static class StandInPlaylist implements PlaylistTrimmer.Target {
+		private final List<String> trackIds;
+		private int snapshot;
+		private int removeRequests;
+
+		private StandInPlaylist(int size) {
+			this.trackIds = ids(size);
+		}
+
+		private synchronized String snapshotId() {
+			return "snapshot" + snapshot;
+		}
+
+		@Override
+		public synchronized List<String> getTrackIds(int offset, int limit) {
+			if (limit > PlaylistTrimmer.PAGE_SIZE) {
+				throw new IllegalArgumentException("Limit too high: " + limit);
+			}
+			return new ArrayList<>(trackIds.subList(offset, Math.min(offset + limit, trackIds.size())));
+		}
+
+		@Override
+		public synchronized String removeItems(JsonArray items, String snapshotId) {
+			if (!snapshotId().equals(snapshotId)) {
+				throw new IllegalStateException("Outdated snapshot: " + snapshotId);
+			}
+			if (items.size() > PlaylistTrimmer.PAGE_SIZE) {
+				throw new IllegalArgumentException("Too many items: " + items.size());
+			}
+			TreeMap<Integer, String> toRemove = new TreeMap<>();
+			for (JsonElement element : items) {
+				JsonObject item = element.getAsJsonObject();
+				String uri = item.get("uri").getAsString();
+				for (JsonElement position : item.getAsJsonArray("positions")) {
+					int p = position.getAsInt();
+					if (!uri.equals("spotify:track:" + trackIds.get(p))) {
+						throw new IllegalArgumentException("URI " + uri + " not found at position " + p);
+					}
+					toRemove.put(p, uri);
+				}
+			}
+			for (int position : toRemove.descendingKeySet()) {
+				trackIds.remove(position);
+			}
+			removeRequests++;
+			snapshot++;
+			return snapshotId();
+		}
+
+		@Override
+		public synchronized int getVerifiedTotal() {
+			return trackIds.size();
+		}
+	}
+
+	private static <T> List<T> executeInParallel(List<Callable<List<T>>> callables) {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<T> results = new ArrayList<>();
+			for (Future<List<T>> future : executor.invokeAll(callables)) {
+				results.addAll(future.get());
+			}
+			return results;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static List<String> ids(int count) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ids.add("t" + i);
+		}
+		return ids;
+	}
+}
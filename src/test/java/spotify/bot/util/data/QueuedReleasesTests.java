@@ -0,0 +1,99 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+/**
+ * Checks that only the songs of written additions are reported (and cached),
+ * chunk by chunk, and that a release written in several chunks is reported
+ * once with all of its written tracks
+ */
+public class QueuedReleasesTests {
+
+	@Test
+	public void onlyWrittenTracksAreTaken() {
+		AlbumTrackPair album = release("album", "a1", "a2", "a3");
+		AlbumTrackPair single = release("single", "s1");
+		List<PendingAddition> plannedAdditions = plan(List.of("s1", "a3", "a2", "a1"));
+		QueuedReleases queuedReleases = new QueuedReleases();
+		queuedReleases.remember(List.of(album, single), plannedAdditions);
+
+		Map<AlbumTrackPair, Set<String>> writtenTrackIdsByRelease = new LinkedHashMap<>();
+		List<AlbumTrackPair> firstChunk = queuedReleases.take(plannedAdditions.subList(0, 2), writtenTrackIdsByRelease);
+		assertEquals(Map.of("single", List.of("s1"), "album", List.of("a3")), trackIdsByAlbumId(firstChunk));
+
+		// The rest of the batch is never written (e.g. because the flush failed)
+		assertEquals(Map.of("single", List.of("s1"), "album", List.of("a3")), trackIdsByAlbumId(QueuedReleases.withTracks(writtenTrackIdsByRelease)));
+	}
+
+	@Test
+	public void releaseWrittenInSeveralChunksIsTakenOnce() {
+		AlbumTrackPair album = release("album", "a1", "a2", "a3");
+		List<PendingAddition> plannedAdditions = plan(List.of("a3", "a2", "a1"));
+		QueuedReleases queuedReleases = new QueuedReleases();
+		queuedReleases.remember(List.of(album), plannedAdditions);
+
+		Map<AlbumTrackPair, Set<String>> writtenTrackIdsByRelease = new LinkedHashMap<>();
+		assertEquals(Map.of("album", List.of("a2", "a3")), trackIdsByAlbumId(queuedReleases.take(plannedAdditions.subList(0, 2), writtenTrackIdsByRelease)));
+		assertEquals(Map.of("album", List.of("a1")), trackIdsByAlbumId(queuedReleases.take(plannedAdditions.subList(2, 3), writtenTrackIdsByRelease)));
+
+		List<AlbumTrackPair> written = QueuedReleases.withTracks(writtenTrackIdsByRelease);
+		assertEquals(1, written.size());
+		assertEquals(Map.of("album", List.of("a1", "a2", "a3")), trackIdsByAlbumId(written));
+	}
+
+	@Test
+	public void unknownAndForgottenAdditionsAreSkipped() {
+		List<PendingAddition> plannedAdditions = plan(List.of("a1", "b1"));
+		QueuedReleases queuedReleases = new QueuedReleases();
+		queuedReleases.remember(List.of(release("a", "a1"), release("b", "b1")), plannedAdditions);
+		queuedReleases.forget(plannedAdditions.subList(0, 1));
+
+		// Left over by a previous run of the bot
+		PendingAddition leftover = new PendingAddition(AlbumGroupExtended.ALBUM, 1L, 0, "old");
+
+		Map<AlbumTrackPair, Set<String>> writtenTrackIdsByRelease = new LinkedHashMap<>();
+		List<AlbumTrackPair> taken = queuedReleases.take(List.of(leftover, plannedAdditions.get(0), plannedAdditions.get(1)), writtenTrackIdsByRelease);
+		assertEquals(Map.of("b", List.of("b1")), trackIdsByAlbumId(taken));
+
+		// Taking the same additions again (e.g. a resumed chunk) doesn't report them twice
+		assertTrue(queuedReleases.take(plannedAdditions, writtenTrackIdsByRelease).isEmpty());
+	}
+
+	///////////////
+
+	/**
+	 * A single batch with the given track IDs, bottommost first
+	 */
+	private static List<PendingAddition> plan(List<String> trackIds) {
+		return trackIds.stream()
+			.map(trackId -> new PendingAddition(AlbumGroupExtended.ALBUM, 2L, trackIds.indexOf(trackId), trackId))
+			.collect(Collectors.toList());
+	}
+
+	private static AlbumTrackPair release(String albumId, String... trackIds) {
+		List<TrackSimplified> tracks = List.of(trackIds).stream()
+			.map(trackId -> new TrackSimplified.Builder().setId(trackId).build())
+			.collect(Collectors.toList());
+		return AlbumTrackPair.of(new AlbumSimplified.Builder().setId(albumId).build(), tracks);
+	}
+
+	private static Map<String, List<String>> trackIdsByAlbumId(List<AlbumTrackPair> releases) {
+		return releases.stream()
+			.collect(Collectors.toMap(atp -> atp.getAlbum().getId(), atp -> atp.getTracks().stream()
+				.map(TrackSimplified::getId)
+				.collect(Collectors.toList())));
+	}
+}
@@ -0,0 +1,83 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks when the {@link ReleaseCodes} of a new release match those of the
+ * added releases, in particular that an album isn't taken for a re-release just
+ * because its songs came out as singles first
+ */
+public class ReleaseCodesTests {
+
+	@Test
+	public void albumAfterItsSinglesIsNew() {
+		AddedReleases added = new AddedReleases();
+		added.add(new ReleaseCodes("UPC1", List.of("A"), true));
+		added.add(new ReleaseCodes("UPC2", List.of("B"), true));
+		added.add(new ReleaseCodes("UPC3", List.of("C", "D"), true));
+
+		assertFalse(added.isKnown(new ReleaseCodes("UPC4", List.of("A", "B", "C", "D", "E"), false)));
+	}
+
+	@Test
+	public void deluxeAlbumAfterTheAlbumIsKnown() {
+		AddedReleases added = new AddedReleases();
+		added.add(new ReleaseCodes("UPC1", List.of("A", "B", "C"), false));
+
+		assertTrue(added.isKnown(new ReleaseCodes("UPC2", List.of("A", "B", "C", "D"), false)));
+		assertFalse(added.isKnown(new ReleaseCodes("UPC3", List.of("A", "D", "E"), false)));
+	}
+
+	@Test
+	public void singleAfterItsAlbumIsKnown() {
+		AddedReleases added = new AddedReleases();
+		added.add(new ReleaseCodes("UPC1", List.of("A", "B", "C"), false));
+
+		assertTrue(added.isKnown(new ReleaseCodes("UPC2", List.of("B"), true)));
+	}
+
+	@Test
+	public void reuploadedSingleIsOnlyKnownByItsUpc() {
+		AddedReleases added = new AddedReleases();
+		added.add(new ReleaseCodes("UPC1", List.of("A"), true));
+
+		assertTrue(added.isKnown(new ReleaseCodes("UPC1", List.of("A"), true)));
+		assertFalse(added.isKnown(new ReleaseCodes("UPC2", List.of("A"), true)));
+	}
+
+	@Test
+	public void missingCodesAreNeverKnown() {
+		AddedReleases added = new AddedReleases();
+		added.add(new ReleaseCodes(null, List.of(), false));
+
+		assertFalse(added.isKnown(new ReleaseCodes(null, List.of(), false)));
+	}
+
+	///////////////
+
+	/**
+	 * The release code index as filled with the added releases
+	 */
+	private static class AddedReleases {
+		private final Set<String> upcs = new HashSet<>();
+		private final Set<String> isrcs = new HashSet<>();
+
+		void add(ReleaseCodes releaseCodes) {
+			if (releaseCodes.getUpc() != null) {
+				upcs.add(releaseCodes.getUpc());
+			}
+			isrcs.addAll(releaseCodes.getIndexedIsrcs());
+		}
+
+		boolean isKnown(ReleaseCodes releaseCodes) {
+			return releaseCodes.isKnown(upcs, isrcs);
+		}
+	}
+}
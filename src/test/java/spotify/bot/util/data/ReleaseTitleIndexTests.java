@@ -0,0 +1,90 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks the title normalization and the fuzzy matching of the
+ * {@link ReleaseTitleIndex}, which decide whether a release is remapped to the
+ * re-releases or erased
+ */
+public class ReleaseTitleIndexTests {
+	private final static String ARTIST = "artist";
+	private final static String ALBUM = "album";
+
+	private final static String[][] NORMALIZED = {
+		{ "Abbey Road", "abbey road" },
+		{ "Abbey Road (Remastered 2019)", "abbey road" },
+		{ "Abbey Road (Super Deluxe Edition) [Bonus Tracks]", "abbey road" },
+		{ "Abbey Road - 50th Anniversary Edition", "abbey road" },
+		{ "Abbey Road - Live", "abbey road live" },
+		{ "Beyoncé", "beyonce" },
+		{ "Deluxe", "deluxe" },
+		{ "(Remastered)", "remastered" },
+		{ "Part II: The Return", "part ii the return" },
+	};
+
+	/**
+	 * Indexed title, checked title, expected match
+	 */
+	private final static Object[][] SIMILAR = {
+		{ "Abbey Road", "Abbey Road (Remastered 2019)", true },
+		{ "Greatest Hits", "Greatest Hitz", true },
+		{ "Greatest Hits Vol. 2", "Greatest Hits Vol. 3", false },
+		{ "Symphony 5", "Symphony 6", false },
+		{ "Rocky II", "Rocky III", false },
+		{ "Chapter IV: The Return", "Chapter V: The Return", false },
+		{ "Part I", "Part V", false },
+		{ "The Collection X", "The Collection V", false },
+		{ "I Want You Back", "I Want You Bak", true },
+		{ "I Want You Back", "U Want You Back", true },
+		{ "V For Vendetta", "X For Vendetta", true },
+		{ "Want You", "I Want You", false },
+		{ "Love", "Love II", false },
+		{ "Hello", "Hallo", false },
+	};
+
+	@Test
+	public void normalize() {
+		for (String[] row : NORMALIZED) {
+			assertEquals(row[0], row[1], ReleaseTitleIndex.normalize(row[0]));
+		}
+	}
+
+	@Test
+	public void containsSimilar() {
+		for (Object[] row : SIMILAR) {
+			ReleaseTitleIndex index = new ReleaseTitleIndex();
+			index.add(title((String) row[0]));
+			assertEquals(row[0] + " / " + row[1], row[2], index.containsSimilar(title((String) row[1])));
+		}
+	}
+
+	@Test
+	public void numberTokens() {
+		assertEquals(List.of("2"), ReleaseTitleIndex.numberTokens("greatest hits vol 2"));
+		assertEquals(List.of("ii"), ReleaseTitleIndex.numberTokens("part ii the return"));
+		assertEquals(List.of("iii"), ReleaseTitleIndex.numberTokens("rocky iii"));
+		assertEquals(List.of(), ReleaseTitleIndex.numberTokens("i want you"));
+		assertEquals(List.of(), ReleaseTitleIndex.numberTokens("x marks the spot"));
+		assertEquals(List.of("1999", "v"), ReleaseTitleIndex.numberTokens("live 1999 vol v"));
+	}
+
+	@Test
+	public void bucketsAreSeparatedByArtistAndAlbumType() {
+		ReleaseTitleIndex index = new ReleaseTitleIndex();
+		index.add(title("Abbey Road"));
+		assertFalse(index.containsSimilar(new ReleaseTitle("other", ALBUM, ReleaseTitleIndex.normalize("Abbey Road"))));
+		assertFalse(index.containsSimilar(new ReleaseTitle(ARTIST, "single", ReleaseTitleIndex.normalize("Abbey Road"))));
+	}
+
+	///////////////
+
+	private static ReleaseTitle title(String title) {
+		return new ReleaseTitle(ARTIST, ALBUM, ReleaseTitleIndex.normalize(title));
+	}
+}
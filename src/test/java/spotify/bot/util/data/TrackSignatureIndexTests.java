@@ -0,0 +1,97 @@
+package spotify.bot.util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.michaelthelin.spotify.model_objects.specification.AlbumSimplified;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+import spotify.util.data.AlbumTrackPair;
+
+public class TrackSignatureIndexTests {
+
+	@Test
+	public void explicitAndCleanVariantsAreNearDuplicates() {
+		TrackSignatureIndex index = new TrackSignatureIndex();
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(release("a", "Album", "artist", track("Intro", 60_000), track("Song", 200_000), track("Outro", 90_000))));
+		assertEquals(0, index.findOrAdd(release("b", "Album (Clean)", "artist", track("Intro", 60_000), track("Song (Clean)", 199_500), track("Outro", 90_000))));
+	}
+
+	@Test
+	public void regionalVariantWithDifferentTitleIsNearDuplicate() {
+		TrackSignatureIndex index = new TrackSignatureIndex();
+		List<TrackSimplified> tracks = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			tracks.add(track("Track " + i, 180_000 + i * 1000));
+		}
+		List<TrackSimplified> regionalTracks = new ArrayList<>(tracks);
+		regionalTracks.set(9, track("Bonus", 150_000));
+
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(AlbumTrackPair.of(album("a", "Album", "artist"), tracks)));
+		assertEquals(0, index.findOrAdd(AlbumTrackPair.of(album("b", "Album (Japan Edition)", "artist"), regionalTracks)));
+	}
+
+	@Test
+	public void differentReleasesAreNotNearDuplicates() {
+		TrackSignatureIndex index = new TrackSignatureIndex();
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(release("a", "Single", "artist", track("Song", 200_000))));
+
+		// Same name, different artist
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(release("b", "Single", "other", track("Song", 200_000))));
+
+		// Same name and artist, but a different recording
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(release("c", "Single", "artist", track("Song", 240_000))));
+
+		// Additional tracks
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(release("d", "Single", "artist", track("Song", 200_000), track("Song (Remix)", 200_000))));
+	}
+
+	@Test
+	public void identicalTrackListsFarApartAreNotNearDuplicates() {
+		TrackSignatureIndex index = new TrackSignatureIndex();
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(datedRelease("a", "Album", "artist", "2024-03-01", track("Intro", 60_000), track("Song", 200_000))));
+
+		// Regional variant a few days later
+		assertEquals(0, index.findOrAdd(datedRelease("b", "Album (Japan Edition)", "artist", "2024-03-06", track("Intro", 60_000), track("Song", 200_000))));
+
+		// Re-release with the same track list a year later
+		assertEquals(TrackSignatureIndex.NEW, index.findOrAdd(datedRelease("c", "Album (Remastered)", "artist", "2025-03-01", track("Intro", 60_000), track("Song", 200_000))));
+
+		// Unknown release dates aren't compared
+		assertEquals(0, index.findOrAdd(datedRelease("d", "Album (Clean)", "artist", null, track("Intro", 60_000), track("Song (Clean)", 200_000))));
+	}
+
+	///////////////
+
+	private static AlbumTrackPair release(String id, String name, String artistId, TrackSimplified... tracks) {
+		return AlbumTrackPair.of(album(id, name, artistId), List.of(tracks));
+	}
+
+	private static AlbumTrackPair datedRelease(String id, String name, String artistId, String releaseDate, TrackSimplified... tracks) {
+		return AlbumTrackPair.of(album(id, name, artistId, releaseDate), List.of(tracks));
+	}
+
+	private static AlbumSimplified album(String id, String name, String artistId) {
+		return album(id, name, artistId, null);
+	}
+
+	private static AlbumSimplified album(String id, String name, String artistId, String releaseDate) {
+		return new AlbumSimplified.Builder()
+			.setId(id)
+			.setName(name)
+			.setArtists(new ArtistSimplified.Builder().setId(artistId).build())
+			.setReleaseDate(releaseDate)
+			.build();
+	}
+
+	private static TrackSimplified track(String name, int durationMs) {
+		return new TrackSimplified.Builder()
+			.setName(name)
+			.setDurationMs(durationMs)
+			.build();
+	}
+}